@@ -47,6 +47,10 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
     private final FrameDescriptor descriptor;
     private final Object[] arguments;
     private Object[] locals;
+    /*
+     * Allocated on the first primitive store, frames that only ever hold objects keep the shared
+     * empty array. Otherwise it always has the same length as the tags array.
+     */
     private long[] primitiveLocals;
     private byte[] tags;
 
@@ -106,7 +110,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
             if (defaultValue != null) {
                 Arrays.fill(locals, defaultValue);
             }
-            this.primitiveLocals = new long[size];
+            this.primitiveLocals = EMPTY_LONG_ARRAY;
             this.tags = new byte[size];
         }
     }
@@ -137,6 +141,15 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
         return unsafeCast(this.primitiveLocals, long[].class, true, true, true);
     }
 
+    private long[] getPrimitiveLocalsForWrite() {
+        long[] primitives = getPrimitiveLocals();
+        if (CompilerDirectives.injectBranchProbability(CompilerDirectives.SLOWPATH_PROBABILITY, primitives.length == 0)) {
+            primitives = new long[getTags().length];
+            this.primitiveLocals = primitives;
+        }
+        return primitives;
+    }
+
     byte[] getTags() {
         return unsafeCast(tags, byte[].class, true, true, true);
     }
@@ -177,7 +190,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
 
     private void setByteUnsafe(int slotIndex, FrameSlot slot, byte value) {
         long offset = getPrimitiveOffset(slotIndex);
-        unsafePutInt(getPrimitiveLocals(), offset, value, slot);
+        unsafePutInt(getPrimitiveLocalsForWrite(), offset, value, slot);
     }
 
     @Override
@@ -201,7 +214,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
 
     private void setBooleanUnsafe(int slotIndex, FrameSlot slot, boolean value) {
         long offset = getPrimitiveOffset(slotIndex);
-        unsafePutInt(getPrimitiveLocals(), offset, value ? 1 : 0, slot);
+        unsafePutInt(getPrimitiveLocalsForWrite(), offset, value ? 1 : 0, slot);
     }
 
     @Override
@@ -225,7 +238,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
 
     private void setFloatUnsafe(int slotIndex, FrameSlot slot, float value) {
         long offset = getPrimitiveOffset(slotIndex);
-        unsafePutFloat(getPrimitiveLocals(), offset, value, slot);
+        unsafePutFloat(getPrimitiveLocalsForWrite(), offset, value, slot);
     }
 
     @Override
@@ -249,7 +262,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
 
     private void setLongUnsafe(int slotIndex, FrameSlot slot, long value) {
         long offset = getPrimitiveOffset(slotIndex);
-        unsafePutLong(getPrimitiveLocals(), offset, value, slot);
+        unsafePutLong(getPrimitiveLocalsForWrite(), offset, value, slot);
     }
 
     @Override
@@ -273,7 +286,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
 
     private void setIntUnsafe(int slotIndex, FrameSlot slot, int value) {
         long offset = getPrimitiveOffset(slotIndex);
-        unsafePutInt(getPrimitiveLocals(), offset, value, slot);
+        unsafePutInt(getPrimitiveLocalsForWrite(), offset, value, slot);
     }
 
     @Override
@@ -297,7 +310,7 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
 
     private void setDoubleUnsafe(int slotIndex, FrameSlot slot, double value) {
         long offset = getPrimitiveOffset(slotIndex);
-        unsafePutDouble(getPrimitiveLocals(), offset, value, slot);
+        unsafePutDouble(getPrimitiveLocalsForWrite(), offset, value, slot);
     }
 
     @Override
@@ -376,7 +389,9 @@ public final class FrameWithoutBoxing implements VirtualFrame, MaterializedFrame
         if (newSize > oldSize) {
             locals = Arrays.copyOf(locals, newSize);
             Arrays.fill(locals, oldSize, newSize, descriptor.getDefaultValue());
-            primitiveLocals = Arrays.copyOf(primitiveLocals, newSize);
+            if (primitiveLocals.length != 0) {
+                primitiveLocals = Arrays.copyOf(primitiveLocals, newSize);
+            }
             tags = Arrays.copyOf(tags, newSize);
             return true;
         }
@@ -58,6 +58,12 @@ import java.util.function.Predicate;
  * <ul>
  * <li>{@link Builder#statementLimit(long, Predicate) Statement count} limit per context. Allows to
  * limit the amount of statements executed per context.
+ * <li>{@link Builder#cpuTimeLimit(Duration, Duration) CPU time} limit per context. Allows to limit
+ * the CPU time a context may be active.
+ * <li>{@link Builder#allocatedBytesLimit(long, Duration) Allocated bytes} and
+ * {@link Builder#allocationRateLimit(long, Duration) allocation rate} limits per context. Allow to
+ * limit the heap memory a context allocates in total and per second. They do not limit the heap
+ * memory retained by a context.
  * </ul>
  * <p>
  * <h3>Statement Limit Example</h3> <code>
@@ -114,6 +120,10 @@ public final class ResourceLimits {
         Predicate<Source> statementLimitSourceFilter;
         Duration timeLimit;
         Duration timeLimitAccuracy;
+        long allocatedBytesLimit;
+        Duration allocatedBytesLimitAccuracy;
+        long allocationRateLimit;
+        Duration allocationRateLimitAccuracy;
         Consumer<ResourceLimitEvent> onLimit;
 
         Builder() {
@@ -236,6 +246,73 @@ public final class ResourceLimits {
             return this;
         }
 
+        /**
+         * Specifies the maximum total number of bytes a context may allocate on the heap until the
+         * onLimit event is notified and the context will be {@link Context#close() closed}. The
+         * limit is checked periodically with the given {@link Duration accuracy}, which must be
+         * positive. The limit may be set to 0 to disable it, in which case the accuracy may be
+         * <code>null</code>. By default no allocated bytes limit is configured. Invoking this
+         * method multiple times overwrites previous allocated bytes limit configurations. If the
+         * allocated bytes limit is exceeded then the {@link #onLimit(Consumer) onLimit} listener is
+         * notified.
+         * The minimal accuracy is 10 milliseconds, values below that will be rounded up.
+         * <p>
+         * The allocated bytes of a context are the bytes allocated by all threads while they are
+         * entered in the context, as reported by the host VM for each thread. They accumulate over
+         * the lifetime of the context and include memory that was garbage collected again, so this
+         * is not a limit for the heap memory retained by a context: a long running context may
+         * exceed it even if it retains almost nothing. Use {@link Context#resetLimits()} to start
+         * counting again. Allocations are accounted when a thread enters and leaves the context and
+         * when the limit is checked, so contexts that stay within their limits are not slowed down.
+         * <p>
+         * The allocated bytes limit is applied to the context and all inner contexts it spawns.
+         * Therefore, new inner contexts cannot be used to exceed the allocated bytes limit.
+         * Allocated bytes limits are not supported if the host VM cannot report the bytes allocated
+         * by a thread, in which case an {@link UnsupportedOperationException} is thrown when the
+         * context is {@link Context.Builder#build() built}.
+         *
+         * @see ResourceLimits Example Usage
+         * @since 20.1
+         */
+        public Builder allocatedBytesLimit(long limit, Duration accuracy) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("The allocated bytes limit must not be negative.");
+            } else if (limit > 0 && (accuracy == null || accuracy.isNegative() || accuracy.isZero())) {
+                throw new IllegalArgumentException("Accuracy must not be null, negative or zero.");
+            }
+            this.allocatedBytesLimit = limit;
+            this.allocatedBytesLimitAccuracy = limit > 0 ? accuracy : null;
+            return this;
+        }
+
+        /**
+         * Specifies the maximum average number of bytes per second a context may allocate on the
+         * heap until the onLimit event is notified and the context will be {@link Context#close()
+         * closed}. The average is computed over each period of the given {@link Duration accuracy},
+         * which must be positive. The limit may be set to 0 to disable it, in which case the
+         * accuracy may be <code>null</code>. By default no allocation rate limit is configured.
+         * Invoking this method multiple times overwrites previous allocation rate limit
+         * configurations. If the allocation rate limit is exceeded then the
+         * {@link #onLimit(Consumer) onLimit} listener is notified. The minimal accuracy is 10
+         * milliseconds, values below that will be rounded up.
+         * <p>
+         * Allocations are accounted in the same way as for the
+         * {@link #allocatedBytesLimit(long, Duration) allocated bytes limit}.
+         *
+         * @see ResourceLimits Example Usage
+         * @since 20.1
+         */
+        public Builder allocationRateLimit(long bytesPerSecond, Duration accuracy) {
+            if (bytesPerSecond < 0) {
+                throw new IllegalArgumentException("The allocation rate limit must not be negative.");
+            } else if (bytesPerSecond > 0 && (accuracy == null || accuracy.isNegative() || accuracy.isZero())) {
+                throw new IllegalArgumentException("Accuracy must not be null, negative or zero.");
+            }
+            this.allocationRateLimit = bytesPerSecond;
+            this.allocationRateLimitAccuracy = bytesPerSecond > 0 ? accuracy : null;
+            return this;
+        }
+
         /**
          * Notified when a resource limit is reached. Default is <code>null</code>. May be set to
          * <code>null</code> to disable events.
@@ -254,7 +331,8 @@ public final class ResourceLimits {
          * @since 19.3
          */
         public ResourceLimits build() {
-            return new ResourceLimits(Engine.getImpl().buildLimits(statementLimit, statementLimitSourceFilter, timeLimit, timeLimitAccuracy, onLimit));
+            return new ResourceLimits(Engine.getImpl().buildLimits(statementLimit, statementLimitSourceFilter, timeLimit, timeLimitAccuracy, allocatedBytesLimit, allocatedBytesLimitAccuracy,
+                            allocationRateLimit, allocationRateLimitAccuracy, onLimit));
         }
     }
 }
@@ -29,6 +29,7 @@
 from __future__ import print_function
 
 import os
+import struct
 import time
 import re
 import tempfile
@@ -459,6 +460,12 @@ def svm_gate_body(args, tasks):
                 helloworld(['--output-path', svmbuild_dir(), '--shared'])  # Build and run helloworld as shared library
                 cinterfacetutorial([])
                 clinittest([])
+                methodfingerprintstest([])
+                handshaketest([])
+                samplingprofilertest([])
+                if not mx.is_windows():
+                    # Heap dumps are only written on POSIX platforms
+                    heapdumptest([])
 
         with Task('native unittests', tasks, tags=[GraalTags.test]) as t:
             if t:
@@ -1307,6 +1314,254 @@ def clinittest(args):
     native_image_context_run(build_and_test_clinittest_image, args, build_if_missing=True)
 
 
+@mx.command(suite.name, 'methodfingerprintstest', 'Runs the method fingerprints test')
+def methodfingerprintstest(args):
+    def build_and_test_fingerprints(native_image, args=None):
+        args = [] if args is None else args
+        build_dir = join(svmbuild_dir(), 'methodfingerprintstest')
+        fingerprints_file = join(build_dir, 'fingerprints.txt')
+        reports_dir = join(build_dir, 'reports')
+
+        # clean / create output directory
+        if exists(build_dir):
+            remove_tree(build_dir)
+        mkpath(build_dir)
+
+        def build_image(greeting):
+            # Only the string constant changes, the bytecode of greeting() stays the same
+            source_file = join(build_dir, 'FingerprintsTest.java')
+            with open(source_file, 'w') as fp:
+                fp.write('public class FingerprintsTest { '
+                         'static String greeting() { return "' + greeting + '"; } '
+                         'public static void main(String[] args) { System.out.println(greeting()); } }')
+            mx.run([mx.get_jdk().javac, source_file])
+            if exists(reports_dir):
+                remove_tree(reports_dir)
+            native_image(['-H:Path=' + build_dir, '-cp', build_dir, '-H:Class=FingerprintsTest', '-H:Name=methodfingerprintstest',
+                          '-H:ReportInvalidatedMethodsFingerprintsFile=' + fingerprints_file] + args)
+            if not exists(fingerprints_file):
+                mx.abort('Method fingerprints were not written to ' + fingerprints_file)
+            reports = [report for report in os.listdir(reports_dir)] if exists(reports_dir) else []
+            invalidated_report = next((report for report in reports if report.startswith('invalidated_methods')), None)
+            if invalidated_report is None:
+                return None
+            with open(join(reports_dir, invalidated_report)) as f:
+                return [line.strip() for line in f if not line.startswith('#')]
+
+        if build_image('Hello') is not None:
+            mx.abort('No methods can be invalidated by the first build')
+        invalidated = build_image('Hello')
+        if invalidated != []:
+            mx.abort('No methods must be invalidated by an unchanged build. Found:\n' + str(invalidated))
+        invalidated = build_image('Hello, fingerprints')
+        for method in ['FingerprintsTest.greeting()', 'FingerprintsTest.main(String[])']:
+            if method not in invalidated:
+                mx.abort(method + ' must be invalidated by a changed string constant. Found:\n' + str(invalidated))
+
+    native_image_context_run(build_and_test_fingerprints, args, build_if_missing=True)
+
+
+@mx.command(suite.name, 'handshaketest', 'Runs the thread-local handshake test')
+def handshaketest(args):
+    def build_and_test_handshake(native_image, args=None):
+        args = [] if args is None else args
+        build_dir = join(svmbuild_dir(), 'handshaketest')
+
+        # clean / create output directory
+        if exists(build_dir):
+            remove_tree(build_dir)
+        mkpath(build_dir)
+
+        # One target thread spins in Java code, the other one sleeps in native code
+        source_file = join(build_dir, 'HandshakeTest.java')
+        with open(source_file, 'w') as fp:
+            fp.write('import org.graalvm.nativeimage.CurrentIsolate; '
+                     'import org.graalvm.nativeimage.IsolateThread; '
+                     'import org.graalvm.word.WordFactory; '
+                     'import com.oracle.svm.core.thread.ThreadLocalHandshake; '
+                     'public class HandshakeTest { '
+                     'static final class Probe extends ThreadLocalHandshake.Operation { '
+                     'volatile boolean byTarget; '
+                     'Probe() { super("HandshakeTest.probe"); } '
+                     '@Override protected void operate(IsolateThread thread) { byTarget = thread == CurrentIsolate.getCurrentThread(); } } '
+                     'static volatile boolean done; static volatile long spinning; static volatile long sleeping; static volatile long sink; '
+                     'static void handshake(String name, long thread) { '
+                     'Probe probe = new Probe(); '
+                     'boolean executed = ThreadLocalHandshake.execute(WordFactory.pointer(thread), probe); '
+                     'System.out.println(name + ": executed=" + executed + " byTarget=" + probe.byTarget); } '
+                     'public static void main(String[] args) throws Exception { '
+                     'Thread spinner = new Thread(() -> { spinning = CurrentIsolate.getCurrentThread().rawValue(); long i = 0; while (!done) { i++; } sink = i; }); '
+                     'Thread sleeper = new Thread(() -> { sleeping = CurrentIsolate.getCurrentThread().rawValue(); '
+                     'try { Thread.sleep(Long.MAX_VALUE); } catch (InterruptedException e) { } }); '
+                     'spinner.start(); sleeper.start(); '
+                     'while (spinning == 0 || sleeping == 0) { Thread.sleep(10); } '
+                     'Thread.sleep(500); '
+                     'handshake("java", spinning); handshake("native", sleeping); '
+                     'done = true; sleeper.interrupt(); spinner.join(); sleeper.join(); } }')
+        mx.run([mx.get_jdk().javac, '-cp', os.pathsep.join(classpath('com.oracle.svm.core')), source_file])
+        native_image(['-H:Path=' + build_dir, '-cp', build_dir, '-H:Class=HandshakeTest', '-H:Name=handshaketest'] + args)
+        out = mx.OutputCapture()
+        mx.run([join(build_dir, 'handshaketest')], out=out)
+
+        # The thread in Java code executes the operation itself, the operation is executed on behalf of the thread in native code
+        for expected in ['java: executed=true byTarget=true', 'native: executed=true byTarget=false']:
+            if expected not in out.data:
+                mx.abort('Expected "' + expected + '" in the output of the handshake test. Found:\n' + out.data)
+
+    native_image_context_run(build_and_test_handshake, args, build_if_missing=True)
+
+@mx.command(suite.name, 'samplingprofilertest', 'Runs the sampling profiler test')
+def samplingprofilertest(args):
+    def build_and_test_samplingprofiler(native_image, args=None):
+        args = [] if args is None else args
+        build_dir = join(svmbuild_dir(), 'samplingprofilertest')
+        profile_file = join(build_dir, 'samplingprofilertest.collapsed')
+
+        # clean / create output directory
+        if exists(build_dir):
+            remove_tree(build_dir)
+        mkpath(build_dir)
+
+        # The main thread spends all its time in busy()
+        source_file = join(build_dir, 'SamplingProfilerTest.java')
+        with open(source_file, 'w') as fp:
+            fp.write('public class SamplingProfilerTest { '
+                     'static long busy(long nanos) { long end = System.nanoTime() + nanos; long i = 0; '
+                     'while (System.nanoTime() < end) { i++; } return i; } '
+                     'public static void main(String[] args) { System.out.println(busy(1000000000L) > 0); } }')
+        mx.run([mx.get_jdk().javac, source_file])
+        native_image(['-H:Path=' + build_dir, '-cp', build_dir, '-H:Class=SamplingProfilerTest', '-H:Name=samplingprofilertest', '-H:+SamplingProfiler'] + args)
+        mx.run([join(build_dir, 'samplingprofilertest'), '-XX:SamplingProfilerInterval=1', '-XX:SamplingProfilerFile=' + profile_file])
+
+        # Every line is a stack from the root to the leaf followed by its number of samples
+        with open(profile_file) as f:
+            lines = [line.rstrip('\n') for line in f]
+        line_pattern = re.compile(r'^\S.* [1-9][0-9]*$')
+        malformed = [line for line in lines if not line_pattern.match(line)]
+        if malformed or not lines:
+            mx.abort('Malformed collapsed stacks in ' + profile_file + ':\n' + '\n'.join(malformed or lines))
+        busy_samples = sum(int(line.rsplit(' ', 1)[1]) for line in lines if 'SamplingProfilerTest.main;SamplingProfilerTest.busy' in line)
+        if busy_samples == 0:
+            mx.abort('No samples of SamplingProfilerTest.busy called from SamplingProfilerTest.main in ' + profile_file + ':\n' + '\n'.join(lines))
+
+    native_image_context_run(build_and_test_samplingprofiler, args, build_if_missing=True)
+
+def _read_hprof(dump_file):
+    """
+    Reads the records of an HPROF heap dump with 8-byte IDs that are needed to check thread stack roots.
+    Returns the strings, the classes, the frames, the stack traces and the heap dump sub-records as a dict.
+    """
+    with open(dump_file, 'rb') as f:
+        data = f.read()
+    pos = data.index(b'\0') + 1
+    id_size = struct.unpack_from('>I', data, pos)[0]
+    if id_size != 8:
+        mx.abort('Unexpected ID size ' + str(id_size) + ' in ' + dump_file)
+    pos += 4 + 8
+    value_sizes = {2: 8, 4: 1, 5: 2, 6: 4, 7: 8, 8: 1, 9: 2, 10: 4, 11: 8}
+    result = {'strings': {}, 'classes': {}, 'frames': {}, 'traces': {}, 'thread_roots': [], 'frame_roots': [], 'instances': []}
+    while pos < len(data):
+        tag, length = struct.unpack_from('>BxxxxI', data, pos)
+        pos += 9
+        end = pos + length
+        if tag == 0x01:
+            result['strings'][struct.unpack_from('>Q', data, pos)[0]] = data[pos + 8:end].decode('utf-8', 'replace')
+        elif tag == 0x02:
+            _, class_id, _, name_id = struct.unpack_from('>IQIQ', data, pos)
+            result['classes'][class_id] = name_id
+        elif tag == 0x04:
+            frame_id, method_name_id = struct.unpack_from('>QQ', data, pos)
+            result['frames'][frame_id] = method_name_id
+        elif tag == 0x05:
+            serial, thread_serial, frame_count = struct.unpack_from('>III', data, pos)
+            result['traces'][serial] = (thread_serial, struct.unpack_from('>' + str(frame_count) + 'Q', data, pos + 12))
+        elif tag == 0x1C:
+            while pos < end:
+                sub_tag = struct.unpack_from('>B', data, pos)[0]
+                pos += 1
+                if sub_tag in (0xFF, 0x05):
+                    pos += 8
+                elif sub_tag == 0x03:
+                    result['frame_roots'].append(struct.unpack_from('>QII', data, pos))
+                    pos += 16
+                elif sub_tag == 0x08:
+                    result['thread_roots'].append(struct.unpack_from('>QII', data, pos))
+                    pos += 16
+                elif sub_tag == 0x20:
+                    pos += 8 + 4 + 6 * 8 + 4
+                    # constant pool entries, static fields and instance fields
+                    for key_size, has_value in ((2, True), (8, True), (8, False)):
+                        count = struct.unpack_from('>H', data, pos)[0]
+                        pos += 2
+                        for _ in range(count):
+                            value_type = struct.unpack_from('>B', data, pos + key_size)[0]
+                            pos += key_size + 1 + (value_sizes[value_type] if has_value else 0)
+                elif sub_tag == 0x21:
+                    object_id, _, class_id, data_size = struct.unpack_from('>QIQI', data, pos)
+                    result['instances'].append((object_id, class_id))
+                    pos += 8 + 4 + 8 + 4 + data_size
+                elif sub_tag == 0x22:
+                    count = struct.unpack_from('>I', data, pos + 12)[0]
+                    pos += 8 + 4 + 4 + 8 + count * 8
+                elif sub_tag == 0x23:
+                    count, value_type = struct.unpack_from('>IB', data, pos + 12)
+                    pos += 8 + 4 + 4 + 1 + count * value_sizes[value_type]
+                else:
+                    mx.abort('Unexpected heap dump sub-record ' + hex(sub_tag) + ' in ' + dump_file)
+        pos = end
+    return result
+
+
+@mx.command(suite.name, 'heapdumptest', 'Runs the heap dump test')
+def heapdumptest(args):
+    def build_and_test_heapdump(native_image, args=None):
+        args = [] if args is None else args
+        build_dir = join(svmbuild_dir(), 'heapdumptest')
+        dump_file = join(build_dir, 'heapdumptest.hprof')
+
+        # clean / create output directory
+        if exists(build_dir):
+            remove_tree(build_dir)
+        mkpath(build_dir)
+
+        # The marker is only referenced from a local variable of main() while the heap is dumped
+        source_file = join(build_dir, 'HeapDumpTest.java')
+        with open(source_file, 'w') as fp:
+            fp.write('import com.oracle.svm.core.annotate.NeverInline; '
+                     'import com.oracle.svm.core.heap.HeapDumpWriter; '
+                     'public class HeapDumpTest { '
+                     'static final class Marker { } '
+                     '@NeverInline("Materialize the marker before the heap dump") '
+                     'static Marker createMarker() { return new Marker(); } '
+                     '@NeverInline("Keep main in a frame of its own") '
+                     'static void dumpHeap(String path) throws Exception { HeapDumpWriter.dumpHeap(path); } '
+                     'public static void main(String[] args) throws Exception { '
+                     'Marker marker = createMarker(); dumpHeap(args[0]); System.out.println(marker); } }')
+        mx.run([mx.get_jdk().javac, '-cp', os.pathsep.join(classpath('com.oracle.svm.core')), source_file])
+        native_image(['-H:Path=' + build_dir, '-cp', build_dir, '-H:Class=HeapDumpTest', '-H:Name=heapdumptest', '-H:+HeapDumpSupport'] + args)
+        mx.run([join(build_dir, 'heapdumptest'), dump_file])
+
+        hprof = _read_hprof(dump_file)
+        strings = hprof['strings']
+        marker_classes = [class_id for class_id, name_id in hprof['classes'].items() if strings.get(name_id) == 'HeapDumpTest$Marker']
+        markers = [object_id for object_id, class_id in hprof['instances'] if class_id in marker_classes]
+        if len(markers) != 1:
+            mx.abort('Expected one instance of HeapDumpTest$Marker in the heap dump, found ' + str(len(markers)))
+        if not hprof['thread_roots']:
+            mx.abort('No thread objects are written as GC roots')
+        thread_traces = {thread_serial: hprof['traces'][trace_serial][1] for _, thread_serial, trace_serial in hprof['thread_roots']}
+        marker_frames = []
+        for object_id, thread_serial, frame_number in hprof['frame_roots']:
+            if thread_serial not in thread_traces or frame_number >= len(thread_traces[thread_serial]):
+                mx.abort('Java frame root refers to unknown frame ' + str(frame_number) + ' of thread ' + str(thread_serial))
+            if object_id == markers[0]:
+                marker_frames.append(strings.get(hprof['frames'][thread_traces[thread_serial][frame_number]]))
+        if 'main' not in marker_frames:
+            mx.abort('The marker must be written as a GC root of the frame of main. Found frames: ' + str(marker_frames))
+
+    native_image_context_run(build_and_test_heapdump, args, build_if_missing=True)
+
+
 orig_command_build = mx.command_function('build')
 
 
@@ -77,6 +77,7 @@ import com.oracle.graal.pointsto.meta.AnalysisType;
 import com.oracle.graal.pointsto.meta.AnalysisUniverse;
 import com.oracle.graal.pointsto.meta.HostedProviders;
 import com.oracle.graal.pointsto.typestate.PointsToStats;
+import com.oracle.graal.pointsto.typestate.TypeBitSetCache;
 import com.oracle.graal.pointsto.typestate.TypeState;
 import com.oracle.graal.pointsto.util.CompletionExecutor;
 import com.oracle.graal.pointsto.util.CompletionExecutor.DebugContextRunnable;
@@ -101,6 +102,7 @@ public abstract class BigBang {
     private final AnalysisType objectType;
     private TypeFlow<?> allSynchronizedTypeFlow;
     private UnknownTypeFlow unknownTypeFlow;
+    private final TypeBitSetCache typeBitSetCache = new TypeBitSetCache();
 
     protected final AnalysisUniverse universe;
     protected final AnalysisMetaAccess metaAccess;
@@ -259,6 +261,7 @@ public abstract class BigBang {
         unknownTypeFlow = null;
 
         ConstantObjectsProfiler.constantTypes.clear();
+        typeBitSetCache.clear();
 
         universe.getTypes().forEach(AnalysisType::cleanupAfterAnalysis);
         universe.getFields().forEach(AnalysisField::cleanupAfterAnalysis);
@@ -341,6 +344,10 @@ public abstract class BigBang {
         return allSynchronizedTypeFlow;
     }
 
+    public TypeBitSetCache getTypeBitSetCache() {
+        return typeBitSetCache;
+    }
+
     public TypeState getAllSynchronizedTypeState() {
         return allSynchronizedTypeFlow.getState();
     }
@@ -101,6 +101,9 @@ public class PointstoOptions {
     @Option(help = "Object scanning in parallel")//
     public static final OptionKey<Boolean> ScanObjectsParallel = new OptionKey<>(true);
 
+    @Option(help = "Share identical type bit sets between type states and cache the results of type bit set unions and intersections.")//
+    public static final OptionKey<Boolean> InternTypeStates = new OptionKey<>(true);
+
     /**
      * Controls the static analysis context sensitivity. Available values:
      * <p/>
@@ -74,8 +74,9 @@ public class MultiTypeState extends TypeState {
          * another thread calls clone() the words[] array can be in an inconsistent state.
          */
         TypeStateUtils.trimBitSetToSize(typesBitSet);
-        this.typesBitSet = typesBitSet;
-        long cardinality = typesBitSet.cardinality();
+        /* Equal type sets are very common, share a single canonical instance between them. */
+        this.typesBitSet = TypeStateUtils.internBitSet(bb, typesBitSet);
+        long cardinality = this.typesBitSet.cardinality();
         assert cardinality < Integer.MAX_VALUE : "We don't expect so much types.";
         this.typesCount = (int) cardinality;
         this.canBeNull = canBeNull;
@@ -33,12 +33,14 @@ import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -105,7 +107,7 @@ public class PointsToStats {
         reportStatistics = bb.reportAnalysisStatistics();
     }
 
-    public static void report(@SuppressWarnings("unused") BigBang bb, String reportNameRoot) {
+    public static void report(BigBang bb, String reportNameRoot) {
 
         try {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
@@ -114,6 +116,7 @@ public class PointsToStats {
 
             doReport(statsDirectory, reportNameRoot, "type state stats", timeStamp, PointsToStats::reportTypeStateStats);
             doReport(statsDirectory, reportNameRoot, "union operation stats", timeStamp, PointsToStats::reportUnionOpertationsStats);
+            doReport(statsDirectory, reportNameRoot, "type state interning stats", timeStamp, out -> reportInterningStats(bb, out));
             doReport(statsDirectory, reportNameRoot, "type flow stats", timeStamp, PointsToStats::reportTypeFlowStats);
             doReport(statsDirectory, reportNameRoot, "pruned type flow stats", timeStamp, PointsToStats::reportPrunedTypeFlows);
 
@@ -380,6 +383,39 @@ public class PointsToStats {
                         });
     }
 
+    // type bit set interning
+
+    private static final AtomicLong internedBitSetHits = new AtomicLong();
+    private static final AtomicLong internedBitSetSavedBytes = new AtomicLong();
+    private static final AtomicLong cachedBitSetOperationHits = new AtomicLong();
+    private static final AtomicLong cachedBitSetOperationSavedBytes = new AtomicLong();
+
+    static void registerInternedBitSetHit(BigBang bb, BitSet duplicate) {
+        if (!bb.reportAnalysisStatistics()) {
+            return;
+        }
+
+        internedBitSetHits.incrementAndGet();
+        internedBitSetSavedBytes.addAndGet(TypeStateUtils.bitSetSize(duplicate));
+    }
+
+    static void registerCachedBitSetOperationHit(BigBang bb, BitSet result) {
+        if (!bb.reportAnalysisStatistics()) {
+            return;
+        }
+
+        cachedBitSetOperationHits.incrementAndGet();
+        cachedBitSetOperationSavedBytes.addAndGet(TypeStateUtils.bitSetSize(result));
+    }
+
+    private static void reportInterningStats(BigBang bb, BufferedWriter out) {
+
+        doWrite(out, String.format("%-35s\t%10s\t%15s\n", "Kind", "Count", "Saved Bytes"));
+        doWrite(out, String.format("%-35s\t%10d\t%15s\n", "Canonical type bit sets", bb.getTypeBitSetCache().internedBitSetsCount(), ""));
+        doWrite(out, String.format("%-35s\t%10d\t%15d\n", "Interned type bit set hits", internedBitSetHits.get(), internedBitSetSavedBytes.get()));
+        doWrite(out, String.format("%-35s\t%10d\t%15d\n", "Cached union/intersection hits", cachedBitSetOperationHits.get(), cachedBitSetOperationSavedBytes.get()));
+    }
+
     // union operations frequency
 
     private static ConcurrentHashMap<UnionOperation, AtomicInteger> unionStats = new ConcurrentHashMap<>();
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.graal.pointsto.typestate;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The canonical type bit sets and the cached results of operations on them, owned by one analysis.
+ * Both tables are bounded by the approximate number of bytes they retain, so that they cannot keep
+ * an unbounded number of bit sets alive whose type states are gone already, and they are released
+ * by {@link com.oracle.graal.pointsto.BigBang#cleanupAfterAnalysis()}.
+ */
+public final class TypeBitSetCache {
+
+    /** Approximate size of a hash table entry, excluding the bit sets. */
+    private static final int ENTRY_SIZE = 48;
+    /** Upper bound for the bytes retained by the canonical bit sets. */
+    private static final long MAX_INTERNED_BYTES = 64L << 20;
+    /** Upper bound for the bytes retained by the cached operation results. */
+    private static final long MAX_OPERATION_BYTES = 32L << 20;
+
+    private final ConcurrentHashMap<BitSet, BitSet> internedBitSets = new ConcurrentHashMap<>();
+    private final AtomicLong internedBytes = new AtomicLong();
+    private final ConcurrentHashMap<BitSetOperation, BitSet> bitSetOperations = new ConcurrentHashMap<>();
+    private final AtomicLong operationBytes = new AtomicLong();
+
+    /**
+     * Returns the canonical instance of the bit set, or the bit set itself when it becomes canonical
+     * or when the table is full. Bit sets that are not interned are still valid type bit sets, they
+     * just are not shared.
+     */
+    BitSet intern(BitSet bitSet) {
+        BitSet canonical = internedBitSets.get(bitSet);
+        if (canonical != null) {
+            return canonical;
+        }
+        long size = ENTRY_SIZE + TypeStateUtils.bitSetSize(bitSet);
+        if (internedBytes.get() + size > MAX_INTERNED_BYTES) {
+            return bitSet;
+        }
+        canonical = internedBitSets.putIfAbsent(bitSet, bitSet);
+        if (canonical != null) {
+            return canonical;
+        }
+        internedBytes.addAndGet(size);
+        return bitSet;
+    }
+
+    /** Returns the cached result of the operation, or <code>null</code> if it is not cached. */
+    BitSet getOperation(boolean isUnion, BitSet bs1, BitSet bs2) {
+        return bitSetOperations.get(new BitSetOperation(isUnion, bs1, bs2));
+    }
+
+    /**
+     * Caches the result of an operation. When the cache is full it is dropped as a whole, the
+     * results can be computed again and the operations that are still frequent are cached again
+     * quickly. The operands are accounted for too since they are not canonical when the table of
+     * canonical bit sets is full.
+     */
+    void putOperation(boolean isUnion, BitSet bs1, BitSet bs2, BitSet result) {
+        long size = ENTRY_SIZE + TypeStateUtils.bitSetSize(bs1) + TypeStateUtils.bitSetSize(bs2) + TypeStateUtils.bitSetSize(result);
+        if (operationBytes.addAndGet(size) > MAX_OPERATION_BYTES) {
+            bitSetOperations.clear();
+            operationBytes.set(size);
+        }
+        bitSetOperations.putIfAbsent(new BitSetOperation(isUnion, bs1, bs2), result);
+    }
+
+    /** Returns the number of canonical type bit sets. */
+    int internedBitSetsCount() {
+        return internedBitSets.size();
+    }
+
+    /** Releases the canonical type bit sets and the cached operation results. */
+    public void clear() {
+        internedBitSets.clear();
+        internedBytes.set(0);
+        bitSetOperations.clear();
+        operationBytes.set(0);
+    }
+
+    /**
+     * Key of a cached bit set operation. The operands are compared by identity, which finds all
+     * repeated operations as long as the operands are canonical instances. Since both operations are
+     * commutative the order of the operands is ignored.
+     */
+    private static final class BitSetOperation {
+        final boolean isUnion;
+        final BitSet bs1;
+        final BitSet bs2;
+
+        BitSetOperation(boolean isUnion, BitSet bs1, BitSet bs2) {
+            this.isUnion = isUnion;
+            this.bs1 = bs1;
+            this.bs2 = bs2;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof BitSetOperation) {
+                BitSetOperation other = (BitSetOperation) obj;
+                return this.isUnion == other.isUnion && ((this.bs1 == other.bs1 && this.bs2 == other.bs2) || (this.bs1 == other.bs2 && this.bs2 == other.bs1));
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(bs1) ^ System.identityHashCode(bs2)) + (isUnion ? 1 : 0);
+        }
+    }
+}
@@ -668,7 +668,7 @@ public abstract class TypeState {
             AnalysisObject[] resultObjects = TypeStateUtils.concat(s1.objects, s2.objects);
 
             /* Logical OR the type bit sets. */
-            BitSet resultTypesBitSet = TypeStateUtils.or(s1.typesBitSet, s2.typesBitSet);
+            BitSet resultTypesBitSet = TypeStateUtils.or(bb, s1.typesBitSet, s2.typesBitSet);
             int properties = bb.analysisPolicy().makePopertiesForUnion(s1, s2);
 
             MultiTypeState result = new MultiTypeState(bb, resultCanBeNull, properties, resultTypesBitSet, resultObjects);
@@ -682,7 +682,7 @@ public abstract class TypeState {
             AnalysisObject[] resultObjects = TypeStateUtils.concat(s2.objects, s1.objects);
 
             /* Logical OR the type bit sets. */
-            BitSet resultTypesBitSet = TypeStateUtils.or(s1.typesBitSet, s2.typesBitSet);
+            BitSet resultTypesBitSet = TypeStateUtils.or(bb, s1.typesBitSet, s2.typesBitSet);
             int properties = bb.analysisPolicy().makePopertiesForUnion(s1, s2);
 
             MultiTypeState result = new MultiTypeState(bb, resultCanBeNull, properties, resultTypesBitSet, resultObjects);
@@ -873,7 +873,7 @@ public abstract class TypeState {
             assert resultObjects.size() > 1 : "The result state of a (Multi U Multi) operation must have at least 2 objects";
 
             /* Logical OR the type bit sets. */
-            BitSet resultTypesBitSet = TypeStateUtils.or(s1.typesBitSet, s2.typesBitSet);
+            BitSet resultTypesBitSet = TypeStateUtils.or(bb, s1.typesBitSet, s2.typesBitSet);
             int properties = bb.analysisPolicy().makePopertiesForUnion(s1, s2);
 
             MultiTypeState result = new MultiTypeState(bb, resultCanBeNull, properties, resultTypesBitSet, resultObjects.copyToArray(new AnalysisObject[resultObjects.size()]));
@@ -1147,7 +1147,7 @@ public abstract class TypeState {
                     return new SingleTypeState(bb, resultCanBeNull, bb.analysisPolicy().makePoperties(bb, objects), objects);
                 } else {
                     /* Logical AND the type bit sets. */
-                    BitSet resultTypesBitSet = TypeStateUtils.and(s1.typesBitSet, s2.typesBitSet);
+                    BitSet resultTypesBitSet = TypeStateUtils.and(bb, s1.typesBitSet, s2.typesBitSet);
                     MultiTypeState result = new MultiTypeState(bb, resultCanBeNull, bb.analysisPolicy().makePoperties(bb, objects), resultTypesBitSet, objects);
 
                     /*
@@ -342,6 +342,55 @@ public class TypeStateUtils {
         return false;
     }
 
+    /**
+     * Returns the canonical instance of a type bit set. The bit set must be trimmed and must not be
+     * mutated after it was interned; callers always clone a bit set before deriving a new one from
+     * it, so sharing it between type states is safe.
+     */
+    static BitSet internBitSet(BigBang bb, BitSet bitSet) {
+        if (!PointstoOptions.InternTypeStates.getValue(bb.getOptions())) {
+            return bitSet;
+        }
+        BitSet canonical = bb.getTypeBitSetCache().intern(bitSet);
+        if (canonical != bitSet) {
+            PointsToStats.registerInternedBitSetHit(bb, bitSet);
+        }
+        return canonical;
+    }
+
+    private static BitSet cachedOperation(BigBang bb, boolean isUnion, BitSet bs1, BitSet bs2) {
+        if (!PointstoOptions.InternTypeStates.getValue(bb.getOptions())) {
+            return isUnion ? or(bs1, bs2) : and(bs1, bs2);
+        }
+        TypeBitSetCache cache = bb.getTypeBitSetCache();
+        BitSet result = cache.getOperation(isUnion, bs1, bs2);
+        if (result != null) {
+            PointsToStats.registerCachedBitSetOperationHit(bb, result);
+            return result;
+        }
+        result = isUnion ? or(bs1, bs2) : and(bs1, bs2);
+        trimBitSetToSize(result);
+        result = internBitSet(bb, result);
+        cache.putOperation(isUnion, bs1, bs2, result);
+        return result;
+    }
+
+    /**
+     * Logical OR two canonical type bit sets without modifying the source. The result is canonical
+     * too, i.e., it must not be modified.
+     */
+    protected static BitSet or(BigBang bb, BitSet bs1, BitSet bs2) {
+        return cachedOperation(bb, true, bs1, bs2);
+    }
+
+    /**
+     * Logical AND two canonical type bit sets without modifying the source. The result is
+     * canonical too, i.e., it must not be modified.
+     */
+    protected static BitSet and(BigBang bb, BitSet bs1, BitSet bs2) {
+        return cachedOperation(bb, false, bs1, bs2);
+    }
+
     /** Logical OR two bit sets without modifying the source. */
     protected static BitSet or(BitSet bs1, BitSet bs2) {
         BitSet bsr = (BitSet) bs1.clone();
@@ -356,6 +405,11 @@ public class TypeStateUtils {
         return bsr;
     }
 
+    /** Estimated heap size of a bit set, i.e., the BitSet object and its words array. */
+    static long bitSetSize(BitSet bitSet) {
+        return 24 + 16 + 8L * extractBitSetField(bitSet).length;
+    }
+
     /**
      * Logical AND-NOT of the two bit sets, i.e., clearing all bits in first operand whose
      * corresponding bits are set in the second one, without modifying the source.
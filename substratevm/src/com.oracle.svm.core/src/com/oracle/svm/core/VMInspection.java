@@ -44,6 +44,7 @@ import org.graalvm.nativeimage.hosted.Feature;
 import com.oracle.svm.core.annotate.AutomaticFeature;
 import com.oracle.svm.core.annotate.NeverInline;
 import com.oracle.svm.core.deopt.DeoptimizationSupport;
+import com.oracle.svm.core.heap.HeapDumpWriter;
 import com.oracle.svm.core.jdk.RuntimeSupport;
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.option.HostedOptionKey;
@@ -140,6 +141,10 @@ class DumpHeapReport implements SignalHandler {
 
     @Override
     public void handle(Signal arg0) {
+        if (HeapDumpWriter.isSupported()) {
+            dumpHeap();
+            return;
+        }
         Path heapDumpFilePath = null;
         FileOutputStream fileOutputStream = null;
         try {
@@ -159,6 +164,23 @@ class DumpHeapReport implements SignalHandler {
             }
         }
     }
+
+    private static void dumpHeap() {
+        Path heapDumpFilePath = null;
+        try {
+            heapDumpFilePath = Files.createTempFile(Paths.get("."), "svm-heapdump-", ".hprof");
+            HeapDumpWriter.dumpHeap(heapDumpFilePath.toString());
+            Log.log().string("Heap dump written to ").string(heapDumpFilePath.toString()).newline().flush();
+        } catch (IOException e) {
+            Log.log().string("svm-heapdump failed").newline().flush();
+            try {
+                if (heapDumpFilePath != null) {
+                    Files.deleteIfExists(heapDumpFilePath);
+                }
+            } catch (IOException e1) {
+            }
+        }
+    }
 }
 
 class DumpRuntimeCompilation implements SignalHandler {
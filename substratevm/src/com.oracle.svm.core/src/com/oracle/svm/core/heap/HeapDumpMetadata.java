@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heap;
+
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+
+import com.oracle.svm.core.annotate.UnknownObjectField;
+
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * The instance field layout of all types, which is necessary to write heap dumps because the field
+ * names and offsets are otherwise not available at run time. The metadata is computed after the
+ * instance field layout is fixed, i.e., before compilation.
+ * <p>
+ * The instance fields declared by the type with type ID {@code t} have the indices
+ * {@code fieldStart[t]} (inclusive) to {@code fieldStart[t + 1]} (exclusive) in the other field
+ * arrays. Field names are stored as indices into {@link #names}, so that every name is written to
+ * a heap dump only once.
+ */
+public final class HeapDumpMetadata {
+
+    @UnknownObjectField(types = {int[].class}) private int[] fieldStart;
+    @UnknownObjectField(types = {int[].class}) private int[] fieldNames;
+    @UnknownObjectField(types = {int[].class}) private int[] fieldOffsets;
+    @UnknownObjectField(types = {byte[].class}) private byte[] fieldTypes;
+    @UnknownObjectField(types = {int[].class}) private int[] instanceDataSizes;
+    @UnknownObjectField(types = {String[].class}) private String[] names;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public HeapDumpMetadata() {
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public void setData(int[] newFieldStart, int[] newFieldNames, int[] newFieldOffsets, byte[] newFieldTypes, int[] newInstanceDataSizes, String[] newNames) {
+        this.fieldStart = newFieldStart;
+        this.fieldNames = newFieldNames;
+        this.fieldOffsets = newFieldOffsets;
+        this.fieldTypes = newFieldTypes;
+        this.instanceDataSizes = newInstanceDataSizes;
+        this.names = newNames;
+    }
+
+    static HeapDumpMetadata singleton() {
+        return ImageSingletons.lookup(HeapDumpMetadata.class);
+    }
+
+    /** Returns the HPROF basic type that is used for values of the given storage kind. */
+    public static byte basicType(JavaKind kind) {
+        switch (kind) {
+            case Object:
+                return HeapDumpWriter.TYPE_OBJECT;
+            case Boolean:
+                return HeapDumpWriter.TYPE_BOOLEAN;
+            case Char:
+                return HeapDumpWriter.TYPE_CHAR;
+            case Float:
+                return HeapDumpWriter.TYPE_FLOAT;
+            case Double:
+                return HeapDumpWriter.TYPE_DOUBLE;
+            case Byte:
+                return HeapDumpWriter.TYPE_BYTE;
+            case Short:
+                return HeapDumpWriter.TYPE_SHORT;
+            case Int:
+                return HeapDumpWriter.TYPE_INT;
+            case Long:
+                return HeapDumpWriter.TYPE_LONG;
+            default:
+                throw new IllegalArgumentException("Unexpected kind: " + kind);
+        }
+    }
+
+    /** Returns the size of a value of the given HPROF basic type in a heap dump. */
+    public static int valueSize(byte basicType) {
+        switch (basicType) {
+            case HeapDumpWriter.TYPE_OBJECT:
+                return HeapDumpWriter.ID_SIZE;
+            case HeapDumpWriter.TYPE_BOOLEAN:
+            case HeapDumpWriter.TYPE_BYTE:
+                return 1;
+            case HeapDumpWriter.TYPE_CHAR:
+            case HeapDumpWriter.TYPE_SHORT:
+                return 2;
+            case HeapDumpWriter.TYPE_FLOAT:
+            case HeapDumpWriter.TYPE_INT:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    int getFieldStart(int typeId) {
+        return typeId + 1 < fieldStart.length ? fieldStart[typeId] : 0;
+    }
+
+    int getFieldEnd(int typeId) {
+        return typeId + 1 < fieldStart.length ? fieldStart[typeId + 1] : 0;
+    }
+
+    int getFieldName(int field) {
+        return fieldNames[field];
+    }
+
+    int getFieldOffset(int field) {
+        return fieldOffsets[field];
+    }
+
+    byte getFieldType(int field) {
+        return fieldTypes[field];
+    }
+
+    /**
+     * Returns the number of bytes of the field values of an instance of the type, including the
+     * fields declared by superclasses.
+     */
+    int getInstanceDataSize(int typeId) {
+        return typeId < instanceDataSizes.length ? instanceDataSizes[typeId] : 0;
+    }
+
+    int getNameCount() {
+        return names.length;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+}
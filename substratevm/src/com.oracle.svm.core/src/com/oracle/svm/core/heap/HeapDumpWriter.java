@@ -0,0 +1,708 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heap;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.CurrentIsolate;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.c.function.CodePointer;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.StaticFieldsSupport;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.code.CodeInfo;
+import com.oracle.svm.core.code.CodeInfoAccess;
+import com.oracle.svm.core.code.CodeInfoTable;
+import com.oracle.svm.core.code.FrameInfoQueryResult;
+import com.oracle.svm.core.code.ReusableTypeReader;
+import com.oracle.svm.core.deopt.DeoptimizedFrame;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.stack.JavaStackWalker;
+import com.oracle.svm.core.stack.StackFrameVisitor;
+import com.oracle.svm.core.stack.ThreadStackPrinter.DummyValueInfoAllocator;
+import com.oracle.svm.core.stack.ThreadStackPrinter.SingleShotFrameInfoQueryResultAllocator;
+import com.oracle.svm.core.thread.JavaThreads;
+import com.oracle.svm.core.thread.JavaVMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+
+/**
+ * Writes a heap dump in the HPROF format that is understood by the usual heap analysis tools.
+ * <p>
+ * The image heap and the collected heap are walked in a VM operation at a safepoint, so objects
+ * neither move nor die while they are written, and object addresses can be used as object IDs.
+ * Heap walking must not allocate, so all records are encoded into a fixed-size native buffer that
+ * is written directly to the file descriptor whenever it is full. Sub-records are grouped into
+ * heap dump segments of at most the buffer size. Large sub-records, i.e., large arrays, get a
+ * segment of their own, and the elements of large byte arrays are written directly from the heap
+ * without copying them. The memory needed for a heap dump is therefore independent of the heap
+ * size.
+ * <p>
+ * Field names and offsets are not available at run time, so heap dumps need
+ * {@link HeapDumpMetadata} that must be included at image build time with
+ * {@link Options#HeapDumpSupport}. Static fields are not listed per class: they are stored in the
+ * {@linkplain StaticFieldsSupport static field arrays}, which are written as GC roots.
+ * <p>
+ * Every thread gets a stack trace with one frame per virtual, i.e., possibly inlined, Java frame.
+ * The thread objects and the objects that are referenced from the stack frames are written as GC
+ * roots that refer to the thread and to the frame in its stack trace. Method signatures are not
+ * available at run time and are written as empty strings.
+ */
+public final class HeapDumpWriter implements ObjectVisitor {
+
+    public static class Options {
+        @Option(help = "Include the metadata that is necessary to write heap dumps in the HPROF format at run time.")//
+        public static final HostedOptionKey<Boolean> HeapDumpSupport = new HostedOptionKey<>(false);
+    }
+
+    /** Implemented by operating-system specific code. */
+    public interface FileWriteSupport {
+        /**
+         * Writes all bytes to the file without allocating, so that it can be used while walking
+         * the heap. Returns false if writing failed.
+         */
+        boolean write(FileDescriptor descriptor, CCharPointer bytes, UnsignedWord length);
+    }
+
+    /** All object IDs are written as 8-byte addresses. */
+    static final int ID_SIZE = 8;
+
+    static final byte TYPE_OBJECT = 2;
+    static final byte TYPE_BOOLEAN = 4;
+    static final byte TYPE_CHAR = 5;
+    static final byte TYPE_FLOAT = 6;
+    static final byte TYPE_DOUBLE = 7;
+    static final byte TYPE_BYTE = 8;
+    static final byte TYPE_SHORT = 9;
+    static final byte TYPE_INT = 10;
+    static final byte TYPE_LONG = 11;
+
+    private static final String FORMAT_NAME = "JAVA PROFILE 1.0.2";
+
+    private static final int TAG_STRING = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
+    private static final int TAG_FRAME = 0x04;
+    private static final int TAG_STACK_TRACE = 0x05;
+    private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+
+    private static final int SUB_ROOT_UNKNOWN = 0xFF;
+    private static final int SUB_ROOT_JAVA_FRAME = 0x03;
+    private static final int SUB_ROOT_STICKY_CLASS = 0x05;
+    private static final int SUB_ROOT_THREAD_OBJECT = 0x08;
+    private static final int SUB_CLASS_DUMP = 0x20;
+    private static final int SUB_INSTANCE_DUMP = 0x21;
+    private static final int SUB_OBJECT_ARRAY_DUMP = 0x22;
+    private static final int SUB_PRIMITIVE_ARRAY_DUMP = 0x23;
+
+    /** The size of the tag, time stamp and length of a top-level record. */
+    private static final int RECORD_HEADER_SIZE = 9;
+    /** The length of a record is an unsigned 4-byte value. */
+    private static final long MAX_RECORD_SIZE = 0xFFFFFFFFL;
+    /**
+     * The serial number of the single, empty stack trace that all objects refer to. The stack
+     * traces of the threads follow it.
+     */
+    private static final int STACK_TRACE_SERIAL = 1;
+    /** The line number of a frame record without line number information. */
+    private static final int LINE_UNKNOWN = -1;
+    /** The line number of a frame record of a native method. */
+    private static final int LINE_NATIVE = -3;
+    /** The string that is written for unknown method names, source files and signatures. */
+    private static final String EMPTY_STRING = "";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    /** Sub-records larger than this get a heap dump segment of their own. */
+    private static final int LARGE_RECORD_SIZE = BUFFER_SIZE / 4;
+
+    private final FileDescriptor descriptor;
+    private final FileWriteSupport fileWriteSupport;
+    private final HeapDumpMetadata metadata;
+    private final Class<?>[] classes;
+    private final long timestamp;
+    private final boolean compressedReferences;
+    private final ThreadStackVisitor stackVisitor;
+
+    private Pointer buffer;
+    private int position;
+    /** The buffer position of the header of the currently open heap dump segment, or -1. */
+    private int segmentStart = -1;
+    /** The ID of the next frame record. Frame IDs are just numbered sequentially. */
+    private long nextFrameId = 1;
+    private boolean failed;
+
+    private HeapDumpWriter(FileDescriptor descriptor, Class<?>[] classes) {
+        this.descriptor = descriptor;
+        this.fileWriteSupport = ImageSingletons.lookup(FileWriteSupport.class);
+        this.metadata = HeapDumpMetadata.singleton();
+        this.classes = classes;
+        this.timestamp = System.currentTimeMillis();
+        this.compressedReferences = ReferenceAccess.singleton().haveCompressedReferences();
+        this.stackVisitor = new ThreadStackVisitor();
+    }
+
+    /** Returns true if the image contains everything that is necessary to write heap dumps. */
+    @Fold
+    public static boolean isSupported() {
+        return ImageSingletons.contains(HeapDumpMetadata.class) && ImageSingletons.contains(FileWriteSupport.class);
+    }
+
+    /** Writes a heap dump of the whole heap to the file with the given path. */
+    public static void dumpHeap(String path) throws IOException {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Heap dumps are not supported by this image. Build the image with -H:+HeapDumpSupport.");
+        }
+        Class<?>[] classes = Heap.getHeap().getClassList().toArray(new Class<?>[0]);
+        try (FileOutputStream stream = new FileOutputStream(path)) {
+            HeapDumpWriter writer = new HeapDumpWriter(stream.getFD(), classes);
+            writer.buffer = UnmanagedMemory.malloc(BUFFER_SIZE);
+            try {
+                JavaVMOperation.enqueueBlockingSafepoint("HeapDump", writer::writeHeapDump);
+            } finally {
+                UnmanagedMemory.free(writer.buffer);
+            }
+            if (writer.failed) {
+                throw new IOException("Failed to write the heap dump to " + path);
+            }
+        }
+    }
+
+    private void writeHeapDump() {
+        writeFileHeader();
+        writeStackTrace();
+        for (int i = 0; i < metadata.getNameCount(); i++) {
+            writeString(metadata.getName(i), false);
+        }
+        for (int i = 0; i < classes.length; i++) {
+            writeString(classes[i].getName(), true);
+            writeLoadClass(i + 1, classes[i]);
+        }
+        writeString(EMPTY_STRING, false);
+        walkThreadStacks(false);
+        for (Class<?> clazz : classes) {
+            writeClassDump(clazz);
+            writeRoot(SUB_ROOT_STICKY_CLASS, clazz);
+        }
+        writeRoot(SUB_ROOT_UNKNOWN, StaticFieldsSupport.getStaticObjectFields());
+        writeRoot(SUB_ROOT_UNKNOWN, StaticFieldsSupport.getStaticPrimitiveFields());
+        walkThreadStacks(true);
+
+        Heap.getHeap().walkObjects(this);
+
+        finishSegment();
+        writeRecordHeader(TAG_HEAP_DUMP_END, 0);
+        flushBuffer();
+    }
+
+    @Override
+    public boolean visitObject(Object obj) {
+        if (obj instanceof Class) {
+            /* Classes are written as class dumps. */
+            return !failed;
+        }
+        DynamicHub hub = KnownIntrinsics.readHub(obj);
+        if (!hub.isArray()) {
+            writeInstanceDump(obj, hub);
+        } else if (obj instanceof Object[]) {
+            writeObjectArrayDump(obj, hub);
+        } else {
+            writePrimitiveArrayDump(obj, hub);
+        }
+        return !failed;
+    }
+
+    private void writeFileHeader() {
+        for (int i = 0; i < FORMAT_NAME.length(); i++) {
+            writeByte(FORMAT_NAME.charAt(i));
+        }
+        writeByte(0);
+        writeInt(ID_SIZE);
+        writeLong(timestamp);
+    }
+
+    private void writeStackTrace() {
+        writeRecordHeader(TAG_STACK_TRACE, 12);
+        writeInt(STACK_TRACE_SERIAL);
+        writeInt(0);
+        writeInt(0);
+    }
+
+    /**
+     * Walks the stacks of all threads, either to write their stack traces or to write the thread
+     * objects and the objects referenced from their frames as GC roots. Both walks start in the
+     * same caller frame and skip the same threads, so that they assign the same thread serial
+     * numbers and frame numbers.
+     */
+    @NeverInline("Starting a stack walk in the caller frame")
+    private void walkThreadStacks(boolean writeRoots) {
+        Pointer currentThreadSP = KnownIntrinsics.readCallerStackPointer();
+        int threadSerial = 0;
+        for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull() && !failed; vmThread = VMThreads.nextThread(vmThread)) {
+            Thread thread = JavaThreads.fromVMThread(vmThread);
+            if (thread == null) {
+                /* The thread is still being attached or already being detached. */
+                continue;
+            }
+            threadSerial++;
+            int stackTraceSerial = STACK_TRACE_SERIAL + threadSerial;
+            if (writeRoots) {
+                startSubRecord(1 + ID_SIZE + 4 + 4);
+                writeByte(SUB_ROOT_THREAD_OBJECT);
+                writeObjectId(thread);
+                writeInt(threadSerial);
+                writeInt(stackTraceSerial);
+            }
+            long firstFrameId = nextFrameId;
+            stackVisitor.reset(threadSerial, writeRoots);
+            if (vmThread == CurrentIsolate.getCurrentThread()) {
+                JavaStackWalker.walkCurrentThread(currentThreadSP, stackVisitor);
+            } else {
+                JavaStackWalker.walkThread(vmThread, stackVisitor);
+            }
+            if (!writeRoots) {
+                writeThreadStackTrace(stackTraceSerial, threadSerial, firstFrameId, stackVisitor.frameCount);
+            }
+        }
+    }
+
+    private void writeThreadStackTrace(int serial, int threadSerial, long firstFrameId, int frameCount) {
+        writeRecordHeader(TAG_STACK_TRACE, 4 + 4 + 4 + (long) frameCount * ID_SIZE);
+        writeInt(serial);
+        writeInt(threadSerial);
+        writeInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            writeLong(firstFrameId + i);
+        }
+    }
+
+    /** Writes a frame record, or a frame record of an unknown method if no frame info is given. */
+    private void writeFrame(FrameInfoQueryResult frameInfo) {
+        String methodName = null;
+        String sourceFileName = null;
+        int classSerial = 0;
+        int lineNumber = LINE_UNKNOWN;
+        if (frameInfo != null) {
+            methodName = frameInfo.getSourceMethodName();
+            sourceFileName = frameInfo.getSourceFileName();
+            classSerial = classSerial(frameInfo.getSourceClass());
+            if (frameInfo.isNativeMethod()) {
+                lineNumber = LINE_NATIVE;
+            } else if (frameInfo.getSourceLineNumber() > 0) {
+                lineNumber = frameInfo.getSourceLineNumber();
+            }
+        }
+        /* Strings can be written more than once, readers just keep one of them. */
+        if (methodName != null) {
+            writeString(methodName, false);
+        } else {
+            methodName = EMPTY_STRING;
+        }
+        if (sourceFileName != null) {
+            writeString(sourceFileName, false);
+        } else {
+            sourceFileName = EMPTY_STRING;
+        }
+        writeRecordHeader(TAG_FRAME, 4 * ID_SIZE + 4 + 4);
+        writeLong(nextFrameId++);
+        writeObjectId(methodName);
+        writeObjectId(EMPTY_STRING);
+        writeObjectId(sourceFileName);
+        writeInt(classSerial);
+        writeInt(lineNumber);
+    }
+
+    /** Returns the serial number of the class, or 0 if the class is unknown. */
+    private int classSerial(Class<?> clazz) {
+        for (int i = 0; clazz != null && i < classes.length; i++) {
+            if (classes[i] == clazz) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /** Writes a string record. The ID of the string is the address of the string object. */
+    private void writeString(String value, boolean isClassName) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            length += utf8Length(value.charAt(i));
+        }
+        writeRecordHeader(TAG_STRING, ID_SIZE + length);
+        writeObjectId(value);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            writeUtf8(isClassName && c == '.' ? '/' : c);
+        }
+    }
+
+    private void writeLoadClass(int serial, Class<?> clazz) {
+        writeRecordHeader(TAG_LOAD_CLASS, 4 + ID_SIZE + 4 + ID_SIZE);
+        writeInt(serial);
+        writeObjectId(clazz);
+        writeInt(STACK_TRACE_SERIAL);
+        writeObjectId(clazz.getName());
+    }
+
+    private void writeClassDump(Class<?> clazz) {
+        DynamicHub hub = DynamicHub.fromClass(clazz);
+        int typeId = hub.getTypeID();
+        int fieldStart = metadata.getFieldStart(typeId);
+        int fieldEnd = metadata.getFieldEnd(typeId);
+        int encoding = hub.getLayoutEncoding();
+        long instanceSize = !hub.isArray() && LayoutEncoding.isInstance(encoding) ? LayoutEncoding.getInstanceSize(encoding).rawValue() : 0;
+
+        startSubRecord(1 + 7 * ID_SIZE + 4 + 4 + 3 * 2 + (fieldEnd - fieldStart) * (ID_SIZE + 1));
+        writeByte(SUB_CLASS_DUMP);
+        writeObjectId(clazz);
+        writeInt(STACK_TRACE_SERIAL);
+        writeObjectId(hub.getSuperHub());
+        /* Class loader, signers, protection domain, and two reserved IDs. */
+        for (int i = 0; i < 5; i++) {
+            writeLong(0);
+        }
+        writeInt((int) instanceSize);
+        /* No constant pool entries and no static fields. */
+        writeShort(0);
+        writeShort(0);
+        writeShort(fieldEnd - fieldStart);
+        for (int field = fieldStart; field < fieldEnd; field++) {
+            writeObjectId(metadata.getName(metadata.getFieldName(field)));
+            writeByte(metadata.getFieldType(field));
+        }
+    }
+
+    private void writeRoot(int subTag, Object obj) {
+        startSubRecord(1 + ID_SIZE);
+        writeByte(subTag);
+        writeObjectId(obj);
+    }
+
+    private void writeInstanceDump(Object obj, DynamicHub hub) {
+        int dataSize = metadata.getInstanceDataSize(hub.getTypeID());
+        startSubRecord(1 + ID_SIZE + 4 + ID_SIZE + 4 + dataSize);
+        writeByte(SUB_INSTANCE_DUMP);
+        writeObjectId(obj);
+        writeInt(STACK_TRACE_SERIAL);
+        writeObjectId(hub);
+        writeInt(dataSize);
+        /* The values of the declared fields come first, followed by those of the superclasses. */
+        Pointer objPointer = Word.objectToUntrackedPointer(obj);
+        for (DynamicHub cur = hub; cur != null; cur = cur.getSuperHub()) {
+            int typeId = cur.getTypeID();
+            for (int field = metadata.getFieldStart(typeId); field < metadata.getFieldEnd(typeId); field++) {
+                writeValue(objPointer.add(metadata.getFieldOffset(field)), metadata.getFieldType(field));
+            }
+        }
+    }
+
+    private void writeObjectArrayDump(Object array, DynamicHub hub) {
+        int headerSize = 1 + ID_SIZE + 4 + 4 + ID_SIZE;
+        int length = truncatedLength(KnownIntrinsics.readArrayLength(array), headerSize, ID_SIZE);
+        startSubRecord(headerSize + (long) length * ID_SIZE);
+        writeByte(SUB_OBJECT_ARRAY_DUMP);
+        writeObjectId(array);
+        writeInt(STACK_TRACE_SERIAL);
+        writeInt(length);
+        writeObjectId(hub);
+        Pointer arrayPointer = Word.objectToUntrackedPointer(array);
+        int encoding = hub.getLayoutEncoding();
+        for (int i = 0; i < length; i++) {
+            writeValue(arrayPointer.add(LayoutEncoding.getArrayElementOffset(encoding, i)), TYPE_OBJECT);
+        }
+    }
+
+    private void writePrimitiveArrayDump(Object array, DynamicHub hub) {
+        byte elementType = primitiveArrayElementType(array);
+        int elementSize = HeapDumpMetadata.valueSize(elementType);
+        int headerSize = 1 + ID_SIZE + 4 + 4 + 1;
+        int length = truncatedLength(KnownIntrinsics.readArrayLength(array), headerSize, elementSize);
+        boolean large = startSubRecord(headerSize + (long) length * elementSize);
+        writeByte(SUB_PRIMITIVE_ARRAY_DUMP);
+        writeObjectId(array);
+        writeInt(STACK_TRACE_SERIAL);
+        writeInt(length);
+        writeByte(elementType);
+        Pointer elements = Word.objectToUntrackedPointer(array).add(LayoutEncoding.getArrayBaseOffset(hub.getLayoutEncoding()));
+        if (large && elementSize == 1) {
+            /* Single bytes need no conversion, so they are written directly from the array. */
+            flushBuffer();
+            if (!failed && !fileWriteSupport.write(descriptor, (CCharPointer) elements, WordFactory.unsigned(length))) {
+                failed = true;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                writeValue(elements.add(i * elementSize), elementType);
+            }
+        }
+    }
+
+    private static byte primitiveArrayElementType(Object array) {
+        if (array instanceof boolean[]) {
+            return TYPE_BOOLEAN;
+        } else if (array instanceof byte[]) {
+            return TYPE_BYTE;
+        } else if (array instanceof char[]) {
+            return TYPE_CHAR;
+        } else if (array instanceof short[]) {
+            return TYPE_SHORT;
+        } else if (array instanceof int[]) {
+            return TYPE_INT;
+        } else if (array instanceof float[]) {
+            return TYPE_FLOAT;
+        } else if (array instanceof long[]) {
+            return TYPE_LONG;
+        } else {
+            assert array instanceof double[];
+            return TYPE_DOUBLE;
+        }
+    }
+
+    /** Arrays that do not fit into a single record are truncated. */
+    private static int truncatedLength(int length, int headerSize, int elementSize) {
+        return (int) Math.min(length, (MAX_RECORD_SIZE - headerSize) / elementSize);
+    }
+
+    /** Writes the value at the address in the big-endian byte order that HPROF uses. */
+    private void writeValue(Pointer address, byte type) {
+        switch (type) {
+            case TYPE_OBJECT:
+                writeLong(ReferenceAccess.singleton().readObjectAsUntrackedPointer(address, compressedReferences).rawValue());
+                break;
+            case TYPE_BOOLEAN:
+            case TYPE_BYTE:
+                writeByte(address.readByte(0));
+                break;
+            case TYPE_CHAR:
+            case TYPE_SHORT:
+                writeShort(address.readShort(0));
+                break;
+            case TYPE_FLOAT:
+            case TYPE_INT:
+                writeInt(address.readInt(0));
+                break;
+            default:
+                writeLong(address.readLong(0));
+                break;
+        }
+    }
+
+    /**
+     * Prepares writing a heap dump sub-record of the given size. Returns true if the sub-record is
+     * large and got a heap dump segment of its own.
+     */
+    private boolean startSubRecord(long size) {
+        if (size > LARGE_RECORD_SIZE) {
+            finishSegment();
+            writeRecordHeader(TAG_HEAP_DUMP_SEGMENT, size);
+            return true;
+        }
+        if (segmentStart < 0 || position + size > BUFFER_SIZE) {
+            finishSegment();
+            if (position + RECORD_HEADER_SIZE + size > BUFFER_SIZE) {
+                flushBuffer();
+            }
+            segmentStart = position;
+            /* The length is patched when the segment is finished. */
+            writeRecordHeader(TAG_HEAP_DUMP_SEGMENT, 0);
+        }
+        return false;
+    }
+
+    /** Patches the length of the currently open heap dump segment, which is still in the buffer. */
+    private void finishSegment() {
+        if (segmentStart >= 0) {
+            int length = position - segmentStart - RECORD_HEADER_SIZE;
+            Pointer lengthAddress = buffer.add(segmentStart + 5);
+            lengthAddress.writeByte(0, (byte) (length >>> 24));
+            lengthAddress.writeByte(1, (byte) (length >>> 16));
+            lengthAddress.writeByte(2, (byte) (length >>> 8));
+            lengthAddress.writeByte(3, (byte) length);
+            segmentStart = -1;
+        }
+    }
+
+    private void writeRecordHeader(int tag, long length) {
+        assert length <= MAX_RECORD_SIZE;
+        writeByte(tag);
+        /* Time stamp relative to the file header. */
+        writeInt(0);
+        writeInt((int) length);
+    }
+
+    private void writeObjectId(Object obj) {
+        writeLong(Word.objectToUntrackedPointer(obj).rawValue());
+    }
+
+    private static int utf8Length(char c) {
+        if (c != 0 && c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    private void writeUtf8(char c) {
+        if (c != 0 && c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            writeByte(0xC0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3F));
+        } else {
+            writeByte(0xE0 | (c >> 12));
+            writeByte(0x80 | ((c >> 6) & 0x3F));
+            writeByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value);
+    }
+
+    private void writeShort(int value) {
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int value) {
+        if (position == BUFFER_SIZE) {
+            /* Only possible outside of segments, whose size is known in advance. */
+            flushBuffer();
+        }
+        buffer.writeByte(position, (byte) value);
+        position++;
+    }
+
+    private void flushBuffer() {
+        assert segmentStart < 0 : "open segment must be finished first";
+        if (!failed && position > 0 && !fileWriteSupport.write(descriptor, (CCharPointer) buffer, WordFactory.unsigned(position))) {
+            failed = true;
+        }
+        position = 0;
+    }
+
+    /**
+     * Visits the frames of a thread stack to write either their frame records or the objects they
+     * reference as GC roots. The frame infos are decoded without allocating, with the allocators of
+     * {@link com.oracle.svm.core.stack.ThreadStackPrinter}.
+     */
+    private final class ThreadStackVisitor implements StackFrameVisitor, ObjectReferenceVisitor {
+        private final ReusableTypeReader frameInfoReader = new ReusableTypeReader();
+        private final SingleShotFrameInfoQueryResultAllocator frameInfoAllocator = new SingleShotFrameInfoQueryResultAllocator();
+        private final DummyValueInfoAllocator valueInfoAllocator = new DummyValueInfoAllocator();
+
+        private boolean writeRoots;
+        private int threadSerial;
+        /** The number of virtual frames that have been visited, i.e., the number of the next frame. */
+        private int frameCount;
+        /** The number of the topmost virtual frame of the physical frame whose references are visited. */
+        private int rootFrameNumber;
+
+        void reset(int serial, boolean roots) {
+            this.threadSerial = serial;
+            this.writeRoots = roots;
+            this.frameCount = 0;
+        }
+
+        @Override
+        public boolean visitFrame(Pointer sp, CodePointer ip, CodeInfo codeInfo, DeoptimizedFrame deoptFrame) {
+            int physicalFrameNumber = frameCount;
+            if (deoptFrame != null) {
+                for (DeoptimizedFrame.VirtualFrame frame = deoptFrame.getTopFrame(); frame != null; frame = frame.getCaller()) {
+                    visitVirtualFrame(frame.getFrameInfo());
+                }
+            } else if (codeInfo.isNonNull()) {
+                frameInfoReader.reset();
+                long entryOffset = CodeInfoAccess.initFrameInfoReader(codeInfo, ip, frameInfoReader);
+                if (entryOffset >= 0) {
+                    boolean isFirst = true;
+                    FrameInfoQueryResult frameInfo;
+                    frameInfoAllocator.reload();
+                    while ((frameInfo = CodeInfoAccess.nextFrameInfo(codeInfo, entryOffset, frameInfoReader, frameInfoAllocator, valueInfoAllocator, isFirst)) != null) {
+                        frameInfoAllocator.reload();
+                        visitVirtualFrame(frameInfo);
+                        isFirst = false;
+                    }
+                }
+            }
+            if (frameCount == physicalFrameNumber) {
+                /* Every physical frame needs a frame number that its roots can refer to. */
+                visitVirtualFrame(null);
+            }
+            if (writeRoots) {
+                /* The references of a deoptimized frame are held by the pinned DeoptimizedFrame. */
+                rootFrameNumber = physicalFrameNumber;
+                CodeInfoTable.visitObjectReferences(sp, ip, codeInfo, deoptFrame, this);
+            }
+            return !failed;
+        }
+
+        private void visitVirtualFrame(FrameInfoQueryResult frameInfo) {
+            if (!writeRoots) {
+                writeFrame(frameInfo);
+            }
+            frameCount++;
+        }
+
+        @Override
+        public boolean visitObjectReference(Pointer objRef, boolean compressed) {
+            Pointer obj = ReferenceAccess.singleton().readObjectAsUntrackedPointer(objRef, compressed);
+            if (obj.isNonNull()) {
+                startSubRecord(1 + ID_SIZE + 4 + 4);
+                writeByte(SUB_ROOT_JAVA_FRAME);
+                writeLong(obj.rawValue());
+                writeInt(threadSerial);
+                writeInt(rootFrameNumber);
+            }
+            return !failed;
+        }
+
+        @Override
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed) {
+            /* Derived references point into an object whose base reference is visited too. */
+            return innerOffset != 0 || visitObjectReference(objRef, compressed);
+        }
+    }
+}
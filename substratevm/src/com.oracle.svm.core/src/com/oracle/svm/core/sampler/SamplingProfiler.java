@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.sampler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.CurrentIsolate;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.c.function.CodePointer;
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.annotate.RestrictHeapAccess.Access;
+import com.oracle.svm.core.code.CodeInfo;
+import com.oracle.svm.core.code.CodeInfoAccess;
+import com.oracle.svm.core.code.CodeInfoQueryResult;
+import com.oracle.svm.core.code.CodeInfoTable;
+import com.oracle.svm.core.code.FrameInfoQueryResult;
+import com.oracle.svm.core.deopt.DeoptimizedFrame;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.locks.VMMutex;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.stack.JavaStackWalker;
+import com.oracle.svm.core.stack.StackFrameVisitor;
+import com.oracle.svm.core.thread.JavaVMOperation;
+import com.oracle.svm.core.thread.Safepoint;
+import com.oracle.svm.core.thread.ThreadLocalHandshake;
+import com.oracle.svm.core.thread.VMThreads;
+
+/**
+ * A sampling CPU profiler that periodically records the Java stacks of all threads and writes the
+ * aggregated stacks in the collapsed format that flame graph tools consume: one line per distinct
+ * stack, with the frames from the root to the leaf separated by semicolons, followed by the
+ * number of samples.
+ * <p>
+ * Frame information is only available at call sites and safepoint checks, so the stacks cannot be
+ * walked at an arbitrary instruction pointer. Instead, a sampler thread requests a
+ * {@linkplain ThreadLocalHandshake thread-local handshake} with each thread in turn: a thread in
+ * Java code records its own stack at its next safepoint check, and the stack of a thread in native
+ * code is recorded on its behalf. Other threads are not stopped, but the handshakes are done one
+ * after another, so a round of samples takes longer the more threads there are. During sampling,
+ * only the raw instruction pointers are recorded. They are mapped to (possibly inlined) Java
+ * methods when the profile is written at shutdown. At most
+ * {@linkplain Options#SamplingProfilerMaxStacks a bounded number} of distinct stacks are recorded,
+ * samples of further stacks are reported as dropped.
+ */
+public final class SamplingProfiler {
+
+    public static class Options {
+        @Option(help = "Include the sampling CPU profiler in the image.")//
+        public static final HostedOptionKey<Boolean> SamplingProfiler = new HostedOptionKey<>(false);
+
+        @Option(help = "The interval in milliseconds between two stack samples of all threads, or 0 to disable sampling.")//
+        public static final RuntimeOptionKey<Integer> SamplingProfilerInterval = new RuntimeOptionKey<>(10);
+
+        @Option(help = "The file to which the collapsed stacks are written at shutdown. If empty, they are printed to the log.")//
+        public static final RuntimeOptionKey<String> SamplingProfilerFile = new RuntimeOptionKey<>("");
+
+        @Option(help = "The maximum number of distinct stacks that are recorded. Samples of further stacks are only counted as dropped.")//
+        public static final RuntimeOptionKey<Integer> SamplingProfilerMaxStacks = new RuntimeOptionKey<>(10000);
+    }
+
+    /** Samples deeper than this are truncated at the root side. */
+    private static final int MAX_STACK_DEPTH = 256;
+
+    private static final String RUNTIME_COMPILED_FRAME = "<runtime compiled code>";
+    private static final String TRUNCATED_FRAME = "<truncated>";
+    private static final String DROPPED_FRAME = "<dropped>";
+
+    private static SamplingProfiler profiler;
+
+    private final int intervalMillis;
+    private final int maxStacks;
+    /** Sample counts, keyed by the instruction pointers of the stack from the leaf to the root. */
+    private final Map<StackKey, long[]> samples = new HashMap<>();
+    /** The number of samples of stacks that did not fit into {@link #samples} anymore. */
+    private long droppedSamples;
+    private long[] threads = new long[32];
+    private Thread samplerThread;
+    private volatile boolean stopped;
+
+    private SamplingProfiler(int intervalMillis, int maxStacks) {
+        this.intervalMillis = intervalMillis;
+        this.maxStacks = maxStacks;
+    }
+
+    static void startup() {
+        int interval = Options.SamplingProfilerInterval.getValue();
+        if (interval > 0) {
+            profiler = new SamplingProfiler(interval, Options.SamplingProfilerMaxStacks.getValue());
+            profiler.start();
+        }
+    }
+
+    static void shutdown() {
+        if (profiler != null) {
+            profiler.stop();
+            profiler.dump();
+        }
+    }
+
+    private void start() {
+        samplerThread = new Thread(this::run, "Sampling Profiler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+    }
+
+    private void stop() {
+        stopped = true;
+        try {
+            samplerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (!stopped) {
+            sampleAllThreads();
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sampleAllThreads() {
+        CollectThreadsOperation collect = new CollectThreadsOperation(threads);
+        collect.enqueue();
+        if (collect.count > threads.length) {
+            /* Threads were started in the meanwhile, the next round samples them. */
+            threads = new long[collect.count * 2];
+        }
+        IsolateThread myself = CurrentIsolate.getCurrentThread();
+        int count = Math.min(collect.count, threads.length);
+        for (int i = 0; i < count; i++) {
+            IsolateThread thread = WordFactory.pointer(threads[i]);
+            if (thread == myself) {
+                continue;
+            }
+            /* Operations cannot be reused because a stale request might still be queued. */
+            SampleOperation sample = new SampleOperation();
+            if (ThreadLocalHandshake.execute(thread, sample)) {
+                recordSample(sample);
+            }
+        }
+    }
+
+    private void recordSample(SampleOperation sample) {
+        if (sample.depth == 0) {
+            return;
+        }
+        StackKey key = new StackKey(Arrays.copyOf(sample.ips, sample.depth), sample.truncated);
+        synchronized (samples) {
+            long[] counter = samples.get(key);
+            if (counter == null) {
+                if (samples.size() >= maxStacks) {
+                    droppedSamples++;
+                    return;
+                }
+                counter = new long[1];
+                samples.put(key, counter);
+            }
+            counter[0]++;
+        }
+    }
+
+    private void dump() {
+        Map<Long, List<String>> symbolCache = new HashMap<>();
+        Map<String, Long> collapsed = new HashMap<>();
+        synchronized (samples) {
+            for (Map.Entry<StackKey, long[]> entry : samples.entrySet()) {
+                String stack = collapse(entry.getKey(), symbolCache);
+                if (!stack.isEmpty()) {
+                    collapsed.merge(stack, entry.getValue()[0], Long::sum);
+                }
+            }
+            if (droppedSamples > 0) {
+                collapsed.put(DROPPED_FRAME, droppedSamples);
+            }
+        }
+
+        String file = Options.SamplingProfilerFile.getValue();
+        if (file.isEmpty()) {
+            Log log = Log.log();
+            for (Map.Entry<String, Long> entry : collapsed.entrySet()) {
+                log.string(entry.getKey()).string(" ").signed(entry.getValue()).newline();
+            }
+            log.flush();
+        } else {
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(file))) {
+                for (Map.Entry<String, Long> entry : collapsed.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write(' ');
+                    writer.write(Long.toString(entry.getValue()));
+                    writer.newLine();
+                }
+            } catch (IOException e) {
+                Log.log().string("Failed to write sampling profile to ").string(file).string(": ").string(e.getMessage()).newline();
+            }
+        }
+    }
+
+    /** Builds the collapsed representation of a stack, from the root to the leaf. */
+    private static String collapse(StackKey key, Map<Long, List<String>> symbolCache) {
+        List<String> frames = new ArrayList<>();
+        for (long ip : key.ips) {
+            frames.addAll(symbolCache.computeIfAbsent(ip, SamplingProfiler::symbolize));
+        }
+        int leaf = 0;
+        while (leaf < frames.size() && isSamplingFrame(frames.get(leaf))) {
+            leaf++;
+        }
+        StringBuilder result = new StringBuilder();
+        if (key.truncated) {
+            result.append(TRUNCATED_FRAME);
+        }
+        for (int i = frames.size() - 1; i >= leaf; i--) {
+            if (result.length() > 0) {
+                result.append(';');
+            }
+            result.append(frames.get(i));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the methods at the instruction pointer, from the innermost inlined method to the
+     * compilation root.
+     */
+    private static List<String> symbolize(long ip) {
+        CodePointer codePointer = WordFactory.pointer(ip);
+        CodeInfo imageInfo = CodeInfoTable.getImageCodeInfo();
+        List<String> methods = new ArrayList<>();
+        if (!CodeInfoAccess.contains(imageInfo, codePointer)) {
+            /* Runtime-compiled code may have been freed in the meanwhile. */
+            methods.add(RUNTIME_COMPILED_FRAME);
+            return methods;
+        }
+        CodeInfoQueryResult queryResult = CodeInfoTable.lookupCodeInfoQueryResult(imageInfo, codePointer);
+        for (FrameInfoQueryResult frameInfo = queryResult.getFrameInfo(); frameInfo != null; frameInfo = frameInfo.getCaller()) {
+            methods.add(frameInfo.getSourceClassName() + "." + frameInfo.getSourceMethodName());
+        }
+        if (methods.isEmpty()) {
+            methods.add("0x" + Long.toHexString(ip));
+        }
+        return methods;
+    }
+
+    /** Frames of the handshake that recorded the sample, which are not part of the profile. */
+    private static boolean isSamplingFrame(String frame) {
+        return frame.startsWith(SamplingProfiler.class.getName()) || frame.startsWith(ThreadLocalHandshake.class.getName()) || frame.startsWith(Safepoint.class.getName());
+    }
+
+    private static final class StackKey {
+        private final long[] ips;
+        private final boolean truncated;
+        private final int hashCode;
+
+        StackKey(long[] ips, boolean truncated) {
+            this.ips = ips;
+            this.truncated = truncated;
+            this.hashCode = Arrays.hashCode(ips);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof StackKey) {
+                StackKey other = (StackKey) obj;
+                return truncated == other.truncated && Arrays.equals(ips, other.ips);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /** Records the instruction pointers of a stack without allocating. */
+    private static final class SampleOperation extends ThreadLocalHandshake.Operation implements StackFrameVisitor {
+        final long[] ips = new long[MAX_STACK_DEPTH];
+        int depth;
+        boolean truncated;
+
+        SampleOperation() {
+            super("SamplingProfiler.sample");
+        }
+
+        @Override
+        @NeverInline("Starting a stack walk in the caller frame.")
+        @RestrictHeapAccess(access = Access.NO_ALLOCATION, reason = "May be executed on behalf of the target thread while holding the THREAD_MUTEX.")
+        protected void operate(IsolateThread thread) {
+            if (thread == CurrentIsolate.getCurrentThread()) {
+                Pointer sp = KnownIntrinsics.readCallerStackPointer();
+                JavaStackWalker.walkCurrentThread(sp, this);
+            } else {
+                JavaStackWalker.walkThread(thread, this);
+            }
+        }
+
+        @Override
+        @RestrictHeapAccess(access = Access.NO_ALLOCATION, reason = "Executed during a thread-local handshake.", overridesCallers = true)
+        public boolean visitFrame(Pointer sp, CodePointer ip, CodeInfo codeInfo, DeoptimizedFrame deoptimizedFrame) {
+            if (depth == ips.length) {
+                truncated = true;
+                return false;
+            }
+            ips[depth++] = ip.rawValue();
+            return true;
+        }
+    }
+
+    /** Copies the currently attached threads, which requires holding the THREAD_MUTEX. */
+    private static final class CollectThreadsOperation extends JavaVMOperation {
+        private final long[] result;
+        int count;
+
+        CollectThreadsOperation(long[] result) {
+            super("SamplingProfiler.collectThreads", SystemEffect.NONE);
+            this.result = result;
+        }
+
+        @Override
+        @SuppressWarnings("try")
+        protected void operate() {
+            try (VMMutex lock = VMThreads.THREAD_MUTEX.lock()) {
+                count = 0;
+                for (IsolateThread thread = VMThreads.firstThread(); thread.isNonNull(); thread = VMThreads.nextThread(thread)) {
+                    if (count < result.length) {
+                        result[count] = thread.rawValue();
+                    }
+                    count++;
+                }
+            }
+        }
+    }
+}
+
+@AutomaticFeature
+class SamplingProfilerFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return SamplingProfiler.Options.SamplingProfiler.getValue() && SubstrateOptions.MultiThreaded.getValue();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        RuntimeSupport.getRuntimeSupport().addStartupHook(SamplingProfiler::startup);
+        RuntimeSupport.getRuntimeSupport().addShutdownHook(SamplingProfiler::shutdown);
+    }
+}
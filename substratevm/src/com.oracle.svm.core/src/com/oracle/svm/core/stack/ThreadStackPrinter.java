@@ -44,54 +44,56 @@ import com.oracle.svm.core.log.Log;
 
 public class ThreadStackPrinter {
 
-    public static class AllocationFreeStackFrameVisitor extends Stage1StackFrameVisitor implements StackFrameVisitor {
-
-        private static class SingleShotFrameInfoQueryResultAllocator implements FrameInfoQueryResultAllocator {
-            private static FrameInfoQueryResult frameInfoQueryResult = new FrameInfoQueryResult();
+    /** Returns the same preallocated frame info once per {@link #reload()}. */
+    public static class SingleShotFrameInfoQueryResultAllocator implements FrameInfoQueryResultAllocator {
+        private final FrameInfoQueryResult frameInfoQueryResult = new FrameInfoQueryResult();
 
-            private boolean fired;
-
-            void reload() {
-                fired = false;
-            }
+        private boolean fired;
 
-            @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
-            @Override
-            public FrameInfoQueryResult newFrameInfoQueryResult() {
-                if (fired) {
-                    return null;
-                }
-                fired = true;
-                frameInfoQueryResult.init();
-                return frameInfoQueryResult;
-            }
+        public void reload() {
+            fired = false;
         }
 
-        private static class DummyValueInfoAllocator implements ValueInfoAllocator {
-            @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
-            @Override
-            public ValueInfo newValueInfo() {
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
+        @Override
+        public FrameInfoQueryResult newFrameInfoQueryResult() {
+            if (fired) {
                 return null;
             }
+            fired = true;
+            frameInfoQueryResult.init();
+            return frameInfoQueryResult;
+        }
+    }
 
-            @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
-            @Override
-            public ValueInfo[] newValueInfoArray(int len) {
-                return null;
-            }
+    /** Does not decode value infos, for stack walks that only need the frame infos. */
+    public static class DummyValueInfoAllocator implements ValueInfoAllocator {
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
+        @Override
+        public ValueInfo newValueInfo() {
+            return null;
+        }
 
-            @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
-            @Override
-            public ValueInfo[][] newValueInfoArrayArray(int len) {
-                return null;
-            }
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
+        @Override
+        public ValueInfo[] newValueInfoArray(int len) {
+            return null;
+        }
 
-            @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
-            @Override
-            public void decodeConstant(ValueInfo valueInfo, NonmovableObjectArray<?> frameInfoObjectConstants) {
-            }
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
+        @Override
+        public ValueInfo[][] newValueInfoArrayArray(int len) {
+            return null;
         }
 
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Provide allocation-free StackFrameVisitor")
+        @Override
+        public void decodeConstant(ValueInfo valueInfo, NonmovableObjectArray<?> frameInfoObjectConstants) {
+        }
+    }
+
+    public static class AllocationFreeStackFrameVisitor extends Stage1StackFrameVisitor implements StackFrameVisitor {
+
         private static ReusableTypeReader frameInfoReader = new ReusableTypeReader();
 
         private static SingleShotFrameInfoQueryResultAllocator SingleShotFrameInfoQueryResultAllocator = new SingleShotFrameInfoQueryResultAllocator();
@@ -215,12 +215,14 @@ public final class Safepoint {
 
     /**
      * Slow path code run after a safepoint check or after transitioning from VM to Java state. It
-     * resets the safepoint counter, runs recurring callbacks if necessary, and executes pending
+     * resets the safepoint counter, runs recurring callbacks if necessary, executes a pending
+     * {@link ThreadLocalHandshake thread-local handshake}, and executes pending
      * {@link ActionOnTransitionToJavaSupport transition actions}.
      */
     @Uninterruptible(reason = "Must not contain safepoint checks.")
     private static void slowPathRunJavaStateActions() {
         ThreadingSupportImpl.onSafepointCheckSlowpath();
+        ThreadLocalHandshake.executePendingOperation();
         if (ActionOnTransitionToJavaSupport.isActionPending()) {
             assert ActionOnTransitionToJavaSupport.isSynchronizeCode() : "Unexpected action pending.";
             CodeSynchronizationNode.synchronizeCode();
@@ -346,6 +348,27 @@ public final class Safepoint {
         return safepointRequested.getVolatile(vmThread);
     }
 
+    /**
+     * Makes the thread enter the safepoint slow path at its next safepoint check by doing an atomic
+     * arithmetic negation of {@link #safepointRequested}. As a side effect, this also preserves the
+     * old value. If the value is already negative, the slow path was already requested by a
+     * safepoint or by a {@link ThreadLocalHandshake thread-local handshake}.
+     */
+    static void requestSlowPath(IsolateThread vmThread) {
+        VMThreads.THREAD_MUTEX.assertIsOwner("Must hold mutex while requesting the safepoint slow path.");
+        if (ThreadingSupportImpl.isRecurringCallbackSupported()) {
+            int value;
+            do {
+                value = safepointRequested.getVolatile(vmThread);
+                if (value < 0) {
+                    return;
+                }
+            } while (!safepointRequested.compareAndSet(vmThread, value, -value));
+        } else {
+            safepointRequested.setVolatile(vmThread, 0);
+        }
+    }
+
     /**
      * Returns the memory location identity for {@link #safepointRequested}.
      */
@@ -608,16 +631,7 @@ public final class Safepoint {
          * race conditions that can't be avoided for performance reasons).
          */
         private static void requestSafepoint(IsolateThread vmThread) {
-            if (ThreadingSupportImpl.isRecurringCallbackSupported()) {
-                int value;
-                do {
-                    value = safepointRequested.getVolatile(vmThread);
-                    assert value >= 0 : "the value can only be negative if a safepoint was requested";
-                } while (!safepointRequested.compareAndSet(vmThread, value, -value));
-            } else {
-                safepointRequested.setVolatile(vmThread, 0);
-            }
-
+            Safepoint.requestSlowPath(vmThread);
             Statistics.incRequested();
         }
 
@@ -640,6 +654,10 @@ public final class Safepoint {
                 int newValue = -(value + 2);
                 assert newValue >= -2 && newValue < Integer.MAX_VALUE : "overflow";
                 newValue = newValue <= 0 ? 1 : newValue;
+                if (ThreadLocalHandshake.isPending(vmThread)) {
+                    /* The thread must still enter the slow path to execute the handshake. */
+                    newValue = 1;
+                }
                 setSafepointRequested(vmThread, newValue);
             }
         }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.thread;
+
+import org.graalvm.nativeimage.CurrentIsolate;
+import org.graalvm.nativeimage.IsolateThread;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.annotate.RestrictHeapAccess.Access;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.jdk.UninterruptibleUtils;
+import com.oracle.svm.core.locks.VMMutex;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.thread.VMThreads.StatusSupport;
+import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
+import com.oracle.svm.core.threadlocal.FastThreadLocalObject;
+import com.oracle.svm.core.util.VMError;
+
+/**
+ * Thread-local handshakes execute an {@link Operation} for a single target thread without bringing
+ * all threads to a safepoint.
+ * <p>
+ * The requesting thread installs the operation in the thread-local {@link #pendingOperation} of the
+ * target thread and negates the {@linkplain Safepoint#safepointRequested safepoint counter} of the
+ * target thread, so that the target thread enters the safepoint slow path at its next safepoint
+ * check and executes the operation itself. If the target thread is in native code, it may not
+ * reach a safepoint check for a long time. In that case, the requesting thread changes the status
+ * of the target thread from native to safepoint and executes the operation on behalf of the target
+ * thread. The target thread cannot return to Java code until its status is changed back to native.
+ * <p>
+ * Installing the operation and executing it on behalf of the target thread is done in a
+ * {@linkplain VMOperation.SystemEffect#NONE non-safepoint} VM operation while holding the
+ * {@link VMThreads#THREAD_MUTEX}, so no global safepoint can be initiated and the target thread
+ * cannot detach in the meanwhile. As a consequence, handshake operations must not allocate.
+ */
+public final class ThreadLocalHandshake {
+
+    /** The operation that the thread must execute at its next safepoint check, or null. */
+    private static final FastThreadLocalObject<Operation> pendingOperation = FastThreadLocalFactory.createObject(Operation.class);
+
+    /** The number of yields before the requesting thread tries to execute on behalf again. */
+    private static final int RETRIES_BEFORE_EXECUTING_ON_BEHALF = 64;
+
+    private ThreadLocalHandshake() {
+    }
+
+    /**
+     * An operation that is executed for a single thread, either by that thread itself or on its
+     * behalf by the requesting thread.
+     */
+    public abstract static class Operation {
+        private final String name;
+        private volatile boolean finished;
+        private volatile boolean executed;
+
+        protected Operation(String name) {
+            this.name = name;
+        }
+
+        public final String getName() {
+            return name;
+        }
+
+        /** Returns true if the operation was executed for the target thread. */
+        public final boolean wasExecuted() {
+            return executed;
+        }
+
+        @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+        final boolean isFinished() {
+            return finished;
+        }
+
+        @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+        final void markFinished(boolean wasExecuted) {
+            executed = wasExecuted;
+            finished = true;
+        }
+
+        /**
+         * Executes the operation for {@code thread}. The current thread is either {@code thread}
+         * itself, or the requesting thread while {@code thread} is held in the safepoint state.
+         */
+        @RestrictHeapAccess(access = Access.NO_ALLOCATION, reason = "May be executed on behalf of the target thread while holding the THREAD_MUTEX.")
+        protected abstract void operate(IsolateThread thread);
+    }
+
+    /**
+     * Executes the operation for the target thread and blocks until it was executed. Returns false
+     * if the target thread detached before it could execute the operation.
+     */
+    public static boolean execute(IsolateThread target, Operation operation) {
+        VMError.guarantee(target.isNonNull(), "Target thread must not be null.");
+        if (target == CurrentIsolate.getCurrentThread() || VMOperation.isInProgressAtSafepoint()) {
+            /* The target thread is either myself or already stopped at a safepoint. */
+            invokeOperation(operation, target);
+            operation.markFinished(true);
+            return true;
+        }
+
+        long startNanos = System.nanoTime();
+        Statistics.incRequested();
+        new HandshakeVMOperation(target, operation).enqueue();
+        for (int retries = 1; !operation.isFinished(); retries++) {
+            if (retries % RETRIES_BEFORE_EXECUTING_ON_BEHALF == 0) {
+                /* The target thread might have blocked in native code in the meanwhile. */
+                new HandshakeVMOperation(target, operation).enqueue();
+            } else {
+                Thread.yield();
+            }
+        }
+        Statistics.recordTimeToHandshake(System.nanoTime() - startNanos);
+        Statistics.toLog(SubstrateOptions.TraceVMOperations.getValue() ? Log.log() : Log.noopLog(), false, operation.getName());
+        return operation.wasExecuted();
+    }
+
+    /** Returns true if a handshake operation is pending for the thread. */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    static boolean isPending(IsolateThread thread) {
+        return pendingOperation.getVolatile(thread) != null;
+    }
+
+    /** Called by the current thread in the safepoint slow path while in Java state. */
+    @Uninterruptible(reason = "Must not contain safepoint checks.")
+    static void executePendingOperation() {
+        IsolateThread myself = CurrentIsolate.getCurrentThread();
+        Operation operation = pendingOperation.getVolatile(myself);
+        if (operation != null && pendingOperation.compareAndSet(myself, operation, null)) {
+            try {
+                invokeOperation(operation, myself);
+            } finally {
+                operation.markFinished(true);
+                Statistics.incExecutedByTarget();
+            }
+        }
+    }
+
+    /**
+     * Separate method to invoke {@link Operation#operate} so that the callers can be strictly
+     * {@link Uninterruptible}.
+     */
+    @Uninterruptible(reason = "Required by caller, but does not apply to callee.", calleeMustBe = false)
+    @RestrictHeapAccess(access = Access.NO_ALLOCATION, reason = "Handshake operations must not allocate.")
+    private static void invokeOperation(Operation operation, IsolateThread thread) {
+        try {
+            operation.operate(thread);
+        } catch (Throwable t) {
+            Log.log().string("Exception caught in thread-local handshake (ignored): ").string(operation.getName()).newline();
+        }
+    }
+
+    /**
+     * Installs the handshake operation and, if the target thread is in native code, executes it on
+     * behalf of the target thread. It does not need a safepoint, but it must be a VM operation so
+     * that it is allowed to hold the {@link VMThreads#THREAD_MUTEX}.
+     */
+    private static final class HandshakeVMOperation extends JavaVMOperation {
+        private final IsolateThread target;
+        private final Operation operation;
+
+        HandshakeVMOperation(IsolateThread target, Operation operation) {
+            super("ThreadLocalHandshake", SystemEffect.NONE);
+            this.target = target;
+            this.operation = operation;
+        }
+
+        @Override
+        protected boolean hasWork() {
+            return !operation.isFinished();
+        }
+
+        @Override
+        @SuppressWarnings("try")
+        protected void operate() {
+            try (VMMutex lock = VMThreads.THREAD_MUTEX.lock()) {
+                if (!isAttached(target)) {
+                    /* The target thread detached, so its thread-local state is gone. */
+                    operation.markFinished(false);
+                    return;
+                } else if (StatusSupport.isStatusIgnoreSafepoints(target)) {
+                    /* The target thread is detaching and no longer does safepoint checks. */
+                    pendingOperation.compareAndSet(target, operation, null);
+                    operation.markFinished(false);
+                    return;
+                }
+
+                Operation pending = pendingOperation.getVolatile(target);
+                if (pending == null && !operation.isFinished()) {
+                    if (!pendingOperation.compareAndSet(target, null, operation)) {
+                        /* The target thread can only clear the value, so there must be a value. */
+                        throw VMError.shouldNotReachHere("Unexpected concurrent handshake installation.");
+                    }
+                    Safepoint.requestSlowPath(target);
+                } else if (pending != operation) {
+                    /* Another handshake is pending for the target thread: retry later. */
+                    return;
+                }
+
+                executeOnBehalfIfInNative();
+            }
+        }
+
+        private void executeOnBehalfIfInNative() {
+            if (StatusSupport.compareAndSetNativeToSafepoint(target)) {
+                try {
+                    if (pendingOperation.compareAndSet(target, operation, null)) {
+                        invokeOperation(operation, target);
+                        operation.markFinished(true);
+                        Statistics.incExecutedOnBehalf();
+                    }
+                } finally {
+                    StatusSupport.setStatusNative(target);
+                }
+            }
+        }
+
+        private static boolean isAttached(IsolateThread thread) {
+            for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
+                if (vmThread == thread) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Statistics about thread-local handshakes, see {@link Safepoint.Statistics}. They are logged
+     * after each handshake if {@link SubstrateOptions#TraceVMOperations} is enabled.
+     */
+    public static final class Statistics {
+        /** The number of handshakes that have been requested. */
+        private static final UninterruptibleUtils.AtomicLong requested = new UninterruptibleUtils.AtomicLong(0);
+        /** The number of handshakes that the target thread executed itself. */
+        private static final UninterruptibleUtils.AtomicLong executedByTarget = new UninterruptibleUtils.AtomicLong(0);
+        /** The number of handshakes that were executed on behalf of a thread in native code. */
+        private static final UninterruptibleUtils.AtomicLong executedOnBehalf = new UninterruptibleUtils.AtomicLong(0);
+        /** The accumulated time between requesting and completing handshakes. */
+        private static final UninterruptibleUtils.AtomicLong totalNanos = new UninterruptibleUtils.AtomicLong(0);
+        /** The longest time between requesting and completing a handshake. */
+        private static final UninterruptibleUtils.AtomicLong maxNanos = new UninterruptibleUtils.AtomicLong(0);
+
+        private Statistics() {
+            // All static: no instances.
+        }
+
+        private static boolean isEnabled() {
+            return Safepoint.Statistics.Options.GatherSafepointStatistics.getValue();
+        }
+
+        static void incRequested() {
+            if (isEnabled()) {
+                requested.incrementAndGet();
+            }
+        }
+
+        @Uninterruptible(reason = "Called from the safepoint slow path.")
+        static void incExecutedByTarget() {
+            if (Safepoint.Statistics.Options.GatherSafepointStatistics.getValue()) {
+                executedByTarget.incrementAndGet();
+            }
+        }
+
+        static void incExecutedOnBehalf() {
+            if (isEnabled()) {
+                executedOnBehalf.incrementAndGet();
+            }
+        }
+
+        static void recordTimeToHandshake(long nanos) {
+            if (isEnabled()) {
+                totalNanos.addAndGet(nanos);
+                long max;
+                do {
+                    max = maxNanos.get();
+                } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+            }
+        }
+
+        public static Log toLog(Log log, boolean newLine, String prefix) {
+            if (log.isEnabled() && isEnabled()) {
+                if (newLine) {
+                    log.newline();
+                }
+                log.string("[ThreadLocalHandshake.Statistics: ").string(prefix).newline();
+                log.string("         requested: ").signed(requested.get()).newline();
+                log.string("  executedByTarget: ").signed(executedByTarget.get()).newline();
+                log.string("  executedOnBehalf: ").signed(executedOnBehalf.get()).newline();
+                log.string("        totalNanos: ").signed(totalNanos.get()).newline();
+                log.string("          maxNanos: ").signed(maxNanos.get()).string("]").newline();
+            }
+            return log;
+        }
+    }
+}
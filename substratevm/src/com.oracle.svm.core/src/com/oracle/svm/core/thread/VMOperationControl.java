@@ -74,6 +74,11 @@ import com.oracle.svm.core.util.VMError;
  * execution of all VM operations.</li>
  * </ul>
  *
+ * VM operations that only need to act on a single thread (e.g., walking the stack of that thread)
+ * should not cause a global safepoint. Such operations can be executed as a
+ * {@linkplain ThreadLocalHandshake thread-local handshake}, which uses a VM operation without a
+ * safepoint to request that the target thread executes the operation at its next safepoint check.
+ * <p>
  * It is possible that the execution of a VM operation triggers another VM operation explicitly or
  * implicitly (e.g. a GC). Such recursive VM operations are executed immediately (see
  * {@link #immediateQueues}).
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.hosted.Feature;
+
+import com.oracle.svm.core.VMInspection;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.heap.HeapDumpMetadata;
+import com.oracle.svm.core.heap.HeapDumpWriter;
+import com.oracle.svm.hosted.FeatureImpl.BeforeCompilationAccessImpl;
+import com.oracle.svm.hosted.meta.HostedField;
+import com.oracle.svm.hosted.meta.HostedType;
+
+/**
+ * Collects the {@link HeapDumpMetadata} once the instance field layout is fixed.
+ */
+@AutomaticFeature
+public final class HeapDumpFeature implements Feature {
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return HeapDumpWriter.Options.HeapDumpSupport.getValue() || VMInspection.isEnabled();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        ImageSingletons.add(HeapDumpMetadata.class, new HeapDumpMetadata());
+    }
+
+    @Override
+    public void beforeCompilation(BeforeCompilationAccess access) {
+        Collection<HostedType> types = ((BeforeCompilationAccessImpl) access).getUniverse().getTypes();
+        int maxTypeId = -1;
+        for (HostedType type : types) {
+            maxTypeId = Math.max(maxTypeId, type.getTypeID());
+        }
+        HostedType[] typesById = new HostedType[maxTypeId + 1];
+        for (HostedType type : types) {
+            typesById[type.getTypeID()] = type;
+        }
+
+        int[] fieldStart = new int[maxTypeId + 2];
+        int[] instanceDataSizes = new int[maxTypeId + 1];
+        List<HostedField> fields = new ArrayList<>();
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for (int typeId = 0; typeId <= maxTypeId; typeId++) {
+            fieldStart[typeId] = fields.size();
+            HostedType type = typesById[typeId];
+            if (type == null || !type.isInstanceClass()) {
+                continue;
+            }
+            for (HostedField field : type.getInstanceFields(false)) {
+                fields.add(field);
+                names.putIfAbsent(field.getName(), names.size());
+            }
+            for (HostedField field : type.getInstanceFields(true)) {
+                instanceDataSizes[typeId] += HeapDumpMetadata.valueSize(HeapDumpMetadata.basicType(field.getStorageKind()));
+            }
+        }
+        fieldStart[maxTypeId + 1] = fields.size();
+
+        int[] fieldNames = new int[fields.size()];
+        int[] fieldOffsets = new int[fields.size()];
+        byte[] fieldTypes = new byte[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            HostedField field = fields.get(i);
+            fieldNames[i] = names.get(field.getName());
+            fieldOffsets[i] = field.getLocation();
+            fieldTypes[i] = HeapDumpMetadata.basicType(field.getStorageKind());
+        }
+        ImageSingletons.lookup(HeapDumpMetadata.class).setData(fieldStart, fieldNames, fieldOffsets, fieldTypes, instanceDataSizes, names.keySet().toArray(new String[0]));
+    }
+}
@@ -232,6 +232,7 @@ import com.oracle.svm.hosted.code.CEntryPointData;
 import com.oracle.svm.hosted.code.CFunctionSubstitutionProcessor;
 import com.oracle.svm.hosted.code.CompileQueue;
 import com.oracle.svm.hosted.code.HostedRuntimeConfigurationBuilder;
+import com.oracle.svm.hosted.code.MethodFingerprints;
 import com.oracle.svm.hosted.code.NativeMethodSubstitutionProcessor;
 import com.oracle.svm.hosted.code.RestrictHeapAccessCalleesImpl;
 import com.oracle.svm.hosted.code.SharedRuntimeConfigurationBuilder;
@@ -580,6 +581,7 @@ public class NativeImageGenerator {
 
             recordMethodsWithStackValues();
             recordRestrictHeapAccessCallees(aUniverse.getMethods());
+            reportInvalidatedMethods(aUniverse.getMethods(), imageName);
 
             /*
              * After this point, all TypeFlow (and therefore also TypeState) objects are unreachable
@@ -1068,6 +1070,19 @@ public class NativeImageGenerator {
         ((RestrictHeapAccessCalleesImpl) ImageSingletons.lookup(RestrictHeapAccessCallees.class)).aggregateMethods(methods);
     }
 
+    /**
+     * Record fingerprints of the reachable methods and report the methods invalidated since the
+     * previous build. This is a diagnostic for estimating the scope of incremental builds, the
+     * report does not change what is analyzed and compiled.
+     */
+    private static void reportInvalidatedMethods(Collection<AnalysisMethod> methods, String imageName) {
+        String file = NativeImageOptions.ReportInvalidatedMethodsFingerprintsFile.getValue();
+        if (!file.isEmpty()) {
+            String reportName = imageName.substring(imageName.lastIndexOf("/") + 1);
+            MethodFingerprints.update(methods, FileSystems.getDefault().getPath(file), SubstrateOptions.Path.getValue(), reportName);
+        }
+    }
+
     public void interruptBuild() {
         shutdownPoolSafe();
     }
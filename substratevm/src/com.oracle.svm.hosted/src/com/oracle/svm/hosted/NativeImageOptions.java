@@ -86,6 +86,9 @@ public class NativeImageOptions {
     @Option(help = "Directory for temporary files generated during native image generation. If this option is specified, the temporary files are not deleted so that you can inspect them after native image generation")//
     public static final HostedOptionKey<String> TempDirectory = new HostedOptionKey<>("");
 
+    @Option(help = "Diagnostic only: report the methods that changed since the previous image build or depend on changed methods. The per-method fingerprints are persisted in the given file. Nothing of the previous build is reused, all methods are still analyzed and compiled.")//
+    public static final HostedOptionKey<String> ReportInvalidatedMethodsFingerprintsFile = new HostedOptionKey<>("");
+
     @Option(help = "Test Mach-O debuginfo generation")//
     public static final HostedOptionKey<Boolean> MachODebugInfoTesting = new HostedOptionKey<>(false);
 
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.code;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.graalvm.compiler.bytecode.BytecodeStream;
+import org.graalvm.compiler.bytecode.Bytecodes;
+
+import com.oracle.graal.pointsto.BigBang;
+import com.oracle.graal.pointsto.flow.InvokeTypeFlow;
+import com.oracle.graal.pointsto.meta.AnalysisMethod;
+import com.oracle.graal.pointsto.reports.ReportUtils;
+import com.oracle.svm.hosted.c.GraalAccess;
+
+import jdk.vm.ci.meta.ConstantPool;
+import jdk.vm.ci.meta.ExceptionHandler;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaField;
+import jdk.vm.ci.meta.JavaMethod;
+import jdk.vm.ci.meta.JavaType;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+import jdk.vm.ci.meta.ResolvedJavaType;
+
+/**
+ * Per-method fingerprints that are persisted between image builds. The fingerprint of a method is
+ * a hash of its signature, the declaration of its holder, its bytecode, the constant pool entries
+ * that the bytecode refers to and the types of its exception handlers. A method is invalidated when
+ * its own fingerprint changed or when one of its (transitive) callees was invalidated, since
+ * inlining and the analysis results of the callee can change the code generated for the caller.
+ * The invalidated methods are only reported as a diagnostic, nothing of the previous build is
+ * reused.
+ *
+ * The fingerprints must be recorded before {@link BigBang#cleanupAfterAnalysis()} since the call
+ * graph is derived from the invoke type flows.
+ */
+public final class MethodFingerprints {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<String, Long> fingerprints = new HashMap<>();
+    private final Map<String, Set<String>> callers = new HashMap<>();
+
+    private MethodFingerprints() {
+    }
+
+    /**
+     * Computes the fingerprints of all implementation-invoked methods, reports the methods that are
+     * invalidated relative to the fingerprints stored in {@code file} by a previous build, and then
+     * replaces the content of the file with the fingerprints of this build.
+     */
+    public static void update(Collection<AnalysisMethod> methods, Path file, String path, String reportName) {
+        MethodFingerprints current = new MethodFingerprints();
+        for (AnalysisMethod method : methods) {
+            if (method.isImplementationInvoked()) {
+                current.add(method);
+            }
+        }
+
+        Map<String, Long> previous = read(file);
+        if (previous != null) {
+            Set<String> changed = current.changedSince(previous);
+            List<String> invalidated = new ArrayList<>(current.withTransitiveCallers(changed));
+            invalidated.sort(null);
+            ReportUtils.report("methods invalidated since the previous build", path + File.separatorChar + "reports", "invalidated_methods_" + reportName, "txt", writer -> {
+                writer.println("# " + invalidated.size() + " of " + current.fingerprints.size() + " methods invalidated (" + changed.size() + " changed)");
+                invalidated.forEach(writer::println);
+            });
+        }
+        current.write(file);
+    }
+
+    private void add(AnalysisMethod method) {
+        String key = method.format("%H.%n(%p)");
+        fingerprints.put(key, hash(method.getWrapped()));
+        for (InvokeTypeFlow invoke : method.getTypeFlow().getInvokes()) {
+            for (AnalysisMethod callee : invoke.getCallees()) {
+                callers.computeIfAbsent(callee.format("%H.%n(%p)"), k -> new HashSet<>()).add(key);
+            }
+        }
+    }
+
+    private Set<String> changedSince(Map<String, Long> previous) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Long> entry : fingerprints.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    private Set<String> withTransitiveCallers(Set<String> roots) {
+        Set<String> result = new HashSet<>(roots);
+        Deque<String> worklist = new ArrayDeque<>(roots);
+        while (!worklist.isEmpty()) {
+            Set<String> methodCallers = callers.get(worklist.pop());
+            if (methodCallers != null) {
+                for (String caller : methodCallers) {
+                    if (result.add(caller)) {
+                        worklist.push(caller);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The hash is computed on the original method rather than the analysis method, so that looking
+     * up constant pool entries cannot add elements to the sealed analysis universe.
+     */
+    private static long hash(ResolvedJavaMethod method) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, method.getModifiers() + " " + method.format("%H.%n(%P)%R"));
+        ResolvedJavaType holder = method.getDeclaringClass();
+        hash = hash(hash, holder.getModifiers() + " " + holder.getName());
+        ResolvedJavaType superclass = holder.getSuperclass();
+        hash = hash(hash, superclass != null ? superclass.getName() : "");
+        for (ResolvedJavaType implemented : holder.getInterfaces()) {
+            hash = hash(hash, implemented.getName());
+        }
+
+        byte[] code = method.getCode();
+        if (code == null) {
+            return hash;
+        }
+        for (byte b : code) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        ConstantPool constantPool = method.getConstantPool();
+        BytecodeStream stream = new BytecodeStream(code);
+        while (stream.currentBC() != Bytecodes.END) {
+            int opcode = stream.currentBC();
+            if (referencesConstantPool(opcode)) {
+                int cpi = opcode == Bytecodes.INVOKEDYNAMIC ? stream.readCPI4() : stream.readCPI();
+                hash = hash(hash, describeConstantPoolEntry(constantPool, method, cpi, opcode));
+            }
+            stream.next();
+        }
+        for (ExceptionHandler handler : method.getExceptionHandlers()) {
+            JavaType catchType = handler.getCatchType();
+            hash = hash(hash, catchType != null ? catchType.getName() : "");
+        }
+        return hash;
+    }
+
+    private static boolean referencesConstantPool(int opcode) {
+        switch (opcode) {
+            case Bytecodes.LDC:
+            case Bytecodes.LDC_W:
+            case Bytecodes.LDC2_W:
+            case Bytecodes.GETSTATIC:
+            case Bytecodes.PUTSTATIC:
+            case Bytecodes.GETFIELD:
+            case Bytecodes.PUTFIELD:
+            case Bytecodes.INVOKEVIRTUAL:
+            case Bytecodes.INVOKESPECIAL:
+            case Bytecodes.INVOKESTATIC:
+            case Bytecodes.INVOKEINTERFACE:
+            case Bytecodes.INVOKEDYNAMIC:
+            case Bytecodes.NEW:
+            case Bytecodes.ANEWARRAY:
+            case Bytecodes.CHECKCAST:
+            case Bytecodes.INSTANCEOF:
+            case Bytecodes.MULTIANEWARRAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Describes the constant pool entry an instruction refers to. The entries are looked up without
+     * resolving them, so an entry that is not resolved yet is described by its symbolic reference.
+     */
+    private static String describeConstantPoolEntry(ConstantPool constantPool, ResolvedJavaMethod method, int cpi, int opcode) {
+        try {
+            switch (opcode) {
+                case Bytecodes.LDC:
+                case Bytecodes.LDC_W:
+                case Bytecodes.LDC2_W:
+                    Object constant = constantPool.lookupConstant(cpi);
+                    if (constant instanceof JavaType) {
+                        return ((JavaType) constant).getName();
+                    } else if (constant instanceof JavaConstant) {
+                        return describeConstant((JavaConstant) constant);
+                    }
+                    return String.valueOf(constant);
+                case Bytecodes.GETSTATIC:
+                case Bytecodes.PUTSTATIC:
+                case Bytecodes.GETFIELD:
+                case Bytecodes.PUTFIELD:
+                    JavaField field = constantPool.lookupField(cpi, method, opcode);
+                    return field.format("%H.%n:%T");
+                case Bytecodes.NEW:
+                case Bytecodes.ANEWARRAY:
+                case Bytecodes.CHECKCAST:
+                case Bytecodes.INSTANCEOF:
+                case Bytecodes.MULTIANEWARRAY:
+                    return constantPool.lookupType(cpi, opcode).getName();
+                default:
+                    JavaMethod target = constantPool.lookupMethod(cpi, opcode);
+                    return target.format("%H.%n(%P)%R");
+            }
+        } catch (RuntimeException | LinkageError e) {
+            /* The entry cannot be looked up, so it is identified by its index only. */
+            return "#" + cpi;
+        }
+    }
+
+    private static String describeConstant(JavaConstant constant) {
+        if (constant.getJavaKind().isPrimitive()) {
+            return constant.toValueString();
+        }
+        Object object = GraalAccess.getOriginalSnippetReflection().asObject(Object.class, constant);
+        if (object instanceof String) {
+            return "\"" + object + "\"";
+        }
+        /* Method handles and method types are identified by their class only. */
+        return object != null ? object.getClass().getName() : "null";
+    }
+
+    private static long hash(long initial, String string) {
+        long hash = initial;
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+        }
+        /* Separator, so that consecutive strings cannot be shifted against each other. */
+        return (hash ^ 0xffff) * FNV_PRIME;
+    }
+
+    private static Map<String, Long> read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Map<String, Long> result = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator > 0) {
+                    result.put(line.substring(separator + 1), Long.parseUnsignedLong(line.substring(0, separator), 16));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            /* A corrupt or unreadable file means that every method is considered changed. */
+            return new HashMap<>();
+        }
+        return result;
+    }
+
+    private void write(Path file) {
+        List<String> keys = new ArrayList<>(fingerprints.keySet());
+        keys.sort(null);
+        ReportUtils.report("method fingerprints", file.toAbsolutePath(), writer -> {
+            for (String key : keys) {
+                writer.print(Long.toHexString(fingerprints.get(key)));
+                writer.print('\t');
+                writer.println(key);
+            }
+        });
+    }
+}
@@ -593,6 +593,41 @@ public class AgentObjectTest {
         }
     }
 
+    @Test
+    public void frameVariablesOnlyAccessibleInHook() throws Exception {
+        try (Context c = AgentObjectFactory.newContext()) {
+            Value agent = AgentObjectFactory.createAgentObject(c);
+            AgentScriptAPI agentAPI = agent.as(AgentScriptAPI.class);
+            Assert.assertNotNull("Agent API obtained", agentAPI);
+
+            // @formatter:off
+            Source sampleScript = Source.newBuilder(InstrumentationTestLanguage.ID,
+                "ROOT(\n" +
+                "  DEFINE(mul,\n" +
+                "    ARGUMENT(a),\n" +
+                "    ARGUMENT(b),\n" +
+                "    EXPRESSION\n" +
+                "  ),\n" +
+                "  CALL(mul, CONSTANT(6), CONSTANT(7))\n" +
+                ")",
+                "sample.px"
+            ).build();
+            // @formatter:on
+
+            List<Map<String, Object>> frames = new LinkedList<>();
+            agentAPI.on("enter", (ctx, frame) -> {
+                assertEquals("a is available in the hook", 6, ((Number) frame.get("a")).intValue());
+                frames.add(frame);
+            }, createConfig(true, false, false, (name) -> "mul".equals(name), null));
+
+            c.eval(sampleScript);
+
+            assertEquals("One call of mul", 1, frames.size());
+            assertNull("a is no longer available", frames.get(0).get("a"));
+            assertTrue("No variables after the hook", frames.get(0).keySet().isEmpty());
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     public static class SourceNameCheck implements Predicate {
         private final String name;
@@ -57,39 +57,36 @@ final class AgentExecutionNode extends ExecutionEventNode {
     @Override
     protected void onEnter(VirtualFrame frame) {
         if (enter != null) {
-            try {
-                enterDispatch.execute(enter, ctx, new VariablesObject(env, this, frame));
-            } catch (InteropException ex) {
-                throw ctx.wrap(enter, 2, ex);
-            } catch (RuntimeException ex) {
-                throw ctx.rethrow(ex);
-            }
+            invoke(enterDispatch, enter);
         }
     }
 
     @Override
     protected void onReturnValue(VirtualFrame frame, Object result) {
         if (exit != null) {
-            try {
-                exitDispatch.execute(exit, ctx, new VariablesObject(env, this, frame));
-            } catch (InteropException ex) {
-                throw ctx.wrap(exit, 2, ex);
-            } catch (RuntimeException ex) {
-                throw ctx.rethrow(ex);
-            }
+            invoke(exitDispatch, exit);
         }
     }
 
     @Override
     protected void onReturnExceptional(VirtualFrame frame, Throwable exception) {
         if (exit != null) {
-            try {
-                exitDispatch.execute(exit, ctx, new VariablesObject(env, this, frame));
-            } catch (InteropException ex) {
-                throw ctx.wrap(exit, 2, ex);
-            } catch (RuntimeException ex) {
-                throw ctx.rethrow(ex);
-            }
+            invoke(exitDispatch, exit);
+        }
+    }
+
+    private void invoke(InteropLibrary dispatch, Object hook) {
+        // the frame is looked up only when the hook reads a variable, so it does not have to be
+        // materialized and the variables object can be escape analysed
+        VariablesObject vars = new VariablesObject(env, this);
+        try {
+            dispatch.execute(hook, ctx, vars);
+        } catch (InteropException ex) {
+            throw ctx.wrap(hook, 2, ex);
+        } catch (RuntimeException ex) {
+            throw ctx.rethrow(ex);
+        } finally {
+            vars.release();
         }
     }
 
@@ -24,9 +24,13 @@
  */
 package com.oracle.truffle.tools.agentscript.impl;
 
+import com.oracle.truffle.api.CallTarget;
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.Scope;
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameInstance;
 import com.oracle.truffle.api.instrumentation.TruffleInstrument;
 import com.oracle.truffle.api.interop.InteropException;
 import com.oracle.truffle.api.interop.InteropLibrary;
@@ -35,6 +39,7 @@ import com.oracle.truffle.api.interop.UnknownIdentifierException;
 import com.oracle.truffle.api.library.ExportLibrary;
 import com.oracle.truffle.api.library.ExportMessage;
 import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -44,12 +49,33 @@ final class VariablesObject implements TruffleObject {
 
     private final TruffleInstrument.Env env;
     private final Node where;
-    private final Frame frame;
+    private boolean released;
 
-    VariablesObject(TruffleInstrument.Env env, Node where, Frame frame) {
+    VariablesObject(TruffleInstrument.Env env, Node where) {
         this.env = env;
         this.where = where;
-        this.frame = frame.materialize();
+    }
+
+    /**
+     * Variables are only accessible while the hook is being executed. Afterwards the frame of the
+     * instrumented root may no longer exist or belong to a different invocation.
+     */
+    void release() {
+        released = true;
+    }
+
+    private Frame findFrame() {
+        if (released) {
+            return null;
+        }
+        final RootNode root = where.getRootNode();
+        return Truffle.getRuntime().iterateFrames((frameInstance) -> {
+            CallTarget target = frameInstance.getCallTarget();
+            if (target instanceof RootCallTarget && ((RootCallTarget) target).getRootNode() == root) {
+                return frameInstance.getFrame(FrameInstance.FrameAccess.READ_ONLY);
+            }
+            return null;
+        });
     }
 
     @ExportMessage
@@ -61,6 +87,10 @@ final class VariablesObject implements TruffleObject {
     @ExportMessage
     Object getMembers(boolean includeInternal) {
         Set<String> names = new TreeSet<>();
+        Frame frame = findFrame();
+        if (frame == null) {
+            return ArrayObject.wrap(names);
+        }
         InteropLibrary iop = InteropLibrary.getFactory().getUncached();
         for (Scope scope : env.findLocalScopes(where, frame)) {
             try {
@@ -83,6 +113,10 @@ final class VariablesObject implements TruffleObject {
     @CompilerDirectives.TruffleBoundary
     @ExportMessage
     Object readMember(String member) throws UnknownIdentifierException {
+        Frame frame = findFrame();
+        if (frame == null) {
+            throw UnknownIdentifierException.create(member);
+        }
         InteropLibrary iop = InteropLibrary.getFactory().getUncached();
         for (Scope scope : env.findLocalScopes(where, frame)) {
             if (scope == null) {
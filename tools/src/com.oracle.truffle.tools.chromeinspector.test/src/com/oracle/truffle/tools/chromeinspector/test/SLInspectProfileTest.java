@@ -31,6 +31,7 @@ import static org.junit.Assert.assertTrue;
 import org.junit.After;
 import org.junit.Test;
 
+import com.oracle.truffle.tools.utils.json.JSONArray;
 import com.oracle.truffle.tools.utils.json.JSONObject;
 
 import org.graalvm.polyglot.Source;
@@ -67,6 +68,22 @@ public class SLInspectProfileTest {
             " add(1, \"some string\");\n" +
             "}";
 
+    private static final String CODE3 = "function main() {\n" +
+            " i = 0;\n" +
+            " while (i < 10) {\n" +
+            "  o = new();\n" +
+            "  i = i + 1;\n" +
+            " }\n" +
+            "}";
+
+    private static final String CODE4 = "function main() {\n" +
+            " s = \"a heap snapshot local\";\n" +
+            " o = new();\n" +
+            " o.name = s;\n" +
+            " o.alias = s;\n" +
+            " debugger;\n" +
+            "}";
+
     private InspectorTester tester;
 
     @After
@@ -165,6 +182,75 @@ public class SLInspectProfileTest {
         tester.finish();
     }
 
+    @Test
+    public void testSampledCodeCoverage() throws Exception {
+        tester = InspectorTester.start(false);
+        tester.getInspectorContext().setSampledProfiling(true);
+        Source source = Source.newBuilder("sl", CODE2, "SLTest.sl").build();
+        String slTestURI = InspectorTester.getStringURI(source.getURI());
+        tester.sendMessage("{\"id\":1,\"method\":\"Runtime.enable\"}");
+        assertEquals("{\"result\":{},\"id\":1}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":2,\"method\":\"Profiler.enable\"}");
+        assertEquals("{\"result\":{},\"id\":2}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":3,\"method\":\"Profiler.startPreciseCoverage\",\"params\":{\"detailed\":true}}");
+        assertEquals("{\"result\":{},\"id\":3}", tester.getMessages(true).trim());
+        assertTrue(tester.shouldWaitForClose());
+        tester.eval(source).get();
+        // Executions are not counted, add() was called twice
+        tester.sendMessage("{\"id\":4,\"method\":\"Profiler.takePreciseCoverage\"}");
+        assertEquals("{\"result\":{\"result\":[{\"scriptId\":\"1\",\"functions\":["
+                + "{\"ranges\":[{\"endOffset\":34,\"startOffset\":22,\"count\":1}],\"functionName\":\"add\",\"isBlockCoverage\":true},"
+                + "{\"ranges\":[{\"endOffset\":66,\"startOffset\":57,\"count\":1},{\"endOffset\":90,\"startOffset\":69,\"count\":1}],\"functionName\":\"main\",\"isBlockCoverage\":true}],"
+                + "\"url\":\"" + slTestURI + "\"}]},\"id\":4}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":5,\"method\":\"Profiler.takePreciseCoverage\"}");
+        assertEquals("{\"result\":{\"result\":[]},\"id\":5}", tester.getMessages(true).trim());
+        // Taking the coverage re-armed the probes
+        tester.eval(source).get();
+        tester.sendMessage("{\"id\":6,\"method\":\"Profiler.takePreciseCoverage\"}");
+        assertEquals("{\"result\":{\"result\":[{\"scriptId\":\"1\",\"functions\":["
+                + "{\"ranges\":[{\"endOffset\":34,\"startOffset\":22,\"count\":1}],\"functionName\":\"add\",\"isBlockCoverage\":true},"
+                + "{\"ranges\":[{\"endOffset\":66,\"startOffset\":57,\"count\":1},{\"endOffset\":90,\"startOffset\":69,\"count\":1}],\"functionName\":\"main\",\"isBlockCoverage\":true}],"
+                + "\"url\":\"" + slTestURI + "\"}]},\"id\":6}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":7,\"method\":\"Profiler.stopPreciseCoverage\"}");
+        assertEquals("{\"result\":{},\"id\":7}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":8,\"method\":\"Profiler.disable\"}");
+        assertEquals("{\"result\":{},\"id\":8}", tester.getMessages(true).trim());
+        tester.finish();
+    }
+
+    @Test
+    public void testSampledTypeProfile() throws Exception {
+        tester = InspectorTester.start(false);
+        tester.getInspectorContext().setSampledProfiling(true);
+        Source source = Source.newBuilder("sl", CODE2, "SLTest.sl").build();
+        String slTestURI = InspectorTester.getStringURI(source.getURI());
+        tester.sendMessage("{\"id\":1,\"method\":\"Runtime.enable\"}");
+        assertEquals("{\"result\":{},\"id\":1}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":2,\"method\":\"Profiler.enable\"}");
+        assertEquals("{\"result\":{},\"id\":2}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":3,\"method\":\"Profiler.startTypeProfile\"}");
+        assertEquals("{\"result\":{},\"id\":3}", tester.getMessages(true).trim());
+        assertTrue(tester.shouldWaitForClose());
+        tester.eval(source).get();
+        // Only the first of every 16 calls is sampled, add(1, "some string") is not
+        tester.sendMessage("{\"id\":4,\"method\":\"Profiler.takeTypeProfile\"}");
+        assertEquals("{\"result\":{\"result\":[{\"scriptId\":\"1\",\"entries\":["
+                + "{\"types\":[{\"name\":\"Number\"}],\"offset\":14},"
+                + "{\"types\":[{\"name\":\"Number\"}],\"offset\":17},"
+                + "{\"types\":[{\"name\":\"Number\"}],\"offset\":37},"
+                + "{\"types\":[{\"name\":\"NULL\"}],\"offset\":93}],"
+                + "\"url\":\"" + slTestURI + "\"}]},\"id\":4}", tester.getMessages(true).trim());
+        // None of the calls of the second execution is sampled
+        tester.eval(source).get();
+        tester.sendMessage("{\"id\":5,\"method\":\"Profiler.takeTypeProfile\"}");
+        assertEquals("{\"result\":{\"result\":[]},\"id\":5}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":6,\"method\":\"Profiler.stopTypeProfile\"}");
+        assertEquals("{\"result\":{},\"id\":6}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":7,\"method\":\"Profiler.disable\"}");
+        assertEquals("{\"result\":{},\"id\":7}", tester.getMessages(true).trim());
+        tester.finish();
+    }
+
     @Test
     public void testTypeProfile() throws Exception {
         tester = InspectorTester.start(false);
@@ -197,6 +283,112 @@ public class SLInspectProfileTest {
         assertTrue(tester.shouldWaitForClose());
         tester.finish();
     }
+
+    @Test
+    public void testHeapSnapshot() throws Exception {
+        tester = InspectorTester.start(false);
+        Source source = Source.newBuilder("sl", CODE4, "SLTest.sl").build();
+        tester.sendMessage("{\"id\":1,\"method\":\"Runtime.enable\"}");
+        assertEquals("{\"result\":{},\"id\":1}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":2,\"method\":\"Debugger.enable\"}");
+        assertEquals("{\"result\":{},\"id\":2}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":3,\"method\":\"HeapProfiler.enable\"}");
+        assertEquals("{\"result\":{},\"id\":3}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":4,\"method\":\"Runtime.runIfWaitingForDebugger\"}");
+        tester.receiveMessages("{\"result\":{},\"id\":4}\n", "{\"method\":\"Runtime.executionContextCreated\"", "\n");
+        tester.eval(source);
+        tester.receiveMessages("{\"method\":\"Debugger.scriptParsed\"", "{\"method\":\"Debugger.paused\"", "\n");
+        tester.sendMessage("{\"id\":5,\"method\":\"HeapProfiler.takeHeapSnapshot\",\"params\":{\"reportProgress\":false}}");
+        StringBuilder messages = new StringBuilder();
+        while (messages.indexOf("{\"result\":{},\"id\":5}") < 0) {
+            messages.append(tester.getMessages(true));
+        }
+        StringBuilder snapshotJson = new StringBuilder();
+        int chunks = 0;
+        for (String message : messages.toString().split("\n")) {
+            JSONObject json = new JSONObject(message);
+            if (json.has("method")) {
+                assertEquals("HeapProfiler.addHeapSnapshotChunk", json.getString("method"));
+                snapshotJson.append(json.getJSONObject("params").getString("chunk"));
+                chunks++;
+            }
+        }
+        assertTrue(chunks > 0);
+        JSONObject heap = new JSONObject(snapshotJson.toString());
+        JSONObject meta = heap.getJSONObject("snapshot").getJSONObject("meta");
+        JSONArray nodeFields = meta.getJSONArray("node_fields");
+        JSONArray edgeFields = meta.getJSONArray("edge_fields");
+        assertEquals("[\"type\",\"name\",\"id\",\"self_size\",\"edge_count\",\"trace_node_id\"]", nodeFields.toString());
+        assertEquals("[\"type\",\"name_or_index\",\"to_node\"]", edgeFields.toString());
+        JSONArray nodes = heap.getJSONArray("nodes");
+        JSONArray edges = heap.getJSONArray("edges");
+        JSONArray strings = heap.getJSONArray("strings");
+        int nodeCount = heap.getJSONObject("snapshot").getInt("node_count");
+        int edgeCount = heap.getJSONObject("snapshot").getInt("edge_count");
+        assertEquals(nodeCount * nodeFields.length(), nodes.length());
+        assertEquals(edgeCount * edgeFields.length(), edges.length());
+        // The edge counts of the nodes sum up to the number of edges and all edges point to nodes
+        int edgeSum = 0;
+        for (int i = 0; i < nodes.length(); i += nodeFields.length()) {
+            edgeSum += nodes.getInt(i + 4);
+        }
+        assertEquals(edgeCount, edgeSum);
+        for (int i = 0; i < edges.length(); i += edgeFields.length()) {
+            int toNode = edges.getInt(i + 2);
+            assertEquals(0, toNode % nodeFields.length());
+            assertTrue(toNode < nodes.length());
+        }
+        // The local string is reachable from the frame of main, and is a single node
+        int localStrings = 0;
+        for (int i = 0; i < nodes.length(); i += nodeFields.length()) {
+            if (strings.getString(nodes.getInt(i + 1)).equals("a heap snapshot local")) {
+                assertEquals(2, nodes.getInt(i)); // string
+                localStrings++;
+            }
+        }
+        assertEquals(1, localStrings);
+        boolean mainRoot = false;
+        for (int i = 0; i < nodes.getInt(4) * edgeFields.length(); i += edgeFields.length()) {
+            mainRoot |= strings.getString(edges.getInt(i + 1)).startsWith("main ");
+        }
+        assertTrue(mainRoot);
+        tester.sendMessage("{\"id\":6,\"method\":\"Debugger.resume\"}");
+        assertTrue(tester.compareReceivedMessages(
+                        "{\"result\":{},\"id\":6}\n" +
+                        "{\"method\":\"Debugger.resumed\"}\n"));
+        tester.sendMessage("{\"id\":7,\"method\":\"HeapProfiler.disable\"}");
+        assertEquals("{\"result\":{},\"id\":7}", tester.getMessages(true).trim());
+        tester.finish();
+    }
+
+    @Test
+    public void testHeapSampling() throws Exception {
+        tester = InspectorTester.start(false);
+        Source source = Source.newBuilder("sl", CODE3, "SLTest.sl").build();
+        tester.sendMessage("{\"id\":1,\"method\":\"Runtime.enable\"}");
+        assertEquals("{\"result\":{},\"id\":1}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":2,\"method\":\"HeapProfiler.enable\"}");
+        assertEquals("{\"result\":{},\"id\":2}", tester.getMessages(true).trim());
+        tester.sendMessage("{\"id\":3,\"method\":\"HeapProfiler.takeHeapSnapshot\"}");
+        assertEquals("{\"id\":3,\"error\":{\"code\":-32601,\"message\":\"A heap snapshot can be taken only when the execution is suspended.\"}}", tester.getMessages(true).trim());
+        assertFalse(tester.shouldWaitForClose());
+        tester.sendMessage("{\"id\":4,\"method\":\"HeapProfiler.startSampling\",\"params\":{\"samplingInterval\":0}}");
+        assertEquals("{\"result\":{},\"id\":4}", tester.getMessages(true).trim());
+        assertTrue(tester.shouldWaitForClose());
+        tester.eval(source).get();
+        tester.sendMessage("{\"id\":5,\"method\":\"HeapProfiler.stopSampling\"}");
+        JSONObject json = new JSONObject(tester.getMessages(true).trim());
+        assertEquals(json.getInt("id"), 5);
+        JSONObject jsonProfile = json.getJSONObject("result").getJSONObject("profile");
+        assertEquals(10, jsonProfile.getJSONArray("samples").length());
+        JSONObject head = jsonProfile.getJSONObject("head");
+        assertEquals("(root)", head.getJSONObject("callFrame").getString("functionName"));
+        JSONObject main = head.getJSONArray("children").getJSONObject(0);
+        assertEquals("main", main.getJSONObject("callFrame").getString("functionName"));
+        tester.sendMessage("{\"id\":6,\"method\":\"HeapProfiler.disable\"}");
+        assertEquals("{\"result\":{},\"id\":6}", tester.getMessages(true).trim());
+        tester.finish();
+    }
     // @formatter:on
     // CheckStyle: resume line length check
 }
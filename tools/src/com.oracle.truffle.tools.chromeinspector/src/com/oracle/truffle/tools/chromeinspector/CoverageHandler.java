@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.chromeinspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventBinding;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * A lightweight code coverage, which records only whether a function or a statement was executed.
+ * Every instrumentation node reports its execution once and then becomes empty, so that compiled
+ * code runs without any coverage overhead. Execution counts are therefore not available, covered
+ * sections report a count of one. Clearing the data starts a new generation of coverage, so that
+ * the nodes report their next execution again. Until the data is cleared for the first time the
+ * nodes are guarded by an assumption only, afterwards they compare the generation they were
+ * reported in with the current one. Clients polling the coverage therefore deoptimize the covered
+ * code once, and not on every poll.
+ */
+public final class CoverageHandler {
+
+    private final TruffleInstrument.Env env;
+    private EventBinding<CoverageEventFactory> binding;
+
+    public CoverageHandler(TruffleInstrument.Env env) {
+        this.env = env;
+    }
+
+    public synchronized boolean isStarted() {
+        return binding != null;
+    }
+
+    public synchronized void start(boolean detailed, boolean inspectInternal) {
+        if (binding == null) {
+            SourceSectionFilter filter = SourceSectionFilter.newBuilder().tagIs(detailed ? StandardTags.StatementTag.class : StandardTags.RootTag.class).includeInternal(inspectInternal).build();
+            binding = env.getInstrumenter().attachExecutionEventFactory(filter, new CoverageEventFactory(detailed));
+        }
+    }
+
+    public synchronized void stop() {
+        if (binding != null) {
+            binding.dispose();
+            binding = null;
+        }
+    }
+
+    /**
+     * Clears the covered sections and re-arms the nodes that have already reported their
+     * execution.
+     */
+    public synchronized void clearData() {
+        if (binding != null) {
+            binding.getElement().newGeneration();
+        }
+    }
+
+    public synchronized List<SectionCoverage> getCoveredSections() {
+        if (binding == null) {
+            return new ArrayList<>();
+        }
+        List<SectionCoverage> sections = new ArrayList<>(binding.getElement().covered.values());
+        sections.sort((s1, s2) -> Integer.compare(s1.sourceSection.getCharIndex(), s2.sourceSection.getCharIndex()));
+        return sections;
+    }
+
+    public static final class SectionCoverage {
+
+        private final SourceSection sourceSection;
+        private final String rootName;
+        private final boolean statement;
+        private final long count;
+
+        SectionCoverage(SourceSection sourceSection, String rootName, boolean statement, long count) {
+            this.sourceSection = sourceSection;
+            this.rootName = rootName;
+            this.statement = statement;
+            this.count = count;
+        }
+
+        public SourceSection getSourceSection() {
+            return sourceSection;
+        }
+
+        public String getRootName() {
+            return rootName;
+        }
+
+        public boolean isStatement() {
+            return statement;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public interface Provider {
+
+        CoverageHandler getCoverageHandler();
+    }
+
+    private static final class CoverageEventFactory implements ExecutionEventNodeFactory {
+
+        private final boolean detailed;
+        private final Map<SourceSection, SectionCoverage> covered = new ConcurrentHashMap<>();
+        private final Assumption singleGeneration = Truffle.getRuntime().createAssumption("Single coverage generation");
+        private volatile int generation;
+
+        CoverageEventFactory(boolean detailed) {
+            this.detailed = detailed;
+        }
+
+        /**
+         * Called with the {@link CoverageHandler} locked.
+         */
+        void newGeneration() {
+            // advance first, so that nodes reporting concurrently report again
+            generation = generation + 1;
+            singleGeneration.invalidate();
+            covered.clear();
+        }
+
+        @Override
+        public ExecutionEventNode create(EventContext context) {
+            return new CoverageNode(this, context);
+        }
+
+        /**
+         * Records the section as covered and returns the generation it was recorded in.
+         */
+        @CompilerDirectives.TruffleBoundary
+        int onCovered(EventContext context) {
+            int currentGeneration = generation;
+            SourceSection section = context.getInstrumentedSourceSection();
+            covered.computeIfAbsent(section, s -> new SectionCoverage(s, context.getInstrumentedNode().getRootNode().getName(), detailed, 1));
+            return currentGeneration;
+        }
+    }
+
+    private static final class CoverageNode extends ExecutionEventNode {
+
+        private final CoverageEventFactory factory;
+        private final EventContext context;
+        @CompilationFinal private boolean covered;
+        private int coveredIn = -1;
+
+        CoverageNode(CoverageEventFactory factory, EventContext context) {
+            this.factory = factory;
+            this.context = context;
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            if (factory.singleGeneration.isValid()) {
+                if (!covered) {
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    coveredIn = factory.onCovered(context);
+                    covered = true;
+                }
+            } else if (coveredIn != factory.generation) {
+                coveredIn = factory.onCovered(context);
+            }
+        }
+    }
+}
@@ -75,6 +75,7 @@ public final class InspectorExecutionContext {
     private volatile String lastLanguage = "js";
     private boolean synchronous = false;
     private boolean customObjectFormatterEnabled = false;
+    private volatile boolean sampledProfiling = false;
 
     public InspectorExecutionContext(String name, boolean inspectInternal, boolean inspectInitialization, TruffleInstrument.Env env, List<URI> sourceRoots, PrintWriter err) {
         this.name = name;
@@ -340,6 +341,18 @@ public final class InspectorExecutionContext {
         return synchronous;
     }
 
+    /**
+     * Use cheap coverage probes and sampled type profiles instead of instrumenting every execution.
+     * Coverage then tells only whether code was executed, not how many times.
+     */
+    public void setSampledProfiling(boolean sampledProfiling) {
+        this.sampledProfiling = sampledProfiling;
+    }
+
+    public boolean isSampledProfiling() {
+        return sampledProfiling;
+    }
+
     void setCustomObjectFormatterEnabled(boolean enabled) {
         this.customObjectFormatterEnabled = enabled;
     }
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.chromeinspector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.oracle.truffle.tools.utils.json.JSONArray;
+import com.oracle.truffle.tools.utils.json.JSONObject;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.Scope;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.debug.DebugException;
+import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameInstance;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+import com.oracle.truffle.api.interop.InteropException;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.nodes.LanguageInfo;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+import com.oracle.truffle.tools.chromeinspector.InspectorExecutionContext.NoSuspendedThreadException;
+import com.oracle.truffle.tools.chromeinspector.commands.Params;
+import com.oracle.truffle.tools.chromeinspector.domains.HeapProfilerDomain;
+import com.oracle.truffle.tools.chromeinspector.events.Event;
+import com.oracle.truffle.tools.chromeinspector.server.CommandProcessException;
+import com.oracle.truffle.tools.chromeinspector.server.ConnectionWatcher;
+import com.oracle.truffle.tools.chromeinspector.types.HeapSnapshot;
+import com.oracle.truffle.tools.chromeinspector.types.RuntimeCallFrame;
+import com.oracle.truffle.tools.chromeinspector.types.SamplingHeapProfileNode;
+import com.oracle.truffle.tools.chromeinspector.types.Script;
+
+import com.oracle.truffle.tools.profiler.MemoryTracer;
+import com.oracle.truffle.tools.profiler.ProfilerNode;
+import com.oracle.truffle.tools.profiler.impl.MemoryTracerInstrument;
+
+public final class InspectorHeapProfiler extends HeapProfilerDomain {
+
+    private static final InteropLibrary INTEROP = InteropLibrary.getFactory().getUncached();
+    // Approximate number of characters sent in one HeapProfiler.addHeapSnapshotChunk event
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int PROGRESS_STEP = 10000;
+    // Guards against languages that create new objects whenever a member is read
+    private static final int MAX_NODES = 1 << 24;
+    private static final int MAX_STRING_NAME_LENGTH = 1024;
+
+    private MemoryTracer tracer;
+    private ScriptsHandler slh;
+
+    private final InspectorExecutionContext context;
+    private final ConnectionWatcher connectionWatcher;
+
+    public InspectorHeapProfiler(InspectorExecutionContext context, ConnectionWatcher connectionWatcher) {
+        this.context = context;
+        this.connectionWatcher = connectionWatcher;
+    }
+
+    @Override
+    protected void doEnable() {
+        slh = context.acquireScriptsHandler();
+        tracer = context.getEnv().lookup(context.getEnv().getInstruments().get(MemoryTracerInstrument.ID), MemoryTracer.class);
+    }
+
+    @Override
+    protected void doDisable() {
+        if (slh != null) {
+            synchronized (tracer) {
+                if (tracer.isCollecting()) {
+                    tracer.setCollecting(false);
+                    tracer.clearData();
+                }
+            }
+            context.releaseScriptsHandler();
+            slh = null;
+            tracer = null;
+        }
+    }
+
+    @Override
+    public void takeHeapSnapshot(boolean reportProgress) throws CommandProcessException {
+        if (!context.isSynchronous() && context.getSuspendedInfo() == null) {
+            throw new CommandProcessException("A heap snapshot can be taken only when the execution is suspended.");
+        }
+        HeapSnapshot snapshot;
+        try {
+            snapshot = context.executeInSuspendThread(new SuspendThreadExecutable<HeapSnapshot>() {
+                @Override
+                public HeapSnapshot executeCommand() throws CommandProcessException {
+                    return new HeapWalker(reportProgress).walk(getRootLanguages());
+                }
+
+                @Override
+                public HeapSnapshot processException(DebugException dex) {
+                    return null;
+                }
+            });
+        } catch (NoSuspendedThreadException ex) {
+            throw new CommandProcessException(ex.getLocalizedMessage());
+        }
+        if (snapshot == null) {
+            throw new CommandProcessException("Failed to walk the heap.");
+        }
+        // The walk runs in the suspended thread, the serialization does not need it.
+        snapshot.write(chunk -> {
+            JSONObject json = new JSONObject();
+            json.put("chunk", chunk);
+            eventHandler.event(new Event("HeapProfiler.addHeapSnapshotChunk", new Params(json)));
+        });
+    }
+
+    private Collection<LanguageInfo> getRootLanguages() {
+        DebuggerSuspendedInfo suspendedInfo = context.getSuspendedInfo();
+        if (suspendedInfo != null) {
+            LanguageInfo language = suspendedInfo.getSuspendedEvent().getTopStackFrame().getLanguage();
+            if (language != null) {
+                return Collections.singletonList(language);
+            }
+        }
+        List<LanguageInfo> languages = new ArrayList<>();
+        for (LanguageInfo language : context.getEnv().getLanguages().values()) {
+            if (!language.isInternal()) {
+                languages.add(language);
+            }
+        }
+        return languages;
+    }
+
+    private void reportProgress(int done, int total, boolean finished) {
+        JSONObject json = new JSONObject();
+        json.put("done", done);
+        json.put("total", total);
+        if (finished) {
+            json.put("finished", true);
+        }
+        eventHandler.event(new Event("HeapProfiler.reportHeapSnapshotProgress", new Params(json)));
+    }
+
+    /**
+     * Builds the heap graph of guest objects reachable through interop members and array elements
+     * from the top scopes of languages. Sizes are estimates, the actual memory layout of guest
+     * objects is not known.
+     */
+    private final class HeapWalker {
+
+        private final boolean reportProgress;
+        private final HeapSnapshot snapshot = new HeapSnapshot(CHUNK_SIZE);
+        private final Map<Object, Integer> objectNodes = new IdentityHashMap<>();
+        // Strings, numbers, booleans and nulls are values, one node per distinct value
+        private final Map<String, Integer> stringNodes = new HashMap<>();
+        private final Map<String, Integer> primitiveNodes = new HashMap<>();
+        // Objects whose edges were not added yet, in the order of their nodes
+        private final ArrayDeque<Object> toExpand = new ArrayDeque<>();
+
+        HeapWalker(boolean reportProgress) {
+            this.reportProgress = reportProgress;
+        }
+
+        HeapSnapshot walk(Collection<LanguageInfo> languages) {
+            int root = snapshot.addNode(HeapSnapshot.NODE_SYNTHETIC, "(GC roots)", 0);
+            for (LanguageInfo language : languages) {
+                for (Scope scope : context.getEnv().findTopScopes(language.getId())) {
+                    Object variables = scope.getVariables();
+                    if (variables != null) {
+                        snapshot.addEdge(root, HeapSnapshot.EDGE_INTERNAL, language.getName() + " " + scope.getName(), nodeOf(variables));
+                    }
+                }
+            }
+            addStackRoots(root);
+            int expanded = 0;
+            while (!toExpand.isEmpty()) {
+                Object object = toExpand.pollFirst();
+                expand(objectNodes.get(object), object);
+                if (reportProgress && ++expanded % PROGRESS_STEP == 0) {
+                    reportProgress(expanded, expanded + toExpand.size(), false);
+                }
+            }
+            if (reportProgress) {
+                reportProgress(expanded, expanded, true);
+            }
+            return snapshot;
+        }
+
+        /**
+         * Adds the local scopes of the guest frames on the current stack as roots. This needs to be
+         * called on the suspended thread.
+         */
+        private void addStackRoots(int root) {
+            TruffleInstrument.Env env = context.getEnv();
+            DebuggerSuspendedInfo suspendedInfo = context.getSuspendedInfo();
+            SourceSection suspendedAt = suspendedInfo != null ? suspendedInfo.getSuspendedEvent().getSourceSection() : null;
+            Truffle.getRuntime().iterateFrames(frameInstance -> {
+                Node node = frameInstance.getCallNode();
+                if (node == null) {
+                    // The top frame, the current node is known to the debugger only
+                    CallTarget target = frameInstance.getCallTarget();
+                    if (!(target instanceof RootCallTarget)) {
+                        return null;
+                    }
+                    node = findNodeAt(((RootCallTarget) target).getRootNode(), suspendedAt);
+                }
+                RootNode rootNode = node.getRootNode();
+                if (rootNode == null || rootNode.getLanguageInfo() == null || (rootNode.isInternal() && !context.isInspectInternal())) {
+                    return null;
+                }
+                String rootName = rootNode.getName() != null ? rootNode.getName() : "(anonymous)";
+                Frame frame = frameInstance.getFrame(FrameInstance.FrameAccess.READ_ONLY);
+                for (Scope scope : env.findLocalScopes(node, frame)) {
+                    Object arguments = scope.getArguments();
+                    if (arguments != null) {
+                        snapshot.addEdge(root, HeapSnapshot.EDGE_INTERNAL, rootName + " " + scope.getName() + " (arguments)", nodeOf(arguments));
+                    }
+                    Object variables = scope.getVariables();
+                    if (variables != null) {
+                        snapshot.addEdge(root, HeapSnapshot.EDGE_INTERNAL, rootName + " " + scope.getName(), nodeOf(variables));
+                    }
+                }
+                return null;
+            });
+        }
+
+        private Node findNodeAt(RootNode rootNode, SourceSection section) {
+            Node[] found = new Node[]{rootNode};
+            if (section != null) {
+                rootNode.accept(node -> {
+                    if (section.equals(node.getSourceSection())) {
+                        found[0] = node;
+                        return false;
+                    }
+                    return true;
+                });
+            }
+            return found[0];
+        }
+
+        private int nodeOf(Object value) {
+            if (INTEROP.isString(value)) {
+                String string;
+                try {
+                    string = INTEROP.asString(value);
+                } catch (InteropException ex) {
+                    string = "";
+                }
+                Integer node = stringNodes.get(string);
+                if (node == null) {
+                    int length = string.length();
+                    String name = length > MAX_STRING_NAME_LENGTH ? string.substring(0, MAX_STRING_NAME_LENGTH) + "..." : string;
+                    node = snapshot.addNode(HeapSnapshot.NODE_STRING, name, 16 + 2L * length);
+                    stringNodes.put(string, node);
+                }
+                return node;
+            }
+            if (INTEROP.isNumber(value) || INTEROP.isBoolean(value) || INTEROP.isNull(value)) {
+                int type = INTEROP.isNumber(value) ? HeapSnapshot.NODE_NUMBER : HeapSnapshot.NODE_HIDDEN;
+                String name = toDisplayString(value);
+                String key = type + ":" + name;
+                Integer node = primitiveNodes.get(key);
+                if (node == null) {
+                    node = snapshot.addNode(type, name, 16);
+                    primitiveNodes.put(key, node);
+                }
+                return node;
+            }
+            Integer node = objectNodes.get(value);
+            if (node == null) {
+                int type;
+                if (INTEROP.isExecutable(value)) {
+                    type = HeapSnapshot.NODE_CLOSURE;
+                } else if (INTEROP.hasArrayElements(value) && !INTEROP.hasMembers(value)) {
+                    type = HeapSnapshot.NODE_ARRAY;
+                } else {
+                    type = HeapSnapshot.NODE_OBJECT;
+                }
+                node = snapshot.addNode(type, getMetaObjectName(value), 0);
+                objectNodes.put(value, node);
+                if (snapshot.getNodeCount() < MAX_NODES) {
+                    toExpand.addLast(value);
+                }
+            }
+            return node;
+        }
+
+        private void expand(int node, Object object) {
+            long references = 0;
+            if (INTEROP.hasMembers(object)) {
+                try {
+                    Object keys = INTEROP.getMembers(object);
+                    long size = INTEROP.getArraySize(keys);
+                    for (long i = 0; i < size; i++) {
+                        String key = INTEROP.asString(INTEROP.readArrayElement(keys, i));
+                        if (INTEROP.isMemberReadable(object, key)) {
+                            Object value = INTEROP.readMember(object, key);
+                            snapshot.addEdge(node, HeapSnapshot.EDGE_PROPERTY, key, nodeOf(value));
+                            references++;
+                        }
+                    }
+                } catch (InteropException ex) {
+                    // Members changed concurrently, or are not readable. Keep what we have.
+                }
+            }
+            if (INTEROP.hasArrayElements(object)) {
+                try {
+                    long size = INTEROP.getArraySize(object);
+                    for (long i = 0; i < size && i <= Integer.MAX_VALUE; i++) {
+                        if (INTEROP.isArrayElementReadable(object, i)) {
+                            Object value = INTEROP.readArrayElement(object, i);
+                            snapshot.addElementEdge(node, (int) i, nodeOf(value));
+                            references++;
+                        }
+                    }
+                } catch (InteropException ex) {
+                    // Elements changed concurrently, or are not readable. Keep what we have.
+                }
+            }
+            snapshot.setSelfSize(node, 16 + 8 * references);
+        }
+
+        private String getMetaObjectName(Object value) {
+            TruffleInstrument.Env env = context.getEnv();
+            LanguageInfo language = env.findLanguage(value);
+            if (language != null) {
+                Object metaObject = env.findMetaObject(language, value);
+                if (metaObject != null) {
+                    return env.toString(language, metaObject);
+                }
+            }
+            return "Object";
+        }
+
+        private String toDisplayString(Object value) {
+            TruffleInstrument.Env env = context.getEnv();
+            LanguageInfo language = env.findLanguage(value);
+            if (language != null) {
+                return env.toString(language, value);
+            }
+            return String.valueOf(value);
+        }
+    }
+
+    @Override
+    public void startSampling(long samplingInterval) {
+        connectionWatcher.setWaitForClose();
+        synchronized (tracer) {
+            tracer.setCollecting(false);
+            tracer.clearData();
+            tracer.setSampleInterval(Math.max(0, samplingInterval));
+            tracer.setFilter(SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class).includeInternal(context.isInspectInternal()).build());
+            tracer.setCollecting(true);
+        }
+    }
+
+    @Override
+    public Params stopSampling() {
+        synchronized (tracer) {
+            Params profile = getSamplingProfile();
+            tracer.setCollecting(false);
+            tracer.clearData();
+            return profile;
+        }
+    }
+
+    @Override
+    public Params getSamplingProfile() {
+        synchronized (tracer) {
+            JSONArray samples = new JSONArray();
+            int[] counter = new int[]{1};
+            SamplingHeapProfileNode head = new SamplingHeapProfileNode(counter[0]++, new RuntimeCallFrame("(root)", 0, "", 0, 0), 0);
+            long interval = tracer.getSampleInterval();
+            for (ProfilerNode<MemoryTracer.Payload> node : tracer.getRootNodes()) {
+                head.addChild(createNode(node, interval, counter, samples));
+            }
+            JSONObject profile = new JSONObject();
+            profile.put("head", head.toJSON());
+            profile.put("samples", samples);
+            JSONObject json = new JSONObject();
+            json.put("profile", profile);
+            return new Params(json);
+        }
+    }
+
+    private SamplingHeapProfileNode createNode(ProfilerNode<MemoryTracer.Payload> profilerNode, long interval, int[] counter, JSONArray samples) {
+        int id = counter[0]++;
+        long selfSize = 0;
+        for (MemoryTracer.AllocationEventInfo info : profilerNode.getPayload().getEvents()) {
+            // a sampled allocation stands for all the bytes allocated since the previous sample
+            long size = Math.max(Math.max(info.getAllocated(), 0), interval);
+            selfSize += size;
+            JSONObject sample = new JSONObject();
+            sample.put("size", size);
+            sample.put("nodeId", id);
+            sample.put("ordinal", samples.length() + 1);
+            samples.put(sample);
+        }
+        SourceSection sourceSection = profilerNode.getSourceSection();
+        int scriptId = slh.getScriptId(sourceSection.getSource());
+        Script script = scriptId < 0 ? null : slh.getScript(scriptId);
+        RuntimeCallFrame callFrame = new RuntimeCallFrame(profilerNode.getRootName(), script != null ? script.getId() : 0, script != null ? script.getUrl() : "",
+                        sourceSection.getStartLine(), sourceSection.getStartColumn());
+        SamplingHeapProfileNode node = new SamplingHeapProfileNode(id, callFrame, selfSize);
+        for (ProfilerNode<MemoryTracer.Payload> child : profilerNode.getChildren()) {
+            node.addChild(createNode(child, interval, counter, samples));
+        }
+        return node;
+    }
+
+    @Override
+    public void collectGarbage() {
+        System.gc();
+    }
+}
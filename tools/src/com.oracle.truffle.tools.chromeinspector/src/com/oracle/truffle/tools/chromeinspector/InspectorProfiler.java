@@ -68,9 +68,13 @@ import com.oracle.truffle.tools.profiler.impl.CPUTracerInstrument;
 
 public final class InspectorProfiler extends ProfilerDomain {
 
+    // Only every n-th call of a function is type profiled in the sampled profiling mode
+    private static final int TYPE_PROFILE_SAMPLE_PERIOD = 16;
+
     private CPUSampler sampler;
     private CPUTracer tracer;
     private TypeHandler typeHandler;
+    private CoverageHandler coverageHandler;
     private ScriptsHandler slh;
     private long startTimestamp;
     private boolean oldGatherSelfHitTimes;
@@ -93,6 +97,7 @@ public final class InspectorProfiler extends ProfilerDomain {
         this.enabler = context.getEnv().lookup(instrumentInfo, Enabler.class);
         enabler.enable();
         typeHandler = context.getEnv().lookup(instrumentInfo, TypeHandler.Provider.class).getTypeHandler();
+        coverageHandler = context.getEnv().lookup(instrumentInfo, CoverageHandler.Provider.class).getCoverageHandler();
     }
 
     @Override
@@ -103,6 +108,7 @@ public final class InspectorProfiler extends ProfilerDomain {
             sampler = null;
             tracer = null;
             typeHandler = null;
+            coverageHandler = null;
             enabler.disable();
             enabler = null;
         }
@@ -142,6 +148,10 @@ public final class InspectorProfiler extends ProfilerDomain {
     @Override
     public void startPreciseCoverage(boolean callCount, boolean detailed) {
         connectionWatcher.setWaitForClose();
+        if (context.isSampledProfiling()) {
+            coverageHandler.start(detailed, context.isInspectInternal());
+            return;
+        }
         synchronized (tracer) {
             tracer.setFilter(SourceSectionFilter.newBuilder().tagIs(detailed ? StandardTags.StatementTag.class : StandardTags.RootTag.class).includeInternal(context.isInspectInternal()).build());
             tracer.setCollecting(true);
@@ -150,6 +160,7 @@ public final class InspectorProfiler extends ProfilerDomain {
 
     @Override
     public void stopPreciseCoverage() {
+        coverageHandler.stop();
         synchronized (tracer) {
             tracer.setCollecting(false);
             tracer.clearData();
@@ -158,17 +169,29 @@ public final class InspectorProfiler extends ProfilerDomain {
 
     @Override
     public Params takePreciseCoverage() {
-        synchronized (tracer) {
-            Params coverage = getCoverage(tracer.getPayloads());
-            tracer.clearData();
-            return coverage;
-        }
+        return takeCoverage();
     }
 
     @Override
     public Params getBestEffortCoverage() {
+        return takeCoverage();
+    }
+
+    private Params takeCoverage() {
+        synchronized (coverageHandler) {
+            if (coverageHandler.isStarted()) {
+                Params coverage = getCoverage(coverageHandler.getCoveredSections());
+                coverageHandler.clearData();
+                return coverage;
+            }
+        }
         synchronized (tracer) {
-            Params coverage = getCoverage(tracer.getPayloads());
+            List<CoverageHandler.SectionCoverage> sections = new ArrayList<>();
+            for (CPUTracer.Payload payload : tracer.getPayloads()) {
+                sections.add(new CoverageHandler.SectionCoverage(payload.getSourceSection(), payload.getRootName(), payload.getTags().contains(StandardTags.StatementTag.class),
+                                payload.getCount()));
+            }
+            Params coverage = getCoverage(sections);
             tracer.clearData();
             return coverage;
         }
@@ -177,7 +200,7 @@ public final class InspectorProfiler extends ProfilerDomain {
     @Override
     public void startTypeProfile() {
         connectionWatcher.setWaitForClose();
-        typeHandler.start(context.isInspectInternal());
+        typeHandler.start(context.isInspectInternal(), context.isSampledProfiling() ? TYPE_PROFILE_SAMPLE_PERIOD : 1);
     }
 
     @Override
@@ -197,13 +220,13 @@ public final class InspectorProfiler extends ProfilerDomain {
         }
     }
 
-    private Params getCoverage(Collection<CPUTracer.Payload> payloads) {
+    private Params getCoverage(Collection<CoverageHandler.SectionCoverage> sections) {
         JSONObject json = new JSONObject();
-        Map<Source, Map<String, Collection<CPUTracer.Payload>>> sourceToRoots = new LinkedHashMap<>();
-        payloads.forEach(payload -> {
-            Map<String, Collection<CPUTracer.Payload>> rootsToPayloads = sourceToRoots.computeIfAbsent(payload.getSourceSection().getSource(), s -> new LinkedHashMap<>());
-            Collection<CPUTracer.Payload> pls = rootsToPayloads.computeIfAbsent(payload.getRootName(), t -> new LinkedList<>());
-            pls.add(payload);
+        Map<Source, Map<String, Collection<CoverageHandler.SectionCoverage>>> sourceToRoots = new LinkedHashMap<>();
+        sections.forEach(section -> {
+            Map<String, Collection<CoverageHandler.SectionCoverage>> rootsToSections = sourceToRoots.computeIfAbsent(section.getSourceSection().getSource(), s -> new LinkedHashMap<>());
+            Collection<CoverageHandler.SectionCoverage> scs = rootsToSections.computeIfAbsent(section.getRootName(), t -> new LinkedList<>());
+            scs.add(section);
         });
         JSONArray result = new JSONArray();
         sourceToRoots.entrySet().stream().map(sourceEntry -> {
@@ -211,9 +234,9 @@ public final class InspectorProfiler extends ProfilerDomain {
             sourceEntry.getValue().entrySet().forEach(rootEntry -> {
                 boolean isBlockCoverage = false;
                 List<CoverageRange> ranges = new ArrayList<>();
-                for (CPUTracer.Payload payload : rootEntry.getValue()) {
-                    isBlockCoverage |= payload.getTags().contains(StandardTags.StatementTag.class);
-                    ranges.add(new CoverageRange(payload.getSourceSection().getCharIndex(), payload.getSourceSection().getCharEndIndex(), payload.getCount()));
+                for (CoverageHandler.SectionCoverage section : rootEntry.getValue()) {
+                    isBlockCoverage |= section.isStatement();
+                    ranges.add(new CoverageRange(section.getSourceSection().getCharIndex(), section.getSourceSection().getCharEndIndex(), section.getCount()));
                 }
                 functions.add(new FunctionCoverage(rootEntry.getKey(), isBlockCoverage, ranges.toArray(new CoverageRange[ranges.size()])));
             });
@@ -70,10 +70,18 @@ public final class TypeHandler {
     }
 
     public boolean start(boolean inspectInternal) {
+        return start(inspectInternal, 1);
+    }
+
+    /**
+     * Starts the type profiling, where arguments and return values of every
+     * <code>samplePeriod</code>-th call of a function are profiled.
+     */
+    public boolean start(boolean inspectInternal, int samplePeriod) {
         if (currentBinding.get() == null) {
             final SourceSectionFilter filter = SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class).includeInternal(inspectInternal).build();
             final Instrumenter instrumenter = env.getInstrumenter();
-            final EventBinding<TypeProfileEventFactory> binding = instrumenter.attachExecutionEventFactory(filter, new TypeProfileEventFactory());
+            final EventBinding<TypeProfileEventFactory> binding = instrumenter.attachExecutionEventFactory(filter, new TypeProfileEventFactory(samplePeriod));
             if (currentBinding.compareAndSet(null, binding)) {
                 return true;
             } else {
@@ -130,29 +138,42 @@ public final class TypeHandler {
     private final class TypeProfileEventFactory implements ExecutionEventNodeFactory {
 
         private final Map<SourceSection, SectionTypeProfile> profileMap;
+        private final int samplePeriod;
 
-        private TypeProfileEventFactory() {
+        private TypeProfileEventFactory(int samplePeriod) {
             this.profileMap = new ConcurrentHashMap<>();
+            this.samplePeriod = samplePeriod;
         }
 
         @Override
         public ExecutionEventNode create(final EventContext context) {
             return new ExecutionEventNode() {
 
+                // Racy updates from multiple threads only shift the samples.
+                private int enterCountDown;
+                private int returnCountDown;
+
                 @Override
                 protected void onEnter(VirtualFrame frame) {
                     super.onEnter(frame);
-                    final Node rootNode = context.getInstrumentedNode();
-                    final SourceSection section = context.getInstrumentedSourceSection();
-                    processArguments(frame.materialize(), rootNode, section);
+                    if (--enterCountDown < 0) {
+                        // The frame is materialized on the sampling path only.
+                        enterCountDown = samplePeriod - 1;
+                        final Node rootNode = context.getInstrumentedNode();
+                        final SourceSection section = context.getInstrumentedSourceSection();
+                        processArguments(frame.materialize(), rootNode, section);
+                    }
                 }
 
                 @Override
                 protected void onReturnValue(VirtualFrame frame, Object result) {
                     super.onReturnValue(frame, result);
-                    final Node rootNode = context.getInstrumentedNode();
-                    final SourceSection section = context.getInstrumentedSourceSection();
-                    processReturnValue(result, rootNode, section);
+                    if (--returnCountDown < 0) {
+                        returnCountDown = samplePeriod - 1;
+                        final Node rootNode = context.getInstrumentedNode();
+                        final SourceSection section = context.getInstrumentedSourceSection();
+                        processReturnValue(result, rootNode, section);
+                    }
                 }
 
                 @CompilerDirectives.TruffleBoundary
@@ -191,6 +191,9 @@ public final class InspectorInstrument extends TruffleInstrument {
     @com.oracle.truffle.api.Option(help = "Inspect language initialization. (default:false)", category = OptionCategory.INTERNAL) //
     static final OptionKey<Boolean> Initialization = new OptionKey<>(false);
 
+    @com.oracle.truffle.api.Option(help = "Collect code coverage and type profiles with lightweight probes and sampling, coverage tells only whether code was executed. (default:false)", category = OptionCategory.EXPERT) //
+    static final OptionKey<Boolean> SampledProfiling = new OptionKey<>(false);
+
     @com.oracle.truffle.api.Option(help = "Use TLS/SSL. (default: false for loopback address, true otherwise)", category = OptionCategory.USER, stability = OptionStability.STABLE) //
     static final OptionKey<Boolean> Secure = new OptionKey<>(true);
 
@@ -257,7 +260,9 @@ public final class InspectorInstrument extends TruffleInstrument {
                     return server.getConnection().getExecutionContext();
                 } else {
                     PrintWriter err = (options.get(HideErrors)) ? null : new PrintWriter(env.err(), true);
-                    return new InspectorExecutionContext("Main Context", options.get(Internal), options.get(Initialization), env, Collections.emptyList(), err);
+                    InspectorExecutionContext context = new InspectorExecutionContext("Main Context", options.get(Internal), options.get(Initialization), env, Collections.emptyList(), err);
+                    context.setSampledProfiling(options.get(SampledProfiling));
+                    return context;
                 }
             }
         }));
@@ -398,6 +403,7 @@ public final class InspectorInstrument extends TruffleInstrument {
 
             PrintWriter err = (hideErrors) ? null : info;
             executionContext = new InspectorExecutionContext(contextName, inspectInternal, inspectInitialization, env, sourcePath, err);
+            executionContext.setSampledProfiling(env.getOptions().get(SampledProfiling));
             if (attach) {
                 wss = new InspectWSClient(socketAddress, wsspath, executionContext, debugBreak, secure, keyStoreOptions, connectionWatcher, info);
                 wsURL = ((InspectWSClient) wss).getURI().toString();
@@ -26,15 +26,17 @@ package com.oracle.truffle.tools.chromeinspector.instrument;
 
 import com.oracle.truffle.api.instrumentation.TruffleInstrument;
 
+import com.oracle.truffle.tools.chromeinspector.CoverageHandler;
 import com.oracle.truffle.tools.chromeinspector.TypeHandler;
 
-@TruffleInstrument.Registration(id = TypeProfileInstrument.ID, services = {Enabler.class, TypeHandler.Provider.class}, internal = true)
-public final class TypeProfileInstrument extends TruffleInstrument implements Enabler, TypeHandler.Provider {
+@TruffleInstrument.Registration(id = TypeProfileInstrument.ID, services = {Enabler.class, TypeHandler.Provider.class, CoverageHandler.Provider.class}, internal = true)
+public final class TypeProfileInstrument extends TruffleInstrument implements Enabler, TypeHandler.Provider, CoverageHandler.Provider {
 
     public static final String ID = "TypeProfileInstrument";
 
     private Env env;
     private TypeHandler th;
+    private CoverageHandler ch;
 
     @Override
     protected void onCreate(Env e) {
@@ -53,11 +55,18 @@ public final class TypeProfileInstrument extends TruffleInstrument implements En
         if (th == null) {
             th = new TypeHandler(env);
         }
+        if (ch == null) {
+            ch = new CoverageHandler(env);
+        }
     }
 
     @Override
     public void disable() {
         th = null;
+        if (ch != null) {
+            ch.stop();
+            ch = null;
+        }
     }
 
     @Override
@@ -65,4 +74,9 @@ public final class TypeProfileInstrument extends TruffleInstrument implements En
         return th;
     }
 
+    @Override
+    public CoverageHandler getCoverageHandler() {
+        return ch;
+    }
+
 }
@@ -43,6 +43,7 @@ import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.interop.UnsupportedTypeException;
 import com.oracle.truffle.tools.chromeinspector.InspectorDebugger;
 import com.oracle.truffle.tools.chromeinspector.InspectorExecutionContext;
+import com.oracle.truffle.tools.chromeinspector.InspectorHeapProfiler;
 import com.oracle.truffle.tools.chromeinspector.InspectorProfiler;
 import com.oracle.truffle.tools.chromeinspector.InspectorRuntime;
 import com.oracle.truffle.tools.chromeinspector.commands.Command;
@@ -51,6 +52,7 @@ import com.oracle.truffle.tools.chromeinspector.commands.Params;
 import com.oracle.truffle.tools.chromeinspector.commands.Result;
 import com.oracle.truffle.tools.chromeinspector.domains.DebuggerDomain;
 import com.oracle.truffle.tools.chromeinspector.domains.Domain;
+import com.oracle.truffle.tools.chromeinspector.domains.HeapProfilerDomain;
 import com.oracle.truffle.tools.chromeinspector.domains.ProfilerDomain;
 import com.oracle.truffle.tools.chromeinspector.domains.RuntimeDomain;
 import com.oracle.truffle.tools.chromeinspector.events.Event;
@@ -60,9 +62,13 @@ import com.oracle.truffle.tools.chromeinspector.types.Location;
 
 public final class InspectServerSession implements MessageEndpoint {
 
+    // The default of the protocol, in bytes
+    private static final long DEFAULT_HEAP_SAMPLING_INTERVAL = 32768;
+
     private final RuntimeDomain runtime;
     private final DebuggerDomain debugger;
     private final ProfilerDomain profiler;
+    private final HeapProfilerDomain heapProfiler;
     private final ReadWriteLock domainLock;
     final InspectorExecutionContext context;
     private volatile MessageEndpoint messageEndpoint;
@@ -70,11 +76,12 @@ public final class InspectServerSession implements MessageEndpoint {
     private volatile CommandProcessThread processThread;
     private Runnable onClose;
 
-    private InspectServerSession(RuntimeDomain runtime, DebuggerDomain debugger, ProfilerDomain profiler,
+    private InspectServerSession(RuntimeDomain runtime, DebuggerDomain debugger, ProfilerDomain profiler, HeapProfilerDomain heapProfiler,
                     InspectorExecutionContext context, ReadWriteLock domainLock) {
         this.runtime = runtime;
         this.debugger = debugger;
         this.profiler = profiler;
+        this.heapProfiler = heapProfiler;
         this.context = context;
         this.domainLock = domainLock;
     }
@@ -84,7 +91,8 @@ public final class InspectServerSession implements MessageEndpoint {
         RuntimeDomain runtime = new InspectorRuntime(context);
         DebuggerDomain debugger = new InspectorDebugger(context, debugBreak, domainLock);
         ProfilerDomain profiler = new InspectorProfiler(context, connectionWatcher);
-        return new InspectServerSession(runtime, debugger, profiler, context, domainLock);
+        HeapProfilerDomain heapProfiler = new InspectorHeapProfiler(context, connectionWatcher);
+        return new InspectServerSession(runtime, debugger, profiler, heapProfiler, context, domainLock);
     }
 
     public void onClose(Runnable onCloseTask) {
@@ -100,6 +108,7 @@ public final class InspectServerSession implements MessageEndpoint {
             runtime.disable();
             debugger.disable();
             profiler.disable();
+            heapProfiler.disable();
         } finally {
             lock.unlock();
         }
@@ -127,6 +136,7 @@ public final class InspectServerSession implements MessageEndpoint {
             runtime.setEventHandler(eh);
             debugger.setEventHandler(eh);
             profiler.setEventHandler(eh);
+            heapProfiler.setEventHandler(eh);
             processThread = new CommandProcessThread();
             processThread.start();
         }
@@ -139,6 +149,7 @@ public final class InspectServerSession implements MessageEndpoint {
             runtime.setEventHandler(eh);
             debugger.setEventHandler(eh);
             profiler.setEventHandler(eh);
+            heapProfiler.setEventHandler(eh);
             processThread = new CommandProcessThread();
             processThread.start();
         }
@@ -191,6 +202,8 @@ public final class InspectServerSession implements MessageEndpoint {
                 return runtime;
             case "Profiler":
                 return profiler;
+            case "HeapProfiler":
+                return heapProfiler;
             case "Schema":
                 return null;
             default:
@@ -489,6 +502,29 @@ public final class InspectServerSession implements MessageEndpoint {
             case "Profiler.takeTypeProfile":
                 resultParams = profiler.takeTypeProfile();
                 break;
+            case "HeapProfiler.enable":
+                heapProfiler.enable();
+                break;
+            case "HeapProfiler.disable":
+                heapProfiler.disable();
+                break;
+            case "HeapProfiler.takeHeapSnapshot":
+                params = cmd.getParams();
+                heapProfiler.takeHeapSnapshot(params != null && params.getJSONObject().optBoolean("reportProgress"));
+                break;
+            case "HeapProfiler.startSampling":
+                params = cmd.getParams();
+                heapProfiler.startSampling(params != null ? params.getJSONObject().optLong("samplingInterval", DEFAULT_HEAP_SAMPLING_INTERVAL) : DEFAULT_HEAP_SAMPLING_INTERVAL);
+                break;
+            case "HeapProfiler.stopSampling":
+                resultParams = heapProfiler.stopSampling();
+                break;
+            case "HeapProfiler.getSamplingProfile":
+                resultParams = heapProfiler.getSamplingProfile();
+                break;
+            case "HeapProfiler.collectGarbage":
+                heapProfiler.collectGarbage();
+                break;
             case "Schema.getDomains":
                 resultParams = getDomains();
                 break;
@@ -503,6 +539,7 @@ public final class InspectServerSession implements MessageEndpoint {
         domains.put(createJsonDomain("Runtime"));
         domains.put(createJsonDomain("Debugger"));
         domains.put(createJsonDomain("Profiler"));
+        domains.put(createJsonDomain("HeapProfiler"));
         domains.put(createJsonDomain("Schema"));
         JSONObject domainsObj = new JSONObject();
         domainsObj.put("domains", domains);
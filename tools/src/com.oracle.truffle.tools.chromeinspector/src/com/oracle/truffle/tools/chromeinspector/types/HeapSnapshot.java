@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.chromeinspector.types;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.oracle.truffle.tools.utils.json.JSONObject;
+
+/**
+ * A heap graph in the compact form of the V8 heap snapshot. Nodes and edges are kept in plain int
+ * arrays and the snapshot is serialized in chunks of limited size, so that it never needs to be
+ * materialized as a single JSON string.
+ * <p>
+ * Edges need to be added for one node after another, in the order in which the nodes were added.
+ */
+public final class HeapSnapshot {
+
+    public static final int NODE_HIDDEN = 0;
+    public static final int NODE_ARRAY = 1;
+    public static final int NODE_STRING = 2;
+    public static final int NODE_OBJECT = 3;
+    public static final int NODE_CODE = 4;
+    public static final int NODE_CLOSURE = 5;
+    public static final int NODE_NUMBER = 7;
+    public static final int NODE_SYNTHETIC = 9;
+
+    public static final int EDGE_ELEMENT = 1;
+    public static final int EDGE_PROPERTY = 2;
+    public static final int EDGE_INTERNAL = 3;
+
+    private static final String META = "{\"node_fields\":[\"type\",\"name\",\"id\",\"self_size\",\"edge_count\",\"trace_node_id\"]," +
+                    "\"node_types\":[[\"hidden\",\"array\",\"string\",\"object\",\"code\",\"closure\",\"regexp\",\"number\",\"native\",\"synthetic\"," +
+                    "\"concatenated string\",\"sliced string\",\"symbol\",\"bigint\"],\"string\",\"number\",\"number\",\"number\",\"number\"]," +
+                    "\"edge_fields\":[\"type\",\"name_or_index\",\"to_node\"]," +
+                    "\"edge_types\":[[\"context\",\"element\",\"property\",\"internal\",\"hidden\",\"shortcut\",\"weak\"],\"string_or_number\",\"node\"]," +
+                    "\"trace_function_info_fields\":[],\"trace_node_fields\":[],\"sample_fields\":[],\"location_fields\":[]}";
+    private static final int NODE_FIELDS = 6;
+    private static final int EDGE_FIELDS = 3;
+
+    private final int chunkSize;
+    private int[] nodes = new int[NODE_FIELDS * 1024];
+    private int nodeCount;
+    private int[] edges = new int[EDGE_FIELDS * 4096];
+    private int edgeCount;
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private String[] strings = new String[1024];
+    private int stringCount;
+
+    /**
+     * @param chunkSize the approximate number of characters of a serialized chunk
+     */
+    public HeapSnapshot(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Adds a node with no edges yet.
+     *
+     * @return the index of the new node
+     */
+    public int addNode(int type, String name, long selfSize) {
+        if (nodeCount * NODE_FIELDS == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length << 1);
+        }
+        int offset = nodeCount * NODE_FIELDS;
+        nodes[offset] = type;
+        nodes[offset + 1] = stringIndex(name);
+        nodes[offset + 2] = 2 * nodeCount + 1;   // odd IDs, like V8 uses for heap objects
+        nodes[offset + 3] = (int) Math.min(selfSize, Integer.MAX_VALUE);
+        return nodeCount++;
+    }
+
+    /**
+     * Sets the self size of a node that was not known when the node was added.
+     */
+    public void setSelfSize(int node, long selfSize) {
+        nodes[node * NODE_FIELDS + 3] = (int) Math.min(selfSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds a named edge from the <code>from</code> node, which must be the last node that edges were
+     * added to, or the first one that has not got any edges yet.
+     */
+    public void addEdge(int from, int type, String name, int to) {
+        addEdgeImpl(from, type, stringIndex(name), to);
+    }
+
+    /**
+     * Adds an indexed element edge, see {@link #addEdge(int, int, String, int)}.
+     */
+    public void addElementEdge(int from, int index, int to) {
+        addEdgeImpl(from, EDGE_ELEMENT, index, to);
+    }
+
+    private void addEdgeImpl(int from, int type, int nameOrIndex, int to) {
+        if (edgeCount * EDGE_FIELDS == edges.length) {
+            edges = Arrays.copyOf(edges, edges.length << 1);
+        }
+        int offset = edgeCount * EDGE_FIELDS;
+        edges[offset] = type;
+        edges[offset + 1] = nameOrIndex;
+        edges[offset + 2] = to * NODE_FIELDS;   // to_node is an index into the nodes array
+        edgeCount++;
+        nodes[from * NODE_FIELDS + 4]++;
+    }
+
+    private int stringIndex(String string) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount << 1);
+            }
+            index = stringCount;
+            strings[stringCount++] = string;
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * Serializes the snapshot as JSON, handing over chunks of approximately the configured size to
+     * the consumer.
+     */
+    public void write(Consumer<String> chunkConsumer) {
+        ChunkWriter out = new ChunkWriter(chunkConsumer);
+        out.append("{\"snapshot\":{\"meta\":").append(META);
+        out.append(",\"node_count\":").append(nodeCount);
+        out.append(",\"edge_count\":").append(edgeCount);
+        out.append(",\"trace_function_count\":0},\n\"nodes\":[");
+        writeInts(out, nodes, nodeCount, NODE_FIELDS);
+        out.append("],\n\"edges\":[");
+        writeInts(out, edges, edgeCount, EDGE_FIELDS);
+        out.append("],\n\"trace_function_infos\":[],\n\"trace_tree\":[],\n\"samples\":[],\n\"locations\":[],\n\"strings\":[");
+        for (int i = 0; i < stringCount; i++) {
+            if (i > 0) {
+                out.append(",\n");
+            }
+            out.append(JSONObject.quote(strings[i]));
+        }
+        out.append("]}");
+        out.flush();
+    }
+
+    private static void writeInts(ChunkWriter out, int[] array, int count, int fields) {
+        for (int i = 0; i < count; i++) {
+            int offset = i * fields;
+            if (i > 0) {
+                out.append(",\n");
+            }
+            for (int j = 0; j < fields; j++) {
+                if (j > 0) {
+                    out.append(',');
+                }
+                out.append(array[offset + j]);
+            }
+        }
+    }
+
+    private final class ChunkWriter {
+
+        private final Consumer<String> consumer;
+        private final StringBuilder buffer = new StringBuilder(chunkSize + 64);
+
+        ChunkWriter(Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        ChunkWriter append(String s) {
+            buffer.append(s);
+            checkFlush();
+            return this;
+        }
+
+        ChunkWriter append(char c) {
+            buffer.append(c);
+            checkFlush();
+            return this;
+        }
+
+        ChunkWriter append(int i) {
+            buffer.append(i);
+            checkFlush();
+            return this;
+        }
+
+        private void checkFlush() {
+            if (buffer.length() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (buffer.length() > 0) {
+                consumer.accept(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
+    }
+}
@@ -25,6 +25,9 @@
 package com.oracle.truffle.tools.coverage.test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -33,6 +36,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.junit.Assert;
@@ -60,6 +64,7 @@ import com.oracle.truffle.tools.coverage.RootCoverage;
 import com.oracle.truffle.tools.coverage.SectionCoverage;
 import com.oracle.truffle.tools.coverage.SourceCoverage;
 import com.oracle.truffle.tools.coverage.impl.CoverageInstrument;
+import com.oracle.truffle.tools.coverage.impl.CoverageMerge;
 
 public final class CoverageTest {
 
@@ -110,6 +115,50 @@ public final class CoverageTest {
         err = new ByteArrayOutputStream();
     }
 
+    @Test
+    public void testMergeBinary() throws IOException {
+        final File first = createTempFile();
+        final File second = createTempFile();
+        final File merged = createTempFile();
+        try {
+            for (File file : new File[]{first, second}) {
+                try (Context context = Context.newBuilder().in(System.in).out(out).err(err).option(CoverageInstrument.ID, "true").option(CoverageInstrument.ID + ".Count", "true").option(
+                                CoverageInstrument.ID + ".Output", "binary").option(CoverageInstrument.ID + ".OutputFile", file.getPath()).build()) {
+                    context.eval(defaultSource);
+                }
+            }
+            CoverageMerge.main(new String[]{"--output=" + merged.getPath(), first.getPath(), second.getPath()});
+            final List<String> lcov = Files.readAllLines(merged.toPath());
+            Assert.assertEquals("Sources were not merged", 1, lcov.stream().filter(line -> line.equals("end_of_record")).count());
+            Assert.assertTrue(lcov.contains("FNDA:2,bar"));
+            Assert.assertTrue(lcov.contains("FNDA:20,foo"));
+            Assert.assertTrue(lcov.contains("FNDA:0,neverCalled"));
+            Assert.assertTrue(lcov.contains("FNH:3"));
+        } finally {
+            first.delete();
+            second.delete();
+            merged.delete();
+        }
+    }
+
+    @Test
+    public void testBinaryNeedsOutputFile() {
+        try (Context context = Context.newBuilder().in(System.in).out(out).err(err).option(CoverageInstrument.ID, "true").option(CoverageInstrument.ID + ".Output", "binary").build()) {
+            context.eval(defaultSource);
+            Assert.fail("Binary output without an output file must be rejected");
+        } catch (PolyglotException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(CoverageInstrument.ID + ".OutputFile"));
+        }
+        Assert.assertEquals("No binary output must be written to the standard output", 0, out.size());
+    }
+
+    private static File createTempFile() throws IOException {
+        final File file = File.createTempFile("coverage", ".bin");
+        // the coverage instrument does not overwrite existing files
+        file.delete();
+        return file;
+    }
+
     @Test
     public void testBasic() {
         try (Context context = Context.newBuilder().in(System.in).out(out).err(err).option(CoverageInstrument.ID, "true").build()) {
@@ -161,6 +210,55 @@ public final class CoverageTest {
         }
     }
 
+    @Test
+    public void testMultiThreadedExactCount() throws InterruptedException, ExecutionException {
+        final Source source = makeSource("ROOT(\n" +
+                        "DEFINE(foo,ROOT(STATEMENT)),\n" +
+                        "DEFINE(bar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo))))),\n" +
+                        "CALL(bar)\n" +
+                        ")");
+        final int threads = 4;
+        final int executionsPerThread = 250;
+        try (Context context = Context.newBuilder().in(System.in).out(out).err(err).build()) {
+            final CoverageTracker tracker = CoverageInstrument.getTracker(context.getEngine());
+            tracker.start(new CoverageTracker.Config(SourceSectionFilter.ANY, true));
+            // the coverage nodes are created by this thread, all others count into their own cells
+            context.eval(source);
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    tasks.add(executorService.submit(() -> {
+                        for (int i = 0; i < executionsPerThread; i++) {
+                            context.eval(source);
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+            final long executions = 1 + threads * executionsPerThread;
+            final SourceCoverage[] coverage = tracker.getCoverage();
+            Assert.assertEquals(1, coverage.length);
+            Assert.assertEquals(3, coverage[0].getRoots().length);
+            for (RootCoverage root : coverage[0].getRoots()) {
+                switch (root.getName()) {
+                    case "foo":
+                        Assert.assertEquals(10 * executions, root.getCount());
+                        break;
+                    case "bar":
+                        Assert.assertEquals(executions, root.getCount());
+                        Assert.assertEquals(executions, root.getSectionCoverage()[0].getCount());
+                        break;
+                }
+            }
+            tracker.end();
+        }
+    }
+
     @Test
     public void testRootAndStatementInDifferentSources() {
         try (Context c = Context.newBuilder(RootAndStatementInDifferentSources.ID).in(System.in).out(out).err(err).build();
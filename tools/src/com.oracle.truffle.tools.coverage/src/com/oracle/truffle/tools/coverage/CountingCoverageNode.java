@@ -24,15 +24,37 @@
  */
 package com.oracle.truffle.tools.coverage;
 
-import java.util.concurrent.atomic.AtomicLong;
-
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.source.SourceSection;
 
 public class CountingCoverageNode extends AbstractCoverageNode {
 
-    private final AtomicLong count = new AtomicLong(0);
+    /*
+     * Executions by the thread that created the node are counted with a plain increment, which is
+     * not contended in the common single threaded case. Every other thread counts into its own
+     * cell, which is found by walking the list of cells and only added behind a boundary.
+     */
+    private final Thread cachedThread = Thread.currentThread();
+    private long cachedThreadCount;
+    @CompilationFinal private boolean seenOtherThreads;
+    private volatile ThreadCount otherThreadCounts;
+
+    private static final class ThreadCount {
+
+        final Thread thread;
+        final ThreadCount next;
+        // only written by the owning thread
+        long count;
+
+        ThreadCount(Thread thread, ThreadCount next) {
+            this.thread = thread;
+            this.next = next;
+        }
+    }
 
     CountingCoverageNode(SourceSection sourceSection, Node instrumentedNode, boolean isRoot, boolean isStatement) {
         super(sourceSection, instrumentedNode, isRoot, isStatement);
@@ -40,15 +62,42 @@ public class CountingCoverageNode extends AbstractCoverageNode {
 
     @Override
     boolean isCovered() {
-        return count.get() != 0;
+        return getCount() != 0;
     }
 
     @Override
     protected void onEnter(VirtualFrame frame) {
-        this.count.incrementAndGet();
+        if (cachedThread == Thread.currentThread()) {
+            cachedThreadCount++;
+        } else {
+            if (!seenOtherThreads) {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                seenOtherThreads = true;
+            }
+            Thread currentThread = Thread.currentThread();
+            ThreadCount threadCount = otherThreadCounts;
+            while (threadCount != null && threadCount.thread != currentThread) {
+                threadCount = threadCount.next;
+            }
+            if (threadCount == null) {
+                threadCount = addThreadCount(currentThread);
+            }
+            threadCount.count++;
+        }
+    }
+
+    @TruffleBoundary
+    private synchronized ThreadCount addThreadCount(Thread thread) {
+        ThreadCount threadCount = new ThreadCount(thread, otherThreadCounts);
+        otherThreadCounts = threadCount;
+        return threadCount;
     }
 
     long getCount() {
-        return count.get();
+        long count = cachedThreadCount;
+        for (ThreadCount threadCount = otherThreadCounts; threadCount != null; threadCount = threadCount.next) {
+            count += threadCount.count;
+        }
+        return count;
     }
 }
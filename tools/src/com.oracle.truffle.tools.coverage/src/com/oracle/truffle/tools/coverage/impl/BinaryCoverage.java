@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.coverage.impl;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.tools.coverage.RootCoverage;
+import com.oracle.truffle.tools.coverage.SectionCoverage;
+import com.oracle.truffle.tools.coverage.SourceCoverage;
+
+/**
+ * A compact binary coverage format. A file consists of a header followed by one record per source,
+ * sorted by {@link SourceData#key source key}. A record only contains the positions of the roots
+ * and sections, not their text, so that files of many processes can be merged without the sources
+ * being available, and the sorting allows them to be merged one source at a time.
+ */
+final class BinaryCoverage {
+
+    private static final int MAGIC = 0x54434F56; // "TCOV"
+    private static final int VERSION = 1;
+
+    private BinaryCoverage() {
+    }
+
+    static final Comparator<SourceData> SOURCE_ORDER = new Comparator<SourceData>() {
+        @Override
+        public int compare(SourceData o1, SourceData o2) {
+            return o1.key.compareTo(o2.key);
+        }
+    };
+
+    static SourceData[] toSourceData(SourceCoverage[] coverage) {
+        SourceData[] data = new SourceData[coverage.length];
+        for (int i = 0; i < coverage.length; i++) {
+            data[i] = toSourceData(coverage[i]);
+        }
+        return data;
+    }
+
+    static SourceData toSourceData(SourceCoverage coverage) {
+        Source source = coverage.getSource();
+        RootCoverage[] roots = coverage.getRoots();
+        List<RootData> rootData = new ArrayList<>(roots.length);
+        int lineCount = 0;
+        for (RootCoverage root : roots) {
+            SectionCoverage[] sections = root.getSectionCoverage();
+            List<SectionData> sectionData = new ArrayList<>(sections.length);
+            for (SectionCoverage section : sections) {
+                SectionData data = new SectionData(new Position(section.getSourceSection()), section.isCovered(), section.getCount());
+                lineCount = Math.max(lineCount, data.position.endLine);
+                sectionData.add(data);
+            }
+            rootData.add(new RootData(root.getName(), new Position(root.getSourceSection()), root.isCovered(), root.getCount(), sectionData));
+        }
+        if (source.hasCharacters()) {
+            lineCount = source.getLineCount();
+        }
+        return new SourceData(source.getName(), source.getPath(), lineCount, rootData);
+    }
+
+    /**
+     * Writes the coverage of the given sources, sorted by their key.
+     */
+    static void write(OutputStream out, SourceCoverage[] coverage) throws IOException {
+        SourceData[] data = toSourceData(coverage);
+        Arrays.sort(data, SOURCE_ORDER);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        for (SourceData source : data) {
+            dataOut.writeBoolean(true);
+            source.write(dataOut);
+        }
+        dataOut.writeBoolean(false);
+        dataOut.flush();
+    }
+
+    /**
+     * Merges two counts, each of which is <code>-1</code> if counting was not enabled.
+     */
+    static long mergeCount(long count1, long count2) {
+        if (count1 == -1) {
+            return count2;
+        } else if (count2 == -1) {
+            return count1;
+        }
+        return count1 + count2;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Reads the source records of one binary coverage file in order.
+     */
+    static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final String name;
+        private boolean done;
+
+        Reader(InputStream in, String name) throws IOException {
+            this.in = new DataInputStream(in);
+            this.name = name;
+            try {
+                if (this.in.readInt() != MAGIC) {
+                    throw new IOException(name + " is not a binary coverage file.");
+                }
+                int version = this.in.readInt();
+                if (version != VERSION) {
+                    throw new IOException(name + " has an unsupported binary coverage version " + version + ".");
+                }
+            } catch (EOFException e) {
+                throw new IOException(name + " is not a binary coverage file.");
+            }
+        }
+
+        /**
+         * Returns the next source record or <code>null</code> at the end of the file.
+         */
+        SourceData next() throws IOException {
+            if (done) {
+                return null;
+            }
+            try {
+                if (!in.readBoolean()) {
+                    done = true;
+                    return null;
+                }
+                return SourceData.read(in);
+            } catch (EOFException e) {
+                throw new IOException(name + " is truncated.");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    static final class Position {
+
+        final int startLine;
+        final int endLine;
+        final int startColumn;
+        final int endColumn;
+        final int charIndex;
+        final int charLength;
+
+        Position(SourceSection section) {
+            this(section.getStartLine(), section.getEndLine(), section.getStartColumn(), section.getEndColumn(), section.getCharIndex(), section.getCharLength());
+        }
+
+        Position(int startLine, int endLine, int startColumn, int endColumn, int charIndex, int charLength) {
+            this.startLine = startLine;
+            this.endLine = endLine;
+            this.startColumn = startColumn;
+            this.endColumn = endColumn;
+            this.charIndex = charIndex;
+            this.charLength = charLength;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(startLine);
+            out.writeInt(endLine);
+            out.writeInt(startColumn);
+            out.writeInt(endColumn);
+            out.writeInt(charIndex);
+            out.writeInt(charLength);
+        }
+
+        static Position read(DataInputStream in) throws IOException {
+            return new Position(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        }
+
+        long key() {
+            return ((long) charIndex << 32) | (charLength & 0xFFFFFFFFL);
+        }
+    }
+
+    static final class SectionData {
+
+        final Position position;
+        final boolean covered;
+        final long count;
+
+        SectionData(Position position, boolean covered, long count) {
+            this.position = position;
+            this.covered = covered;
+            this.count = count;
+        }
+
+        SectionData merge(SectionData other) {
+            return new SectionData(position, covered || other.covered, mergeCount(count, other.count));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            position.write(out);
+            out.writeBoolean(covered);
+            out.writeLong(count);
+        }
+
+        static SectionData read(DataInputStream in) throws IOException {
+            return new SectionData(Position.read(in), in.readBoolean(), in.readLong());
+        }
+    }
+
+    static final class RootData {
+
+        final String name;
+        final Position position;
+        final boolean covered;
+        final long count;
+        final List<SectionData> sections;
+
+        RootData(String name, Position position, boolean covered, long count, List<SectionData> sections) {
+            this.name = name;
+            this.position = position;
+            this.covered = covered;
+            this.count = count;
+            this.sections = sections;
+        }
+
+        // roots of different files are the same if they have the same name and position
+        String mergeKey() {
+            return position.charIndex + ":" + position.charLength + ":" + name;
+        }
+
+        RootData merge(RootData other) {
+            Map<Long, SectionData> merged = new LinkedHashMap<>();
+            for (SectionData section : sections) {
+                merged.merge(section.position.key(), section, SectionData::merge);
+            }
+            for (SectionData section : other.sections) {
+                merged.merge(section.position.key(), section, SectionData::merge);
+            }
+            return new RootData(name, position, covered || other.covered, mergeCount(count, other.count), new ArrayList<>(merged.values()));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, name);
+            position.write(out);
+            out.writeBoolean(covered);
+            out.writeLong(count);
+            out.writeInt(sections.size());
+            for (SectionData section : sections) {
+                section.write(out);
+            }
+        }
+
+        static RootData read(DataInputStream in) throws IOException {
+            String name = readString(in);
+            Position position = Position.read(in);
+            boolean covered = in.readBoolean();
+            long count = in.readLong();
+            int sectionCount = in.readInt();
+            List<SectionData> sections = new ArrayList<>(sectionCount);
+            for (int i = 0; i < sectionCount; i++) {
+                sections.add(SectionData.read(in));
+            }
+            return new RootData(name, position, covered, count, sections);
+        }
+    }
+
+    static final class SourceData {
+
+        final String name;
+        final String path;
+        // the path, or the name for sources without a path
+        final String key;
+        final int lineCount;
+        final List<RootData> roots;
+
+        SourceData(String name, String path, int lineCount, List<RootData> roots) {
+            this.name = name;
+            this.path = path;
+            this.key = path != null ? path : String.valueOf(name);
+            this.lineCount = lineCount;
+            this.roots = roots;
+        }
+
+        SourceData merge(SourceData other) {
+            assert key.equals(other.key);
+            Map<String, RootData> merged = new LinkedHashMap<>();
+            for (RootData root : roots) {
+                merged.merge(root.mergeKey(), root, RootData::merge);
+            }
+            for (RootData root : other.roots) {
+                merged.merge(root.mergeKey(), root, RootData::merge);
+            }
+            return new SourceData(name, path, Math.max(lineCount, other.lineCount), new ArrayList<>(merged.values()));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, name);
+            writeString(out, path);
+            out.writeInt(lineCount);
+            out.writeInt(roots.size());
+            for (RootData root : roots) {
+                root.write(out);
+            }
+        }
+
+        static SourceData read(DataInputStream in) throws IOException {
+            String name = readString(in);
+            String path = readString(in);
+            int lineCount = in.readInt();
+            int rootCount = in.readInt();
+            List<RootData> roots = new ArrayList<>(rootCount);
+            for (int i = 0; i < rootCount; i++) {
+                roots.add(RootData.read(in));
+            }
+            return new SourceData(name, path, lineCount, roots);
+        }
+    }
+}
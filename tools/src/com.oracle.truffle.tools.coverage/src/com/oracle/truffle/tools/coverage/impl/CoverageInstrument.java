@@ -29,6 +29,7 @@ import static com.oracle.truffle.api.instrumentation.TruffleInstrument.Registrat
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.function.Function;
 
@@ -73,7 +74,7 @@ public class CoverageInstrument extends TruffleInstrument {
     static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
     @Option(help = "Keep count of each element's coverage (default: false).", category = OptionCategory.USER, stability = OptionStability.STABLE)
     static final OptionKey<Boolean> Count = new OptionKey<>(false);
-    @Option(name = "Output", help = "Can be: human readable 'histogram' (per file coverage summary) or 'detailed' (per line coverage summary), machine readable 'json', tool compliant 'lcov'. (default: histogram)",
+    @Option(name = "Output", help = "Can be: human readable 'histogram' (per file coverage summary) or 'detailed' (per line coverage summary), machine readable 'json', tool compliant 'lcov', compact 'binary' that can be merged with other binary files and needs an OutputFile. (default: histogram)",
             category = OptionCategory.USER, stability = OptionStability.STABLE)
     static final OptionKey<Output> OUTPUT = new OptionKey<>(Output.HISTOGRAM, CLI_OUTPUT_TYPE);
     @Option(name = "FilterRootName", help = "Wildcard filter for program roots. (eg. Math.*, default:*).", category = OptionCategory.USER, stability = OptionStability.STABLE)
@@ -164,6 +165,9 @@ public class CoverageInstrument extends TruffleInstrument {
         final OptionValues options = env.getOptions();
         enabled = ENABLED.getValue(options);
         if (enabled) {
+            if (OUTPUT.getValue(options) == Output.BINARY && !OUTPUT_FILE.hasBeenSet(options)) {
+                throw new IllegalArgumentException("Binary coverage output needs an output file, set it with --" + ID + ".OutputFile.");
+            }
             tracker.start(new CoverageTracker.Config(getSourceSectionFilter(options), Count.getValue(options)));
         }
     }
@@ -188,7 +192,12 @@ public class CoverageInstrument extends TruffleInstrument {
                     case LCOV:
                         new LCOVPrinter(out, coverage, strictLines).print();
                         break;
+                    case BINARY:
+                        BinaryCoverage.write(out, coverage);
+                        break;
                 }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write binary coverage output", e);
             }
             tracker.close();
         }
@@ -204,6 +213,7 @@ public class CoverageInstrument extends TruffleInstrument {
         DETAILED,
         JSON,
         LCOV,
+        BINARY,
     }
 
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.coverage.impl;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.SourceData;
+
+/**
+ * Merges binary coverage files, as written with <code>--coverage.Output=binary</code>, into a
+ * single LCOV or JSON report. The input files are sorted by source, so they are read in
+ * parallel and only the coverage of one source per input file is kept in memory at a time.
+ * <p>
+ * Usage: <code>CoverageMerge [--format=lcov|json] [--strict-lines=true|false]
+ * [--output=&lt;file&gt;] &lt;binary coverage file&gt;...</code>
+ */
+public final class CoverageMerge {
+
+    private CoverageMerge() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String format = "lcov";
+        boolean strictLines = true;
+        String output = null;
+        List<String> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else if (arg.startsWith("--strict-lines=")) {
+                strictLines = Boolean.parseBoolean(arg.substring("--strict-lines=".length()));
+            } else if (arg.startsWith("--output=")) {
+                output = arg.substring("--output=".length());
+            } else if (arg.startsWith("--")) {
+                usage("Unknown option " + arg);
+                return;
+            } else {
+                inputs.add(arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            usage("No input files.");
+            return;
+        }
+        if (!format.equals("lcov") && !format.equals("json")) {
+            usage("Format can be one of: lcov json");
+            return;
+        }
+        if (output == null) {
+            merge(inputs, System.out, format.equals("json"), strictLines);
+            System.out.flush();
+        } else {
+            try (PrintStream out = new PrintStream(new FileOutputStream(output))) {
+                merge(inputs, out, format.equals("json"), strictLines);
+            }
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: CoverageMerge [--format=lcov|json] [--strict-lines=true|false] [--output=<file>] <binary coverage file>...");
+        System.exit(1);
+    }
+
+    static void merge(List<String> inputs, PrintStream out, boolean json, boolean strictLines) throws IOException {
+        List<BinaryCoverage.Reader> readers = new ArrayList<>(inputs.size());
+        try {
+            for (String input : inputs) {
+                readers.add(new BinaryCoverage.Reader(new BufferedInputStream(new FileInputStream(input)), input));
+            }
+            mergeReaders(readers, out, json, strictLines);
+        } finally {
+            for (BinaryCoverage.Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    static void mergeReaders(List<BinaryCoverage.Reader> readers, PrintStream out, boolean json, boolean strictLines) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((c1, c2) -> BinaryCoverage.SOURCE_ORDER.compare(c1.current, c2.current));
+        for (BinaryCoverage.Reader reader : readers) {
+            Cursor cursor = new Cursor(reader);
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        LCOVPrinter lcov = json ? null : new LCOVPrinter(out, strictLines);
+        boolean first = true;
+        if (json) {
+            out.print("[");
+        }
+        while (!queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            SourceData merged = cursor.current;
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+            while (!queue.isEmpty() && queue.peek().current.key.equals(merged.key)) {
+                cursor = queue.poll();
+                merged = merged.merge(cursor.current);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            if (json) {
+                if (!first) {
+                    out.print(",");
+                }
+                out.print(JSONPrinter.sourceJSON(merged).toString());
+            } else {
+                lcov.printSourceCoverage(merged);
+            }
+            first = false;
+        }
+        if (json) {
+            out.println("]");
+        }
+    }
+
+    private static final class Cursor {
+
+        private final BinaryCoverage.Reader reader;
+        SourceData current;
+
+        Cursor(BinaryCoverage.Reader reader) {
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            current = reader.next();
+            return current != null;
+        }
+    }
+}
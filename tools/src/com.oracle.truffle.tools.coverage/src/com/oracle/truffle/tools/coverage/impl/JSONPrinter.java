@@ -30,6 +30,10 @@ import com.oracle.truffle.api.source.SourceSection;
 import com.oracle.truffle.tools.coverage.RootCoverage;
 import com.oracle.truffle.tools.coverage.SectionCoverage;
 import com.oracle.truffle.tools.coverage.SourceCoverage;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.Position;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.RootData;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.SectionData;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.SourceData;
 import com.oracle.truffle.tools.utils.json.JSONArray;
 import com.oracle.truffle.tools.utils.json.JSONObject;
 
@@ -102,6 +106,52 @@ final class JSONPrinter {
         return sectionJson;
     }
 
+    /**
+     * Same as {@link #sourceJSON(SourceCoverage)} for merged binary coverage, except that the
+     * characters of the source sections are not known.
+     */
+    static JSONObject sourceJSON(SourceData coverage) {
+        final JSONObject sourceJson = new JSONObject();
+        sourceJson.put("name", coverage.name);
+        sourceJson.put("path", coverage.path);
+        final JSONArray rootsJson = new JSONArray();
+        for (RootData root : coverage.roots) {
+            JSONObject rootJson = new JSONObject();
+            rootJson.put("covered", root.covered);
+            rootJson.put("source_section", positionJson(root.position));
+            rootJson.put("name", root.name);
+            JSONArray sectionsJSON = new JSONArray();
+            for (SectionData section : root.sections) {
+                JSONObject sectionJson = new JSONObject();
+                sectionJson.put("covered", section.covered);
+                if (section.count != -1) {
+                    sectionJson.put("count", section.count);
+                }
+                sectionJson.put("source_section", positionJson(section.position));
+                sectionsJSON.put(sectionJson);
+            }
+            rootJson.put("sections", sectionsJSON);
+            if (root.count != -1) {
+                rootJson.put("count", root.count);
+            }
+            rootsJson.put(rootJson);
+        }
+        sourceJson.put("roots", rootsJson);
+        return sourceJson;
+    }
+
+    private static JSONObject positionJson(Position position) {
+        JSONObject sourceSection = new JSONObject();
+        sourceSection.put("start_line", position.startLine);
+        sourceSection.put("end_line", position.endLine);
+        sourceSection.put("start_column", position.startColumn);
+        sourceSection.put("end_column", position.endColumn);
+        sourceSection.put("char_index", position.charIndex);
+        sourceSection.put("char_end_index", position.charIndex + position.charLength);
+        sourceSection.put("char_length", position.charLength);
+        return sourceSection;
+    }
+
     void print() {
         JSONArray output = new JSONArray();
         for (SourceCoverage sourceCoverage : sourceCoverages) {
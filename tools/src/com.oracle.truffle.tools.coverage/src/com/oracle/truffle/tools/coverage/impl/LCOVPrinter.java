@@ -26,11 +26,12 @@ package com.oracle.truffle.tools.coverage.impl;
 
 import java.io.PrintStream;
 import java.util.HashMap;
+import java.util.List;
 
-import com.oracle.truffle.api.source.SourceSection;
-import com.oracle.truffle.tools.coverage.RootCoverage;
-import com.oracle.truffle.tools.coverage.SectionCoverage;
 import com.oracle.truffle.tools.coverage.SourceCoverage;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.RootData;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.SectionData;
+import com.oracle.truffle.tools.coverage.impl.BinaryCoverage.SourceData;
 
 class LCOVPrinter {
 
@@ -55,18 +56,21 @@ class LCOVPrinter {
         this.strictLines = strictLines;
     }
 
-    private static void addCoverageCounts(HashMap<Integer, Long> linesToCount, SectionCoverage[] sectionCoverage) {
-        for (SectionCoverage section : sectionCoverage) {
+    LCOVPrinter(PrintStream out, boolean strictLines) {
+        this(out, new SourceCoverage[0], strictLines);
+    }
+
+    private static void addCoverageCounts(HashMap<Integer, Long> linesToCount, List<SectionData> sectionCoverage) {
+        for (SectionData section : sectionCoverage) {
             addSectionCoverageCount(linesToCount, section);
         }
     }
 
-    private static void addSectionCoverageCount(HashMap<Integer, Long> linesToCount, SectionCoverage section) {
-        final SourceSection sourceSection = section.getSourceSection();
-        for (int i = sourceSection.getStartLine(); i <= sourceSection.getEndLine(); i++) {
+    private static void addSectionCoverageCount(HashMap<Integer, Long> linesToCount, SectionData section) {
+        for (int i = section.position.startLine; i <= section.position.endLine; i++) {
             linesToCount.compute(i, (key, old) -> {
-                if (section.isCovered()) {
-                    final long count = section.getCount();
+                if (section.covered) {
+                    final long count = section.count;
                     // If counting was not enabled in the instrument
                     if (count == -1) {
                         return 1L;
@@ -79,26 +83,24 @@ class LCOVPrinter {
         }
     }
 
-    private static void removeIncidentalCoverage(HashMap<Integer, Long> linesToCount, SectionCoverage[] sectionCoverage) {
-        for (SectionCoverage section : sectionCoverage) {
-            if (!section.isCovered()) {
-                final SourceSection sourceSection = section.getSourceSection();
-                for (int i = sourceSection.getStartLine(); i <= sourceSection.getEndLine(); i++) {
+    private static void removeIncidentalCoverage(HashMap<Integer, Long> linesToCount, List<SectionData> sectionCoverage) {
+        for (SectionData section : sectionCoverage) {
+            if (!section.covered) {
+                for (int i = section.position.startLine; i <= section.position.endLine; i++) {
                     linesToCount.put(i, 0L);
                 }
             }
         }
     }
 
-    private HashMap<Integer, Long> linesToCount(SourceCoverage sourceCoverage) {
+    private HashMap<Integer, Long> linesToCount(SourceData sourceCoverage) {
         final HashMap<Integer, Long> linesToCount = new HashMap<>();
-        for (RootCoverage root : sourceCoverage.getRoots()) {
-            final SectionCoverage[] sectionCoverage = root.getSectionCoverage();
-            addCoverageCounts(linesToCount, sectionCoverage);
+        for (RootData root : sourceCoverage.roots) {
+            addCoverageCounts(linesToCount, root.sections);
         }
         if (strictLines) {
-            for (RootCoverage root : sourceCoverage.getRoots()) {
-                removeIncidentalCoverage(linesToCount, root.getSectionCoverage());
+            for (RootData root : sourceCoverage.roots) {
+                removeIncidentalCoverage(linesToCount, root.sections);
             }
         }
         return linesToCount;
@@ -106,11 +108,11 @@ class LCOVPrinter {
 
     void print() {
         for (SourceCoverage sourceCoverage : coverage) {
-            printSourceCoverage(sourceCoverage);
+            printSourceCoverage(BinaryCoverage.toSourceData(sourceCoverage));
         }
     }
 
-    private void printSourceCoverage(SourceCoverage sourceCoverage) {
+    void printSourceCoverage(SourceData sourceCoverage) {
         printTestName();
         printSourceName(sourceCoverage);
         printSourceFile(sourceCoverage);
@@ -120,11 +122,11 @@ class LCOVPrinter {
 
     }
 
-    private void printLineData(SourceCoverage sourceCoverage) {
+    private void printLineData(SourceData sourceCoverage) {
         int consideredLines = 0;
         int coveredLines = 0;
         final HashMap<Integer, Long> linesToCount = linesToCount(sourceCoverage);
-        for (int i = 1; i <= sourceCoverage.getSource().getLineCount(); i++) {
+        for (int i = 1; i <= sourceCoverage.lineCount; i++) {
             if (linesToCount.containsKey(i)) {
                 consideredLines++;
                 final long executionCount = linesToCount.get(i);
@@ -138,14 +140,14 @@ class LCOVPrinter {
         out.println(LINES_COVERED + coveredLines);
     }
 
-    private void printRootData(SourceCoverage sourceCoverage) {
-        final RootCoverage[] roots = sourceCoverage.getRoots();
-        for (RootCoverage root : roots) {
+    private void printRootData(SourceData sourceCoverage) {
+        final List<RootData> roots = sourceCoverage.roots;
+        for (RootData root : roots) {
             printRoot(root);
         }
         int coveredRoots = 0;
-        for (RootCoverage root : roots) {
-            if (root.isCovered()) {
+        for (RootData root : roots) {
+            if (root.covered) {
                 coveredRoots++;
             }
             printRootCoverage(root);
@@ -158,28 +160,28 @@ class LCOVPrinter {
         out.println(FUNCTIONS_COVERED + coveredRoots);
     }
 
-    private void printRootCount(RootCoverage[] roots) {
-        out.println(FUNCTIONS_FOUND + roots.length);
+    private void printRootCount(List<RootData> roots) {
+        out.println(FUNCTIONS_FOUND + roots.size());
     }
 
-    private void printRootCoverage(RootCoverage root) {
-        final long count = (root.isCovered() && root.getCount() == -1) ? 1 : root.getCount();
-        out.println(FUNCTION_DATA + count + "," + root.getName());
+    private void printRootCoverage(RootData root) {
+        final long count = (root.covered && root.count == -1) ? 1 : root.count;
+        out.println(FUNCTION_DATA + count + "," + root.name);
     }
 
-    private void printRoot(RootCoverage root) {
-        out.println(FUNCTION + root.getSourceSection().getStartLine() + "," + root.getName());
+    private void printRoot(RootData root) {
+        out.println(FUNCTION + root.position.startLine + "," + root.name);
     }
 
-    private void printSourceName(SourceCoverage sourceCoverage) {
-        final String name = sourceCoverage.getSource().getName();
+    private void printSourceName(SourceData sourceCoverage) {
+        final String name = sourceCoverage.name;
         if (name != null) {
             out.println(SOURCE_NAME + name);
         }
     }
 
-    private void printSourceFile(SourceCoverage sourceCoverage) {
-        out.println(SOURCE_FILE + sourceCoverage.getSource().getPath());
+    private void printSourceFile(SourceData sourceCoverage) {
+        out.println(SOURCE_FILE + sourceCoverage.path);
     }
 
     private void printTestName() {
@@ -204,6 +204,30 @@ public class CPUSamplerTest extends AbstractProfilerTest {
         Assert.assertTrue(sampler.hasStackOverflowed());
     }
 
+    @Test
+    public void testSafepointSampling() {
+        sampler.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        sampler.setSafepointSampling(true);
+        Assert.assertTrue(sampler.isSafepointSampling());
+        sampler.setCollecting(true);
+        for (int i = 0; i < executionCount; i++) {
+            eval(defaultSourceForSampling);
+        }
+        sampler.setCollecting(false);
+
+        Assert.assertNotEquals(0, sampler.getSampleCount());
+        Assert.assertTrue(sampler.hasData());
+        Collection<ProfilerNode<CPUSampler.Payload>> children = sampler.getRootNodes();
+        Assert.assertEquals(1, children.size());
+        ProfilerNode<CPUSampler.Payload> program = children.iterator().next();
+        Assert.assertEquals("", program.getRootName());
+        checkTimeline(program.getPayload());
+        for (ProfilerNode<CPUSampler.Payload> child : program.getChildren()) {
+            Assert.assertTrue(child.getRootName(), "baz".equals(child.getRootName()) || "bar".equals(child.getRootName()));
+            checkTimeline(child.getPayload());
+        }
+    }
+
     private static void checkTimeline(CPUSampler.Payload payload) {
         Assert.assertEquals("Timeline length and self hit count to not match!", payload.getSelfHitCount(), payload.getSelfHitTimes().size());
     }
@@ -24,9 +24,14 @@
  */
 package com.oracle.truffle.tools.profiler.test;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.graalvm.polyglot.Source;
 import org.junit.Assert;
@@ -157,6 +162,46 @@ public class CPUTracerTest extends AbstractProfilerTest {
                         expectedCountMap);
     }
 
+    @Test
+    public void testCorrectRootCountMultiThreaded() throws Exception {
+        final int threads = 4;
+        final int executionsPerThread = 250;
+        synchronized (tracer) {
+            tracer.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        }
+        tracer.setCollecting(true);
+        // the payloads are created by this thread, all others count into their own cells
+        eval(defaultSource);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < executionsPerThread; i++) {
+                        eval(defaultSource);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        final Map<String, Long> expectedCountMap = new HashMap<>();
+        expectedCountMap.put("baz", 1L);
+        expectedCountMap.put("bar", 11L);
+        expectedCountMap.put("foo", 110L);
+        expectedCountMap.put("", 1L);
+        final long executions = 1 + threads * executionsPerThread;
+        Collection<CPUTracer.Payload> payloads = tracer.getPayloads();
+        Assert.assertEquals(expectedCountMap.size(), payloads.size());
+        for (CPUTracer.Payload payload : payloads) {
+            Assert.assertEquals(payload.getRootName() + " count not correct", executions * expectedCountMap.get(payload.getRootName()), payload.getCount());
+        }
+    }
+
     // Works only assuming unique root names in counters
     // This is, for example, not true for statement tracing
     private void executeAndCheckRootNameCounters(Source recursiveSource,
@@ -25,6 +25,7 @@
 package com.oracle.truffle.tools.profiler.test;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
@@ -127,6 +128,50 @@ public class MemoryTracerTest extends AbstractProfilerTest {
         Assert.assertFalse(tracer.hasData());
     }
 
+    @Test
+    public void testSampleInterval() {
+        final String allocationsSource = "ROOT(LOOP(100, ALLOCATION))";
+
+        tracer.setSampleInterval(10);
+        Assert.assertEquals(10, tracer.getSampleInterval());
+        tracer.setCollecting(true);
+
+        eval(makeSource(allocationsSource));
+
+        Assert.assertTrue(tracer.hasData());
+        Collection<ProfilerNode<MemoryTracer.Payload>> rootNodes = tracer.getRootNodes();
+        Assert.assertEquals(1, rootNodes.size());
+        ProfilerNode<MemoryTracer.Payload> node = rootNodes.iterator().next();
+        // one byte per allocation, so every tenth allocation is recorded
+        Assert.assertEquals(10, node.getPayload().getTotalAllocations());
+        Assert.assertEquals(10, node.getPayload().getEvents().size());
+
+        tracer.setCollecting(false);
+        tracer.clearData();
+        Assert.assertFalse(tracer.hasData());
+    }
+
+    @Test
+    public void testRepeatedAllocations() {
+        final String allocationsSource = "ROOT(LOOP(1000, ALLOCATION))";
+
+        tracer.setCollecting(true);
+        eval(makeSource(allocationsSource));
+        eval(makeSource(allocationsSource));
+
+        Collection<ProfilerNode<MemoryTracer.Payload>> rootNodes = tracer.getRootNodes();
+        Assert.assertEquals(1, rootNodes.size());
+        ProfilerNode<MemoryTracer.Payload> node = rootNodes.iterator().next();
+        Assert.assertEquals(2000, node.getPayload().getTotalAllocations());
+        List<MemoryTracer.AllocationEventInfo> events = node.getPayload().getEvents();
+        Assert.assertEquals(2000, events.size());
+        for (MemoryTracer.AllocationEventInfo info : events) {
+            Assert.assertEquals(events.get(0).getMetaObjectString(), info.getMetaObjectString());
+            Assert.assertEquals(events.get(0).getAllocated(), info.getAllocated());
+        }
+        tracer.setCollecting(false);
+    }
+
     @Test
     public void testOneAllocationInRootRecursive() {
         final String oneAllocationSource = "ROOT(" + "DEFINE(foo,ROOT(BLOCK(STATEMENT,RECURSIVE_CALL(foo, 10))))," + "DEFINE(bar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo)))))," +
@@ -24,11 +24,17 @@
  */
 package com.oracle.truffle.tools.profiler.test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
@@ -82,6 +88,128 @@ public class ProfilerCLITest {
         deepCompare(samples, profilerNodes);
     }
 
+    @Test
+    public void testSamplerCollapsed() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Context context = Context.newBuilder().in(System.in).out(out).err(err).option("cpusampler", "true").option("cpusampler.Output", "collapsed").option("cpusampler.SummariseThreads",
+                        "true").build();
+        Source defaultSourceForSampling = makeSource("ROOT(" +
+                        "DEFINE(foo,ROOT(SLEEP(1)))," +
+                        "DEFINE(bar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo)))))," +
+                        "CALL(bar)" +
+                        ")");
+        for (int i = 0; i < 10; i++) {
+            context.eval(defaultSourceForSampling);
+        }
+        CPUSampler sampler = CPUSampler.find(context.getEngine());
+        final long selfHits = sumSelfHitCounts(sampler.getRootNodes());
+        context.close();
+
+        long collapsedHits = 0;
+        for (String line : out.toString().split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.lastIndexOf(' ');
+            Assert.assertTrue("Stack and count expected: " + line, separator >= 0);
+            String stack = line.substring(0, separator);
+            if (stack.endsWith("foo")) {
+                Assert.assertTrue("foo is called by bar: " + line, stack.endsWith("bar;foo"));
+            }
+            collapsedHits += Long.parseLong(line.substring(separator + 1));
+        }
+        Assert.assertEquals("All self hits in collapsed stacks", selfHits, collapsedHits);
+    }
+
+    private static long sumSelfHitCounts(Collection<ProfilerNode<CPUSampler.Payload>> nodes) {
+        long sum = 0;
+        for (ProfilerNode<CPUSampler.Payload> node : nodes) {
+            sum += node.getPayload().getSelfHitCount() + sumSelfHitCounts(node.getChildren());
+        }
+        return sum;
+    }
+
+    @Test
+    public void testSamplerPprof() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Context context = Context.newBuilder().in(System.in).out(out).err(err).option("cpusampler", "true").option("cpusampler.Output", "pprof").build();
+        Source defaultSourceForSampling = makeSource("ROOT(" +
+                        "DEFINE(foo,ROOT(SLEEP(1)))," +
+                        "DEFINE(bar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo)))))," +
+                        "CALL(bar)" +
+                        ")");
+        for (int i = 0; i < 10; i++) {
+            context.eval(defaultSourceForSampling);
+        }
+        CPUSampler sampler = CPUSampler.find(context.getEngine());
+        final boolean hasSelfHits = sumSelfHitCounts(sampler.getRootNodes()) > 0;
+        context.close();
+
+        byte[] profile = readAll(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        List<String> strings = new ArrayList<>();
+        int samples = 0;
+        int locations = 0;
+        int functions = 0;
+        int i = 0;
+        while (i < profile.length) {
+            long[] tag = readVarint(profile, i);
+            i = (int) tag[1];
+            int field = (int) (tag[0] >>> 3);
+            if ((tag[0] & 7) == 0) {
+                i = (int) readVarint(profile, i)[1];
+                continue;
+            }
+            Assert.assertEquals("Only varints and length delimited fields expected", 2, tag[0] & 7);
+            long[] length = readVarint(profile, i);
+            i = (int) length[1];
+            switch (field) {
+                case 2:
+                    samples++;
+                    break;
+                case 4:
+                    locations++;
+                    break;
+                case 5:
+                    functions++;
+                    break;
+                case 6:
+                    strings.add(new String(profile, i, (int) length[0], StandardCharsets.UTF_8));
+                    break;
+            }
+            i += (int) length[0];
+        }
+        Assert.assertEquals("Empty string first", "", strings.get(0));
+        Assert.assertTrue("Sample types present: " + strings, strings.contains("samples") && strings.contains("cpu") && strings.contains("nanoseconds"));
+        Assert.assertTrue("Sampled functions present: " + strings, strings.contains("foo") && strings.contains("bar"));
+        Assert.assertEquals("Samples written", hasSelfHits, samples > 0);
+        Assert.assertTrue("Locations and functions written", locations >= functions && functions >= 2);
+    }
+
+    private static long[] readVarint(byte[] bytes, int start) {
+        long value = 0;
+        int shift = 0;
+        int i = start;
+        byte b;
+        do {
+            b = bytes[i++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return new long[]{value, i};
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
     private void deepCompare(JSONArray samples, Collection<ProfilerNode<CPUSampler.Payload>> nodes) {
         for (int i = 0; i < samples.length(); i++) {
             JSONObject sample = (JSONObject) samples.get(i);
@@ -65,6 +65,10 @@ import com.oracle.truffle.tools.profiler.impl.ProfilerToolFactory;
  * intervals, i.e. the state of the stack is copied and saved into trees of {@linkplain ProfilerNode
  * nodes}, which represent the profile of the execution.
  * <p>
+ * Alternatively the sampler can be configured to {@linkplain #setSafepointSampling(boolean) sample
+ * at safepoints}. In that mode no shadow stack is kept, the sampled threads walk their own stack
+ * when they are asked to, which considerably lowers the overhead of the profiler.
+ * <p>
  * Usage example: {@codesnippet CPUSamplerSnippets#example}
  *
  * @since 0.30
@@ -212,8 +216,11 @@ public final class CPUSampler implements Closeable {
     private TimerTask samplerTask;
 
     private volatile ShadowStack shadowStack;
+    private volatile SafepointStackSampler safepointSampler;
     private volatile EventBinding<?> stacksBinding;
 
+    private boolean safepointSampling = false;
+
     private final Map<Thread, ProfilerNode<Payload>> rootNodes = new HashMap<>();
 
     private final Env env;
@@ -324,6 +331,32 @@ public final class CPUSampler implements Closeable {
         return period;
     }
 
+    /**
+     * Sets whether the sampler takes samples at safepoints instead of keeping a shadow stack. In
+     * this mode the instrumented locations only check whether a sample was requested for the
+     * current thread. The sampling thread requests a sample from every thread that executes guest
+     * code and the threads walk their own stack when they reach the next instrumented location.
+     * This has a much lower impact on peak performance than maintaining a shadow stack. Samples are
+     * aggregated one {@linkplain #setPeriod(long) period} after they were requested and threads
+     * that are not executing guest code, e.g. are blocked in a host call, are not sampled.
+     *
+     * @param safepointSampling <code>true</code> to sample at safepoints, <code>false</code> to
+     *            keep a shadow stack
+     * @since 20.1
+     */
+    public synchronized void setSafepointSampling(boolean safepointSampling) {
+        enterChangeConfig();
+        this.safepointSampling = safepointSampling;
+    }
+
+    /**
+     * @return whether the sampler takes samples at safepoints instead of keeping a shadow stack
+     * @since 20.1
+     */
+    public synchronized boolean isSafepointSampling() {
+        return safepointSampling;
+    }
+
     /**
      * Sets the delay period i.e. the time that is allowed to pass between when the first sample
      * would have been taken and when the sampler actually starts taking samples.
@@ -537,10 +570,17 @@ public final class CPUSampler implements Closeable {
      * invoked. Only active threads are sampled. A thread is active if it has at least one entry on
      * the stack. The sampling is initialized if this method is invoked for the first time or
      * reinitialized if the configuration changes.
+     * <p>
+     * If the sampler {@linkplain #setSafepointSampling(boolean) samples at safepoints} the threads
+     * are only asked to sample their stack. The returned stacks are the most recent ones each
+     * thread sampled, which may have been taken before this method was invoked.
      *
      * @since 19.0
      */
     public Map<Thread, List<StackTraceEntry>> takeSample() {
+        if (safepointSampling) {
+            return takeSafepointSample();
+        }
         ShadowStack localShadowStack = shadowStack;
         if (localShadowStack == null) {
             localShadowStack = initializeShadowStack();
@@ -566,6 +606,33 @@ public final class CPUSampler implements Closeable {
         return Collections.unmodifiableMap(stacks);
     }
 
+    private Map<Thread, List<StackTraceEntry>> takeSafepointSample() {
+        SafepointStackSampler localSampler = safepointSampler;
+        if (localSampler == null) {
+            initializeShadowStack();
+            localSampler = safepointSampler;
+        }
+        if (delaySamplingUntilNonInternalLangInit && !nonInternalLanguageContextInitialized) {
+            return Collections.emptyMap();
+        }
+        assert localSampler != null;
+        Map<Thread, List<StackTraceEntry>> stacks = new HashMap<>();
+        for (SafepointStackSampler.ThreadState state : localSampler.getThreadStates()) {
+            if (state.consumeStackOverflowed()) {
+                stackOverflowed = true;
+                continue;
+            }
+            SafepointStackSampler.Sample sample = state.getLatestSample();
+            if (sample != null && sample.stack.length > 0) {
+                final List<StackTraceEntry> stackTraceEntries = Arrays.asList(sample.stack.clone());
+                Collections.reverse(stackTraceEntries);
+                stacks.put(state.getThread(), Collections.unmodifiableList(stackTraceEntries));
+            }
+        }
+        localSampler.requestSamples();
+        return Collections.unmodifiableMap(stacks);
+    }
+
     static Map<Thread, StackTraceElement[]> toStackTraceElement(Map<Thread, List<StackTraceEntry>> sample) {
         Map<Thread, StackTraceElement[]> converted = new HashMap<>();
         for (Entry<Thread, List<StackTraceEntry>> entry : sample.entrySet()) {
@@ -577,11 +644,20 @@ public final class CPUSampler implements Closeable {
     private synchronized ShadowStack initializeShadowStack() {
         ShadowStack localShadowStack = shadowStack;
         if (localShadowStack == null) {
-            assert stacksBinding == null;
             SourceSectionFilter f = this.filter;
             if (f == null) {
                 f = DEFAULT_FILTER;
             }
+            if (safepointSampling) {
+                if (safepointSampler == null) {
+                    assert stacksBinding == null;
+                    SourceSectionFilter combined = combine(f, mode);
+                    this.safepointSampler = new SafepointStackSampler(stackLimit, combined, env.getInstrumenter(), TruffleLogger.getLogger(CPUSamplerInstrument.ID));
+                    this.stacksBinding = this.safepointSampler.install(combined, mode == Mode.EXCLUDE_INLINED_ROOTS);
+                }
+                return null;
+            }
+            assert stacksBinding == null;
             this.shadowStack = localShadowStack = new ShadowStack(stackLimit, f, env.getInstrumenter(), TruffleLogger.getLogger(CPUSamplerInstrument.ID));
             this.stacksBinding = this.shadowStack.install(env.getInstrumenter(), combine(f, mode), mode == Mode.EXCLUDE_INLINED_ROOTS);
         }
@@ -637,16 +713,15 @@ public final class CPUSampler implements Closeable {
     }
 
     private void invalidateStack() {
-        ShadowStack localShadowStack = this.shadowStack;
-        if (localShadowStack != null) {
+        if (this.shadowStack != null || this.safepointSampler != null) {
             synchronized (this) {
-                localShadowStack = this.shadowStack;
-                if (localShadowStack != null) {
+                if (this.shadowStack != null || this.safepointSampler != null) {
                     if (stacksBinding != null) {
                         stacksBinding.dispose();
                         stacksBinding = null;
                     }
                     shadowStack = null;
+                    safepointSampler = null;
                 } else {
                     assert stacksBinding == null;
                 }
@@ -666,23 +741,39 @@ public final class CPUSampler implements Closeable {
             ShadowStack localShadowStack = shadowStack;
             if (localShadowStack != null) {
                 for (ShadowStack.ThreadLocalStack stack : localShadowStack.getStacks()) {
-                    ProfilerNode<Payload> threadNode;
-                    synchronized (CPUSampler.this) {
-                        threadNode = rootNodes.computeIfAbsent(stack.getThread(), new Function<Thread, ProfilerNode<Payload>>() {
-                            @Override
-                            public ProfilerNode<Payload> apply(Thread thread) {
-                                return new ProfilerNode<>();
-                            }
-                        });
+                    sampleTaken |= sample(stack, timestamp, getThreadNode(stack.getThread()));
+                }
+            }
+            SafepointStackSampler localSampler = safepointSampler;
+            if (localSampler != null) {
+                for (SafepointStackSampler.ThreadState state : localSampler.getThreadStates()) {
+                    if (state.consumeStackOverflowed()) {
+                        stackOverflowed = true;
+                        continue;
+                    }
+                    SafepointStackSampler.Sample sample = state.takeFreshSample();
+                    if (sample != null) {
+                        sampleTaken |= sample(sample.stack, sample.timestamp, getThreadNode(state.getThread()));
                     }
-                    sampleTaken |= sample(stack, timestamp, threadNode);
                 }
+                localSampler.requestSamples();
             }
             if (sampleTaken) {
                 samplesTaken.incrementAndGet();
             }
         }
 
+        private ProfilerNode<Payload> getThreadNode(Thread forThread) {
+            synchronized (CPUSampler.this) {
+                return rootNodes.computeIfAbsent(forThread, new Function<Thread, ProfilerNode<Payload>>() {
+                    @Override
+                    public ProfilerNode<Payload> apply(Thread thread) {
+                        return new ProfilerNode<>();
+                    }
+                });
+            }
+        }
+
         boolean sample(ShadowStack.ThreadLocalStack stack, long timestamp, ProfilerNode<Payload> threadNode) {
             if (stack.hasStackOverflowed()) {
                 stackOverflowed = true;
@@ -692,7 +783,10 @@ public final class CPUSampler implements Closeable {
                 // nothing on the stack
                 return false;
             }
-            StackTraceEntry[] stackFrames = stack.getStack();
+            return sample(stack.getStack(), timestamp, threadNode);
+        }
+
+        boolean sample(StackTraceEntry[] stackFrames, long timestamp, ProfilerNode<Payload> threadNode) {
             if (stackFrames == null || stackFrames.length == 0) {
                 return false;
             }
@@ -36,6 +36,8 @@ import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.EventBinding;
 import com.oracle.truffle.api.instrumentation.EventContext;
@@ -218,11 +220,19 @@ public final class CPUTracer implements Closeable {
 
         private final StackTraceEntry location;
 
+        /*
+         * Executions by the thread that created the payload are counted with plain increments.
+         * Every other thread counts into its own cell, so that multi-threaded guest code does not
+         * contend on a single counter.
+         */
+        private final Thread cachedThread;
         private long countInterpreted;
         private long countCompiled;
+        private volatile ThreadCount otherThreadCounts;
 
         Payload(StackTraceEntry location) {
             this.location = location;
+            this.cachedThread = Thread.currentThread();
         }
 
         /**
@@ -259,7 +269,11 @@ public final class CPUTracer implements Closeable {
          * @since 0.30
          */
         public long getCountCompiled() {
-            return countCompiled;
+            long count = countCompiled;
+            for (ThreadCount threadCount = otherThreadCounts; threadCount != null; threadCount = threadCount.next) {
+                count += threadCount.countCompiled;
+            }
+            return count;
         }
 
         /**
@@ -267,7 +281,11 @@ public final class CPUTracer implements Closeable {
          * @since 0.30
          */
         public long getCountInterpreted() {
-            return countInterpreted;
+            long count = countInterpreted;
+            for (ThreadCount threadCount = otherThreadCounts; threadCount != null; threadCount = threadCount.next) {
+                count += threadCount.countInterpreted;
+            }
+            return count;
         }
 
         /**
@@ -275,13 +293,45 @@ public final class CPUTracer implements Closeable {
          * @since 0.30
          */
         public long getCount() {
-            return countCompiled + countInterpreted;
+            return getCountCompiled() + getCountInterpreted();
+        }
+
+        ThreadCount findThreadCount(Thread thread) {
+            ThreadCount threadCount = otherThreadCounts;
+            while (threadCount != null && threadCount.thread != thread) {
+                threadCount = threadCount.next;
+            }
+            return threadCount;
+        }
+
+        @TruffleBoundary
+        synchronized ThreadCount addThreadCount(Thread thread) {
+            ThreadCount threadCount = new ThreadCount(thread, otherThreadCounts);
+            otherThreadCounts = threadCount;
+            return threadCount;
+        }
+    }
+
+    /**
+     * The executions of a {@link Payload} by one thread, only written by that thread.
+     */
+    private static final class ThreadCount {
+
+        final Thread thread;
+        final ThreadCount next;
+        long countInterpreted;
+        long countCompiled;
+
+        ThreadCount(Thread thread, ThreadCount next) {
+            this.thread = thread;
+            this.next = next;
         }
     }
 
     private static class CounterNode extends ExecutionEventNode {
 
         private final Payload payload;
+        @CompilationFinal private boolean seenOtherThreads;
 
         CounterNode(Payload payload) {
             this.payload = payload;
@@ -289,10 +339,27 @@ public final class CPUTracer implements Closeable {
 
         @Override
         protected void onEnter(VirtualFrame frame) {
-            if (CompilerDirectives.inInterpreter()) {
-                payload.countInterpreted++;
+            if (payload.cachedThread == Thread.currentThread()) {
+                if (CompilerDirectives.inInterpreter()) {
+                    payload.countInterpreted++;
+                } else {
+                    payload.countCompiled++;
+                }
             } else {
-                payload.countCompiled++;
+                if (!seenOtherThreads) {
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    seenOtherThreads = true;
+                }
+                Thread currentThread = Thread.currentThread();
+                ThreadCount threadCount = payload.findThreadCount(currentThread);
+                if (threadCount == null) {
+                    threadCount = payload.addThreadCount(currentThread);
+                }
+                if (CompilerDirectives.inInterpreter()) {
+                    threadCount.countInterpreted++;
+                } else {
+                    threadCount.countCompiled++;
+                }
             }
         }
 
@@ -28,13 +28,14 @@ import static com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
-import java.util.function.Function;
 import java.util.function.Supplier;
 
 import org.graalvm.polyglot.Context;
@@ -44,6 +45,7 @@ import com.oracle.truffle.api.TruffleLogger;
 import com.oracle.truffle.api.instrumentation.AllocationEvent;
 import com.oracle.truffle.api.instrumentation.AllocationEventFilter;
 import com.oracle.truffle.api.instrumentation.AllocationListener;
+import com.oracle.truffle.api.instrumentation.AllocationReporter;
 import com.oracle.truffle.api.instrumentation.EventBinding;
 import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
 import com.oracle.truffle.api.instrumentation.StandardTags;
@@ -64,6 +66,11 @@ import com.oracle.truffle.tools.profiler.impl.ProfilerToolFactory;
  * during execution, and listens for {@link AllocationEvent allocation events}. On each event, the
  * allocation information is associated to the top of the stack.
  * <p>
+ * Every thread counts its allocations into its own buffer without taking any locks, aggregated per
+ * stack and kind of allocation. The buffers are merged into trees of {@linkplain ProfilerNode
+ * nodes} when the profile is read. If a {@linkplain #setSampleInterval(long) sample interval} is
+ * set, only one allocation per interval of allocated bytes is recorded.
+ * <p>
  * NOTE: This profiler is still experimental with limited capabilities.
  * <p>
  * Usage example: {@codesnippet MemoryTracerSnippets#example}
@@ -93,7 +100,15 @@ public final class MemoryTracer implements Closeable {
 
     private EventBinding<?> stacksBinding;
 
-    private final Map<Thread, ProfilerNode<Payload>> rootNodes = new HashMap<>();
+    private final Map<Thread, ThreadBuffer> threadBuffers = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<ThreadBuffer> currentThreadBuffer = ThreadLocal.withInitial(() -> {
+        ThreadBuffer buffer = new ThreadBuffer();
+        threadBuffers.put(Thread.currentThread(), buffer);
+        return buffer;
+    });
+
+    private volatile long sampleInterval = 0;
 
     private boolean stackOverflowed = false;
 
@@ -164,8 +179,8 @@ public final class MemoryTracer implements Closeable {
      */
     public synchronized Collection<ProfilerNode<Payload>> getRootNodes() {
         ProfilerNode<Payload> copy = new ProfilerNode<>();
-        for (ProfilerNode<Payload> node : rootNodes.values()) {
-            copy.deepMergeChildrenFrom(node, mergePayload, payloadFactory);
+        for (ThreadBuffer buffer : threadBuffers.values()) {
+            copy.deepMergeChildrenFrom(buffer.toTree(), mergePayload, payloadFactory);
         }
         return copy.getChildren();
     }
@@ -176,10 +191,11 @@ public final class MemoryTracer implements Closeable {
      */
     public synchronized Map<Thread, Collection<ProfilerNode<Payload>>> getThreadToNodesMap() {
         Map<Thread, Collection<ProfilerNode<Payload>>> returnValue = new HashMap<>();
-        for (Map.Entry<Thread, ProfilerNode<Payload>> entry : rootNodes.entrySet()) {
-            ProfilerNode<Payload> copy = new ProfilerNode<>();
-            copy.deepCopyChildrenFrom(entry.getValue(), copyPayload);
-            returnValue.put(entry.getKey(), copy.getChildren());
+        for (Map.Entry<Thread, ThreadBuffer> entry : threadBuffers.entrySet()) {
+            ProfilerNode<Payload> tree = entry.getValue().toTree();
+            if (tree.children != null) {
+                returnValue.put(entry.getKey(), tree.getChildren());
+            }
         }
         return Collections.unmodifiableMap(returnValue);
     }
@@ -191,18 +207,6 @@ public final class MemoryTracer implements Closeable {
         }
     };
 
-    Function<Payload, Payload> copyPayload = new Function<Payload, Payload>() {
-        @Override
-        public Payload apply(Payload payload) {
-            Payload copy = new Payload();
-            copy.totalAllocations = payload.totalAllocations;
-            for (AllocationEventInfo info : payload.events) {
-                copy.events.add(new AllocationEventInfo(info.language, info.allocated, info.reallocation, info.metaObjectString));
-            }
-            return copy;
-        }
-    };
-
     BiConsumer<Payload, Payload> mergePayload = new BiConsumer<Payload, Payload>() {
         @Override
         public void accept(Payload source, Payload dest) {
@@ -219,11 +223,8 @@ public final class MemoryTracer implements Closeable {
      * @since 0.30
      */
     public synchronized void clearData() {
-        for (ProfilerNode<Payload> node : rootNodes.values()) {
-            Map<StackTraceEntry, ProfilerNode<Payload>> rootChildren = node.children;
-            if (rootChildren != null) {
-                rootChildren.clear();
-            }
+        for (ThreadBuffer buffer : threadBuffers.values()) {
+            buffer.samples.clear();
         }
     }
 
@@ -232,12 +233,12 @@ public final class MemoryTracer implements Closeable {
      * @since 0.30
      */
     public synchronized boolean hasData() {
-        boolean hasData = false;
-        for (ProfilerNode<Payload> node : rootNodes.values()) {
-            Map<StackTraceEntry, ProfilerNode<Payload>> rootChildren = node.children;
-            hasData |= (rootChildren != null && !rootChildren.isEmpty());
+        for (ThreadBuffer buffer : threadBuffers.values()) {
+            if (!buffer.samples.isEmpty()) {
+                return true;
+            }
         }
-        return hasData;
+        return false;
     }
 
     /**
@@ -263,6 +264,34 @@ public final class MemoryTracer implements Closeable {
         this.stackLimit = stackLimit;
     }
 
+    /**
+     * Sets the sample interval in bytes. If the interval is greater than zero, only one allocation
+     * per interval of allocated bytes is recorded by each thread, all other allocations are
+     * ignored. This makes the tracer cheap enough to be used with allocation heavy code, at the
+     * cost of the {@linkplain Payload#getTotalAllocations() allocation counts} only being
+     * proportional to the real ones. Allocations of unknown size are counted as one byte. The
+     * default is <code>0</code>, which records every allocation.
+     *
+     * @param bytes the number of allocated bytes between two recorded allocations
+     * @since 20.1
+     */
+    public synchronized void setSampleInterval(long bytes) {
+        verifyConfigAllowed();
+        if (bytes < 0) {
+            throw new IllegalArgumentException(String.format("Invalid sample interval %s.", bytes));
+        }
+        this.sampleInterval = bytes;
+    }
+
+    /**
+     * @return the number of allocated bytes between two recorded allocations, <code>0</code> if
+     *         every allocation is recorded
+     * @since 20.1
+     */
+    public synchronized long getSampleInterval() {
+        return sampleInterval;
+    }
+
     /**
      * @return was the shadow stack size insufficient for the execution.
      * @since 0.30
@@ -327,6 +356,11 @@ public final class MemoryTracer implements Closeable {
             if (gettingMetaObject.get()) {
                 return;
             }
+            ThreadBuffer buffer = currentThreadBuffer.get();
+            long interval = sampleInterval;
+            if (interval > 0 && !buffer.countDown(allocatedBytes(event), interval)) {
+                return;
+            }
             ShadowStack.ThreadLocalStack stack = shadowStack.getStack(Thread.currentThread());
             if (stack == null || stack.getStackIndex() == -1) {
                 // nothing on the stack
@@ -346,37 +380,203 @@ public final class MemoryTracer implements Closeable {
                 metaObjectString = "null";
             }
             gettingMetaObject.set(false);
-            AllocationEventInfo info = new AllocationEventInfo(languageInfo, event.getNewSize() - event.getOldSize(), event.getOldSize() != 0, metaObjectString);
-            handleEvent(stack, info);
+            AllocationKind kind = new AllocationKind(languageInfo, event.getNewSize() - event.getOldSize(), event.getOldSize() != 0, metaObjectString);
+            handleEvent(buffer, stack, kind);
+        }
+
+        boolean handleEvent(ThreadBuffer buffer, ShadowStack.ThreadLocalStack stack, AllocationKind kind) {
+            Stack recorded = buffer.intern(stack);
+            if (recorded == null) {
+                return false;
+            }
+            buffer.record(recorded, kind);
+            return true;
+        }
+
+        private long allocatedBytes(AllocationEvent event) {
+            long oldSize = event.getOldSize();
+            long newSize = event.getNewSize();
+            if (oldSize == AllocationReporter.SIZE_UNKNOWN || newSize == AllocationReporter.SIZE_UNKNOWN || newSize - oldSize <= 0) {
+                return 1;
+            }
+            return newSize - oldSize;
+        }
+    }
+
+    /**
+     * An immutable sequence of stack trace entries, bottom of the stack first.
+     */
+    private static final class Stack {
+
+        final StackTraceEntry[] locations;
+        private final int hash;
+
+        Stack(StackTraceEntry[] locations) {
+            this.locations = locations;
+            this.hash = Arrays.hashCode(locations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || obj instanceof Stack && hash == ((Stack) obj).hash && Arrays.equals(locations, ((Stack) obj).locations);
+        }
+    }
+
+    /**
+     * Identifies allocations with the same properties, which are recorded as a single count.
+     */
+    private static final class AllocationKind {
+
+        final LanguageInfo language;
+        final long allocated;
+        final boolean reallocation;
+        final String metaObjectString;
+
+        AllocationKind(LanguageInfo language, long allocated, boolean reallocation, String metaObjectString) {
+            this.language = language;
+            this.allocated = allocated;
+            this.reallocation = reallocation;
+            this.metaObjectString = metaObjectString;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(language);
+            result = 31 * result + Long.hashCode(allocated);
+            result = 31 * result + Boolean.hashCode(reallocation);
+            return 31 * result + metaObjectString.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AllocationKind)) {
+                return false;
+            }
+            AllocationKind other = (AllocationKind) obj;
+            return language == other.language && allocated == other.allocated && reallocation == other.reallocation && metaObjectString.equals(other.metaObjectString);
+        }
+    }
+
+    /**
+     * The number of allocations of one kind at one stack. Only incremented by the thread owning the
+     * buffer.
+     */
+    private static final class AllocationCount {
+
+        final AllocationEventInfo info;
+        private volatile long count;
+
+        AllocationCount(AllocationKind kind) {
+            this.info = new AllocationEventInfo(kind.language, kind.allocated, kind.reallocation, kind.metaObjectString);
+        }
+
+        void increment() {
+            count = count + 1;
+        }
+    }
+
+    /**
+     * The allocations recorded by a single thread. Only the owning thread records allocations, the
+     * buffer can be read concurrently by any thread.
+     */
+    private static final class ThreadBuffer {
+
+        final Map<Stack, Map<AllocationKind, AllocationCount>> samples = new ConcurrentHashMap<>();
+
+        // Allocated bytes until the next sample boundary, only accessed by the owning thread.
+        private long bytesUntilSample;
+
+        // The last stack recorded at each depth, only accessed by the owning thread.
+        private Stack[] lastStacks = new Stack[16];
+
+        /**
+         * Counts down the allocated bytes and returns <code>true</code> if the allocation should be
+         * recorded.
+         */
+        boolean countDown(long bytes, long interval) {
+            long remaining = bytesUntilSample - bytes;
+            if (remaining >= 0) {
+                bytesUntilSample = remaining;
+                return false;
+            }
+            // the allocation crossed a sample boundary, count down to the next one
+            bytesUntilSample = (remaining % interval + interval) % interval;
+            return true;
         }
 
-        boolean handleEvent(ShadowStack.ThreadLocalStack stack, AllocationEventInfo info) {
+        /**
+         * Returns the current content of the shadow stack. Allocations are mostly recorded at the
+         * same stack as the previous allocation at that depth, in which case the previous stack is
+         * returned without copying and hashing the entries.
+         */
+        Stack intern(ShadowStack.ThreadLocalStack stack) {
+            int depth = stack.getStackIndex() + 1;
+            if (depth < lastStacks.length) {
+                Stack last = lastStacks[depth];
+                if (last != null && stack.contentEquals(last.locations)) {
+                    return last;
+                }
+            }
             StackTraceEntry[] locations = stack.getStack();
             if (locations == null) {
-                return false;
+                return null;
             }
-            synchronized (MemoryTracer.this) {
-                // now traverse the stack and reconstruct the call tree
-                ProfilerNode<Payload> treeNode = rootNodes.computeIfAbsent(Thread.currentThread(), new Function<Thread, ProfilerNode<Payload>>() {
-                    @Override
-                    public ProfilerNode<Payload> apply(Thread thread) {
-                        return new ProfilerNode<>();
-                    }
-                });
-                for (int i = 0; i < locations.length; i++) {
-                    StackTraceEntry location = locations[i];
+            Stack result = new Stack(locations);
+            if (locations.length == depth) {
+                if (depth >= lastStacks.length) {
+                    lastStacks = Arrays.copyOf(lastStacks, Math.max(depth + 1, lastStacks.length * 2));
+                }
+                lastStacks[depth] = result;
+            }
+            return result;
+        }
+
+        void record(Stack stack, AllocationKind kind) {
+            Map<AllocationKind, AllocationCount> counts = samples.get(stack);
+            if (counts == null) {
+                counts = new ConcurrentHashMap<>();
+                samples.put(stack, counts);
+            }
+            AllocationCount count = counts.get(kind);
+            if (count == null) {
+                count = new AllocationCount(kind);
+                counts.put(kind, count);
+            }
+            count.increment();
+        }
+
+        /**
+         * Builds the call tree of the allocations recorded so far.
+         */
+        ProfilerNode<Payload> toTree() {
+            ProfilerNode<Payload> root = new ProfilerNode<>();
+            for (Map.Entry<Stack, Map<AllocationKind, AllocationCount>> entry : samples.entrySet()) {
+                List<AllocationEventInfo> events = new ArrayList<>();
+                for (AllocationCount count : entry.getValue().values()) {
+                    events.addAll(Collections.nCopies((int) Math.min(count.count, Integer.MAX_VALUE), count.info));
+                }
+                if (events.isEmpty()) {
+                    continue;
+                }
+                ProfilerNode<Payload> treeNode = root;
+                for (StackTraceEntry location : entry.getKey().locations) {
                     ProfilerNode<Payload> child = treeNode.findChild(location);
                     if (child == null) {
                         child = new ProfilerNode<>(treeNode, location, new Payload());
                         treeNode.addChild(location, child);
                     }
                     treeNode = child;
-                    treeNode.getPayload().incrementTotalAllocations();
+                    treeNode.getPayload().totalAllocations += events.size();
                 }
-                // insert event at the top of the stack
-                treeNode.getPayload().getEvents().add(info);
-                return true;
+                // insert events at the top of the stack
+                treeNode.getPayload().getEvents().addAll(events);
             }
+            return root;
         }
     }
 
@@ -397,7 +597,8 @@ public final class MemoryTracer implements Closeable {
 
         /**
          * @return Total number of allocations recorded while the associated element was on the
-         *         shadow stack
+         *         shadow stack. Only counts the sampled allocations if a
+         *         {@linkplain MemoryTracer#setSampleInterval(long) sample interval} is set.
          * @since 0.30
          */
         public long getTotalAllocations() {
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLogger;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventBinding;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.Instrumenter;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeCost;
+
+/**
+ * Stack sampling without a shadow stack. Instead of pushing and popping stack entries on every
+ * instrumented node, the instrumented nodes only poll a per thread request flag. The sampling
+ * thread sets the flag and the guest thread walks its own stack using
+ * {@link com.oracle.truffle.api.TruffleRuntime#iterateFrames} the next time it reaches a poll.
+ * The walked stack is published to the sampling thread, which aggregates it on its next period.
+ *
+ * @since 20.1
+ */
+final class SafepointStackSampler {
+
+    private final ConcurrentHashMap<Thread, ThreadState> threads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Node, StackTraceEntry> entries = new ConcurrentHashMap<>();
+    private final int stackLimit;
+    private final SourceSectionFilter sourceSectionFilter;
+    private final Instrumenter instrumenter;
+    private final TruffleLogger logger;
+
+    SafepointStackSampler(int stackLimit, SourceSectionFilter sourceSectionFilter, Instrumenter instrumenter, TruffleLogger logger) {
+        this.stackLimit = stackLimit;
+        this.sourceSectionFilter = sourceSectionFilter;
+        this.instrumenter = instrumenter;
+        this.logger = logger;
+    }
+
+    Collection<ThreadState> getThreadStates() {
+        return threads.values();
+    }
+
+    /**
+     * Asks every thread that executed guest code so far to sample its stack at the next poll.
+     */
+    void requestSamples() {
+        for (ThreadState state : threads.values()) {
+            state.requested = true;
+        }
+    }
+
+    EventBinding<?> install(SourceSectionFilter filter, boolean compiledOnly) {
+        return instrumenter.attachExecutionEventFactory(filter, new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                Node instrumentedNode = context.getInstrumentedNode();
+                if (instrumentedNode.getSourceSection() == null) {
+                    logger.warning("Instrumented node " + instrumentedNode + " has null SourceSection.");
+                    return null;
+                }
+                return new SamplePollNode(SafepointStackSampler.this, context, compiledOnly);
+            }
+        });
+    }
+
+    @TruffleBoundary
+    ThreadState getThreadState() {
+        Thread currentThread = Thread.currentThread();
+        ThreadState state = threads.get(currentThread);
+        if (state == null) {
+            state = new ThreadState(currentThread);
+            ThreadState prevState = threads.putIfAbsent(currentThread, state);
+            if (prevState != null) {
+                state = prevState;
+            }
+        }
+        return state;
+    }
+
+    @TruffleBoundary
+    void sample(ThreadState state, Node polledNode, boolean compiled) {
+        state.requested = false;
+        ArrayList<StackTraceEntry> stack = new ArrayList<>();
+        byte topState = compiled ? StackTraceEntry.STATE_COMPILATION_ROOT : StackTraceEntry.STATE_INTERPRETED;
+        addEntries(stack, polledNode, topState);
+        Truffle.getRuntime().iterateFrames(frame -> {
+            if (stack.size() > stackLimit) {
+                return frame;
+            }
+            Node callNode = frame.getCallNode();
+            if (callNode != null) {
+                addEntries(stack, callNode, frame.isVirtualFrame() ? StackTraceEntry.STATE_COMPILATION_ROOT : StackTraceEntry.STATE_INTERPRETED);
+            }
+            return null;
+        });
+        if (stack.size() > stackLimit) {
+            state.stackOverflowed = true;
+            return;
+        }
+        Collections.reverse(stack);
+        state.publish(stack.toArray(new StackTraceEntry[stack.size()]), System.currentTimeMillis());
+    }
+
+    /*
+     * Adds the entries for the node and all of its enclosing nodes that pass the filter, innermost
+     * first.
+     */
+    private void addEntries(ArrayList<StackTraceEntry> stack, Node node, byte entryState) {
+        Node current = node;
+        while (current != null) {
+            if (current.getSourceSection() != null && sourceSectionFilter.includes(current)) {
+                StackTraceEntry entry = entries.get(current);
+                if (entry == null) {
+                    entry = new StackTraceEntry(instrumenter, current, StackTraceEntry.STATE_INTERPRETED);
+                    StackTraceEntry prevEntry = entries.putIfAbsent(current, entry);
+                    if (prevEntry != null) {
+                        entry = prevEntry;
+                    }
+                }
+                stack.add(entryState == StackTraceEntry.STATE_INTERPRETED ? entry : new StackTraceEntry(entry, entryState));
+            }
+            current = current.getParent();
+        }
+    }
+
+    private static final class SamplePollNode extends ExecutionEventNode {
+
+        private final SafepointStackSampler sampler;
+        private final Node instrumentedNode;
+
+        private final Thread cachedThread;
+        private final ThreadState cachedState;
+
+        @CompilationFinal private boolean seenOtherThreads;
+        private final boolean isAttachedToRootTag;
+        private final boolean ignoreInlinedRoots;
+
+        SamplePollNode(SafepointStackSampler sampler, EventContext context, boolean ignoreInlinedRoots) {
+            this.sampler = sampler;
+            this.instrumentedNode = context.getInstrumentedNode();
+            this.cachedThread = Thread.currentThread();
+            this.cachedState = sampler.getThreadState();
+            this.isAttachedToRootTag = context.hasTag(StandardTags.RootTag.class);
+            this.ignoreInlinedRoots = ignoreInlinedRoots;
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            if (CompilerDirectives.inCompiledCode() && ignoreInlinedRoots && isAttachedToRootTag && !CompilerDirectives.inCompilationRoot()) {
+                return;
+            }
+            ThreadState state;
+            if (seenOtherThreads) {
+                state = sampler.getThreadState();
+            } else if (cachedThread == Thread.currentThread()) {
+                state = cachedState;
+            } else {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                seenOtherThreads = true;
+                state = sampler.getThreadState();
+            }
+            if (CompilerDirectives.injectBranchProbability(CompilerDirectives.SLOWPATH_PROBABILITY, state.requested)) {
+                sampler.sample(state, instrumentedNode, CompilerDirectives.inCompiledCode());
+            }
+        }
+
+        @Override
+        public NodeCost getCost() {
+            return NodeCost.NONE;
+        }
+    }
+
+    static final class ThreadState {
+
+        private final Thread thread;
+
+        volatile boolean requested;
+        volatile boolean stackOverflowed;
+
+        private volatile Sample latest;
+        private volatile boolean fresh;
+
+        ThreadState(Thread thread) {
+            this.thread = thread;
+        }
+
+        Thread getThread() {
+            return thread;
+        }
+
+        /**
+         * Returns whether the last stack walk of this thread exceeded the stack limit and clears
+         * the flag, so that later samples of the thread are taken again.
+         */
+        boolean consumeStackOverflowed() {
+            if (!stackOverflowed) {
+                return false;
+            }
+            stackOverflowed = false;
+            return true;
+        }
+
+        void publish(StackTraceEntry[] stack, long timestamp) {
+            latest = new Sample(stack, timestamp);
+            fresh = true;
+        }
+
+        /**
+         * Returns the sample published since the last call, or <code>null</code> if the thread did
+         * not reach a poll in the meantime.
+         */
+        Sample takeFreshSample() {
+            if (!fresh) {
+                return null;
+            }
+            fresh = false;
+            return latest;
+        }
+
+        /**
+         * Returns the most recently published sample, or <code>null</code> if there is none.
+         */
+        Sample getLatestSample() {
+            return latest;
+        }
+    }
+
+    static final class Sample {
+
+        /*
+         * Bottom of the stack first.
+         */
+        final StackTraceEntry[] stack;
+        final long timestamp;
+
+        Sample(StackTraceEntry[] stack, long timestamp) {
+            this.stack = stack;
+            this.timestamp = timestamp;
+        }
+    }
+}
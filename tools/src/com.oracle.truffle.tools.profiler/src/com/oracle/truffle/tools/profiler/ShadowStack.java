@@ -352,6 +352,25 @@ final class ShadowStack {
             return localStack;
         }
 
+        /**
+         * Returns <code>true</code> if the stack consists of exactly the given entries, bottom of
+         * the stack first. Must only be called by the thread owning the stack.
+         */
+        boolean contentEquals(StackTraceEntry[] entries) {
+            assert Thread.currentThread() == thread;
+            int length = stackIndex + 1;
+            if (length != entries.length || length > stack.length) {
+                return false;
+            }
+            // the top of the stack differs most often
+            for (int i = length - 1; i >= 0; i--) {
+                if (stack[i] != entries[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         Thread getThread() {
             return thread;
         }
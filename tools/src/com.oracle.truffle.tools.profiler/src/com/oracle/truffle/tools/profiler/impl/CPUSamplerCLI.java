@@ -37,7 +37,9 @@ import org.graalvm.options.OptionKey;
 import org.graalvm.options.OptionStability;
 import org.graalvm.options.OptionType;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -47,6 +49,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 @Option.Group(CPUSamplerInstrument.ID)
@@ -56,6 +61,8 @@ class CPUSamplerCLI extends ProfilerCLI {
         HISTOGRAM,
         CALLTREE,
         JSON,
+        COLLAPSED,
+        PPROF,
     }
 
     static final OptionType<Output> CLI_OUTPUT_TYPE = new OptionType<>("Output",
@@ -65,7 +72,7 @@ class CPUSamplerCLI extends ProfilerCLI {
                             try {
                                 return Output.valueOf(s.toUpperCase());
                             } catch (IllegalArgumentException e) {
-                                throw new IllegalArgumentException("Output can be: histogram, calltree or json");
+                                throw new IllegalArgumentException("Output can be: histogram, calltree, json, collapsed or pprof");
                             }
                         }
                     });
@@ -100,7 +107,10 @@ class CPUSamplerCLI extends ProfilerCLI {
     @Option(name = "StackLimit", help = "Maximum number of maximum stack elements.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
     static final OptionKey<Integer> STACK_LIMIT = new OptionKey<>(10000);
 
-    @Option(name = "Output", help = "Print a 'histogram', 'calltree' or 'json' as output (default:HISTOGRAM).", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    @Option(name = "SampleAtSafepoints", help = "Walk the stack in the sampled threads instead of keeping a shadow stack. Has a much lower overhead (default:false).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> SAMPLE_AT_SAFEPOINTS = new OptionKey<>(false);
+
+    @Option(name = "Output", help = "Print a 'histogram', 'calltree', 'json', 'collapsed' stacks for flame graphs or a gzipped 'pprof' profile as output (default:HISTOGRAM).", category = OptionCategory.USER, stability = OptionStability.STABLE) //
     static final OptionKey<Output> OUTPUT = new OptionKey<>(Output.HISTOGRAM, CLI_OUTPUT_TYPE);
 
     @Option(name = "FilterRootName", help = "Wildcard filter for program roots. (eg. Math.*, default:*).", category = OptionCategory.USER, stability = OptionStability.STABLE) //
@@ -127,27 +137,95 @@ class CPUSamplerCLI extends ProfilerCLI {
     @Option(name = "OutputFile", help = "Save output to the given file. Output is printed to output stream by default.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
     static final OptionKey<String> OUTPUT_FILE = new OptionKey<>("");
 
+    @Option(name = "DumpInterval", help = "Periodically write the output gathered so far to '<OutputFile>.<n>' every this many milliseconds without stopping the sampling (default:0, disabled).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Long> DUMP_INTERVAL = new OptionKey<>(0L);
+
+    @Option(name = "DumpCount", help = "Number of periodic dump files to rotate through (default:5).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Integer> DUMP_COUNT = new OptionKey<>(5);
+
     static void handleOutput(TruffleInstrument.Env env, CPUSampler sampler) {
         try (PrintStream out = chooseOutputStream(env, OUTPUT_FILE)) {
-            if (sampler.hasStackOverflowed()) {
-                out.println("-------------------------------------------------------------------------------- ");
-                out.println("ERROR: Shadow stack has overflowed its capacity of " + env.getOptions().get(STACK_LIMIT) + " during execution!");
-                out.println("The gathered data is incomplete and incorrect!");
-                out.println("Use --" + CPUSamplerInstrument.ID + ".StackLimit=<" + STACK_LIMIT.getType().getName() + "> to set stack capacity.");
-                out.println("-------------------------------------------------------------------------------- ");
-                return;
+            writeOutput(env, sampler, out);
+        }
+    }
+
+    static ScheduledExecutorService schedulePeriodicDumps(TruffleInstrument.Env env, CPUSampler sampler) {
+        return schedulePeriodicDumps(env, CPUSamplerInstrument.ID, OUTPUT_FILE, DUMP_INTERVAL, DUMP_COUNT, new Consumer<PrintStream>() {
+            @Override
+            public void accept(PrintStream out) {
+                writeOutput(env, sampler, out);
             }
-            Boolean summariseThreads = env.getOptions().get(SUMMARISE_THREADS);
-            switch (env.getOptions().get(OUTPUT)) {
-                case HISTOGRAM:
-                    printSamplingHistogram(out, sampler, summariseThreads);
-                    break;
-                case CALLTREE:
-                    printSamplingCallTree(out, sampler, summariseThreads);
-                    break;
-                case JSON:
-                    printSamplingJson(out, sampler);
+        });
+    }
+
+    private static void writeOutput(TruffleInstrument.Env env, CPUSampler sampler, PrintStream out) {
+        if (sampler.hasStackOverflowed()) {
+            out.println("-------------------------------------------------------------------------------- ");
+            out.println("ERROR: Shadow stack has overflowed its capacity of " + env.getOptions().get(STACK_LIMIT) + " during execution!");
+            out.println("The gathered data is incomplete and incorrect!");
+            out.println("Use --" + CPUSamplerInstrument.ID + ".StackLimit=<" + STACK_LIMIT.getType().getName() + "> to set stack capacity.");
+            out.println("-------------------------------------------------------------------------------- ");
+            return;
+        }
+        Boolean summariseThreads = env.getOptions().get(SUMMARISE_THREADS);
+        switch (env.getOptions().get(OUTPUT)) {
+            case HISTOGRAM:
+                printSamplingHistogram(out, sampler, summariseThreads);
+                break;
+            case CALLTREE:
+                printSamplingCallTree(out, sampler, summariseThreads);
+                break;
+            case JSON:
+                printSamplingJson(out, sampler);
+                break;
+            case COLLAPSED:
+                printSamplingCollapsed(out, sampler, summariseThreads);
+                break;
+            case PPROF:
+                printSamplingPprof(out, sampler, summariseThreads);
+                break;
+        }
+    }
+
+    private static final ProfileExporter.SelfValues<CPUSampler.Payload> SELF_HIT_COUNT = new ProfileExporter.SelfValues<CPUSampler.Payload>() {
+        @Override
+        public void get(ProfilerNode<CPUSampler.Payload> node, long[] values) {
+            values[0] = node.getPayload().getSelfHitCount();
+        }
+    };
+
+    private static void printSamplingCollapsed(PrintStream out, CPUSampler sampler, boolean summariseThreads) {
+        if (summariseThreads) {
+            ProfileExporter.writeCollapsed(out, null, sampler.getRootNodes(), SELF_HIT_COUNT);
+        } else {
+            for (Map.Entry<Thread, Collection<ProfilerNode<CPUSampler.Payload>>> entry : sampler.getThreadToNodesMap().entrySet()) {
+                ProfileExporter.writeCollapsed(out, entry.getKey().getName(), entry.getValue(), SELF_HIT_COUNT);
+            }
+        }
+    }
+
+    private static void printSamplingPprof(PrintStream out, CPUSampler sampler, boolean summariseThreads) {
+        final long periodNanos = TimeUnit.MILLISECONDS.toNanos(sampler.getPeriod());
+        ProfileExporter.SelfValues<CPUSampler.Payload> values = new ProfileExporter.SelfValues<CPUSampler.Payload>() {
+            @Override
+            public void get(ProfilerNode<CPUSampler.Payload> node, long[] result) {
+                result[0] = node.getPayload().getSelfHitCount();
+                result[1] = result[0] * periodNanos;
+            }
+        };
+        try {
+            ProfileExporter.PprofWriter<CPUSampler.Payload> writer = new ProfileExporter.PprofWriter<>(out, values, new String[]{"samples", "count", "cpu", "nanoseconds"}, "cpu", "nanoseconds",
+                            periodNanos);
+            if (summariseThreads) {
+                writer.writeSamples(sampler.getRootNodes(), null);
+            } else {
+                for (Map.Entry<Thread, Collection<ProfilerNode<CPUSampler.Payload>>> entry : sampler.getThreadToNodesMap().entrySet()) {
+                    writer.writeSamples(entry.getValue(), entry.getKey().getName());
+                }
             }
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
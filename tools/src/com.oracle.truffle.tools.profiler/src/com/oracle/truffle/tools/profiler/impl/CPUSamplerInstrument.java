@@ -24,6 +24,8 @@
  */
 package com.oracle.truffle.tools.profiler.impl;
 
+import java.util.concurrent.ScheduledExecutorService;
+
 import org.graalvm.options.OptionDescriptors;
 import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.Instrument;
@@ -58,6 +60,7 @@ public class CPUSamplerInstrument extends TruffleInstrument {
     public static final String ID = "cpusampler";
     static final String VERSION = "0.4.0";
     private CPUSampler sampler;
+    private ScheduledExecutorService periodicDumps;
     private static ProfilerToolFactory<CPUSampler> factory;
 
     /**
@@ -113,7 +116,9 @@ public class CPUSamplerInstrument extends TruffleInstrument {
             sampler.setFilter(getSourceSectionFilter(env));
             sampler.setGatherSelfHitTimes(env.getOptions().get(GATHER_HIT_TIMES));
             sampler.setMode(env.getOptions().get(CPUSamplerCLI.MODE));
+            sampler.setSafepointSampling(env.getOptions().get(CPUSamplerCLI.SAMPLE_AT_SAFEPOINTS));
             sampler.setCollecting(true);
+            periodicDumps = CPUSamplerCLI.schedulePeriodicDumps(env, sampler);
         }
         env.registerService(sampler);
     }
@@ -147,6 +152,9 @@ public class CPUSamplerInstrument extends TruffleInstrument {
     @Override
     protected void onDispose(Env env) {
         if (env.getOptions().get(CPUSamplerCLI.ENABLED)) {
+            if (periodicDumps != null) {
+                periodicDumps.shutdownNow();
+            }
             CPUSamplerCLI.handleOutput(env, sampler);
         }
         sampler.close();
@@ -32,7 +32,9 @@ import org.graalvm.options.OptionCategory;
 import org.graalvm.options.OptionKey;
 import org.graalvm.options.OptionType;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -41,6 +43,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -50,7 +53,9 @@ class MemoryTracerCLI extends ProfilerCLI {
     enum Output {
         TYPE_HISTOGRAM,
         LOCATION_HISTOGRAM,
-        CALLTREE
+        CALLTREE,
+        COLLAPSED,
+        PPROF
     }
 
     static final OptionType<Output> CLI_OUTPUT_TYPE = new OptionType<>("Format",
@@ -64,6 +69,10 @@ class MemoryTracerCLI extends ProfilerCLI {
                                     return Output.LOCATION_HISTOGRAM;
                                 case "calltree":
                                     return Output.CALLTREE;
+                                case "collapsed":
+                                    return Output.COLLAPSED;
+                                case "pprof":
+                                    return Output.PPROF;
                                 default:
                                     return null;
                             }
@@ -80,11 +89,14 @@ class MemoryTracerCLI extends ProfilerCLI {
 
     @Option(name = "", help = "Enable the Memory Tracer (default:false).", category = OptionCategory.USER) static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
 
-    @Option(name = "Output", help = "Print a 'typehistogram', 'histogram' or 'calltree' as output (default:histogram).", category = OptionCategory.USER) static final OptionKey<Output> OUTPUT = new OptionKey<>(
+    @Option(name = "Output", help = "Print a 'typehistogram', 'histogram', 'calltree', 'collapsed' stacks for flame graphs or a gzipped 'pprof' profile as output (default:histogram).", category = OptionCategory.USER) static final OptionKey<Output> OUTPUT = new OptionKey<>(
                     Output.LOCATION_HISTOGRAM, CLI_OUTPUT_TYPE);
 
     @Option(name = "StackLimit", help = "Maximum number of maximum stack elements.", category = OptionCategory.USER) static final OptionKey<Integer> STACK_LIMIT = new OptionKey<>(10000);
 
+    @Option(name = "SampleInterval", help = "Only record one allocation per this many allocated bytes (default:0, records every allocation).", category = OptionCategory.EXPERT) static final OptionKey<Long> SAMPLE_INTERVAL = new OptionKey<>(
+                    0L);
+
     @Option(name = "TraceRoots", help = "Capture roots when tracing (default:true).", category = OptionCategory.USER) static final OptionKey<Boolean> TRACE_ROOTS = new OptionKey<>(true);
 
     @Option(name = "TraceStatements", help = "Capture statements when tracing (default:false).", category = OptionCategory.USER) static final OptionKey<Boolean> TRACE_STATEMENTS = new OptionKey<>(
@@ -106,8 +118,37 @@ class MemoryTracerCLI extends ProfilerCLI {
     @Option(name = "FilterLanguage", help = "Only profile languages with given ID. (eg. js, default:no filter).", category = OptionCategory.USER) static final OptionKey<String> FILTER_LANGUAGE = new OptionKey<>(
                     "");
 
+    @Option(name = "OutputFile", help = "Save output to the given file. Output is printed to output stream by default.", category = OptionCategory.USER) static final OptionKey<String> OUTPUT_FILE = new OptionKey<>(
+                    "");
+
+    @Option(name = "DumpInterval", help = "Periodically write the output gathered so far to '<OutputFile>.<n>' every this many milliseconds without stopping the tracing (default:0, disabled).", category = OptionCategory.EXPERT) static final OptionKey<Long> DUMP_INTERVAL = new OptionKey<>(
+                    0L);
+
+    @Option(name = "DumpCount", help = "Number of periodic dump files to rotate through (default:5).", category = OptionCategory.EXPERT) static final OptionKey<Integer> DUMP_COUNT = new OptionKey<>(5);
+
     static void handleOutput(TruffleInstrument.Env env, MemoryTracer tracer) {
-        PrintStream out = new PrintStream(env.out());
+        PrintStream out = chooseOutputStream(env, OUTPUT_FILE);
+        try {
+            writeOutput(env, tracer, out);
+        } finally {
+            if (OUTPUT_FILE.hasBeenSet(env.getOptions())) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        }
+    }
+
+    static ScheduledExecutorService schedulePeriodicDumps(TruffleInstrument.Env env, MemoryTracer tracer) {
+        return schedulePeriodicDumps(env, MemoryTracerInstrument.ID, OUTPUT_FILE, DUMP_INTERVAL, DUMP_COUNT, new Consumer<PrintStream>() {
+            @Override
+            public void accept(PrintStream out) {
+                writeOutput(env, tracer, out);
+            }
+        });
+    }
+
+    private static void writeOutput(TruffleInstrument.Env env, MemoryTracer tracer, PrintStream out) {
         if (tracer.hasStackOverflowed()) {
             out.println("-------------------------------------------------------------------------------- ");
             out.println("ERROR: Shadow stack has overflowed its capacity of " + env.getOptions().get(STACK_LIMIT) + " during execution!");
@@ -126,6 +167,38 @@ class MemoryTracerCLI extends ProfilerCLI {
             case CALLTREE:
                 printCallTree(out, tracer);
                 break;
+            case COLLAPSED:
+                ProfileExporter.writeCollapsed(out, null, tracer.getRootNodes(), SELF_ALLOCATIONS);
+                break;
+            case PPROF:
+                printPprof(out, tracer);
+                break;
+        }
+    }
+
+    private static final ProfileExporter.SelfValues<MemoryTracer.Payload> SELF_ALLOCATIONS = new ProfileExporter.SelfValues<MemoryTracer.Payload>() {
+        @Override
+        public void get(ProfilerNode<MemoryTracer.Payload> node, long[] values) {
+            List<MemoryTracer.AllocationEventInfo> events = node.getPayload().getEvents();
+            values[0] = events.size();
+            if (values.length > 1) {
+                long bytes = 0;
+                for (MemoryTracer.AllocationEventInfo info : events) {
+                    bytes += info.getAllocated();
+                }
+                values[1] = bytes;
+            }
+        }
+    };
+
+    private static void printPprof(PrintStream out, MemoryTracer tracer) {
+        try {
+            ProfileExporter.PprofWriter<MemoryTracer.Payload> writer = new ProfileExporter.PprofWriter<>(out, SELF_ALLOCATIONS, new String[]{"alloc_objects", "count", "alloc_space", "bytes"},
+                            "space", "bytes", tracer.getSampleInterval());
+            writer.writeSamples(tracer.getRootNodes(), null);
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
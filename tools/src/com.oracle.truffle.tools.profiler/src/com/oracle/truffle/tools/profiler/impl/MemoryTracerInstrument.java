@@ -24,6 +24,8 @@
  */
 package com.oracle.truffle.tools.profiler.impl;
 
+import java.util.concurrent.ScheduledExecutorService;
+
 import org.graalvm.options.OptionDescriptors;
 import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.Instrument;
@@ -56,6 +58,7 @@ public class MemoryTracerInstrument extends TruffleInstrument {
      */
     public static final String ID = "memtracer";
     private MemoryTracer tracer;
+    private ScheduledExecutorService periodicDumps;
     private static ProfilerToolFactory<MemoryTracer> factory;
 
     /**
@@ -107,7 +110,9 @@ public class MemoryTracerInstrument extends TruffleInstrument {
         if (env.getOptions().get(MemoryTracerCLI.ENABLED)) {
             tracer.setFilter(getSourceSectionFilter(env));
             tracer.setStackLimit(env.getOptions().get(MemoryTracerCLI.STACK_LIMIT));
+            tracer.setSampleInterval(env.getOptions().get(MemoryTracerCLI.SAMPLE_INTERVAL));
             tracer.setCollecting(true);
+            periodicDumps = MemoryTracerCLI.schedulePeriodicDumps(env, tracer);
         }
         env.registerService(tracer);
     }
@@ -142,6 +147,9 @@ public class MemoryTracerInstrument extends TruffleInstrument {
     @Override
     protected void onDispose(Env env) {
         if (env.getOptions().get(MemoryTracerCLI.ENABLED)) {
+            if (periodicDumps != null) {
+                periodicDumps.shutdownNow();
+            }
             MemoryTracerCLI.handleOutput(env, tracer);
         }
         tracer.close();
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.tools.profiler.ProfilerNode;
+
+/**
+ * Writes {@link ProfilerNode} trees in the collapsed stack format consumed by flame graph tools
+ * and in the protobuf encoded <a href="https://github.com/google/pprof">pprof</a> format. Both
+ * formats are produced in a single pass over the trees, frames are deduplicated into string,
+ * function and location tables as they are encountered.
+ */
+final class ProfileExporter {
+
+    /**
+     * Provides the self values of a node, i.e. the values which are not attributed to any of its
+     * children.
+     */
+    interface SelfValues<T> {
+
+        void get(ProfilerNode<T> node, long[] values);
+    }
+
+    private ProfileExporter() {
+    }
+
+    /**
+     * Prints one line per distinct stack with a non-zero self value. Frames are separated by
+     * <code>;</code> and are followed by the value.
+     *
+     * @param prefix the first frame of all stacks, e.g. a thread name, or <code>null</code>
+     */
+    static <T> void writeCollapsed(PrintStream out, String prefix, Collection<ProfilerNode<T>> roots, SelfValues<T> selfValues) {
+        StringBuilder stack = new StringBuilder();
+        if (prefix != null) {
+            appendFrameName(stack, prefix);
+        }
+        writeCollapsedRec(out, stack, roots, selfValues, new long[1]);
+    }
+
+    private static <T> void writeCollapsedRec(PrintStream out, StringBuilder stack, Collection<ProfilerNode<T>> nodes, SelfValues<T> selfValues, long[] values) {
+        for (ProfilerNode<T> node : nodes) {
+            int length = stack.length();
+            if (length > 0) {
+                stack.append(';');
+            }
+            appendFrameName(stack, frameName(node));
+            selfValues.get(node, values);
+            if (values[0] > 0) {
+                out.append(stack).append(' ').println(values[0]);
+            }
+            writeCollapsedRec(out, stack, node.getChildren(), selfValues, values);
+            stack.setLength(length);
+        }
+    }
+
+    private static void appendFrameName(StringBuilder stack, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            stack.append(c == ';' || c == '\n' || c == '\r' ? '_' : c);
+        }
+    }
+
+    private static String frameName(ProfilerNode<?> node) {
+        String name = node.getRootName();
+        if (!node.getTags().contains(StandardTags.RootTag.class) && node.getSourceSection() != null && node.getSourceSection().isAvailable()) {
+            name += "~" + ProfilerCLI.formatIndices(node.getSourceSection(), true);
+        }
+        return name;
+    }
+
+    /**
+     * Writes a gzip compressed pprof profile. Samples are streamed while the trees are traversed,
+     * the location, function and string tables follow once all trees are written. Call
+     * {@link #finish()} after the last {@link #writeSamples}.
+     */
+    static final class PprofWriter<T> {
+
+        // Fields of the perftools.profiles.Profile message
+        private static final int PROFILE_SAMPLE_TYPE = 1;
+        private static final int PROFILE_SAMPLE = 2;
+        private static final int PROFILE_LOCATION = 4;
+        private static final int PROFILE_FUNCTION = 5;
+        private static final int PROFILE_STRING_TABLE = 6;
+        private static final int PROFILE_TIME_NANOS = 9;
+        private static final int PROFILE_PERIOD_TYPE = 11;
+        private static final int PROFILE_PERIOD = 12;
+
+        private final GZIPOutputStream out;
+        private final SelfValues<T> selfValues;
+        private final long[] values;
+        private final ProtobufBuffer buffer = new ProtobufBuffer();
+        private final ProtobufBuffer nested = new ProtobufBuffer();
+        private final ProtobufBuffer inner = new ProtobufBuffer();
+        private final Map<String, Long> strings = new HashMap<>();
+        private final List<String> stringTable = new ArrayList<>();
+        private final Map<ProfilerCLI.SourceLocation, Long> locationIds = new HashMap<>();
+        private final List<long[]> locations = new ArrayList<>();
+        private final Map<String, Long> functionIds = new HashMap<>();
+        private final List<long[]> functions = new ArrayList<>();
+        private long[] stack = new long[64];
+
+        /**
+         * @param sampleTypes pairs of type and unit of the sample values, e.g.
+         *            <code>{"samples", "count", "cpu", "nanoseconds"}</code>
+         */
+        PprofWriter(OutputStream out, SelfValues<T> selfValues, String[] sampleTypes, String periodType, String periodUnit, long period) throws IOException {
+            this.out = new GZIPOutputStream(out);
+            this.selfValues = selfValues;
+            this.values = new long[sampleTypes.length / 2];
+            intern("");
+            for (int i = 0; i < sampleTypes.length; i += 2) {
+                writeValueType(PROFILE_SAMPLE_TYPE, sampleTypes[i], sampleTypes[i + 1]);
+            }
+            writeValueType(PROFILE_PERIOD_TYPE, periodType, periodUnit);
+            buffer.writeVarint(PROFILE_PERIOD, period);
+            buffer.writeVarint(PROFILE_TIME_NANOS, System.currentTimeMillis() * 1_000_000L);
+            flush();
+        }
+
+        /**
+         * Writes a sample for every node with a non-zero self value.
+         *
+         * @param threadName the value of the <code>thread</code> label of the samples, or
+         *            <code>null</code>
+         */
+        void writeSamples(Collection<ProfilerNode<T>> roots, String threadName) throws IOException {
+            long threadLabel = threadName == null ? 0 : intern(threadName);
+            long threadKey = threadName == null ? 0 : intern("thread");
+            writeSamplesRec(roots, 0, threadKey, threadLabel);
+        }
+
+        private void writeSamplesRec(Collection<ProfilerNode<T>> nodes, int depth, long threadKey, long threadLabel) throws IOException {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            for (ProfilerNode<T> node : nodes) {
+                stack[depth] = locationId(node);
+                selfValues.get(node, values);
+                if (hasValue()) {
+                    nested.reset();
+                    // pprof expects the leaf location first
+                    for (int i = depth; i >= 0; i--) {
+                        nested.writeVarint(1, stack[i]);
+                    }
+                    for (long value : values) {
+                        nested.writeVarint(2, value);
+                    }
+                    if (threadKey != 0) {
+                        inner.reset();
+                        inner.writeVarint(1, threadKey);
+                        inner.writeVarint(2, threadLabel);
+                        nested.writeMessage(3, inner);
+                    }
+                    buffer.writeMessage(PROFILE_SAMPLE, nested);
+                    flush();
+                }
+                writeSamplesRec(node.getChildren(), depth + 1, threadKey, threadLabel);
+            }
+        }
+
+        private boolean hasValue() {
+            for (long value : values) {
+                if (value != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long locationId(ProfilerNode<T> node) {
+            ProfilerCLI.SourceLocation key = new ProfilerCLI.SourceLocation(node.getSourceSection(), frameName(node));
+            Long id = locationIds.get(key);
+            if (id == null) {
+                SourceSection section = node.getSourceSection();
+                boolean available = section != null && section.isAvailable();
+                long line = available ? section.getStartLine() : 0;
+                String fileName = available ? fileName(section.getSource()) : "";
+                id = (long) locations.size() + 1;
+                locationIds.put(key, id);
+                locations.add(new long[]{id, functionId(key.getRootName(), fileName, line), line});
+            }
+            return id;
+        }
+
+        private long functionId(String name, String fileName, long startLine) {
+            String key = name + '\0' + fileName;
+            Long id = functionIds.get(key);
+            if (id == null) {
+                id = (long) functions.size() + 1;
+                functionIds.put(key, id);
+                functions.add(new long[]{id, intern(name), intern(fileName), startLine});
+            }
+            return id;
+        }
+
+        private static String fileName(Source source) {
+            return source.getPath() != null ? source.getPath() : source.getName();
+        }
+
+        private long intern(String s) {
+            Long index = strings.get(s);
+            if (index == null) {
+                index = (long) stringTable.size();
+                strings.put(s, index);
+                stringTable.add(s);
+            }
+            return index;
+        }
+
+        private void writeValueType(int field, String type, String unit) {
+            nested.reset();
+            nested.writeVarint(1, intern(type));
+            nested.writeVarint(2, intern(unit));
+            buffer.writeMessage(field, nested);
+        }
+
+        void finish() throws IOException {
+            for (long[] location : locations) {
+                nested.reset();
+                nested.writeVarint(1, location[0]);
+                inner.reset();
+                inner.writeVarint(1, location[1]);
+                inner.writeVarint(2, location[2]);
+                nested.writeMessage(4, inner);
+                buffer.writeMessage(PROFILE_LOCATION, nested);
+                flush();
+            }
+            for (long[] function : functions) {
+                nested.reset();
+                nested.writeVarint(1, function[0]);
+                nested.writeVarint(2, function[1]);
+                nested.writeVarint(3, function[1]);
+                nested.writeVarint(4, function[2]);
+                nested.writeVarint(5, function[3]);
+                buffer.writeMessage(PROFILE_FUNCTION, nested);
+                flush();
+            }
+            for (String s : stringTable) {
+                buffer.writeString(PROFILE_STRING_TABLE, s);
+                flush();
+            }
+            out.finish();
+            out.flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.writeTo(out);
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Minimal protocol buffers encoder for the message types used by pprof.
+     */
+    static final class ProtobufBuffer extends ByteArrayOutputStream {
+
+        private static final int WIRE_VARINT = 0;
+        private static final int WIRE_LENGTH_DELIMITED = 2;
+
+        void writeVarint(int field, long value) {
+            writeTag(field, WIRE_VARINT);
+            writeVarint(value);
+        }
+
+        void writeString(int field, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeTag(field, WIRE_LENGTH_DELIMITED);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeMessage(int field, ProtobufBuffer message) {
+            writeTag(field, WIRE_LENGTH_DELIMITED);
+            writeVarint(message.size());
+            write(message.buf, 0, message.count);
+        }
+
+        private void writeTag(int field, int wireType) {
+            writeVarint((field << 3) | wireType);
+        }
+
+        private void writeVarint(long value) {
+            long v = value;
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+    }
+}
@@ -36,11 +36,18 @@ import org.graalvm.options.OptionType;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -315,4 +322,51 @@ abstract class ProfilerCLI {
             throw new IllegalArgumentException("Cannot redirect output to a directory");
         }
     }
+
+    /**
+     * Periodically writes the output gathered so far to the files {@code <OutputFile>.0} up to
+     * {@code <OutputFile>.<count - 1>}, overwriting the oldest one, while the tool keeps
+     * collecting. Every dump is written to a temporary file first and then moved into place, so
+     * that readers never see a partially written dump.
+     *
+     * @return the executor running the dumps, or <code>null</code> if no interval is set
+     */
+    static ScheduledExecutorService schedulePeriodicDumps(TruffleInstrument.Env env, String toolId, OptionKey<String> outputFile, OptionKey<Long> interval, OptionKey<Integer> count,
+                    Consumer<PrintStream> writer) {
+        final long intervalMillis = interval.getValue(env.getOptions());
+        if (intervalMillis <= 0) {
+            return null;
+        }
+        if (!outputFile.hasBeenSet(env.getOptions())) {
+            throw new IllegalArgumentException("Periodic dumps of the " + toolId + " require an output file to be set.");
+        }
+        final String outputPath = outputFile.getValue(env.getOptions());
+        final int dumpCount = Math.max(1, count.getValue(env.getOptions()));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, toolId + " periodic dump");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            private long dumpIndex;
+
+            @Override
+            public void run() {
+                Path target = Paths.get(outputPath + "." + (dumpIndex++ % dumpCount));
+                Path temporary = Paths.get(target + ".tmp");
+                try {
+                    try (PrintStream out = new PrintStream(Files.newOutputStream(temporary))) {
+                        writer.accept(out);
+                    }
+                    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    new PrintStream(env.err(), true).println("Cannot write a periodic dump of the " + toolId + " to " + target + ": " + e.getMessage());
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return executor;
+    }
 }
@@ -114,4 +114,32 @@ public class TextDocumentContentChangeTest {
         String actualText = SourceUtils.applyTextDocumentChanges(Arrays.asList(event1, event2, event3, event4, event5, event6), createSource(oldText), null, null);
         assertEquals("abc\n####hij\n", actualText);
     }
+
+    @Test
+    public void applyTextDocumentChangesListWithLineChanges() {
+        TextDocumentContentChangeEvent event1 = TextDocumentContentChangeEvent.create("").setRange(Range.create(Position.create(0, 3), Position.create(1, 0))).setRangeLength(1);
+        TextDocumentContentChangeEvent event2 = TextDocumentContentChangeEvent.create("x\ny\n").setRange(Range.create(Position.create(1, 0), Position.create(1, 0))).setRangeLength(0);
+        TextDocumentContentChangeEvent event3 = TextDocumentContentChangeEvent.create("H").setRange(Range.create(Position.create(3, 1), Position.create(3, 2))).setRangeLength(1);
+        TextDocumentContentChangeEvent event4 = TextDocumentContentChangeEvent.create(" ").setRange(Range.create(Position.create(0, 6), Position.create(1, 0))).setRangeLength(1);
+
+        String actualText = SourceUtils.applyTextDocumentChanges(Arrays.asList(event1, event2, event3, event4), "abc\ndef\nghi", null, null);
+        assertEquals("abcdef x\ny\ngHi", actualText);
+    }
+
+    @Test
+    public void applyTextDocumentChangesWithCarriageReturns() {
+        TextDocumentContentChangeEvent event1 = TextDocumentContentChangeEvent.create("DEF").setRange(Range.create(Position.create(1, 0), Position.create(1, 3))).setRangeLength(3);
+        TextDocumentContentChangeEvent event2 = TextDocumentContentChangeEvent.create("x").setRange(Range.create(Position.create(2, 0), Position.create(2, 0))).setRangeLength(0);
+        // joins the first two lines
+        TextDocumentContentChangeEvent event3 = TextDocumentContentChangeEvent.create("").setRange(Range.create(Position.create(0, 3), Position.create(1, 0))).setRangeLength(2);
+        // "\r\n" is a single line break
+        TextDocumentContentChangeEvent event4 = TextDocumentContentChangeEvent.create("\n").setRange(Range.create(Position.create(0, 7), Position.create(0, 7))).setRangeLength(0);
+        TextDocumentContentChangeEvent event5 = TextDocumentContentChangeEvent.create("Y").setRange(Range.create(Position.create(1, 0), Position.create(1, 0))).setRangeLength(0);
+        // "\n" before "\r\n" are two line breaks
+        TextDocumentContentChangeEvent event6 = TextDocumentContentChangeEvent.create("\n").setRange(Range.create(Position.create(0, 6), Position.create(0, 6))).setRangeLength(0);
+        TextDocumentContentChangeEvent event7 = TextDocumentContentChangeEvent.create("Z").setRange(Range.create(Position.create(2, 0), Position.create(2, 0))).setRangeLength(0);
+
+        String actualText = SourceUtils.applyTextDocumentChanges(Arrays.asList(event1, event2, event3, event4, event5, event6, event7), "abc\r\ndef\rghi\r", null, null);
+        assertEquals("abcDEF\n\r\nZYxghi\r", actualText);
+    }
 }
@@ -36,11 +36,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.graalvm.collections.Pair;
@@ -257,14 +260,18 @@ public final class LSPInstrument extends TruffleInstrument implements Environmen
     private static final class ContextAwareExecutorImpl implements ContextAwareExecutor {
         private final Context.Builder contextBuilder;
         static final String WORKER_THREAD_ID = "LS Context-aware Worker";
+        private static final int PRIORITY_INTERACTIVE = 0;
+        private static final int PRIORITY_BACKGROUND = 1;
         Context lastNestedContext = null;
         private volatile WeakReference<Thread> workerThread = new WeakReference<>(null);
         /**
          * This implementation uses a single-thread-executor, so that there is only one worker
          * Thread which calls the Truffle-API. This way, no further synchronization of data
-         * structures is needed in the language server.
+         * structures is needed in the language server. Tasks are ordered by their priority first
+         * and by their submission order second, so that background tasks never delay interactive
+         * requests.
          */
-        private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), new ThreadFactory() {
             private final ThreadFactory factory = Executors.defaultThreadFactory();
 
             @Override
@@ -275,6 +282,7 @@ public final class LSPInstrument extends TruffleInstrument implements Environmen
                 return thread;
             }
         });
+        private final AtomicLong taskSequence = new AtomicLong();
 
         private ContextAwareExecutorImpl(Context.Builder contextBuilder) {
             this.contextBuilder = contextBuilder;
@@ -282,22 +290,29 @@ public final class LSPInstrument extends TruffleInstrument implements Environmen
 
         @Override
         public <T> Future<T> executeWithDefaultContext(Callable<T> taskWithResult) {
-            return execute(taskWithResult);
+            return execute(taskWithResult, PRIORITY_INTERACTIVE);
+        }
+
+        @Override
+        public <T> Future<T> executeInBackground(Callable<T> taskWithResult) {
+            return execute(taskWithResult, PRIORITY_BACKGROUND);
         }
 
         @Override
         public <T> Future<T> executeWithNestedContext(Callable<T> taskWithResult, boolean cached) {
-            return execute(wrapWithNewContext(taskWithResult, cached));
+            return execute(wrapWithNewContext(taskWithResult, cached), PRIORITY_INTERACTIVE);
         }
 
-        private <T> Future<T> execute(Callable<T> taskWithResult) {
-            if (Thread.currentThread() == workerThread.get()) {
+        private <T> Future<T> execute(Callable<T> taskWithResult, int priority) {
+            if (priority == PRIORITY_INTERACTIVE && Thread.currentThread() == workerThread.get()) {
                 FutureTask<T> futureTask = new FutureTask<>(taskWithResult);
                 futureTask.run();
                 return futureTask;
             }
 
-            return executor.submit(taskWithResult);
+            PrioritizedTask<T> task = new PrioritizedTask<>(taskWithResult, priority, taskSequence.getAndIncrement());
+            executor.execute(task);
+            return task;
         }
 
         private <T> Callable<T> wrapWithNewContext(Callable<T> taskWithResult, boolean cached) {
@@ -343,6 +358,26 @@ public final class LSPInstrument extends TruffleInstrument implements Environmen
             }
             lastNestedContext = contextBuilder.build();
         }
+
+        private static final class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+
+            private final int priority;
+            private final long sequence;
+
+            PrioritizedTask(Callable<T> callable, int priority, long sequence) {
+                super(callable);
+                this.priority = priority;
+                this.sequence = sequence;
+            }
+
+            @Override
+            public int compareTo(PrioritizedTask<?> other) {
+                if (priority != other.priority) {
+                    return Integer.compare(priority, other.priority);
+                }
+                return Long.compare(sequence, other.sequence);
+            }
+        }
     }
 
     static final class HostAndPort {
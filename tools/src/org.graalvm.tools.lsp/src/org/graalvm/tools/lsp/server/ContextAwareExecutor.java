@@ -44,6 +44,22 @@ public interface ContextAwareExecutor {
      */
     <T> Future<T> executeWithDefaultContext(Callable<T> taskWithResult);
 
+    /**
+     * Same as {@link ContextAwareExecutor#executeWithDefaultContext(Callable)}, but with a lower
+     * priority. Pending background tasks are only picked up if no task submitted via
+     * {@link ContextAwareExecutor#executeWithDefaultContext(Callable)} or
+     * {@link ContextAwareExecutor#executeWithNestedContext(Callable, boolean)} is waiting, so that
+     * long-running work like parsing a whole workspace does not delay interactive requests. A
+     * background task is always queued, even when it is submitted from a Polyglot-Context-entered
+     * Thread, so such a caller must not wait for its result.
+     *
+     * @param taskWithResult a task which shall be executed in a Polyglot-Context-entered Thread
+     * @return a {@link Future} to await the task's result
+     */
+    default <T> Future<T> executeInBackground(Callable<T> taskWithResult) {
+        return executeWithDefaultContext(taskWithResult);
+    }
+
     /**
      * Execute a task in a newly created Polyglot Context. This is useful if the task executes
      * arbitrary source code which will change the state of the language contexts. The created
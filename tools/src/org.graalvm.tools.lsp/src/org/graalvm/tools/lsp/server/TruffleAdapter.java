@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.function.Function;
@@ -96,6 +97,7 @@ public final class TruffleAdapter implements VirtualLanguageServerFileProvider {
     private CoverageRequestHandler coverageHandler;
     private HighlightRequestHandler highlightHandler;
     private TextDocumentSurrogateMap surrogateMap;
+    private final Map<URI, Integer> pendingChanges = new ConcurrentHashMap<>();
     private final LanguageTriggerCharacters completionTriggerCharacters = new LanguageTriggerCharacters();
     private final LanguageTriggerCharacters signatureTriggerCharacters = new LanguageTriggerCharacters();
 
@@ -162,7 +164,7 @@ public final class TruffleAdapter implements VirtualLanguageServerFileProvider {
     }
 
     CallTarget parseWithEnteredContext(TextDocumentSurrogate surrogate) throws DiagnosticsNotification {
-        return sourceCodeEvaluator.parse(surrogate);
+        return sourceCodeEvaluator.parseOrReuse(surrogate);
     }
 
     public Future<?> reparse(URI uri) {
@@ -205,11 +207,24 @@ public final class TruffleAdapter implements VirtualLanguageServerFileProvider {
         return langInfo;
     }
 
+    /**
+     * Applies the changes and parses the document. If further changes of the same document are
+     * already waiting for execution, only the changes are applied and parsing is left to the last
+     * of them, so that fast typing does not queue up parsing of outdated text.
+     */
     public Future<TextDocumentSurrogate> processChangesAndParse(List<? extends TextDocumentContentChangeEvent> list, URI uri) {
-        return contextAwareExecutor.executeWithDefaultContext(() -> processChangesAndParseWithContextEntered(list, uri));
+        pendingChanges.merge(uri, 1, Integer::sum);
+        return contextAwareExecutor.executeWithDefaultContext(() -> {
+            boolean lastPendingChange = pendingChanges.computeIfPresent(uri, (u, count) -> count == 1 ? null : count - 1) == null;
+            return processChangesAndParseWithContextEntered(list, uri, lastPendingChange);
+        });
     }
 
     protected TextDocumentSurrogate processChangesAndParseWithContextEntered(List<? extends TextDocumentContentChangeEvent> list, URI uri) throws DiagnosticsNotification {
+        return processChangesAndParseWithContextEntered(list, uri, true);
+    }
+
+    private TextDocumentSurrogate processChangesAndParseWithContextEntered(List<? extends TextDocumentContentChangeEvent> list, URI uri, boolean parse) throws DiagnosticsNotification {
         TextDocumentSurrogate surrogate = surrogateMap.get(uri);
 
         if (surrogate == null) {
@@ -222,9 +237,13 @@ public final class TruffleAdapter implements VirtualLanguageServerFileProvider {
 
         surrogate.getChangeEventsSinceLastSuccessfulParsing().addAll(list);
         surrogate.setLastChange(list.get(list.size() - 1));
-        surrogate.setEditorText(SourceUtils.applyTextDocumentChanges(list, surrogate.getSource(), surrogate, logger));
+        surrogate.setEditorText(SourceUtils.applyTextDocumentChanges(list, surrogate.getEditorText(), surrogate, logger));
 
-        sourceCodeEvaluator.parse(surrogate);
+        if (!parse) {
+            logger.log(Level.FINER, "Parsing of {0} deferred to a pending change.", uri);
+            return surrogate;
+        }
+        sourceCodeEvaluator.parseOrReuse(surrogate);
 
         if (surrogate.hasCoverageData()) {
             showCoverage(uri);
@@ -322,7 +341,7 @@ public final class TruffleAdapter implements VirtualLanguageServerFileProvider {
                 return FileVisitResult.CONTINUE;
             }
             TextDocumentSurrogate surrogate = getOrCreateSurrogate(uri, null, mimeTypesAllLang.get(mimeType));
-            parsingTasks.add(contextAwareExecutor.executeWithDefaultContext(() -> parseWithEnteredContext(surrogate)));
+            parsingTasks.add(contextAwareExecutor.executeInBackground(() -> parseWithEnteredContext(surrogate)));
             return FileVisitResult.CONTINUE;
         }
 
@@ -110,6 +110,22 @@ public final class SourceCodeEvaluator extends AbstractRequestHandler {
         return callTarget;
     }
 
+    /**
+     * Same as {@link #parse(TextDocumentSurrogate)}, but reuses the result of an earlier parsing of
+     * the same text if the surrogate still caches it. Cached call targets belong to the default
+     * context, so this method must not be used in nested contexts.
+     */
+    public CallTarget parseOrReuse(final TextDocumentSurrogate surrogate) throws DiagnosticsNotification {
+        CallTarget callTarget = surrogate.restoreParsingResult();
+        if (callTarget != null) {
+            logger.log(Level.FINE, "Reusing parsing result of {0} {1}", new Object[]{surrogate.getLanguageId(), surrogate.getUri()});
+            return callTarget;
+        }
+        callTarget = parse(surrogate);
+        surrogate.cacheParsingResult();
+        return callTarget;
+    }
+
     public EvaluationResult tryDifferentEvalStrategies(TextDocumentSurrogate surrogate, Node nearestNode) throws DiagnosticsNotification {
         logger.fine("Trying literal eval...");
         EvaluationResult literalResult = evalLiteral(nearestNode);
@@ -131,55 +131,53 @@ public final class SourceUtils {
         TextDocumentContentChangeEvent replacementEvent = TextDocumentContentChangeEvent.create("") //
                         .setRange(Range.create(range.getStart(), Position.create(range.getEnd().getLine(), range.getEnd().getCharacter() + lastChange.getText().length()))) //
                         .setRangeLength(lastChange.getText().length());
-        String codeBeforeLastChange = applyTextDocumentChanges(Arrays.asList(replacementEvent), surrogate.getSource(), surrogate, logger);
+        String codeBeforeLastChange = applyTextDocumentChanges(Arrays.asList(replacementEvent), surrogate.getEditorText(), surrogate, logger);
         int characterIdx = originalCharacter - (originalCharacter - range.getStart().getCharacter());
 
         return new SourceFix(codeBeforeLastChange, lastChange.getText(), characterIdx);
     }
 
     public static String applyTextDocumentChanges(List<? extends TextDocumentContentChangeEvent> list, Source source, TextDocumentSurrogate surrogate, TruffleLogger logger) {
-        Source currentSource = null;
-        String text = source.getCharacters().toString();
+        return applyTextDocumentChanges(list, source.getCharacters().toString(), surrogate, logger);
+    }
+
+    /**
+     * Applies the change events to the text. Line start offsets are computed once and then updated
+     * with every change, instead of building a new {@link Source} for every event.
+     */
+    public static String applyTextDocumentChanges(List<? extends TextDocumentContentChangeEvent> list, String text, TextDocumentSurrogate surrogate, TruffleLogger logger) {
         StringBuilder sb = new StringBuilder(text);
+        LineStartOffsets lineStarts = null;
         for (TextDocumentContentChangeEvent event : list) {
-            if (currentSource == null) {
-                currentSource = source;
-            } else {
-                currentSource = Source.newBuilder(currentSource.getLanguage(), sb, currentSource.getName()).cached(false).build();
-            }
-
             Range range = event.getRange();
             if (range == null) {
                 // The whole file has changed
                 sb.setLength(0); // Clear StringBuilder
                 sb.append(event.getText());
+                lineStarts = null;
                 continue;
             }
+            if (lineStarts == null) {
+                lineStarts = new LineStartOffsets(sb);
+            }
 
             Position start = range.getStart();
             Position end = range.getEnd();
-            int startLine = start.getLine() + 1;
-            int endLine = end.getLine() + 1;
-            int replaceBegin = currentSource.getLineStartOffset(startLine) + start.getCharacter();
-            int replaceEnd = currentSource.getLineStartOffset(endLine) + end.getCharacter();
-
-            sb.replace(replaceBegin, replaceEnd, event.getText());
+            int replaceBegin = lineStarts.get(start.getLine()) + start.getCharacter();
+            int replaceEnd = lineStarts.get(end.getLine()) + end.getCharacter();
 
             if (surrogate != null && surrogate.hasCoverageData()) {
-                updateCoverageData(surrogate, currentSource, event.getText(), range, replaceBegin, replaceEnd, logger);
+                updateCoverageData(surrogate, sb.substring(replaceBegin, replaceEnd), event.getText(), range, logger);
             }
+
+            sb.replace(replaceBegin, replaceEnd, event.getText());
+            lineStarts.replace(sb, replaceBegin, replaceEnd, event.getText().length());
         }
         return sb.toString();
     }
 
-    private static void updateCoverageData(TextDocumentSurrogate surrogate, Source source, String newText, Range range, int replaceBegin, int replaceEnd, TruffleLogger logger) {
-        Source newSourceSnippet = Source.newBuilder("dummyLanguage", newText, "dummyCoverage").cached(false).build();
-        int linesNewText = newSourceSnippet.getLineCount() + (newText.endsWith("\n") ? 1 : 0) + (newText.isEmpty() ? 1 : 0);
-
-        Source oldSourceSnippet = source.subSource(replaceBegin, replaceEnd - replaceBegin);
-        int liensOldText = oldSourceSnippet.getLineCount() + (oldSourceSnippet.getCharacters().toString().endsWith("\n") ? 1 : 0) + (oldSourceSnippet.getLength() == 0 ? 1 : 0);
-
-        int newLineModification = linesNewText - liensOldText;
+    private static void updateCoverageData(TextDocumentSurrogate surrogate, String oldText, String newText, Range range, TruffleLogger logger) {
+        int newLineModification = countNewlines(newText) - countNewlines(oldText);
         logger.log(Level.FINEST, "newLineModification: {0}", newLineModification);
 
         if (newLineModification != 0) {
@@ -200,6 +198,93 @@ public final class SourceUtils {
         }
     }
 
+    private static int countNewlines(CharSequence text) {
+        int count = 0;
+        for (int i = 1; i <= text.length(); i++) {
+            if (isLineStart(text, i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns <code>true</code> if a line starts at the offset, which is the case after
+     * <code>"\n"</code>, <code>"\r\n"</code> or a <code>"\r"</code> that is not followed by
+     * <code>"\n"</code>, like in {@link Source}.
+     */
+    private static boolean isLineStart(CharSequence text, int offset) {
+        char c = text.charAt(offset - 1);
+        return c == '\n' || c == '\r' && (offset == text.length() || text.charAt(offset) != '\n');
+    }
+
+    /**
+     * Zero-based line start offsets of a text, which are kept up to date while the text is edited.
+     */
+    private static final class LineStartOffsets {
+
+        private int[] offsets;
+        private int size;
+
+        LineStartOffsets(CharSequence text) {
+            offsets = new int[16];
+            offsets[size++] = 0;
+            for (int i = 1; i <= text.length(); i++) {
+                if (isLineStart(text, i)) {
+                    add(size, i);
+                }
+            }
+        }
+
+        int get(int zeroBasedLine) {
+            if (zeroBasedLine < 0 || zeroBasedLine >= size) {
+                throw new IllegalArgumentException("Line " + zeroBasedLine + " out of range, line count: " + size);
+            }
+            return offsets[zeroBasedLine];
+        }
+
+        /**
+         * Updates the offsets after the range was replaced in the text, which already contains the
+         * new characters.
+         */
+        void replace(CharSequence text, int replaceBegin, int replaceEnd, int newLength) {
+            /*
+             * Whether a line starts at an offset depends on the characters before and at the
+             * offset, so the line starts from the beginning to the end of the replaced range are
+             * computed again.
+             */
+            int first = 1;
+            while (first < size && offsets[first] < replaceBegin) {
+                first++;
+            }
+            int last = first;
+            while (last < size && offsets[last] <= replaceEnd) {
+                last++;
+            }
+            System.arraycopy(offsets, last, offsets, first, size - last);
+            size -= last - first;
+            int delta = newLength - (replaceEnd - replaceBegin);
+            for (int i = first; i < size; i++) {
+                offsets[i] += delta;
+            }
+            int insertAt = first;
+            for (int i = Math.max(replaceBegin, 1); i <= replaceBegin + newLength; i++) {
+                if (isLineStart(text, i)) {
+                    add(insertAt++, i);
+                }
+            }
+        }
+
+        private void add(int index, int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            System.arraycopy(offsets, index, offsets, index + 1, size - index);
+            offsets[index] = offset;
+            size++;
+        }
+    }
+
     public static Range getRangeFrom(TruffleException te) {
         Range range = Range.create(0, 0, 0, 0); // TODO: LSP4J removal
         SourceSection sourceLocation = te.getSourceLocation() != null ? te.getSourceLocation()
@@ -35,7 +35,7 @@ public final class SourceWrapper {
      * garbage collected.
      */
     // TODO: Review why this needs to be held
-    @SuppressWarnings("unused") private CallTarget callTarget;
+    private CallTarget callTarget;
 
     public SourceWrapper(Source source) {
         this.setSource(source);
@@ -60,4 +60,8 @@ public final class SourceWrapper {
     public void setCallTarget(CallTarget callTarget) {
         this.callTarget = callTarget;
     }
+
+    public CallTarget getCallTarget() {
+        return callTarget;
+    }
 }
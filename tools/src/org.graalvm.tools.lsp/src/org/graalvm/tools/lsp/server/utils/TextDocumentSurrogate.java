@@ -29,6 +29,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -51,9 +52,16 @@ import com.oracle.truffle.api.source.SourceSection;
  */
 public final class TextDocumentSurrogate {
 
+    /**
+     * Number of successfully parsed versions of a document which are kept to avoid parsing the
+     * same text again, e.g. after an undo in the editor.
+     */
+    private static final int PARSED_VERSIONS_CACHE_SIZE = 4;
+
     private final TruffleFile truffleFile;
     private final List<TextDocumentContentChangeEvent> changeEventsSinceLastSuccessfulParsing;
     private final Map<SourceSectionReference, List<CoverageData>> section2coverageData;
+    private final Map<Integer, SourceWrapper> parsedVersions;
     private String editorText;
     private Boolean coverageAnalysisDone = Boolean.FALSE;
     private SourceWrapper sourceWrapper;
@@ -63,6 +71,7 @@ public final class TextDocumentSurrogate {
     private TextDocumentSurrogate(TextDocumentSurrogate blueprint) {
         this.truffleFile = blueprint.truffleFile;
         this.section2coverageData = blueprint.section2coverageData;
+        this.parsedVersions = blueprint.parsedVersions;
         this.changeEventsSinceLastSuccessfulParsing = blueprint.changeEventsSinceLastSuccessfulParsing;
         this.editorText = blueprint.editorText;
         this.sourceWrapper = blueprint.sourceWrapper;
@@ -73,6 +82,14 @@ public final class TextDocumentSurrogate {
     public TextDocumentSurrogate(final TruffleFile truffleFile, final LanguageInfo languageInfo) {
         this.truffleFile = truffleFile;
         this.section2coverageData = new HashMap<>();
+        this.parsedVersions = new LinkedHashMap<Integer, SourceWrapper>(PARSED_VERSIONS_CACHE_SIZE + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SourceWrapper> eldest) {
+                return size() > PARSED_VERSIONS_CACHE_SIZE;
+            }
+        };
         this.changeEventsSinceLastSuccessfulParsing = new ArrayList<>();
         this.languageInfo = languageInfo;
     }
@@ -224,6 +241,36 @@ public final class TextDocumentSurrogate {
         }
     }
 
+    /**
+     * Restores the result of an earlier successful parsing of the current editor text, if it is
+     * still cached. The cached versions are keyed by the hash of their text.
+     *
+     * @return the call target of the restored parsing result, or <code>null</code> if the current
+     *         text has to be parsed
+     */
+    public CallTarget restoreParsingResult() {
+        if (editorText == null) {
+            return null;
+        }
+        SourceWrapper cached = parsedVersions.get(editorText.hashCode());
+        if (cached == null || !editorText.contentEquals(cached.getSource().getCharacters())) {
+            return null;
+        }
+        sourceWrapper = cached;
+        changeEventsSinceLastSuccessfulParsing.clear();
+        return cached.getCallTarget();
+    }
+
+    /**
+     * Remembers the current parsing result, so that it can be restored by
+     * {@link #restoreParsingResult()} when the editor text is the same again.
+     */
+    public void cacheParsingResult() {
+        if (editorText != null && sourceWrapper != null && sourceWrapper.isParsingSuccessful()) {
+            parsedVersions.put(editorText.hashCode(), sourceWrapper);
+        }
+    }
+
     public boolean isSourceCodeReadyForCodeCompletion() {
         return sourceWrapper.isParsingSuccessful();
     }
@@ -746,7 +746,8 @@ suite = {
           "static java.desktop",
           "jdk.unsupported", # sun.misc.Unsafe
           "java.logging",
-          "java.management"
+          "java.management",
+          "static jdk.management", # com.sun.management.ThreadMXBean
         ],
         "exports" : [
           # Qualified exports
@@ -44,12 +44,14 @@ import java.util.Random;
 import java.util.function.IntBinaryOperator;
 
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 
 @Warmup(iterations = 10)
@@ -104,4 +106,37 @@ public class JavaInteropSpeedBench {
         }
         return max;
     }
+
+    public static class HostMath {
+        public int max(int left, int right) {
+            return Math.max(left, right);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class HostMathState {
+        Context context;
+        Value hostMath;
+
+        @Setup
+        public void setup() {
+            context = Context.newBuilder().allowAllAccess(true).build();
+            hostMath = context.asValue(new HostMath());
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int doMinMaxWithHostMethodCall(HostMathState state) {
+        Value hostMath = state.hostMath;
+        int max = 0;
+        for (int i = 0; i < arr.length; i++) {
+            max = hostMath.invokeMember("max", arr[i], max).asInt();
+        }
+        return max;
+    }
 }
@@ -1451,6 +1451,43 @@ public class BreakpointTest extends AbstractDebugTest {
         }
     }
 
+    @Test
+    public void testToggleBreakpointKeepsInstrumentation() {
+        final Source source = testSource("ROOT(\n" +
+                        "  STATEMENT,\n" +
+                        "  STATEMENT\n" +
+                        ")\n");
+        try (DebuggerSession session = startSession()) {
+            Breakpoint breakpoint = Breakpoint.newBuilder(getSourceImpl(source)).lineIs(2).build();
+            session.install(breakpoint);
+
+            startEval(source);
+            expectSuspended((SuspendedEvent event) -> {
+                assertSame(breakpoint, event.getBreakpoints().get(0));
+            });
+            expectDone();
+            Object binding = ReflectionUtils.getField(breakpoint, "breakpointBinding");
+            assertNotNull(binding);
+
+            breakpoint.setEnabled(false);
+            startEval(source);
+            expectDone();
+            // a disabled breakpoint keeps its binding, no re-instrumentation is necessary
+            assertSame(binding, ReflectionUtils.getField(breakpoint, "breakpointBinding"));
+            assertTrue(breakpoint.isResolved());
+            assertEquals(1, breakpoint.getHitCount());
+
+            breakpoint.setEnabled(true);
+            startEval(source);
+            expectSuspended((SuspendedEvent event) -> {
+                assertSame(breakpoint, event.getBreakpoints().get(0));
+            });
+            expectDone();
+            assertSame(binding, ReflectionUtils.getField(breakpoint, "breakpointBinding"));
+            assertEquals(2, breakpoint.getHitCount());
+        }
+    }
+
     @Test
     public void testRelativeSourceBreak() throws Exception {
         String sourceContent = "relative source\nVarA";
@@ -179,7 +179,7 @@ public class Breakpoint {
     private final List<DebuggerSession> sessions = new LinkedList<>();
     private volatile Assumption sessionsUnchanged;
 
-    private volatile boolean enabled;
+    private final DebuggerSession.StableBoolean enabled = new DebuggerSession.StableBoolean(true);
     private volatile boolean resolved;
     private volatile int ignoreCount;
     private volatile boolean disposed;
@@ -209,7 +209,6 @@ public class Breakpoint {
         this.exceptionFilter = exceptionFilter;
         this.rootInstanceRef = rootInstance != null ? new WeakReference<>(rootInstance) : null;
         this.resolveListener = resolveListener;
-        this.enabled = true;
     }
 
     private Breakpoint() {
@@ -253,13 +252,16 @@ public class Breakpoint {
      * @since 0.9
      */
     public boolean isEnabled() {
-        return enabled;
+        return enabled.get();
     }
 
     /**
      * Controls whether this breakpoint is currently allowed to suspend execution (true by default).
      * This can be changed arbitrarily until breakpoint is {@linkplain #dispose() disposed}.
      * <p>
+     * Disabling an installed breakpoint keeps its locations instrumented, so that enabling or
+     * disabling it again only invalidates the compiled code that contains those locations.
+     * <p>
      * When not {@link #isModifiable() modifiable}, {@link IllegalStateException} is thrown.
      *
      * @param enabled whether this breakpoint should be allowed to suspend execution
@@ -271,15 +273,11 @@ public class Breakpoint {
             // cannot enable disposed breakpoints
             return;
         }
-        if (this.enabled != enabled) {
-            if (!sessions.isEmpty()) {
-                if (enabled) {
-                    install();
-                } else {
-                    uninstall();
-                }
+        if (this.enabled.get() != enabled) {
+            if (enabled && !sessions.isEmpty()) {
+                install();
             }
-            this.enabled = enabled;
+            this.enabled.set(enabled);
         }
     }
 
@@ -359,6 +357,7 @@ public class Breakpoint {
     public synchronized void dispose() {
         if (!disposed) {
             setEnabled(false);
+            uninstall();
             final EventBinding<?> binding = sourceBinding.getAndSet(null);
             if (binding != null) {
                 binding.dispose();
@@ -533,7 +532,7 @@ public class Breakpoint {
             sessionsAssumptionInvalidate();
             install(d.getDebugger());
         }
-        if (enabled) {
+        if (isEnabled()) {
             install();
         }
         return true;
@@ -1154,7 +1153,7 @@ public class Breakpoint {
 
         @Override
         boolean isActiveAt(SuspendAnchor anchor) {
-            return SuspendAnchor.BEFORE == anchor;
+            return SuspendAnchor.BEFORE == anchor && getBreakpoint().isEnabled();
         }
 
         @Override
@@ -1176,7 +1175,7 @@ public class Breakpoint {
 
         @Override
         boolean isActiveAt(SuspendAnchor anchor) {
-            return SuspendAnchor.AFTER == anchor;
+            return SuspendAnchor.AFTER == anchor && getBreakpoint().isEnabled();
         }
 
         @Override
@@ -1210,7 +1209,7 @@ public class Breakpoint {
 
         @Override
         boolean isActiveAt(SuspendAnchor anchor) {
-            return SuspendAnchor.AFTER == anchor;
+            return SuspendAnchor.AFTER == anchor && getBreakpoint().isEnabled();
         }
 
         @Override
@@ -1370,6 +1369,10 @@ public class Breakpoint {
 
         @ExplodeLoop
         protected final SessionList computeUniqueActiveSessions() {
+            if (!breakpoint.enabled.get()) {
+                // disabled breakpoints stay instrumented, guarded by a single assumption
+                return null;
+            }
             SessionList sessions = getSessions();
             boolean active = false;
             SessionList current = sessions;
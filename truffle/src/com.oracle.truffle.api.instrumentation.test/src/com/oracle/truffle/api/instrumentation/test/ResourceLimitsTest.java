@@ -49,10 +49,12 @@ import static org.junit.Assert.fail;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -67,6 +69,8 @@ import org.graalvm.polyglot.ResourceLimits;
 import org.graalvm.polyglot.Source;
 import org.junit.Test;
 
+import com.oracle.truffle.api.test.ReflectionUtils;
+
 public class ResourceLimitsTest {
 
     @Test
@@ -590,6 +594,102 @@ public class ResourceLimitsTest {
         c.leave();
     }
 
+    @Test
+    public void testParallelStatementLimitExactCount() throws InterruptedException, ExecutionException {
+        List<ResourceLimitEvent> events = Collections.synchronizedList(new ArrayList<>());
+        final int threads = 4;
+        final int statementsPerThread = 5000;
+        final int limit = threads * statementsPerThread;
+        ResourceLimits limits = ResourceLimits.newBuilder().//
+                        statementLimit(limit, null).//
+                        onLimit((e) -> events.add(e)).//
+                        build();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try (Context c = Context.newBuilder().resourceLimits(limits).build()) {
+            forceMultiThreading(executorService, c);
+            CountDownLatch executed = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(() -> {
+                    // stay entered so the statements reserved by this thread are not returned
+                    c.enter();
+                    try {
+                        try {
+                            c.eval(statements(statementsPerThread));
+                        } finally {
+                            executed.countDown();
+                        }
+                        try {
+                            c.eval(InstrumentationTestLanguage.ID, "LOOP(infinity, EXPRESSION)");
+                            fail();
+                        } catch (PolyglotException e) {
+                            assertTrue(e.isCancelled());
+                        }
+                    } finally {
+                        c.leave();
+                    }
+                }));
+            }
+            executed.await();
+            try {
+                c.eval(statements(1));
+                fail();
+            } catch (PolyglotException e) {
+                assertStatementCountLimit(c, e, limit);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(1, events.size());
+            assertSame(c, events.get(0).getContext());
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(100, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testParallelStatementBudgetPerThread() throws InterruptedException, ExecutionException {
+        final int threads = 4;
+        ResourceLimits limits = ResourceLimits.newBuilder().//
+                        statementLimit(Long.MAX_VALUE / 2, null).//
+                        build();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> futures = new ArrayList<>();
+        try (Context c = Context.newBuilder().resourceLimits(limits).build()) {
+            forceMultiThreading(executorService, c);
+            CountDownLatch entered = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(() -> {
+                    c.enter();
+                    try {
+                        // only the thread that entered last is cached by the context
+                        entered.countDown();
+                        entered.await();
+                        c.eval(statements(10));
+                        return statementBudget(c);
+                    } finally {
+                        c.leave();
+                    }
+                }));
+            }
+            for (Future<Long> future : futures) {
+                // every thread reserved a chunk of statements and counts down its own budget
+                assertTrue(future.get() > 0);
+            }
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(100, TimeUnit.SECONDS);
+    }
+
+    private static long statementBudget(Context c) {
+        Object contextImpl = ReflectionUtils.getField(c, "impl");
+        Object threadInfo;
+        synchronized (contextImpl) {
+            threadInfo = ((Map<?, ?>) ReflectionUtils.getField(contextImpl, "threads")).get(Thread.currentThread());
+        }
+        return (Long) ReflectionUtils.getField(threadInfo, "statementBudget");
+    }
+
     @Test
     public void testParallelMultiContextStatementResetLimit() throws InterruptedException, ExecutionException {
         Engine engine = Engine.create();
@@ -667,6 +767,133 @@ public class ResourceLimitsTest {
         builder.cpuTimeLimit(null, null); // allowed to reset
     }
 
+    @Test
+    public void testAllocatedBytesLimitErrors() {
+        ResourceLimits.Builder builder = ResourceLimits.newBuilder();
+        assertFails(() -> builder.allocatedBytesLimit(-1, Duration.ofMillis(1)), IllegalArgumentException.class);
+        assertFails(() -> builder.allocatedBytesLimit(1, Duration.ofMillis(-1)), IllegalArgumentException.class);
+        assertFails(() -> builder.allocatedBytesLimit(1, Duration.ofMillis(0)), IllegalArgumentException.class);
+        assertFails(() -> builder.allocatedBytesLimit(1, null), IllegalArgumentException.class);
+        assertFails(() -> builder.allocationRateLimit(-1, Duration.ofMillis(1)), IllegalArgumentException.class);
+        assertFails(() -> builder.allocationRateLimit(1, Duration.ofMillis(0)), IllegalArgumentException.class);
+        assertFails(() -> builder.allocationRateLimit(1, null), IllegalArgumentException.class);
+        builder.allocatedBytesLimit(0, null); // allowed to reset
+        builder.allocationRateLimit(0, null); // allowed to reset
+    }
+
+    @Test
+    public void testAllocatedBytesLimitNotExceeded() {
+        ResourceLimits limits = ResourceLimits.newBuilder().//
+                        allocatedBytesLimit(Long.MAX_VALUE, Duration.ofMillis(10)).//
+                        allocationRateLimit(Long.MAX_VALUE, Duration.ofMillis(10)).//
+                        build();
+        try (Context context = Context.newBuilder().resourceLimits(limits).build()) {
+            for (int i = 0; i < 10; i++) {
+                context.eval(statements(100));
+            }
+            context.resetLimits();
+            context.eval(statements(100));
+        }
+    }
+
+    @Test
+    public void testAllocatedBytesLimit() {
+        List<ResourceLimitEvent> events = Collections.synchronizedList(new ArrayList<>());
+        ResourceLimits limits = ResourceLimits.newBuilder().//
+                        allocatedBytesLimit(1024 * 1024, Duration.ofMillis(10)).//
+                        onLimit((e) -> events.add(e)).//
+                        build();
+        try (Context context = Context.newBuilder().resourceLimits(limits).build()) {
+            context.initialize(InstrumentationTestLanguage.ID);
+            try {
+                evalAllocations(context);
+                fail();
+            } catch (PolyglotException e) {
+                assertAllocationLimit(context, e, "Allocated bytes limit of 1048576 bytes exceeded. Bytes allocated ", 1024 * 1024);
+                assertEquals(1, events.size());
+                assertSame(context, events.get(0).getContext());
+            }
+        }
+    }
+
+    @Test
+    public void testAllocationRateLimit() {
+        List<ResourceLimitEvent> events = Collections.synchronizedList(new ArrayList<>());
+        ResourceLimits limits = ResourceLimits.newBuilder().//
+                        allocationRateLimit(1024, Duration.ofMillis(10)).//
+                        onLimit((e) -> events.add(e)).//
+                        build();
+        try (Context context = Context.newBuilder().resourceLimits(limits).build()) {
+            context.initialize(InstrumentationTestLanguage.ID);
+            try {
+                evalAllocations(context);
+                fail();
+            } catch (PolyglotException e) {
+                assertAllocationLimit(context, e, "Allocation rate limit of 1024 bytes per second exceeded. Bytes allocated per second ", 1024);
+                assertEquals(1, events.size());
+                assertSame(context, events.get(0).getContext());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedContextAllocatedBytesLimitParallel() throws InterruptedException, ExecutionException {
+        Map<Context, ResourceLimitEvent> events = new ConcurrentHashMap<>();
+        ResourceLimits limits = ResourceLimits.newBuilder().//
+                        allocatedBytesLimit(1024 * 1024, Duration.ofMillis(10)).//
+                        onLimit((e) -> events.put(e.getContext(), e)).//
+                        build();
+
+        Engine engine = Engine.create();
+        ExecutorService executorService = Executors.newFixedThreadPool(5);
+        List<Future<Context>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executorService.submit(() -> {
+                try (Context c = Context.newBuilder().engine(engine).resourceLimits(limits).build()) {
+                    try {
+                        evalAllocations(c);
+                        fail();
+                    } catch (PolyglotException e) {
+                        assertAllocationLimit(c, e, "Allocated bytes limit of 1048576 bytes exceeded. Bytes allocated ", 1024 * 1024);
+                    }
+                    return c;
+                }
+            }));
+        }
+        for (Future<Context> future : futures) {
+            assertNotNull(events.get(future.get()));
+        }
+        assertEquals(futures.size(), events.size());
+        executorService.shutdownNow();
+        executorService.awaitTermination(100, TimeUnit.SECONDS);
+    }
+
+    private static Source allocations(int count) {
+        return Source.newBuilder(InstrumentationTestLanguage.ID, "LOOP(" + (count == Integer.MAX_VALUE ? "infinity" : count) + ", ALLOCATION)", "allocations").buildLiteral();
+    }
+
+    private static void evalAllocations(Context c) {
+        c.eval(allocations(10));
+        while (true) {
+            c.eval(allocations(1000));
+        }
+    }
+
+    private static void assertAllocationLimit(Context c, PolyglotException e, String messagePrefix, long limit) {
+        assertTrue(e.isCancelled());
+        String message = e.getMessage();
+        assertTrue(message, message.startsWith(messagePrefix));
+        long value = Long.parseLong(message.substring(messagePrefix.length(), message.length() - 1));
+        assertTrue(message, value > limit);
+        try {
+            c.eval(InstrumentationTestLanguage.ID, "EXPRESSION");
+            fail();
+        } catch (PolyglotException ex) {
+            assertTrue(ex.isCancelled());
+            assertEquals(message, ex.getMessage());
+        }
+    }
+
     @Test
     public void testStatementLimitErrors() {
         assertFails(() -> ResourceLimits.newBuilder().statementLimit(-1, null), IllegalArgumentException.class);
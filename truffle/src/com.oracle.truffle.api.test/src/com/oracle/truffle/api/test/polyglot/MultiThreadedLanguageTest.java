@@ -564,6 +564,61 @@ public class MultiThreadedLanguageTest {
         Assert.assertEquals(1, initializeMultiThreadingCount.get());
     }
 
+    @Test
+    public void testEnterLeaveRacingClose() throws InterruptedException, ExecutionException, TimeoutException {
+        MultiThreadedLanguage.isThreadAccessAllowed = (req) -> {
+            return true;
+        };
+        final int threadCount = 4;
+        final int contexts = 50;
+        final int enterLeaves = 1000;
+        ExecutorService executor = createExecutor(threadCount);
+        for (int contextIndex = 0; contextIndex < contexts; contextIndex++) {
+            boolean cancel = contextIndex % 2 == 0;
+            Context context = Context.create(MultiThreadedLanguage.ID);
+            eval(context, (env) -> null);
+            CountDownLatch started = new CountDownLatch(threadCount);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    // the first enter registers the thread, all later ones may skip the lock
+                    eval(context, (env) -> null);
+                    started.countDown();
+                    for (int iteration = 0; iteration < enterLeaves; iteration++) {
+                        try {
+                            eval(context, (env) -> null);
+                        } catch (IllegalStateException | PolyglotException e) {
+                            // closed or cancelled concurrently
+                            return;
+                        }
+                    }
+                }));
+            }
+            started.await();
+            if (cancel) {
+                context.close(true);
+            } else {
+                while (true) {
+                    try {
+                        context.close();
+                        break;
+                    } catch (IllegalStateException e) {
+                        assertTrue(e.getMessage(), e.getMessage().contains("currently executing"));
+                    }
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get(100, TimeUnit.SECONDS);
+            }
+            try {
+                context.enter();
+                fail();
+            } catch (IllegalStateException e) {
+            }
+        }
+        Assert.assertEquals(initializeCount.get(), disposeCount.get());
+    }
+
     @Test
     public void testAsssertionIfThreadStillActive() throws InterruptedException {
         MultiThreadedLanguage.isThreadAccessAllowed = (req) -> {
@@ -54,6 +54,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
@@ -103,6 +105,71 @@ public class PolyglotCachingTest {
         assertEquals(4, parseCalled.get());
     }
 
+    @Test
+    public void testSourceCacheLimit() throws Exception {
+        AtomicInteger parseCalled = new AtomicInteger(0);
+        ProxyLanguage.setDelegate(new ProxyLanguage() {
+            @Override
+            protected CallTarget parse(ParsingRequest request) throws Exception {
+                parseCalled.incrementAndGet();
+                return Truffle.getRuntime().createCallTarget(RootNode.createConstantNode(""));
+            }
+        });
+        // three sources of length 4 exceed the limit, evicts down to 8 characters
+        Context c = Context.newBuilder().allowExperimentalOptions(true).option("engine.SourceCacheLimit", "10").build();
+        Source first = Source.create(ProxyLanguage.ID, "aaaa");
+        Source second = Source.create(ProxyLanguage.ID, "bbbb");
+        Source third = Source.create(ProxyLanguage.ID, "cccc");
+        c.eval(first);
+        c.eval(second);
+        assertEquals(2, parseCalled.get());
+        c.eval(first);
+        c.eval(second);
+        assertEquals(2, parseCalled.get());
+
+        c.eval(third);
+        assertEquals(3, parseCalled.get());
+        c.eval(third);
+        assertEquals(3, parseCalled.get());
+        // least recently used source was evicted
+        c.eval(first);
+        assertEquals(4, parseCalled.get());
+        c.close();
+    }
+
+    @Test
+    public void testSourceCacheStatistics() throws Exception {
+        ProxyLanguage.setDelegate(new ProxyLanguage() {
+            @Override
+            protected CallTarget parse(ParsingRequest request) throws Exception {
+                return Truffle.getRuntime().createCallTarget(RootNode.createConstantNode(""));
+            }
+        });
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Context c = Context.newBuilder().allowExperimentalOptions(true).option("engine.SourceCacheStatistics", "true").logHandler(handler).build();
+        Source source = Source.create(ProxyLanguage.ID, "aaaa");
+        c.eval(source);
+        c.eval(source);
+        c.close();
+        // the statistics are logged through the engine logger when the engine is closed
+        assertEquals(1, records.size());
+        assertEquals("Source cache: 1 hits, 1 misses, 0 evictions", records.get(0).getMessage());
+    }
+
     /*
      * Tests that the outer source instance is never the same as the one passed in. That allows the
      * outer source instance to be collected while the inner one is still referenced strongly. The
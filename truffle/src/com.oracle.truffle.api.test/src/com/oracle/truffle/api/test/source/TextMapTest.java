@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.test.source;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.test.ReflectionUtils;
+
+/**
+ * Compares the lazily indexed text map of sources with the eagerly indexed implementation it
+ * replaced, on random texts and with small chunk sizes, so that chunk boundaries are hit often.
+ */
+public class TextMapTest {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    private static final int[] CHUNK_SIZES = {1, 2, 3, 7, 64, DEFAULT_CHUNK_SIZE};
+    private static final char[] ALPHABET = {'a', 'b', ' ', '\t', '\n', '\r', '\r', '\n'};
+
+    // an out of range query result, instead of the IllegalArgumentException
+    private static final int ILLEGAL = Integer.MIN_VALUE;
+
+    private static final int OFFSET_TO_LINE = 0;
+    private static final int OFFSET_TO_COL = 1;
+    private static final int LINE_COUNT = 2;
+    private static final int LINE_START_OFFSET = 3;
+    private static final int LINE_LENGTH = 4;
+    private static final int LINE_COLUMN_TO_OFFSET = 5;
+    private static final int QUERY_KINDS = 6;
+
+    @Test
+    public void testRandomTexts() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(random, random.nextInt(200));
+            for (int chunkSize : CHUNK_SIZES) {
+                assertSameMapping(text, LegacyTextMap.fromCharSequence(text), new LazyTextMap(text, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void testPartialThenFullIndexing() {
+        Random random = new Random(43);
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(random, random.nextInt(200));
+            LegacyTextMap expected = LegacyTextMap.fromCharSequence(text);
+            for (int chunkSize : CHUNK_SIZES) {
+                LazyTextMap actual = new LazyTextMap(text, chunkSize);
+                // queries near the start of the text only index a part of it
+                for (int q = 0; q < 5; q++) {
+                    int kind = random.nextInt(QUERY_KINDS);
+                    if (kind == LINE_COUNT) {
+                        continue;
+                    }
+                    int a = random.nextInt(Math.max(1, text.length() / 4)) + 1;
+                    int b = random.nextInt(5) + 1;
+                    assertQuery(text, chunkSize, query(expected, kind, a, b), query(actual, kind, a, b), kind, a, b);
+                }
+                assertSameMapping(text, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testCrLfAcrossChunkBoundary() {
+        for (int boundary : new int[]{DEFAULT_CHUNK_SIZE, 2 * DEFAULT_CHUNK_SIZE}) {
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < boundary - 1) {
+                sb.append(sb.length() % 80 == 79 ? '\n' : 'x');
+            }
+            sb.append("\r\n");
+            sb.append("y\r\nz");
+            String text = sb.toString();
+            assertEquals('\r', text.charAt(boundary - 1));
+            assertEquals('\n', text.charAt(boundary));
+
+            LegacyTextMap expected = LegacyTextMap.fromCharSequence(text);
+            LazyTextMap actual = new LazyTextMap(text, DEFAULT_CHUNK_SIZE);
+            // index exactly up to the end of the first chunk first
+            assertEquals(expected.offsetToLine(boundary - 1), actual.offsetToLine(boundary - 1));
+            assertEquals(expected.offsetToLine(boundary), actual.offsetToLine(boundary));
+            assertEquals(expected.offsetToLine(boundary + 1), actual.offsetToLine(boundary + 1));
+            assertSameMapping(text, expected, actual);
+
+            Source source = Source.newBuilder("", text, "crlf").build();
+            int line = expected.offsetToLine(boundary - 1);
+            assertEquals(expected.lineCount(), source.getLineCount());
+            assertEquals(line, source.getLineNumber(boundary));
+            assertEquals(line + 1, source.getLineNumber(boundary + 1));
+            assertEquals(expected.lineLength(line), source.getLineLength(line));
+            assertEquals(boundary + 1, source.getLineStartOffset(line + 1));
+            assertEquals(1, source.getLineLength(line + 1));
+        }
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        Random textRandom = new Random(44);
+        String text = randomText(textRandom, 20000);
+        LegacyTextMap expected = LegacyTextMap.fromCharSequence(text);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int chunkSize : new int[]{3, 64}) {
+                LazyTextMap actual = new LazyTextMap(text, chunkSize);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    Random random = new Random(t);
+                    futures.add(executor.submit(() -> {
+                        for (int q = 0; q < 5000; q++) {
+                            int kind = random.nextInt(QUERY_KINDS);
+                            int a = random.nextInt(text.length() + 2) - 1;
+                            int b = random.nextInt(80);
+                            assertQuery(text, chunkSize, query(expected, kind, a, b), query(actual, kind, a, b), kind, a, b);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+
+    private static void assertSameMapping(String text, LegacyTextMap expected, LazyTextMap actual) {
+        int length = text.length();
+        int lines = expected.lineCount();
+        for (int offset = -1; offset <= length + 1; offset++) {
+            assertQuery(text, expected, actual, OFFSET_TO_LINE, offset, 0);
+            assertQuery(text, expected, actual, OFFSET_TO_COL, offset, 0);
+        }
+        assertQuery(text, expected, actual, LINE_COUNT, 0, 0);
+        for (int line = -1; line <= lines + 2; line++) {
+            assertQuery(text, expected, actual, LINE_START_OFFSET, line, 0);
+            assertQuery(text, expected, actual, LINE_LENGTH, line, 0);
+            for (int column = 0; column <= 4; column++) {
+                assertQuery(text, expected, actual, LINE_COLUMN_TO_OFFSET, line, column);
+            }
+        }
+    }
+
+    private static void assertQuery(String text, LegacyTextMap expected, LazyTextMap actual, int kind, int a, int b) {
+        assertQuery(text, actual.chunkSize, query(expected, kind, a, b), query(actual, kind, a, b), kind, a, b);
+    }
+
+    private static void assertQuery(String text, int chunkSize, int expected, int actual, int kind, int a, int b) {
+        if (expected != actual) {
+            assertEquals(describe(text, chunkSize, kind, a, b), expected, actual);
+        }
+    }
+
+    private static String describe(String text, int chunkSize, int kind, int a, int b) {
+        String escaped = text.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t");
+        if (escaped.length() > 200) {
+            escaped = escaped.substring(0, 200) + "...";
+        }
+        return "query " + kind + "(" + a + ", " + b + ") with chunk size " + chunkSize + " on \"" + escaped + "\"";
+    }
+
+    private static int query(LegacyTextMap map, int kind, int a, int b) {
+        try {
+            switch (kind) {
+                case OFFSET_TO_LINE:
+                    return map.offsetToLine(a);
+                case OFFSET_TO_COL:
+                    return map.offsetToCol(a);
+                case LINE_COUNT:
+                    return map.lineCount();
+                case LINE_START_OFFSET:
+                    return map.lineStartOffset(a);
+                case LINE_LENGTH:
+                    return map.lineLength(a);
+                case LINE_COLUMN_TO_OFFSET:
+                    return map.lineColumnToOffset(a, b);
+                default:
+                    throw new AssertionError(kind);
+            }
+        } catch (IllegalArgumentException e) {
+            return ILLEGAL;
+        }
+    }
+
+    private static int query(LazyTextMap map, int kind, int a, int b) {
+        switch (kind) {
+            case OFFSET_TO_LINE:
+                return map.invoke(LazyTextMap.OFFSET_TO_LINE, a);
+            case OFFSET_TO_COL:
+                return map.invoke(LazyTextMap.OFFSET_TO_COL, a);
+            case LINE_COUNT:
+                return map.invoke(LazyTextMap.LINE_COUNT);
+            case LINE_START_OFFSET:
+                return map.invoke(LazyTextMap.LINE_START_OFFSET, a);
+            case LINE_LENGTH:
+                return map.invoke(LazyTextMap.LINE_LENGTH, a);
+            case LINE_COLUMN_TO_OFFSET:
+                return map.invoke(LazyTextMap.LINE_COLUMN_TO_OFFSET, a, b);
+            default:
+                throw new AssertionError(kind);
+        }
+    }
+
+    /**
+     * Accesses the package private text map of {@link Source}, which allows a smaller chunk size.
+     */
+    static final class LazyTextMap {
+
+        private static final Class<?> TEXT_MAP;
+        private static final Constructor<?> CONSTRUCTOR;
+        static final Method OFFSET_TO_LINE;
+        static final Method OFFSET_TO_COL;
+        static final Method LINE_COUNT;
+        static final Method LINE_START_OFFSET;
+        static final Method LINE_LENGTH;
+        static final Method LINE_COLUMN_TO_OFFSET;
+
+        static {
+            try {
+                TEXT_MAP = Class.forName("com.oracle.truffle.api.source.TextMap");
+                CONSTRUCTOR = TEXT_MAP.getDeclaredConstructor(CharSequence.class, int.class);
+                ReflectionUtils.setAccessible(CONSTRUCTOR, true);
+                OFFSET_TO_LINE = method("offsetToLine", int.class);
+                OFFSET_TO_COL = method("offsetToCol", int.class);
+                LINE_COUNT = method("lineCount");
+                LINE_START_OFFSET = method("lineStartOffset", int.class);
+                LINE_LENGTH = method("lineLength", int.class);
+                LINE_COLUMN_TO_OFFSET = method("lineColumnToOffset", int.class, int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private static Method method(String name, Class<?>... argTypes) throws NoSuchMethodException {
+            Method m = TEXT_MAP.getDeclaredMethod(name, argTypes);
+            ReflectionUtils.setAccessible(m, true);
+            return m;
+        }
+
+        final int chunkSize;
+        private final Object map;
+
+        LazyTextMap(String text, int chunkSize) {
+            this.chunkSize = chunkSize;
+            try {
+                this.map = CONSTRUCTOR.newInstance(text, chunkSize);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        int offsetToLine(int offset) {
+            return invoke(OFFSET_TO_LINE, offset);
+        }
+
+        int invoke(Method method, Object... args) {
+            try {
+                return (int) method.invoke(map, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    return ILLEGAL;
+                }
+                throw new AssertionError(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * The previous, eagerly indexed implementation of the text map.
+     */
+    static final class LegacyTextMap {
+
+        // 0-based offsets of newline characters in the text, with sentinel
+        private final int[] nlOffsets;
+        // The number of characters in the text, including newlines.
+        private final int textLength;
+        // Length of newline characters (1 for '\n', or 2 for "\r\n") valid unless newlineLengths is set
+        private final int newlineLength;
+        // Lengths of newlines, if newlines with different lengths are present.
+        private final int[] newlineLengths;
+        // Is the final text character a newline?
+        final boolean finalNL;
+
+        LegacyTextMap(int[] nlOffsets, int textLength, int newlineLength, int[] newlineLengths, boolean finalNL) {
+            this.nlOffsets = nlOffsets;
+            this.textLength = textLength;
+            this.newlineLength = newlineLength;
+            this.newlineLengths = newlineLengths;
+            this.finalNL = finalNL;
+        }
+
+        static LegacyTextMap fromCharSequence(CharSequence text) {
+            final int textLength = text.length();
+            ArrayList<Integer> lines;
+            int newlineLength = 0; // 0 - unset, > 0 equal length, < 0 variable length
+            ArrayList<Integer> nlLengths = null;
+            // Suppose that all newlines have the same length.
+            // If not, we'll set nlLengths in the second pass.
+            do {
+                lines = new ArrayList<>();
+                lines.add(0);
+                int offset = 0;
+                if (newlineLength == -1) {
+                    // There are newlines of different lengths
+                    nlLengths = new ArrayList<>();
+                    newlineLength = -2;
+                }
+                while (offset < textLength) {
+                    int nlIndex = offset;
+                    char c = 0;
+                    while (nlIndex < textLength) {
+                        c = text.charAt(nlIndex);
+                        if (c == '\n' || c == '\r') {
+                            break;
+                        }
+                        nlIndex++;
+                    }
+                    if (nlIndex < textLength) {
+                        int nlLength = getNewlineLength(c, text, textLength, nlIndex);
+                        // Store the length of newline
+                        newlineLength = adjustNewlineLength(nlLength, newlineLength, nlLengths);
+                        if (newlineLength == -1) {
+                            // variable length of newlines.
+                            break;
+                        }
+                        offset = nlIndex + nlLength;
+                        lines.add(offset);
+                    } else {
+                        break;
+                    }
+                }
+            } while (newlineLength == -1);
+            lines.add(Integer.MAX_VALUE);
+            final int[] nlOffsets = list2ints(lines);
+            final int[] newlineLengths;
+            if (nlLengths != null) {
+                assert nlLengths.size() == lines.size() - 2;
+                newlineLengths = list2ints(nlLengths);
+            } else {
+                newlineLengths = null;
+            }
+            final boolean finalNL = textLength > 0 && (textLength == nlOffsets[nlOffsets.length - 2]);
+            return new LegacyTextMap(nlOffsets, textLength, newlineLength, newlineLengths, finalNL);
+        }
+
+        private static int getNewlineLength(char c, CharSequence text, int textLength, int nlIndex) {
+            if (c == '\r' && (nlIndex + 1) < textLength && text.charAt(nlIndex + 1) == '\n') {
+                return 2;
+            } else {
+                return 1;
+            }
+        }
+
+        private static int adjustNewlineLength(int nlLength, int oldNewlineLength, ArrayList<Integer> nlLengths) {
+            int newlineLength = oldNewlineLength;
+            if (newlineLength >= 0) {
+                if (newlineLength == 0) {
+                    newlineLength = nlLength;
+                } else if (newlineLength != nlLength) {
+                    newlineLength = -1;
+                }
+            } else {
+                nlLengths.add(nlLength);
+            }
+            return newlineLength;
+        }
+
+        private static int[] list2ints(ArrayList<Integer> list) {
+            int size = list.size();
+            int[] array = new int[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+
+        public int offsetToLine(int offset) throws IllegalArgumentException {
+            if (offset < 0 || offset > textLength) {
+                throw new IllegalArgumentException("offset out of bounds");
+            }
+            return binarySearchLine(nlOffsets, offset) + 1;
+        }
+
+        private static int binarySearchLine(int[] a, int key) {
+            int low = 0;
+            int high = a.length - 1;
+
+            int mid = 0;
+            int midVal;
+            while (low <= high) {
+                mid = (low + high) >>> 1;
+                midVal = a[mid];
+
+                if (midVal < key) {
+                    low = mid + 1;
+                } else if (midVal > key) {
+                    high = mid - 1;
+                } else {
+                    high = mid;
+                    break; // direct hit
+                }
+            }
+            return high;  // return high index
+        }
+
+        public int offsetToCol(int offset) throws IllegalArgumentException {
+            return 1 + offset - nlOffsets[offsetToLine(offset) - 1];
+        }
+
+        public int length() {
+            return textLength;
+        }
+
+        public int lineCount() {
+            if (textLength == 0) {
+                return 0;
+            }
+            return finalNL ? nlOffsets.length - 2 : nlOffsets.length - 1;
+        }
+
+        public int lineStartOffset(int line) throws IllegalArgumentException {
+            if (lineOutOfRange(line)) {
+                throw new IllegalArgumentException("line out of bounds");
+            }
+            return nlOffsets[line - 1];
+        }
+
+        public int lineLength(int line) throws IllegalArgumentException {
+            if (lineOutOfRange(line)) {
+                throw new IllegalArgumentException("line out of bounds");
+            }
+            if (line == nlOffsets.length - 1) {
+                return textLength - nlOffsets[line - 1];
+            }
+            int nlLength;
+            if (newlineLengths != null) {
+                nlLength = newlineLengths[line - 1];
+            } else {
+                nlLength = newlineLength;
+            }
+            return (nlOffsets[line] - nlOffsets[line - 1]) - nlLength;
+        }
+
+        public int lineColumnToOffset(int line, int column) {
+            final int lineStartOffset = lineStartOffset(line);
+            if (column > (lineLength(line) + 1)) {
+                throw new IllegalArgumentException("column out of range");
+            }
+            final int charIndex = lineStartOffset + column - 1;
+            return charIndex;
+        }
+
+        private boolean lineOutOfRange(int line) {
+            return line <= 0 || line >= nlOffsets.length;
+        }
+    }
+}
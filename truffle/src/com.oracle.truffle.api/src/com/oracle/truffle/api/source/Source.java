@@ -161,7 +161,7 @@ public abstract class Source {
 
     private static final InternedSources SOURCES = new InternedSources();
 
-    private volatile TextMap textMap;
+    volatile TextMap textMap; // shared with copies of this source
     private volatile URI computedURI;
     volatile org.graalvm.polyglot.Source polyglotSource;
 
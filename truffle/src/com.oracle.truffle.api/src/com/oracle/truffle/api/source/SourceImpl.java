@@ -103,7 +103,10 @@ final class SourceImpl extends Source {
 
     @Override
     Source copy() {
-        return new SourceImpl(key, sourceId);
+        SourceImpl copy = new SourceImpl(key, sourceId);
+        // same content, so the line index can be shared
+        copy.textMap = textMap;
+        return copy;
     }
 
     @Override
@@ -40,7 +40,7 @@
  */
 package com.oracle.truffle.api.source;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A utility for converting between coordinate systems in a string of text interspersed with newline
@@ -64,6 +64,9 @@ import java.util.ArrayList;
  * newline character count as a line, even though not newline-terminated. Following line delimiters
  * are used: "\n", "\r", "\r\n"
  * <p>
+ * Line breaks are indexed lazily in chunks, only as far into the text as needed to answer a query.
+ * Queries on an already indexed part of the text use a binary search on the line start offsets.
+ * <p>
  * <strong>Limitations:</strong>
  * <ul>
  * <li>Does not handle multiple character encodings correctly.</li>
@@ -72,23 +75,39 @@ import java.util.ArrayList;
  */
 final class TextMap {
 
-    // 0-based offsets of newline characters in the text, with sentinel
-    private final int[] nlOffsets;
+    // Number of characters scanned for line breaks at once when the index is extended.
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final CharSequence text;
+    // Number of characters scanned at once, CHUNK_SIZE except in tests.
+    private final int chunkSize;
     // The number of characters in the text, including newlines.
     private final int textLength;
-    // Length of newline characters (1 for '\n', or 2 for "\r\n") valid unless newlineLengths is set
-    private final int newlineLength;
-    // Lengths of newlines, if newlines with different lengths are present.
-    private final int[] newlineLengths;
-    // Is the final text character a newline?
-    final boolean finalNL;
+    // Line starts found so far. Replaced by an extended index whenever more text is scanned.
+    private volatile LineIndex index;
+
+    private static final class LineIndex {
+        // 0-based offsets of line starts. Only grows, entries below count never change, so the
+        // array is shared with extended indices until it needs to be enlarged.
+        final int[] lineStarts;
+        // The number of valid entries in lineStarts.
+        final int count;
+        // All characters before this offset were scanned.
+        final int scanned;
+
+        LineIndex(int[] lineStarts, int count, int scanned) {
+            this.lineStarts = lineStarts;
+            this.count = count;
+            this.scanned = scanned;
+        }
+    }
 
-    TextMap(int[] nlOffsets, int textLength, int newlineLength, int[] newlineLengths, boolean finalNL) {
-        this.nlOffsets = nlOffsets;
-        this.textLength = textLength;
-        this.newlineLength = newlineLength;
-        this.newlineLengths = newlineLengths;
-        this.finalNL = finalNL;
+    TextMap(CharSequence text, int chunkSize) {
+        assert chunkSize > 0;
+        this.text = text;
+        this.chunkSize = chunkSize;
+        this.textLength = text.length();
+        this.index = new LineIndex(new int[16], 1, 0);
     }
 
     /**
@@ -96,88 +115,63 @@ final class TextMap {
      * lines/columns.
      */
     public static TextMap fromCharSequence(CharSequence text) {
-        final int textLength = text.length();
-        ArrayList<Integer> lines;
-        int newlineLength = 0; // 0 - unset, > 0 equal length, < 0 variable length
-        ArrayList<Integer> nlLengths = null;
-        // Suppose that all newlines have the same length.
-        // If not, we'll set nlLengths in the second pass.
-        do {
-            lines = new ArrayList<>();
-            lines.add(0);
-            int offset = 0;
-            if (newlineLength == -1) {
-                // There are newlines of different lengths
-                nlLengths = new ArrayList<>();
-                newlineLength = -2;
-            }
-            while (offset < textLength) {
-                int nlIndex = offset;
-                char c = 0;
-                while (nlIndex < textLength) {
-                    c = text.charAt(nlIndex);
-                    if (c == '\n' || c == '\r') {
-                        break;
-                    }
-                    nlIndex++;
-                }
-                if (nlIndex < textLength) {
-                    int nlLength = getNewlineLength(c, text, textLength, nlIndex);
-                    // Store the length of newline
-                    newlineLength = adjustNewlineLength(nlLength, newlineLength, nlLengths);
-                    if (newlineLength == -1) {
-                        // variable length of newlines.
-                        break;
-                    }
-                    offset = nlIndex + nlLength;
-                    lines.add(offset);
-                } else {
-                    break;
-                }
-            }
-        } while (newlineLength == -1);
-        lines.add(Integer.MAX_VALUE);
-        final int[] nlOffsets = list2ints(lines);
-        final int[] newlineLengths;
-        if (nlLengths != null) {
-            assert nlLengths.size() == lines.size() - 2;
-            newlineLengths = list2ints(nlLengths);
-        } else {
-            newlineLengths = null;
-        }
-        final boolean finalNL = textLength > 0 && (textLength == nlOffsets[nlOffsets.length - 2]);
-        return new TextMap(nlOffsets, textLength, newlineLength, newlineLengths, finalNL);
+        return new TextMap(text, CHUNK_SIZE);
     }
 
-    private static int getNewlineLength(char c, CharSequence text, int textLength, int nlIndex) {
-        if (c == '\r' && (nlIndex + 1) < textLength && text.charAt(nlIndex + 1) == '\n') {
-            return 2;
-        } else {
-            return 1;
+    /**
+     * Returns an index containing all line starts at or before the given offset.
+     */
+    private LineIndex indexUpToOffset(int offset) {
+        LineIndex i = index;
+        while (i.scanned < offset) {
+            i = extend(i);
         }
+        return i;
     }
 
-    private static int adjustNewlineLength(int nlLength, int oldNewlineLength, ArrayList<Integer> nlLengths) {
-        int newlineLength = oldNewlineLength;
-        if (newlineLength >= 0) {
-            if (newlineLength == 0) {
-                newlineLength = nlLength;
-            } else if (newlineLength != nlLength) {
-                newlineLength = -1;
-            }
-        } else {
-            nlLengths.add(nlLength);
+    /**
+     * Returns an index containing the start of the line with the given 0-based number, unless the
+     * text has fewer lines.
+     */
+    private LineIndex indexUpToLine(int lineIndex) {
+        LineIndex i = index;
+        while (lineIndex >= i.count && i.scanned < textLength) {
+            i = extend(i);
         }
-        return newlineLength;
+        return i;
     }
 
-    private static int[] list2ints(ArrayList<Integer> list) {
-        int size = list.size();
-        int[] array = new int[size];
-        for (int i = 0; i < size; i++) {
-            array[i] = list.get(i);
+    private LineIndex completeIndex() {
+        return indexUpToOffset(textLength);
+    }
+
+    private synchronized LineIndex extend(LineIndex seen) {
+        LineIndex current = index;
+        if (current != seen) {
+            // extended by another thread in the meantime
+            return current;
+        }
+        int[] starts = current.lineStarts;
+        int count = current.count;
+        int offset = current.scanned;
+        int end = textLength - offset > chunkSize ? offset + chunkSize : textLength;
+        int i = offset;
+        while (i < end) {
+            char c = text.charAt(i++);
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i < textLength && text.charAt(i) == '\n') {
+                    // "\r\n" is a single newline, even if it crosses the end of the chunk
+                    i++;
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count << 1);
+                }
+                starts[count++] = i;
+            }
         }
-        return array;
+        LineIndex extended = new LineIndex(starts, count, i);
+        index = extended;
+        return extended;
     }
 
     /**
@@ -189,12 +183,13 @@ final class TextMap {
         if (offset < 0 || offset > textLength) {
             throw new IllegalArgumentException("offset out of bounds");
         }
-        return binarySearchLine(nlOffsets, offset) + 1;
+        LineIndex i = indexUpToOffset(offset);
+        return binarySearchLine(i.lineStarts, i.count, offset) + 1;
     }
 
-    private static int binarySearchLine(int[] a, int key) {
+    private static int binarySearchLine(int[] a, int length, int key) {
         int low = 0;
-        int high = a.length - 1;
+        int high = length - 1;
 
         int mid = 0;
         int midVal;
@@ -222,7 +217,8 @@ final class TextMap {
      * @throws IllegalArgumentException if the offset is outside the string.
      */
     public int offsetToCol(int offset) throws IllegalArgumentException {
-        return 1 + offset - nlOffsets[offsetToLine(offset) - 1];
+        int line = offsetToLine(offset);
+        return 1 + offset - index.lineStarts[line - 1];
     }
 
     /**
@@ -240,7 +236,9 @@ final class TextMap {
         if (textLength == 0) {
             return 0;
         }
-        return finalNL ? nlOffsets.length - 2 : nlOffsets.length - 1;
+        LineIndex i = completeIndex();
+        boolean finalNL = i.lineStarts[i.count - 1] == textLength;
+        return finalNL ? i.count - 1 : i.count;
     }
 
     /**
@@ -250,10 +248,14 @@ final class TextMap {
      * @throws IllegalArgumentException if there is no such line in the text.
      */
     public int lineStartOffset(int line) throws IllegalArgumentException {
-        if (lineOutOfRange(line)) {
+        if (line <= 0) {
+            throw new IllegalArgumentException("line out of bounds");
+        }
+        LineIndex i = indexUpToLine(line - 1);
+        if (line > i.count) {
             throw new IllegalArgumentException("line out of bounds");
         }
-        return nlOffsets[line - 1];
+        return i.lineStarts[line - 1];
     }
 
     /**
@@ -263,19 +265,31 @@ final class TextMap {
      * @throws IllegalArgumentException if there is no such line in the text.
      */
     public int lineLength(int line) throws IllegalArgumentException {
-        if (lineOutOfRange(line)) {
+        if (line <= 0) {
+            throw new IllegalArgumentException("line out of bounds");
+        }
+        // make sure the start of the next line is known, if there is one
+        LineIndex i = indexUpToLine(line);
+        if (line > i.count) {
             throw new IllegalArgumentException("line out of bounds");
         }
-        if (line == nlOffsets.length - 1) {
-            return textLength - nlOffsets[line - 1];
+        int lineStart = i.lineStarts[line - 1];
+        if (line == i.count) {
+            return textLength - lineStart;
         }
-        int nlLength;
-        if (newlineLengths != null) {
-            nlLength = newlineLengths[line - 1];
+        int nextLineStart = i.lineStarts[line];
+        return (nextLineStart - lineStart) - newlineLength(nextLineStart);
+    }
+
+    /**
+     * Length of the newline characters terminating the line that ends before the given line start.
+     */
+    private int newlineLength(int nextLineStart) {
+        if (nextLineStart >= 2 && text.charAt(nextLineStart - 1) == '\n' && text.charAt(nextLineStart - 2) == '\r') {
+            return 2;
         } else {
-            nlLength = newlineLength;
+            return 1;
         }
-        return (nlOffsets[line] - nlOffsets[line - 1]) - nlLength;
     }
 
     /**
@@ -293,11 +307,4 @@ final class TextMap {
         return charIndex;
     }
 
-    /**
-     * Is the line number out of range.
-     */
-    private boolean lineOutOfRange(int line) {
-        return line <= 0 || line >= nlOffsets.length;
-    }
-
 }
@@ -40,6 +40,7 @@
  */
 package com.oracle.truffle.object.basic.test;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
@@ -89,6 +90,19 @@ public abstract class DOTestAsserts {
         }
     }
 
+    /** Returns the length of the object's extension array, or 0 if it has none. */
+    public static int getExtensionArrayLength(DynamicObject object, String fieldName) {
+        try {
+            Field field = Class.forName("com.oracle.truffle.object.DynamicObjectBasic").getDeclaredField(fieldName);
+            field.setAccessible(true);
+            Object array = field.get(object);
+            return array == null ? 0 : java.lang.reflect.Array.getLength(array);
+        } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException e) {
+            Assert.fail(e.toString());
+            return 0;
+        }
+    }
+
     public static void assertShape(String fields, Shape shape) {
         Assert.assertEquals(shapeId(shape) + fields, shape.toString());
     }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.object.basic.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Shape;
+
+public class ExtensionArrayCapacityTest {
+    static final Layout LAYOUT = Layout.createLayout();
+
+    private static final int PROPERTY_COUNT = 20;
+
+    private static DynamicObject growObject(Shape rootShape, String prefix, int count, Object value) {
+        DynamicObject object = rootShape.newInstance();
+        for (int i = 0; i < count; i++) {
+            object.define(prefix + i, value);
+        }
+        return object;
+    }
+
+    private static int objectArrayLength(DynamicObject object) {
+        return DOTestAsserts.getExtensionArrayLength(object, "objext");
+    }
+
+    private static int primitiveArrayLength(DynamicObject object) {
+        return DOTestAsserts.getExtensionArrayLength(object, "primext");
+    }
+
+    @Test
+    public void testPresizeObjectArray() {
+        Shape rootShape = LAYOUT.createShape(new ObjectType());
+        DynamicObject first = growObject(rootShape, "p", PROPERTY_COUNT, "value");
+        int finalLength = objectArrayLength(first);
+        assertTrue(finalLength > 0);
+
+        DynamicObject second = rootShape.newInstance();
+        assertEquals(finalLength, objectArrayLength(second));
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            second.define("p" + i, "value");
+            assertEquals("extension array should not be reallocated", finalLength, objectArrayLength(second));
+        }
+        assertEquals(first.getShape(), second.getShape());
+    }
+
+    @Test
+    public void testPresizePrimitiveArray() {
+        Shape rootShape = LAYOUT.createShape(new ObjectType());
+        DynamicObject first = growObject(rootShape, "p", PROPERTY_COUNT, 42L);
+        int finalLength = primitiveArrayLength(first);
+        assertTrue(finalLength > 0);
+
+        DynamicObject second = growObject(rootShape, "p", PROPERTY_COUNT, 42L);
+        assertEquals(finalLength, primitiveArrayLength(second));
+        assertEquals(first.getShape(), second.getShape());
+    }
+
+    @Test
+    public void testSmallObjectsSharingRootWithLargeObjects() {
+        Shape rootShape = LAYOUT.createShape(new ObjectType());
+        growObject(rootShape, "large", PROPERTY_COUNT, "value");
+        growObject(rootShape, "small", 1, "value");
+
+        // both kinds of objects are allocated from the root shape, so it must not be pre-sized
+        assertEquals(0, objectArrayLength(growObject(rootShape, "small", 1, "value")));
+        growObject(rootShape, "large", PROPERTY_COUNT, "value");
+        assertEquals(0, objectArrayLength(growObject(rootShape, "small", 1, "value")));
+
+        // but objects allocated from a shape on the single path to the large shape still are
+        DynamicObject large = growObject(rootShape, "large", PROPERTY_COUNT, "value");
+        Shape intermediateShape = large.getShape();
+        while (intermediateShape.getPropertyCount() > 1) {
+            intermediateShape = intermediateShape.getParent();
+        }
+        assertEquals(objectArrayLength(large), objectArrayLength(intermediateShape.newInstance()));
+    }
+}
@@ -68,12 +68,13 @@ public class DynamicObjectBasic extends DynamicObjectImpl {
     @Override
     protected final void initialize(Shape shape) {
         assert getObjectStore(shape) == null;
-        int capacity = ((ShapeImpl) shape).getObjectArrayCapacity();
+        int capacity = ((ShapeImpl) shape).getExpectedObjectArrayCapacity();
         if (capacity != 0) {
             this.setObjectStore(new Object[capacity], shape);
         }
-        if (((ShapeImpl) shape).getPrimitiveArrayCapacity() != 0) {
-            this.setPrimitiveStore(new long[((ShapeImpl) shape).getPrimitiveArrayCapacity()], shape);
+        int primitiveCapacity = ((ShapeImpl) shape).getExpectedPrimitiveArrayCapacity();
+        if (primitiveCapacity != 0) {
+            this.setPrimitiveStore(new long[primitiveCapacity], shape);
         }
     }
 
@@ -90,6 +91,12 @@ public class DynamicObjectBasic extends DynamicObjectImpl {
     }
 
     private void growObjectStoreIntl(int oldObjectArrayCapacity, int newObjectArrayCapacity, Shape newShape) {
+        Object[] oldStore = this.getObjectStore(newShape);
+        if (oldStore != null && oldStore.length >= newObjectArrayCapacity) {
+            // pre-sized based on allocation site feedback
+            return;
+        }
+        ((ShapeImpl) newShape).reportObjectArrayCapacity(newObjectArrayCapacity);
         Object[] newObjectStore = new Object[newObjectArrayCapacity];
         if (oldObjectArrayCapacity != 0) {
             // monotonic growth assumption
@@ -119,6 +126,12 @@ public class DynamicObjectBasic extends DynamicObjectImpl {
     }
 
     private void growPrimitiveStoreIntl(int oldPrimitiveCapacity, int newPrimitiveCapacity, Shape newShape) {
+        long[] oldStore = this.getPrimitiveStore(newShape);
+        if (oldStore != null && oldStore.length >= newPrimitiveCapacity) {
+            // pre-sized based on allocation site feedback
+            return;
+        }
+        ((ShapeImpl) newShape).reportPrimitiveArrayCapacity(newPrimitiveCapacity);
         long[] newPrimitiveArray = new long[newPrimitiveCapacity];
         if (oldPrimitiveCapacity != 0) {
             // primitive array can shrink due to type changes
@@ -201,11 +214,12 @@ public class DynamicObjectBasic extends DynamicObjectImpl {
     @Override
     protected final boolean checkExtensionArrayInvariants(Shape newShape) {
         assert getShape() == newShape;
+        // extension arrays may be larger than required if they were pre-sized
         assert (getObjectStore(newShape) == null && ((ShapeImpl) newShape).getObjectArrayCapacity() == 0) ||
-                        (getObjectStore(newShape) != null && getObjectStore(newShape).length == ((ShapeImpl) newShape).getObjectArrayCapacity());
+                        (getObjectStore(newShape) != null && getObjectStore(newShape).length >= ((ShapeImpl) newShape).getObjectArrayCapacity());
         if (((ShapeImpl) newShape).hasPrimitiveArray()) {
             assert (getPrimitiveStore(newShape) == null && ((ShapeImpl) newShape).getPrimitiveArrayCapacity() == 0) ||
-                            (getPrimitiveStore(newShape) != null && getPrimitiveStore(newShape).length == ((ShapeImpl) newShape).getPrimitiveArrayCapacity());
+                            (getPrimitiveStore(newShape) != null && getPrimitiveStore(newShape).length >= ((ShapeImpl) newShape).getPrimitiveArrayCapacity());
         }
         return true;
     }
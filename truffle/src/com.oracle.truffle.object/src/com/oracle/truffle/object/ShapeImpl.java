@@ -135,7 +135,7 @@ public abstract class ShapeImpl extends Shape {
      * <ol>
      * <li>{@code null}: empty map
      * <li>{@link Map.Entry}: immutable single entry map
-     * <li>{@link Map}: mutable multiple entry map
+     * <li>{@link Map}: concurrent multiple entry map, see {@link TransitionMap}
      * </ol>
      *
      * @see #queryTransition(Transition)
@@ -145,6 +145,20 @@ public abstract class ShapeImpl extends Shape {
 
     private final Transition transitionFromParent;
 
+    /*
+     * Allocation feedback: the largest extension array capacities that objects allocated from this
+     * shape grew to. Only recorded while all objects allocated from this shape can only transition
+     * along a single path, i.e. as long as this shape and its successors up to the final shape each
+     * have at most one transition, and reset when a second transition is added. Objects allocated
+     * from this shape pre-size their extension arrays accordingly, so adding properties later does
+     * not reallocate them. Not compilation final, compiled allocations read the current value.
+     */
+    private int expectedObjectArrayCapacity;
+    private int expectedPrimitiveArrayCapacity;
+
+    /** Upper bound for pre-sized extension arrays, to avoid over-allocating dictionary-like objects. */
+    private static final int MAX_EXPECTED_ARRAY_CAPACITY = 32;
+
     private static final AtomicReferenceFieldUpdater<ShapeImpl, Object> TRANSITION_MAP_UPDATER = AtomicReferenceFieldUpdater.newUpdater(ShapeImpl.class, Object.class, "transitionMap");
     private static final AtomicReferenceFieldUpdater<ShapeImpl, Assumption> LEAF_ASSUMPTION_UPDATER = AtomicReferenceFieldUpdater.newUpdater(ShapeImpl.class, Assumption.class, "leafAssumption");
 
@@ -285,6 +299,74 @@ public abstract class ShapeImpl extends Shape {
         return primitiveArrayCapacity;
     }
 
+    final int getExpectedObjectArrayCapacity() {
+        return Math.max(objectArrayCapacity, expectedObjectArrayCapacity);
+    }
+
+    final int getExpectedPrimitiveArrayCapacity() {
+        if (!hasPrimitiveArray) {
+            return primitiveArrayCapacity;
+        }
+        return Math.max(primitiveArrayCapacity, expectedPrimitiveArrayCapacity);
+    }
+
+    /**
+     * Records that an object of this shape grew its object extension array to {@code capacity},
+     * in this shape and in the predecessors it is the only successor of.
+     */
+    final void reportObjectArrayCapacity(int capacity) {
+        if (capacity > MAX_EXPECTED_ARRAY_CAPACITY || isShared()) {
+            return;
+        }
+        ShapeImpl s = this;
+        while (s.expectedObjectArrayCapacity < capacity) {
+            s.expectedObjectArrayCapacity = capacity;
+            s = s.parent;
+            if (s == null || !s.hasSingleTransitionPath()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records that an object of this shape grew its primitive extension array to
+     * {@code capacity}, in this shape and in the predecessors it is the only successor of.
+     */
+    final void reportPrimitiveArrayCapacity(int capacity) {
+        if (capacity > MAX_EXPECTED_ARRAY_CAPACITY || isShared()) {
+            return;
+        }
+        ShapeImpl s = this;
+        while (s.expectedPrimitiveArrayCapacity < capacity) {
+            s.expectedPrimitiveArrayCapacity = capacity;
+            s = s.parent;
+            if (s == null || !s.hasSingleTransitionPath()) {
+                break;
+            }
+        }
+    }
+
+    private boolean hasSingleTransitionPath() {
+        return !isTransitionMap(transitionMap);
+    }
+
+    /**
+     * Objects allocated from this shape or its predecessors may now end up in different shapes, so
+     * the recorded capacities no longer predict their size.
+     */
+    private void resetExpectedArrayCapacity() {
+        for (ShapeImpl s = this; s != null; s = s.parent) {
+            if (s.expectedObjectArrayCapacity == 0 && s.expectedPrimitiveArrayCapacity == 0) {
+                break;
+            }
+            s.expectedObjectArrayCapacity = 0;
+            s.expectedPrimitiveArrayCapacity = 0;
+            if (s.parent != null && !s.parent.hasSingleTransitionPath()) {
+                break;
+            }
+        }
+    }
+
     /** @since 0.17 or earlier */
     public final int getPrimitiveArraySize() {
         return primitiveArraySize;
@@ -347,6 +429,7 @@ public abstract class ShapeImpl extends Shape {
                 ShapeImpl exSucc = entry.getValue();
                 if (exSucc != null) {
                     next = newTransitionMap(exTra, exSucc, transition, successor);
+                    resetExpectedArrayCapacity();
                 } else {
                     next = newSingleEntry(transition, successor);
                 }
@@ -43,6 +43,7 @@ package com.oracle.truffle.polyglot;
 import java.lang.annotation.Annotation;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.InvocationTargetException;
@@ -276,6 +277,13 @@ abstract class HostMethodDesc {
         }
 
         abstract static class MHBase extends SingleMethod {
+            /*
+             * Methods with at most this many parameters are invoked with an exact arity method
+             * handle instead of spreading the argument array. Must match the cases of
+             * invokeHandle.
+             */
+            static final int MAX_EXACT_ARITY = 4;
+
             @CompilationFinal private MethodHandle methodHandle;
 
             MHBase(Executable executable) {
@@ -299,7 +307,27 @@ abstract class HostMethodDesc {
 
             @TruffleBoundary(allowInlining = true)
             static Object invokeHandle(MethodHandle invokeHandle, Object receiver, Object[] arguments) throws Throwable {
-                return invokeHandle.invokeExact(receiver, arguments);
+                if (isSpreader(invokeHandle)) {
+                    return invokeHandle.invokeExact(receiver, arguments);
+                }
+                switch (arguments.length) {
+                    case 0:
+                        return invokeHandle.invokeExact(receiver);
+                    case 1:
+                        return invokeHandle.invokeExact(receiver, arguments[0]);
+                    case 2:
+                        return invokeHandle.invokeExact(receiver, arguments[0], arguments[1]);
+                    case 3:
+                        return invokeHandle.invokeExact(receiver, arguments[0], arguments[1], arguments[2]);
+                    default:
+                        // the arity was checked when the handle was adapted
+                        return invokeHandle.invokeExact(receiver, arguments[0], arguments[1], arguments[2], arguments[3]);
+                }
+            }
+
+            private static boolean isSpreader(MethodHandle handle) {
+                MethodType type = handle.type();
+                return type.parameterCount() == 2 && type.parameterType(1) == Object[].class;
             }
 
             protected abstract MethodHandle makeMethodHandle();
@@ -312,6 +340,12 @@ abstract class HostMethodDesc {
                 } else {
                     adaptedHandle = adaptedHandle.asType(adaptedHandle.type().changeParameterType(0, Object.class));
                 }
+                if (parameterCount <= MAX_EXACT_ARITY) {
+                    // (Object, Object, ...)Object with one Object parameter per argument
+                    MethodHandle exactHandle = adaptedHandle.asType(MethodType.genericMethodType(parameterCount + 1));
+                    assert MAX_EXACT_ARITY == 4 && !isSpreader(exactHandle) : "invokeHandle must have a case for each exact arity";
+                    return exactHandle;
+                }
                 adaptedHandle = adaptedHandle.asSpreader(Object[].class, parameterCount);
                 return adaptedHandle;
             }
@@ -152,6 +152,11 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
     private final Map<Thread, PolyglotThreadInfo> threads = new WeakHashMap<>();
 
     private volatile PolyglotThreadInfo currentThreadInfo = PolyglotThreadInfo.NULL;
+    /*
+     * Thread info of the current thread if it was already registered with this context. Allows
+     * threads of a multi-threaded context to enter and leave without holding the context lock.
+     */
+    private final ThreadLocal<PolyglotThreadInfo> registeredThreadInfo = new ThreadLocal<>();
     @CompilationFinal private volatile PolyglotThreadInfo constantCurrentThreadInfo = PolyglotThreadInfo.NULL;
 
     /*
@@ -448,13 +453,38 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
         }
     }
 
+    /*
+     * Threads that were already registered with a multi-threaded context can enter and leave it
+     * without taking the context lock, as long as no state transition like closing, cancelling or
+     * invalidation is in progress. State transitions are published before the lock holder looks
+     * for active threads and are read again after the entered count was incremented, so a thread
+     * that raced with a transition backs out and enters through the synchronized slow path.
+     */
+    private boolean canEnterWithoutLock() {
+        return !singleThreaded.isValid() && !closed && closingThread == null && !cancelling && !invalid && !engine.closed;
+    }
+
     @TruffleBoundary
     PolyglotContextImpl enterThreadChanged() {
+        PolyglotThreadInfo registered = registeredThreadInfo.get();
+        if (registered != null && canEnterWithoutLock()) {
+            Object prev = singleContextState.contextThreadLocal.setReturnParent(this);
+            registered.enter(engine);
+            if (canEnterWithoutLock()) {
+                return (PolyglotContextImpl) prev;
+            }
+            // a state transition happened concurrently
+            registered.leave(engine);
+            singleContextState.contextThreadLocal.set(prev);
+        }
         Thread current = Thread.currentThread();
         PolyglotContextImpl prev;
         boolean needsInitialization = false;
         synchronized (this) {
             PolyglotThreadInfo threadInfo = getCurrentThreadInfo();
+            if (closed) {
+                unregisterCurrentThread();
+            }
             checkClosed();
             engine.checkState();
             assert threadInfo != null;
@@ -476,6 +506,18 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
                     throw new PolyglotIllegalStateException("Can not create new threads in closing context.");
                 }
                 threads.put(current, threadInfo);
+            } else if (closing != null && closing != current && !threadInfo.isPolyglotThread(this)) {
+                /*
+                 * The closing thread already verified that no other thread is active, entering now
+                 * would execute while the context is disposed.
+                 */
+                throw new PolyglotIllegalStateException("The Context is already closed.");
+            } else if (cancelling && threadInfo.cancelled && closing != current) {
+                /*
+                 * A cancelled thread is no longer considered active by the cancelling thread, it
+                 * must not enter again before the cancel completed.
+                 */
+                throw PolyglotImpl.wrapGuestException(engine, new CancelExecution(null, invalidMessage));
             }
 
             // enter the thread info already
@@ -492,9 +534,10 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
                 initializeNewThread(current);
             }
 
-            // never cache last thread on close or when closingThread
-            if (!closed && closing == null && !invalid) {
+            // never cache last thread on close, cancel or when closingThread
+            if (!closed && closing == null && !cancelling && !invalid) {
                 setCachedThreadInfo(threadInfo);
+                registeredThreadInfo.set(threadInfo);
             }
 
         }
@@ -504,6 +547,15 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
         return prev;
     }
 
+    /**
+     * Forgets that the current thread entered this context. Called when the thread is disposed or
+     * when it notices that the context is closed, so that pooled threads do not keep the thread
+     * infos of closed contexts reachable.
+     */
+    void unregisterCurrentThread() {
+        registeredThreadInfo.remove();
+    }
+
     void setCachedThreadInfo(PolyglotThreadInfo info) {
         assert Thread.holdsLock(this);
         currentThreadInfo = info;
@@ -546,6 +598,14 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
 
     @TruffleBoundary
     PolyglotThreadInfo leaveThreadChanged() {
+        PolyglotThreadInfo registered = registeredThreadInfo.get();
+        if (registered != null && !cancelling && !singleThreaded.isValid()) {
+            registered.leave(engine);
+            if (cancelling) {
+                notifyLeftWithoutLock(registered);
+            }
+            return registered;
+        }
         PolyglotThreadInfo info;
         synchronized (this) {
             Thread current = Thread.currentThread();
@@ -560,6 +620,8 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
             info.leave(engine);
             if (!closed && !cancelling && !invalid) {
                 setCachedThreadInfo(threadInfo);
+            } else {
+                unregisterCurrentThread();
             }
         }
         return info;
@@ -978,6 +1040,18 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
         }
     }
 
+    /*
+     * A cancel publishes itself before it looks for active threads, so if a thread that left
+     * without holding the lock observes the cancel afterwards, the cancel may have seen it as
+     * active and waits for it to leave.
+     */
+    @TruffleBoundary
+    void notifyLeftWithoutLock(PolyglotThreadInfo info) {
+        if (!info.isActive()) {
+            notifyThreadClosed();
+        }
+    }
+
     boolean closeImpl(boolean cancelIfExecuting, boolean waitForPolyglotThreads, boolean notifyInstruments) {
         /*
          * As a first step we prepare for close by waiting for other threads to finish closing and
@@ -1032,13 +1106,19 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
                     }
                 }
 
+                /*
+                 * Publish the close before looking for active threads. Threads entering without the
+                 * lock increment their entered count before they re-read the closing state, so
+                 * either they observe the close and back out, or we observe them as active.
+                 */
+                closingThread = Thread.currentThread();
                 if (hasActiveOtherThread(waitForPolyglotThreads)) {
                     /*
                      * We are not done executing, cannot close yet.
                      */
+                    closingThread = null;
                     return false;
                 }
-                closingThread = Thread.currentThread();
                 if (!threadInfo.explicitContextStack.isEmpty()) {
                     PolyglotContextImpl c = this;
                     while (!threadInfo.explicitContextStack.isEmpty()) {
@@ -1087,6 +1167,7 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
                     cancelling = false;
                     if (success) {
                         closed = true;
+                        unregisterCurrentThread();
                     }
                     // triggers a thread changed event which requires slow path enter
                     setCachedThreadInfo(PolyglotThreadInfo.NULL);
@@ -1365,6 +1446,52 @@ final class PolyglotContextImpl extends AbstractContextImpl implements com.oracl
         }
     }
 
+    synchronized long getBytesAllocated() {
+        long bytesAllocated = 0;
+        Collection<PolyglotThreadInfo> polyglotThreads = getSeenThreads().values();
+        for (PolyglotThreadInfo threadInfo : polyglotThreads) {
+            bytesAllocated += threadInfo.getBytesAllocated();
+        }
+        return bytesAllocated;
+    }
+
+    synchronized void resetAllocationTracking() {
+        Collection<PolyglotThreadInfo> polyglotThreads = getSeenThreads().values();
+        for (PolyglotThreadInfo threadInfo : polyglotThreads) {
+            threadInfo.resetAllocationTracking();
+        }
+    }
+
+    /**
+     * Takes the statements that threads reserved from the statement counter but did not execute
+     * yet. Threads executing concurrently fall back to the statement counter once their budget is
+     * taken.
+     */
+    synchronized long takeStatementBudgets() {
+        long statements = 0;
+        Collection<PolyglotThreadInfo> polyglotThreads = getSeenThreads().values();
+        for (PolyglotThreadInfo threadInfo : polyglotThreads) {
+            statements += threadInfo.takeStatementBudget();
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the thread info of the current thread, or {@link PolyglotThreadInfo#NULL} if the
+     * current thread never entered this context.
+     */
+    @TruffleBoundary
+    PolyglotThreadInfo lookupCurrentThreadInfo() {
+        PolyglotThreadInfo registered = registeredThreadInfo.get();
+        if (registered != null) {
+            return registered;
+        }
+        synchronized (this) {
+            PolyglotThreadInfo info = threads.get(Thread.currentThread());
+            return info != null ? info : PolyglotThreadInfo.NULL;
+        }
+    }
+
     PolyglotThreadInfo getCachedThreadInfo(boolean isConstant) {
         return isConstant ? constantCurrentThreadInfo : currentThreadInfo;
     }
@@ -162,6 +162,8 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
     final Assumption singleThreadPerContext = Truffle.getRuntime().createAssumption("Single thread per context of an engine.");
     final Assumption noInnerContexts = Truffle.getRuntime().createAssumption("No inner contexts.");
     final Assumption noThreadTimingNeeded = Truffle.getRuntime().createAssumption("No enter timing needed.");
+    final Assumption noAllocationTrackingNeeded = Truffle.getRuntime().createAssumption("No enter allocation tracking needed.");
+    final Assumption noStatementBudgets = Truffle.getRuntime().createAssumption("No thread local statement budgets.");
     final Assumption noPriorityChangeNeeded = Truffle.getRuntime().createAssumption("No priority change needed.");
 
     volatile OptionDescriptors allOptions;
@@ -179,6 +181,8 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
     final int contextLength;
     private volatile EngineLimits limits;
     final boolean conservativeContextReferences;
+    long sourceCacheLimit; // updated when a pre-initialized engine is patched
+    PolyglotSourceCache.Statistics sourceCacheStatistics; // updated when a pre-initialized engine is patched
     private final MessageTransport messageInterceptor;
 
     PolyglotEngineImpl(PolyglotImpl impl, DispatchOutputStream out, DispatchOutputStream err, InputStream in, Map<String, String> options,
@@ -254,6 +258,7 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
 
         this.engineOptionValues.putAll(originalEngineOptions, allowExperimentalOptions);
         this.conservativeContextReferences = engineOptionValues.get(PolyglotEngineOptions.UseConservativeContextReferences);
+        initializeSourceCacheOptions();
 
         for (PolyglotLanguage language : languagesOptions.keySet()) {
             language.getOptionValues().putAll(languagesOptions.get(language), allowExperimentalOptions);
@@ -331,6 +336,7 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
 
         prototype.engineOptionValues.copyInto(this.engineOptionValues);
         this.conservativeContextReferences = engineOptionValues.get(PolyglotEngineOptions.UseConservativeContextReferences);
+        initializeSourceCacheOptions();
 
         for (String languageId : idToLanguage.keySet()) {
             OptionValuesImpl prototypeOptions = prototype.idToLanguage.get(languageId).getOptionValuesIfExists();
@@ -392,6 +398,7 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
         parseOptions(newOptions, newUseSystemProperties, originalEngineOptions, languagesOptions, instrumentsOptions, logLevels);
 
         this.engineOptionValues.putAll(originalEngineOptions, newAllowExperimentalOptions);
+        initializeSourceCacheOptions();
 
         if (this.runtimeData != null) {
             EngineAccessor.ACCESSOR.reloadEngineOptions(this.runtimeData, this.engineOptionValues);
@@ -985,6 +992,9 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
             // don't commit to the close if still running as this might cause races in the executing
             // context.
             if (closeContexts) {
+                if (sourceCacheStatistics != null) {
+                    sourceCacheStatistics.log(LANGUAGE.getLogger(OPTION_GROUP_ENGINE, PolyglotSourceCache.class.getName(), getOrCreateEngineLoggers()));
+                }
                 Object loggers = getEngineLoggers();
                 if (loggers != null) {
                     LANGUAGE.closeEngineLoggers(loggers);
@@ -1510,6 +1520,19 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
             // fast-path -> same thread
             prev = PolyglotContextImpl.getSingleContextState().getContextThreadLocal().setReturnParent(context);
             info.enter(this);
+            if (CompilerDirectives.injectBranchProbability(CompilerDirectives.SLOWPATH_PROBABILITY, getCachedThreadInfo(context) != info)) {
+                /*
+                 * Close and cancel reset the cached thread info before they look for active
+                 * threads. It was reset after we read it, so back out and enter through the slow
+                 * path.
+                 */
+                if (singleThreadPerContext.isValid()) {
+                    CompilerDirectives.transferToInterpreter();
+                }
+                info.leave(this);
+                PolyglotContextImpl.getSingleContextState().getContextThreadLocal().set(prev);
+                prev = context.enterThreadChanged();
+            }
         } else {
             // slow path -> changed thread
             if (singleThreadPerContext.isValid()) {
@@ -1527,15 +1550,29 @@ final class PolyglotEngineImpl extends AbstractPolyglotImpl.AbstractEngineImpl i
         PolyglotThreadInfo info = getCachedThreadInfo(polyglotContext);
         if (CompilerDirectives.injectBranchProbability(CompilerDirectives.LIKELY_PROBABILITY, info.getThread() == Thread.currentThread())) {
             info.leave(this);
+            if (CompilerDirectives.injectBranchProbability(CompilerDirectives.SLOWPATH_PROBABILITY, polyglotContext.cancelling)) {
+                polyglotContext.notifyLeftWithoutLock(info);
+            }
         } else {
             if (singleThreadPerContext.isValid()) {
                 CompilerDirectives.transferToInterpreter();
             }
-            polyglotContext.leaveThreadChanged();
+            info = polyglotContext.leaveThreadChanged();
+        }
+        if (!noStatementBudgets.isValid()) {
+            PolyglotLimits.returnStatementBudget(polyglotContext, info);
         }
         PolyglotContextImpl.getSingleContextState().getContextThreadLocal().set(prev);
     }
 
+    private void initializeSourceCacheOptions() {
+        this.sourceCacheLimit = engineOptionValues.get(PolyglotEngineOptions.SourceCacheLimit);
+        if (sourceCacheLimit < 0) {
+            throw new IllegalArgumentException("Invalid source cache limit " + sourceCacheLimit + ". The limit must not be negative.");
+        }
+        this.sourceCacheStatistics = engineOptionValues.get(PolyglotEngineOptions.SourceCacheStatistics) ? new PolyglotSourceCache.Statistics() : null;
+    }
+
     PolyglotThreadInfo getCachedThreadInfo(PolyglotContextImpl context) {
         if (singleThreadPerContext.isValid() && singleContext.isValid()) {
             return context.getCachedThreadInfo(true);
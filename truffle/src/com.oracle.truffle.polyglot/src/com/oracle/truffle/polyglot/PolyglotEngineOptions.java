@@ -65,4 +65,11 @@ final class PolyglotEngineOptions {
                     "This allows invalid sharing between contexts. " +
                     "For testing purposes only.")//
     static final OptionKey<Boolean> UseConservativeContextReferences = new OptionKey<>(false);
+
+    @Option(category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL, help = "Maximum total length in characters or bytes of the cached sources of a language. " +
+                    "Least recently used sources are evicted if the limit is exceeded. Set to 0 for no limit (default: 0).")//
+    static final OptionKey<Long> SourceCacheLimit = new OptionKey<>(0L);
+
+    @Option(category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL, help = "Logs source cache hits, misses and evictions when the engine is closed.")//
+    static final OptionKey<Boolean> SourceCacheStatistics = new OptionKey<>(false);
 }
@@ -120,9 +120,10 @@ public final class PolyglotImpl extends AbstractPolyglotImpl {
 
     @Override
     public Object buildLimits(long statementLimit, Predicate<org.graalvm.polyglot.Source> statementLimitSourceFilter,
-                    Duration timeLimit, Duration timeLimitAccuracy,
-                    Consumer<ResourceLimitEvent> onLimit) {
-        return new PolyglotLimits(statementLimit, statementLimitSourceFilter, timeLimit, timeLimitAccuracy, onLimit);
+                    Duration timeLimit, Duration timeLimitAccuracy, long allocatedBytesLimit, Duration allocatedBytesLimitAccuracy,
+                    long allocationRateLimit, Duration allocationRateLimitAccuracy, Consumer<ResourceLimitEvent> onLimit) {
+        return new PolyglotLimits(statementLimit, statementLimitSourceFilter, timeLimit, timeLimitAccuracy, allocatedBytesLimit, allocatedBytesLimitAccuracy,
+                        allocationRateLimit, allocationRateLimitAccuracy, onLimit);
     }
 
     /**
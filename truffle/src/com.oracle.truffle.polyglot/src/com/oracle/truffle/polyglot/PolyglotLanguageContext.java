@@ -399,6 +399,7 @@ final class PolyglotLanguageContext implements PolyglotImpl.VMObject {
             lazy.activePolyglotThreads.remove(thread);
             context.engine.leave(prev, context);
             seenThreads.remove(thread);
+            context.unregisterCurrentThread();
         }
         EngineAccessor.INSTRUMENT.notifyThreadFinished(context.engine, context.truffleContext, thread);
     }
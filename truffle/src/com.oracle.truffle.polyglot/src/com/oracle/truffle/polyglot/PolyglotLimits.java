@@ -41,6 +41,7 @@
 package com.oracle.truffle.polyglot;
 
 import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.lang.ref.WeakReference;
 import java.time.Duration;
 import java.util.TimerTask;
@@ -63,6 +64,7 @@ import org.graalvm.polyglot.Source;
 import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.TruffleOptions;
 import com.oracle.truffle.api.frame.FrameDescriptor;
@@ -90,27 +92,97 @@ final class PolyglotLimits {
     final Predicate<Source> statementLimitSourcePredicate;
     final Duration timeLimit;
     final Duration timeAccuracy;
+    final long allocatedBytesLimit;
+    final Duration allocatedBytesAccuracy;
+    final long allocationRateLimit;
+    final Duration allocationRateAccuracy;
     final Consumer<ResourceLimitEvent> onEvent;
 
-    PolyglotLimits(long statementLimit, Predicate<Source> statementLimitSourcePredicate, Duration timeLimit, Duration timeAccuracy, Consumer<ResourceLimitEvent> onEvent) {
+    PolyglotLimits(long statementLimit, Predicate<Source> statementLimitSourcePredicate, Duration timeLimit, Duration timeAccuracy, long allocatedBytesLimit, Duration allocatedBytesAccuracy,
+                    long allocationRateLimit, Duration allocationRateAccuracy, Consumer<ResourceLimitEvent> onEvent) {
         this.statementLimit = statementLimit;
         this.statementLimitSourcePredicate = statementLimitSourcePredicate;
         this.timeLimit = timeLimit;
         this.timeAccuracy = timeAccuracy;
+        this.allocatedBytesLimit = allocatedBytesLimit;
+        this.allocatedBytesAccuracy = allocatedBytesAccuracy;
+        this.allocationRateLimit = allocationRateLimit;
+        this.allocationRateAccuracy = allocationRateAccuracy;
         this.onEvent = onEvent;
     }
 
+    boolean isAllocationTrackingNeeded() {
+        return allocatedBytesLimit > 0 || allocationRateLimit > 0;
+    }
+
     static void reset(PolyglotContextImpl context) {
         synchronized (context) {
             PolyglotLimits limits = context.config.limits;
             if (limits != null && limits.timeLimit != null) {
                 context.resetTiming();
             }
+            if (limits != null && limits.isAllocationTrackingNeeded()) {
+                context.resetAllocationTracking();
+            }
             context.statementCounter = context.statementLimit;
+            context.takeStatementBudgets();
             context.volatileStatementCounter.set(context.statementLimit);
         }
     }
 
+    /*
+     * In multi-threaded contexts statements are reserved from the shared statement counter in
+     * chunks. Each thread then counts down the budget kept in its thread info, so threads executing
+     * in parallel do not contend on the shared counter for every statement. Close to the limit
+     * statements are reserved one by one. Unused budget is returned when a thread leaves the
+     * context, and the budgets of all threads are taken back before the limit is considered
+     * exceeded, so the limit is reached at the exact statement count.
+     */
+    static final long STATEMENT_BUDGET_CHUNK = 1024;
+
+    @TruffleBoundary
+    static long reserveStatements(PolyglotContextImpl context, PolyglotThreadInfo info) {
+        AtomicLong counter = context.volatileStatementCounter;
+        if (info.isCurrent() && info.isActive() && counter.get() > 2 * STATEMENT_BUDGET_CHUNK) {
+            /*
+             * The reserved statements are added to the budget while holding the context lock, so a
+             * thread that takes back all budgets never misses statements that were just reserved.
+             */
+            synchronized (context) {
+                long count = counter.addAndGet(-STATEMENT_BUDGET_CHUNK);
+                if (count >= 0) {
+                    PolyglotEngineImpl engine = context.engine;
+                    if (engine.noStatementBudgets.isValid()) {
+                        engine.noStatementBudgets.invalidate();
+                    }
+                    info.addStatementBudget(STATEMENT_BUDGET_CHUNK - 1);
+                    return count;
+                }
+                // other threads consumed the remaining statements concurrently
+                counter.addAndGet(STATEMENT_BUDGET_CHUNK);
+            }
+        }
+        long count = counter.decrementAndGet();
+        if (count < 0) {
+            // statements reserved but not executed by other threads are still available
+            count = counter.addAndGet(context.takeStatementBudgets());
+        }
+        return count;
+    }
+
+    static void returnStatementBudget(PolyglotContextImpl context, PolyglotThreadInfo info) {
+        if (context.parent == null && !info.isActive() && info.hasStatementBudget()) {
+            returnStatementBudgetSlowPath(context, info);
+        }
+    }
+
+    @TruffleBoundary
+    private static void returnStatementBudgetSlowPath(PolyglotContextImpl context, PolyglotThreadInfo info) {
+        synchronized (context) {
+            context.volatileStatementCounter.addAndGet(info.takeStatementBudget());
+        }
+    }
+
     static final Object CACHED_CONTEXT = new Object() {
         @Override
         public String toString() {
@@ -118,13 +190,22 @@ final class PolyglotLimits {
         }
     };
 
+    static final Object CACHED_THREAD_INFO = new Object() {
+        @Override
+        public String toString() {
+            return "$$$cached_thread_info$$$";
+        }
+    };
+
     static final class StatementIncrementNode extends ExecutionEventNode {
 
         final EngineLimits limits;
         final EventContext eventContext;
         final PolyglotEngineImpl engine;
         final FrameSlot readContext;
+        final FrameSlot readThreadInfo;
         final ConditionProfile needsLookup = ConditionProfile.createBinaryProfile();
+        final ConditionProfile needsThreadInfoLookup = ConditionProfile.createBinaryProfile();
         final FrameDescriptor descriptor;
         @CompilationFinal private boolean seenInnerContext;
 
@@ -135,8 +216,10 @@ final class PolyglotLimits {
             if (!engine.singleThreadPerContext.isValid() || !engine.singleContext.isValid()) {
                 descriptor = context.getInstrumentedNode().getRootNode().getFrameDescriptor();
                 readContext = descriptor.findOrAddFrameSlot(CACHED_CONTEXT, FrameSlotKind.Object);
+                readThreadInfo = descriptor.findOrAddFrameSlot(CACHED_THREAD_INFO, FrameSlotKind.Object);
             } else {
                 readContext = null;
+                readThreadInfo = null;
                 descriptor = null;
             }
         }
@@ -166,7 +249,11 @@ final class PolyglotLimits {
             if (engine.singleThreadPerContext.isValid()) {
                 count = --currentContext.statementCounter;
             } else {
-                count = currentContext.volatileStatementCounter.decrementAndGet();
+                PolyglotThreadInfo info = getThreadInfo(frame, currentContext);
+                if (info.tryConsumeStatement()) {
+                    return;
+                }
+                count = reserveStatements(currentContext, info);
             }
             if (count < 0) { // overflowed
                 CompilerDirectives.transferToInterpreterAndInvalidate();
@@ -174,6 +261,33 @@ final class PolyglotLimits {
             }
         }
 
+        /*
+         * The thread info of the current thread is cached in the frame like the context, so that
+         * every thread of a multi-threaded context consumes from its own statement budget without a
+         * thread local lookup per statement. A frame that is resumed on another thread looks it up
+         * again.
+         */
+        private PolyglotThreadInfo getThreadInfo(VirtualFrame frame, PolyglotContextImpl context) {
+            if (readThreadInfo == null || frame.getFrameDescriptor() != descriptor) {
+                return context.lookupCurrentThreadInfo();
+            }
+            PolyglotThreadInfo info;
+            try {
+                Object readValue = frame.getObject(readThreadInfo);
+                if (needsThreadInfoLookup.profile(readValue == descriptor.getDefaultValue() || !((PolyglotThreadInfo) readValue).isCurrent())) {
+                    info = context.lookupCurrentThreadInfo();
+                    frame.setObject(readThreadInfo, info);
+                } else {
+                    info = (PolyglotThreadInfo) readValue;
+                }
+            } catch (FrameSlotTypeException e) {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                info = context.lookupCurrentThreadInfo();
+                frame.setObject(readThreadInfo, info);
+            }
+            return info;
+        }
+
         private PolyglotContextImpl getLimitContext() {
             PolyglotContextImpl context = PolyglotContextImpl.currentEntered(engine);
             if (engine.noInnerContexts.isValid() || context.parent == null) {
@@ -201,6 +315,7 @@ final class PolyglotLimits {
                     }
                 } else {
                     if (context.volatileStatementCounter.get() < 0) {
+                        context.takeStatementBudgets();
                         context.volatileStatementCounter.set(limit);
                         limitReached = true;
                     }
@@ -224,21 +339,28 @@ final class PolyglotLimits {
 
     }
 
-    static final class TimeLimitChecker extends TimerTask {
+    /**
+     * Periodically checks a limit of a context and cancels the context if the limit is exceeded.
+     */
+    abstract static class LimitChecker extends TimerTask {
 
         private final WeakReference<PolyglotContextImpl> context;
-        private final long timeLimitNS;
         private final EngineLimits limits;
         private FutureTask<?> cancelResult;
 
-        TimeLimitChecker(PolyglotContextImpl context, EngineLimits limits) {
+        LimitChecker(PolyglotContextImpl context, EngineLimits limits) {
             this.context = new WeakReference<>(context);
-            this.timeLimitNS = context.config.limits.timeLimit.toNanos();
             this.limits = limits;
         }
 
+        /**
+         * Returns the message to cancel the context with if the limit is exceeded, else
+         * <code>null</code>.
+         */
+        abstract String checkLimit(PolyglotContextImpl c);
+
         @Override
-        public void run() {
+        public final void run() {
             PolyglotContextImpl c = this.context.get();
             if (cancelResult != null) {
                 if (cancelResult.isDone()) {
@@ -253,12 +375,9 @@ final class PolyglotLimits {
                 cancel();
                 return;
             }
-            long timeActiveNS = c.getTimeActive();
-            if (timeActiveNS > timeLimitNS) {
+            String message = checkLimit(c);
+            if (message != null) {
                 if (!c.invalid) {
-                    String message = String.format("Time resource limit of %sms exceeded. Time executed %sms.",
-                                    c.config.limits.timeLimit.toMillis(),
-                                    Duration.ofNanos(timeActiveNS).toMillis());
                     boolean invalidated = c.invalidate(message);
                     /*
                      * We immediately set the context invalid so it can no longer be entered. The
@@ -282,6 +401,73 @@ final class PolyglotLimits {
         }
     }
 
+    static final class TimeLimitChecker extends LimitChecker {
+
+        private final long timeLimitNS;
+
+        TimeLimitChecker(PolyglotContextImpl context, EngineLimits limits) {
+            super(context, limits);
+            this.timeLimitNS = context.config.limits.timeLimit.toNanos();
+        }
+
+        @Override
+        String checkLimit(PolyglotContextImpl c) {
+            long timeActiveNS = c.getTimeActive();
+            if (timeActiveNS > timeLimitNS) {
+                return String.format("Time resource limit of %sms exceeded. Time executed %sms.",
+                                c.config.limits.timeLimit.toMillis(),
+                                Duration.ofNanos(timeActiveNS).toMillis());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Checks the allocated bytes and allocation rate limits using the bytes allocated by the
+     * threads of a context, which are accounted on enter and leave. No allocation of the guest
+     * application is instrumented, so contexts that stay within their limits are not slowed down.
+     */
+    static final class AllocationLimitChecker extends LimitChecker {
+
+        private final long allocatedBytesLimit;
+        private final long allocationRateLimit;
+        private long lastBytesAllocated;
+        private long lastCheckNS;
+
+        AllocationLimitChecker(PolyglotContextImpl context, EngineLimits limits) {
+            super(context, limits);
+            this.allocatedBytesLimit = context.config.limits.allocatedBytesLimit;
+            this.allocationRateLimit = context.config.limits.allocationRateLimit;
+            this.lastCheckNS = System.nanoTime();
+        }
+
+        @Override
+        String checkLimit(PolyglotContextImpl c) {
+            long bytesAllocated = c.getBytesAllocated();
+            if (allocatedBytesLimit > 0 && bytesAllocated > allocatedBytesLimit) {
+                return String.format("Allocated bytes limit of %s bytes exceeded. Bytes allocated %s.", allocatedBytesLimit, bytesAllocated);
+            }
+            if (allocationRateLimit > 0) {
+                long now = System.nanoTime();
+                long elapsedNS = now - lastCheckNS;
+                long allocated = bytesAllocated - lastBytesAllocated;
+                if (allocated < 0) {
+                    // the limits were reset in the meantime
+                    allocated = bytesAllocated;
+                }
+                lastBytesAllocated = bytesAllocated;
+                lastCheckNS = now;
+                if (elapsedNS > 0) {
+                    long bytesPerSecond = (long) (allocated * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNS);
+                    if (bytesPerSecond > allocationRateLimit) {
+                        return String.format("Allocation rate limit of %s bytes per second exceeded. Bytes allocated per second %s.", allocationRateLimit, bytesPerSecond);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * Resource limit related data for each engine. Lazily constructed.
      */
@@ -335,6 +521,30 @@ final class PolyglotLimits {
                     throw new UnsupportedOperationException("ThreadMXBean.getCurrentThreadCpuTime() is not supported or enabled by the host VM but required for time limits.", cause);
                 }
             }
+
+            if (limits != null && limits.isAllocationTrackingNeeded()) {
+                long bytes = -1;
+                RuntimeException cause = null;
+                if (!TruffleOptions.AOT) {
+                    try {
+                        ThreadMXBean bean = PolyglotThreadInfo.getThreadBean();
+                        if (bean instanceof com.sun.management.ThreadMXBean) {
+                            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+                            allocationBean.setThreadAllocatedMemoryEnabled(true);
+                            bytes = allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                        }
+                    } catch (UnsupportedOperationException e) {
+                        // fallthrough not supported
+                        cause = e;
+                    } catch (LinkageError e) {
+                        // fallthrough jdk.management not available
+                        cause = new UnsupportedOperationException(e);
+                    }
+                }
+                if (bytes == -1) {
+                    throw new UnsupportedOperationException("ThreadMXBean.getThreadAllocatedBytes() is not supported or enabled by the host VM but required for allocated bytes limits.", cause);
+                }
+            }
         }
 
         void initialize(PolyglotLimits limits, PolyglotContextImpl context) {
@@ -389,6 +599,19 @@ final class PolyglotLimits {
                 long accuracy = Math.max(10, limits.timeAccuracy.toMillis());
                 getLimitTimer().scheduleAtFixedRate(task, accuracy, accuracy, TimeUnit.MILLISECONDS);
             }
+            if (limits.isAllocationTrackingNeeded()) {
+                engine.noAllocationTrackingNeeded.invalidate();
+                long accuracy = Long.MAX_VALUE;
+                if (limits.allocatedBytesLimit > 0) {
+                    accuracy = limits.allocatedBytesAccuracy.toMillis();
+                }
+                if (limits.allocationRateLimit > 0) {
+                    accuracy = Math.min(accuracy, limits.allocationRateAccuracy.toMillis());
+                }
+                accuracy = Math.max(10, accuracy);
+                AllocationLimitChecker task = new AllocationLimitChecker(context, this);
+                getLimitTimer().scheduleAtFixedRate(task, accuracy, accuracy, TimeUnit.MILLISECONDS);
+            }
 
             reset(context);
         }
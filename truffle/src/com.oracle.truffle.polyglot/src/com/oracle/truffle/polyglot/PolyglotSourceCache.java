@@ -44,47 +44,114 @@ import static com.oracle.truffle.polyglot.EngineAccessor.LANGUAGE;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.TruffleLogger;
 import com.oracle.truffle.api.source.Source;
 
 final class PolyglotSourceCache {
 
-    private final ConcurrentHashMap<Object, CallTarget> sourceCache;
+    private final ConcurrentHashMap<Object, CacheEntry> sourceCache;
     private final ReferenceQueue<Source> deadSources = new ReferenceQueue<>();
 
-    PolyglotSourceCache() {
+    /*
+     * The limit and the statistics are read from the engine for every lookup, as they change when a
+     * pre-initialized engine is patched. The limit is the maximum total weight of the cached
+     * entries or 0 if the cache is unbounded. The weight of an entry is the length of its source in
+     * characters or bytes, as the size of the parsed code is roughly proportional to it.
+     */
+    private final PolyglotEngineImpl engine;
+    private final AtomicLong totalWeight = new AtomicLong();
+
+    PolyglotSourceCache(PolyglotEngineImpl engine) {
         this.sourceCache = new ConcurrentHashMap<>();
+        this.engine = engine;
     }
 
     CallTarget parseCached(PolyglotLanguageContext context, Source source, String[] argumentNames) {
         cleanupStaleEntries();
+        long limit = engine.sourceCacheLimit;
+        Statistics statistics = engine.sourceCacheStatistics;
 
         CallTarget target;
         if (source.isCached()) {
             Object sourceId = EngineAccessor.SOURCE.getSourceIdentifier(source);
             WeakSourceKey ref = new WeakSourceKey(sourceId, source, argumentNames, deadSources);
-            target = sourceCache.get(ref);
-            if (target == null) {
+            CacheEntry entry = sourceCache.get(ref);
+            if (entry == null) {
+                if (statistics != null) {
+                    statistics.misses.increment();
+                }
                 target = parseImpl(context, argumentNames, EngineAccessor.SOURCE.copySource(source));
-                CallTarget prev = sourceCache.putIfAbsent(ref, target);
+                entry = new CacheEntry(target, getWeight(source));
+                CacheEntry prev = sourceCache.putIfAbsent(ref, entry);
                 if (prev != null) {
                     /*
                      * Parsed twice -> discard the one not in the cache.
                      */
-                    target = prev;
+                    entry = prev;
+                } else if (totalWeight.addAndGet(entry.weight) > limit && limit > 0) {
+                    evictLeastRecentlyUsed(limit, statistics);
+                }
+            } else {
+                if (statistics != null) {
+                    statistics.hits.increment();
+                }
+                if (limit > 0) {
+                    entry.lastUsed = System.nanoTime();
                 }
             }
+            target = entry.target;
         } else {
             target = parseImpl(context, argumentNames, source);
         }
         return target;
     }
 
+    private static long getWeight(Source source) {
+        if (source.hasCharacters()) {
+            return Math.max(1, source.getCharacters().length());
+        } else if (source.hasBytes()) {
+            return Math.max(1, source.getBytes().length());
+        }
+        return 1;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is filled to three quarters of its
+     * limit, such that eviction does not need to run for every newly cached source.
+     */
+    private synchronized void evictLeastRecentlyUsed(long limit, Statistics statistics) {
+        if (totalWeight.get() <= limit) {
+            // already evicted by another thread
+            return;
+        }
+        List<Map.Entry<Object, CacheEntry>> entries = new ArrayList<>(sourceCache.entrySet());
+        entries.sort((e1, e2) -> Long.compare(e1.getValue().lastUsed, e2.getValue().lastUsed));
+        long targetWeight = limit - (limit >> 2);
+        for (Map.Entry<Object, CacheEntry> entry : entries) {
+            if (totalWeight.get() <= targetWeight) {
+                break;
+            }
+            CacheEntry cacheEntry = entry.getValue();
+            if (sourceCache.remove(entry.getKey(), cacheEntry)) {
+                totalWeight.addAndGet(-cacheEntry.weight);
+                if (statistics != null) {
+                    statistics.evictions.increment();
+                }
+            }
+        }
+    }
+
     private static CallTarget parseImpl(PolyglotLanguageContext context, String[] argumentNames, Source source) {
         if (!EngineAccessor.SOURCE.isLegacySource(source)) {
             validateSource(context, source);
@@ -165,7 +232,37 @@ final class PolyglotSourceCache {
     private void cleanupStaleEntries() {
         WeakSourceKey sourceRef = null;
         while ((sourceRef = (WeakSourceKey) deadSources.poll()) != null) {
-            sourceCache.remove(sourceRef);
+            CacheEntry entry = sourceCache.remove(sourceRef);
+            if (entry != null) {
+                totalWeight.addAndGet(-entry.weight);
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+
+        final CallTarget target;
+        final long weight;
+        volatile long lastUsed;
+
+        CacheEntry(CallTarget target, long weight) {
+            this.target = target;
+            this.weight = weight;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    /**
+     * Source cache statistics of all languages of an engine.
+     */
+    static final class Statistics {
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        void log(TruffleLogger logger) {
+            logger.info(String.format("Source cache: %d hits, %d misses, %d evictions", hits.sum(), misses.sum(), evictions.sum()));
         }
     }
 
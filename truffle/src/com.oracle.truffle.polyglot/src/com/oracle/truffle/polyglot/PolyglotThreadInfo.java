@@ -46,6 +46,7 @@ import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
@@ -55,14 +56,27 @@ final class PolyglotThreadInfo {
 
     private final Reference<Thread> thread;
 
-    private int enteredCount;
+    /*
+     * Only written by the owning thread, but read by threads closing or cancelling the context
+     * after they published the state transition.
+     */
+    private volatile int enteredCount;
     final LinkedList<Object> explicitContextStack = new LinkedList<>();
     volatile boolean cancelled;
     private volatile long lastEntered;
     private volatile long timeExecuted;
+    private volatile long lastAllocatedBytes;
+    private volatile long bytesAllocated;
     private boolean deprioritized;
+    /*
+     * Statements this thread reserved from the statement counter of a multi-threaded context. Only
+     * the owning thread consumes from the budget, but other threads take it back when the statement
+     * limit is evaluated or reset, therefore all updates are atomic.
+     */
+    private volatile long statementBudget;
 
     private static volatile ThreadMXBean threadBean;
+    private static final AtomicLongFieldUpdater<PolyglotThreadInfo> STATEMENT_BUDGET = AtomicLongFieldUpdater.newUpdater(PolyglotThreadInfo.class, "statementBudget");
 
     PolyglotThreadInfo(Thread thread) {
         this.thread = new WeakReference<>(thread);
@@ -83,10 +97,14 @@ final class PolyglotThreadInfo {
             lowerPriority();
             deprioritized = true;
         }
-        int count = ++enteredCount;
+        int count = enteredCount + 1;
+        enteredCount = count;
         if (!engine.noThreadTimingNeeded.isValid() && count == 1) {
             lastEntered = getTime();
         }
+        if (!engine.noAllocationTrackingNeeded.isValid() && count == 1) {
+            lastAllocatedBytes = getAllocatedBytes();
+        }
 
     }
 
@@ -123,6 +141,54 @@ final class PolyglotThreadInfo {
         if (t == null) {
             return timeExecuted;
         }
+        long time = getThreadBean().getThreadCpuTime(t.getId());
+        if (time == -1) {
+            return TimeUnit.MILLISECONDS.convert(System.currentTimeMillis(), TimeUnit.NANOSECONDS);
+        }
+        return time;
+    }
+
+    synchronized void resetAllocationTracking() {
+        if (enteredCount > 0) {
+            lastAllocatedBytes = getAllocatedBytes();
+        }
+        this.bytesAllocated = 0;
+    }
+
+    /*
+     * Synchronized with folding the bytes allocated since the last enter into the total, otherwise
+     * a thread checking the limits could see them neither in the total nor as the current delta.
+     */
+    synchronized long getBytesAllocated() {
+        long totalBytes = bytesAllocated;
+        long last = this.lastAllocatedBytes;
+        if (last > 0) {
+            totalBytes += getAllocatedBytes() - last;
+        }
+        return totalBytes;
+    }
+
+    @TruffleBoundary
+    private synchronized void foldAllocatedBytes(long allocated) {
+        this.bytesAllocated += allocated;
+        this.lastAllocatedBytes = 0;
+    }
+
+    @TruffleBoundary
+    private long getAllocatedBytes() {
+        Thread t = getThread();
+        if (t == null) {
+            return lastAllocatedBytes;
+        }
+        long bytes = ((com.sun.management.ThreadMXBean) getThreadBean()).getThreadAllocatedBytes(t.getId());
+        if (bytes == -1) {
+            // not supported or disabled, verified when the limits are validated
+            return lastAllocatedBytes;
+        }
+        return bytes;
+    }
+
+    static ThreadMXBean getThreadBean() {
         ThreadMXBean bean = threadBean;
         if (bean == null) {
             /*
@@ -131,11 +197,27 @@ final class PolyglotThreadInfo {
              */
             threadBean = bean = ManagementFactory.getThreadMXBean();
         }
-        long time = bean.getThreadCpuTime(t.getId());
-        if (time == -1) {
-            return TimeUnit.MILLISECONDS.convert(System.currentTimeMillis(), TimeUnit.NANOSECONDS);
+        return bean;
+    }
+
+    boolean tryConsumeStatement() {
+        long budget = statementBudget;
+        return budget > 0 && STATEMENT_BUDGET.compareAndSet(this, budget, budget - 1);
+    }
+
+    boolean hasStatementBudget() {
+        return statementBudget != 0;
+    }
+
+    void addStatementBudget(long statements) {
+        STATEMENT_BUDGET.getAndAdd(this, statements);
+    }
+
+    long takeStatementBudget() {
+        if (statementBudget == 0) {
+            return 0;
         }
-        return time;
+        return STATEMENT_BUDGET.getAndSet(this, 0);
     }
 
     boolean isPolyglotThread(PolyglotContextImpl c) {
@@ -147,12 +229,19 @@ final class PolyglotThreadInfo {
 
     void leave(PolyglotEngineImpl engine) {
         assert Thread.currentThread() == getThread();
-        int count = --enteredCount;
+        int count = enteredCount - 1;
+        enteredCount = count;
         if (!engine.noThreadTimingNeeded.isValid() && count == 0) {
             long last = this.lastEntered;
             this.lastEntered = 0;
             this.timeExecuted += getTime() - last;
         }
+        if (!engine.noAllocationTrackingNeeded.isValid() && count == 0) {
+            long last = this.lastAllocatedBytes;
+            if (last > 0) {
+                foldAllocatedBytes(getAllocatedBytes() - last);
+            }
+        }
         if (!engine.noPriorityChangeNeeded.isValid() && deprioritized && count == 0) {
             raisePriority();
             deprioritized = false;